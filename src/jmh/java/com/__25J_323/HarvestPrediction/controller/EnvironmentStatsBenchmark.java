@@ -0,0 +1,56 @@
+package com.__25J_323.HarvestPrediction.controller;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /api/environment/stats aggregation over the recent-readings batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentStatsBenchmark {
+
+    @Param({"24", "2880"})
+    public int readings;
+
+    private List<EnvironmentData> data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        data = new ArrayList<>(readings);
+        for (int i = 0; i < readings; i++) {
+            EnvironmentData reading = new EnvironmentData();
+            reading.setTemperature(18 + random.nextDouble() * 16);
+            reading.setHumidity(40 + random.nextDouble() * 50);
+            reading.setSoilMoisture(15 + random.nextDouble() * 60);
+            reading.setTimestamp(LocalDateTime.now().minusSeconds(30L * i));
+            data.add(reading);
+        }
+    }
+
+    @Benchmark
+    public EnvironmentController.EnvironmentStats computeStats() {
+        return EnvironmentController.computeStats(data);
+    }
+}
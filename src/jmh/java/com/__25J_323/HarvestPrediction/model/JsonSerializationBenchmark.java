@@ -0,0 +1,93 @@
+package com.__25J_323.HarvestPrediction.model;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trips of the documents that go over REST and WebSocket, using the application's mapper
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private EnvironmentData environmentData;
+    private RipenessData ripenessData;
+    private String environmentJson;
+    private String ripenessJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new ApplicationConfig().objectMapper();
+
+        environmentData = new EnvironmentData();
+        environmentData.setId("66f1c2a9e4b0a1b2c3d4e5f6");
+        environmentData.setTemperature(24.5);
+        environmentData.setHumidity(63.2);
+        environmentData.setSoilMoisture(41.0);
+        environmentData.setTimestamp(LocalDateTime.of(2025, 6, 1, 12, 0, 30));
+
+        ripenessData = new RipenessData();
+        ripenessData.setId("66f1c2a9e4b0a1b2c3d4e5f7");
+        ripenessData.setImageUrl("uploads/20250601_120030_tray.jpg");
+        ripenessData.setTimestamp(LocalDateTime.of(2025, 6, 1, 12, 0, 30));
+        List<RipenessData.DetectedTomato> tomatoes = new ArrayList<>();
+        String[] states = {"Green", "Turning", "Ripe", "Overripe"};
+        for (int i = 0; i < 8; i++) {
+            RipenessData.BoundingBox box = new RipenessData.BoundingBox();
+            box.setX(40 * i);
+            box.setY(25 * i);
+            box.setWidth(120);
+            box.setHeight(110);
+            RipenessData.DetectedTomato tomato = new RipenessData.DetectedTomato();
+            tomato.setRipenessState(states[i % states.length]);
+            tomato.setConfidence(0.7 + i * 0.03);
+            tomato.setBoundingBox(box);
+            tomatoes.add(tomato);
+        }
+        ripenessData.setDetectedTomatoes(tomatoes);
+
+        environmentJson = objectMapper.writeValueAsString(environmentData);
+        ripenessJson = objectMapper.writeValueAsString(ripenessData);
+    }
+
+    @Benchmark
+    public byte[] serializeEnvironmentData() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(environmentData);
+    }
+
+    @Benchmark
+    public EnvironmentData deserializeEnvironmentData() throws JsonProcessingException {
+        return objectMapper.readValue(environmentJson, EnvironmentData.class);
+    }
+
+    @Benchmark
+    public byte[] serializeRipenessData() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(ripenessData);
+    }
+
+    @Benchmark
+    public RipenessData deserializeRipenessData() throws JsonProcessingException {
+        return objectMapper.readValue(ripenessJson, RipenessData.class);
+    }
+}
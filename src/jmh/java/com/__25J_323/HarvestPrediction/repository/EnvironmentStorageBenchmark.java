@@ -0,0 +1,145 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * One day of per-second readings from one device: bytes per sample and full-day scans in the
+ * columnar store versus environment_data documents.
+ * <p>
+ * The Mongo side is the BSON the driver sends and receives (the server adds index entries and
+ * record overhead on disk), and its scan is only the client-side decode of those documents into
+ * EnvironmentData; the server scan and the network come on top. Sizes are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvironmentStorageBenchmark {
+
+    private static final int SAMPLES = 86_400;
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 0, 0);
+
+    private Path directory;
+    private ColumnarEnvironmentDataStore store;
+    private MappingMongoConverter converter;
+    private List<RawBsonDocument> documents;
+    private final DocumentCodec codec = new DocumentCodec();
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("columnar-benchmark");
+        store = new ColumnarEnvironmentDataStore(directory, 1024, TimeUnit.HOURS.toMillis(1));
+
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        // Sensor-like series: slow random walks at the sensors' resolution
+        Random random = new Random(42);
+        double temperature = 24.0;
+        double humidity = 60.0;
+        double soilMoisture = 40.0;
+        documents = new ArrayList<>(SAMPLES);
+        long bsonBytes = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            temperature = Math.round((temperature + random.nextGaussian() * 0.02) * 10) / 10.0;
+            humidity = Math.round(humidity + random.nextGaussian() * 0.05);
+            soilMoisture = Math.round((soilMoisture + random.nextGaussian() * 0.01) * 10) / 10.0;
+
+            EnvironmentData data = new EnvironmentData();
+            data.setDeviceId("esp32");
+            data.setTemperature(temperature);
+            data.setHumidity(humidity);
+            data.setSoilMoisture(soilMoisture);
+            data.setTimestamp(START.plusSeconds(i));
+            store.save(data);
+
+            Document document = new Document("_id", new ObjectId());
+            converter.write(data, document);
+            RawBsonDocument raw = new RawBsonDocument(document, codec);
+            bsonBytes += raw.getByteBuffer().remaining();
+            documents.add(raw);
+        }
+        store.flush();
+
+        System.out.printf("%nBytes per sample: columnar %.2f, Mongo BSON %.2f%n",
+                store.sizeOnDisk() / (double) SAMPLES, bsonBytes / (double) SAMPLES);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public double columnarScan() {
+        double[] sum = new double[1];
+        store.scan(START.minusSeconds(1), START.plusDays(1),
+                (deviceId, millis, temperature, humidity, soilMoisture) -> sum[0] += temperature);
+        return sum[0];
+    }
+
+    @Benchmark
+    public List<EnvironmentData> columnarFindBetween() {
+        return store.findBetween(START.minusSeconds(1), START.plusDays(1));
+    }
+
+    @Benchmark
+    public List<EnvironmentData> columnarDownsampled() {
+        return store.findDownsampled(START.minusSeconds(1), START.plusDays(1), Duration.ofMinutes(5));
+    }
+
+    @Benchmark
+    public List<EnvironmentData> mongoDecode() {
+        List<EnvironmentData> result = new ArrayList<>(documents.size());
+        for (RawBsonDocument document : documents) {
+            // What the driver and Spring Data do per document of a find() cursor
+            Document decoded = codec.decode(new BsonBinaryReader(document.getByteBuffer().asNIO()),
+                    DecoderContext.builder().build());
+            result.add(converter.read(EnvironmentData.class, decoded));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost per frame of the JSON /topic/environment payload against the CBOR keyframe and delta
+ * frames of /topic/environment.cbor, over a series where temperature moves every reading,
+ * humidity every fourth and soil moisture every sixteenth. Average frame sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactFrameBenchmark {
+
+    private static final int READINGS = 1024;
+
+    private ObjectMapper objectMapper;
+    private CompactFrameService.DeltaEncoder deltaEncoder;
+    private CompactFrameService.DeltaEncoder keyframeEncoder;
+    private EnvironmentData[] readings;
+    private int next;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new ApplicationConfig().objectMapper();
+        ObjectMapper cborMapper = new CBORMapper();
+        deltaEncoder = new CompactFrameService.DeltaEncoder(cborMapper, 30);
+        // An interval of 0 makes every frame a keyframe
+        keyframeEncoder = new CompactFrameService.DeltaEncoder(cborMapper, 0);
+
+        readings = new EnvironmentData[READINGS];
+        LocalDateTime start = LocalDateTime.of(2025, 6, 1, 12, 0);
+        for (int i = 0; i < READINGS; i++) {
+            EnvironmentData data = new EnvironmentData();
+            data.setDeviceId("esp32");
+            data.setTemperature(24.0 + (i % 50) * 0.1);
+            data.setHumidity(60.0 + (i / 4 % 20) * 0.5);
+            data.setSoilMoisture(40.0 + (i / 16 % 10));
+            data.setTimestamp(start.plusSeconds(2L * i));
+            readings[i] = data;
+        }
+
+        long json = 0;
+        long keyframes = 0;
+        long deltas = 0;
+        CompactFrameService.DeltaEncoder sizing = new CompactFrameService.DeltaEncoder(cborMapper, 30);
+        for (EnvironmentData data : readings) {
+            json += objectMapper.writeValueAsBytes(data).length;
+            keyframes += keyframeEncoder.encode(CompactFrameService.environmentFields(data, ZoneOffset.UTC)).length;
+            byte[] frame = sizing.encode(CompactFrameService.environmentFields(data, ZoneOffset.UTC));
+            deltas += frame != null ? frame.length : 0;
+        }
+        System.out.printf("Average bytes per frame: JSON %.1f, CBOR keyframe %.1f, CBOR delta stream %.1f%n",
+                json / (double) READINGS, keyframes / (double) READINGS, deltas / (double) READINGS);
+    }
+
+    private EnvironmentData nextReading() {
+        EnvironmentData data = readings[next];
+        next = (next + 1) % READINGS;
+        return data;
+    }
+
+    @Benchmark
+    public byte[] jsonFrame() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(nextReading());
+    }
+
+    @Benchmark
+    public byte[] cborKeyframe() {
+        return keyframeEncoder.encode(CompactFrameService.environmentFields(nextReading(), ZoneOffset.UTC));
+    }
+
+    @Benchmark
+    public byte[] cborDeltaStream() {
+        return deltaEncoder.encode(CompactFrameService.environmentFields(nextReading(), ZoneOffset.UTC));
+    }
+}
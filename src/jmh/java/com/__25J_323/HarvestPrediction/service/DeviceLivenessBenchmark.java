@@ -0,0 +1,69 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Liveness tracking for 100k devices on a 512-slot wheel with a 30 s timeout and 100 ms ticks:
+ * the cost of one message (touch) and of one wheel tick while every device reports every 5 s,
+ * so each tick re-slots the entries whose deadline has moved on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceLivenessBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // 5 s report interval over 100 ms ticks
+    private static final int TOUCHES_PER_TICK = DEVICES / 50;
+
+    private long clock;
+    private DeviceLivenessTracker tracker;
+    private String[] ids;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        clock = 1_000_000_000L;
+        tracker = new DeviceLivenessTracker(30_000, 100, 512, () -> clock);
+        ids = new String[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            ids[i] = "device-" + i;
+            tracker.touch(ids[i]);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public void touch() {
+        tracker.touch(ids[next]);
+        next = next + 1 == DEVICES ? 0 : next + 1;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long tickWithReports() {
+        for (int i = 0; i < TOUCHES_PER_TICK; i++) {
+            tracker.touch(ids[next]);
+            next = next + 1 == DEVICES ? 0 : next + 1;
+        }
+        clock += TICK_NANOS;
+        tracker.advanceTo(clock);
+        return tracker.trackedDevices();
+    }
+}
@@ -0,0 +1,76 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.ReadingsSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local harvest-date model: impact functions and the combined current + trend calculation
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HarvestPredictionBenchmark {
+
+    @Param({"24", "168"})
+    public int historySize;
+
+    private HarvestPredictionService harvestPredictionService;
+    private ReadingsSnapshot current;
+    private List<EnvironmentData> history;
+    private final LocalDate plantingDate = LocalDate.of(2025, 3, 1);
+
+    @Setup
+    public void setUp() {
+        // The local model touches none of the collaborators
+        harvestPredictionService = new HarvestPredictionService(null, null, null, null, null);
+        current = new ReadingsSnapshot(27.3, 64.0, 38.5, LocalDateTime.now());
+
+        Random random = new Random(42);
+        history = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            EnvironmentData data = new EnvironmentData();
+            data.setTemperature(18 + random.nextDouble() * 16);
+            data.setHumidity(40 + random.nextDouble() * 50);
+            data.setSoilMoisture(15 + random.nextDouble() * 60);
+            data.setTimestamp(LocalDateTime.now().minusHours(i));
+            history.add(data);
+        }
+    }
+
+    @Benchmark
+    public double environmentalImpact() {
+        return harvestPredictionService.calculateEnvironmentalImpact(
+                current.temperature(), current.humidity(), current.soilMoisture());
+    }
+
+    @Benchmark
+    public double trendImpact() {
+        return harvestPredictionService.calculateTrendImpact(history);
+    }
+
+    @Benchmark
+    public LocalDate enhancedHarvestDate() {
+        return harvestPredictionService.calculateEnhancedHarvestDate(plantingDate, "Cherry", current, history);
+    }
+}
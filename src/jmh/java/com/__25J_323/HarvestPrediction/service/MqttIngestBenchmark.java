@@ -0,0 +1,98 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MQTT ingest path: payload parsing and full dispatch of one message (snapshot update, window
+ * aggregation, liveness touch, STOMP/SSE/CBOR broadcast into a no-op channel)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqttIngestBenchmark {
+
+    private MqttService mqttService;
+    private Mqtt5Publish temperatureMessage;
+    private Mqtt5Publish soilMoistureMessage;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ApplicationConfig().objectMapper();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+
+        mqttService = new MqttService(
+                null,
+                objectMapper,
+                messagingTemplate,
+                new EnvironmentStreamService(256, 15),
+                new CompactFrameService(messagingTemplate, (message, timeout) -> true, true, 30,
+                        Clock.systemDefaultZone()),
+                new DeviceLivenessTracker(30_000, 100, 512),
+                new SensorWindowAggregator(30_000),
+                new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS),
+                new ThresholdRuleEngine(ZoneId.systemDefault()),
+                new MqttCaptureWriter("captures", false),
+                new IngestMetrics(new SimpleMeterRegistry()),
+                new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 21_600, 64, Clock.systemDefaultZone()),
+                Clock.systemDefaultZone());
+        ReflectionTestUtils.setField(mqttService, "temperatureTopic", "esp32/temperature");
+        ReflectionTestUtils.setField(mqttService, "humidityTopic", "esp32/humidity");
+        ReflectionTestUtils.setField(mqttService, "soilMoistureTopic", "esp32/soil_moisture");
+        ReflectionTestUtils.setField(mqttService, "packedTopic", "esp32/packed");
+        ReflectionTestUtils.setField(mqttService, "deviceId", "esp32");
+
+        temperatureMessage = Mqtt5Publish.builder()
+                .topic("esp32/temperature")
+                .payload("24.5".getBytes(StandardCharsets.UTF_8))
+                .build();
+        soilMoistureMessage = Mqtt5Publish.builder()
+                .topic("esp32/soil_moisture")
+                .payload("41.2 %".getBytes(StandardCharsets.UTF_8))
+                .build();
+    }
+
+    @Benchmark
+    public Double extractPlainNumber() {
+        return mqttService.extractNumericValue("24.5");
+    }
+
+    @Benchmark
+    public Double extractNumberWithUnit() {
+        return mqttService.extractNumericValue("24.5 °C");
+    }
+
+    @Benchmark
+    public void dispatchTemperature() {
+        mqttService.handleMessage(temperatureMessage);
+    }
+
+    @Benchmark
+    public void dispatchSoilMoistureWithUnit() {
+        mqttService.handleMessage(soilMoistureMessage);
+    }
+}
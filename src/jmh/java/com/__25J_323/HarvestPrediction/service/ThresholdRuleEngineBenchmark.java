@@ -0,0 +1,93 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One reading checked against 10k threshold rules that apply to every device. Readings are 100
+ * devices' temperature random walks across the rules' 0-50 °C range, so rules keep firing and
+ * clearing; "step" is the walk's standard deviation per reading.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThresholdRuleEngineBenchmark {
+
+    private static final int RULES = 10_000;
+    private static final int DEVICES = 100;
+    private static final int READINGS = 1 << 20;
+
+    @Param({"0.2", "5.0"})
+    public double step;
+
+    private ThresholdRuleEngine engine;
+    private String[] deviceIds;
+    private double[] values;
+    private long alerts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<ThresholdRule> rules = new ArrayList<>(RULES);
+        for (int i = 0; i < RULES; i++) {
+            ThresholdRule rule = new ThresholdRule();
+            rule.setId("rule-" + i);
+            rule.setName("rule-" + i);
+            rule.setSensor("temperature");
+            rule.setOperator(i % 2 == 0 ? ThresholdRule.ABOVE : ThresholdRule.BELOW);
+            rule.setThreshold(random.nextDouble() * 50);
+            rule.setHysteresis(0.5);
+            rule.setDurationSeconds(i % 4 < 2 ? 0 : 60);
+            rules.add(rule);
+        }
+        engine = new ThresholdRuleEngine(ZoneId.systemDefault());
+        engine.setListener(alert -> alerts++);
+        engine.load(rules);
+
+        deviceIds = new String[READINGS];
+        values = new double[READINGS];
+        double[] walks = new double[DEVICES];
+        for (int device = 0; device < DEVICES; device++) {
+            walks[device] = 25.0;
+        }
+        for (int i = 0; i < READINGS; i++) {
+            int device = i % DEVICES;
+            walks[device] = Math.max(0, Math.min(50, walks[device] + random.nextGaussian() * step));
+            deviceIds[i] = "esp32-" + device;
+            values[i] = walks[device];
+        }
+        // First reading per device checks every rule; keep that out of the measurement
+        for (int device = 0; device < DEVICES; device++) {
+            engine.evaluate(deviceIds[device], SensorWindowAggregator.TEMPERATURE, values[device], 0);
+        }
+        next = DEVICES;
+    }
+
+    @Benchmark
+    public long evaluate() {
+        int i = next;
+        next = (i + 1) & (READINGS - 1);
+        engine.evaluate(deviceIds[i], SensorWindowAggregator.TEMPERATURE, values[i], i * 10L);
+        return alerts;
+    }
+}
@@ -0,0 +1,15 @@
+package com.__25J_323.HarvestPrediction.DTO;
+
+import lombok.Data;
+
+@Data
+public class BulkDetectionProgress {
+    private String archiveName;
+    private int entriesRead;
+    private int imagesProcessed;
+    private int imagesFailed;
+    private int imagesSaved;
+    private int entriesSkipped;
+    private boolean done;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package com.__25J_323.HarvestPrediction.DTO;
+
+import lombok.Data;
+
+@Data
+public class EnvironmentImportProgress {
+    private String fileName;
+    private String format;
+    private long bytesTotal;
+    private long bytesRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long windowsInserted;
+    private long windowsAlreadyStored;
+    private long rowsPerSecond;
+    private long elapsedMillis;
+    private boolean done;
+    private String error;
+}
@@ -0,0 +1,20 @@
+package com.__25J_323.HarvestPrediction.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnvironmentStreamEvent {
+    public static final String READING = "reading";
+    public static final String DEVICE_STATUS = "device-status";
+
+    private long id;
+    private String type;
+    private String deviceId;
+    // Sensor that triggered a reading event (temperature, humidity, soilMoisture); null for status events
+    private String sensor;
+    private Object data;
+}
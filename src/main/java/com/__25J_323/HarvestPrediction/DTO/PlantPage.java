@@ -0,0 +1,17 @@
+package com.__25J_323.HarvestPrediction.DTO;
+
+import com.__25J_323.HarvestPrediction.model.TomatoPlant;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PlantPage {
+    private List<TomatoPlant> items;
+    // Id of the last item; pass back as "after" to get the next page, null on the last page
+    private String nextCursor;
+}
@@ -1,12 +1,31 @@
 package com.__25J_323.HarvestPrediction.config;
 
+import com.__25J_323.HarvestPrediction.repository.ColumnarEnvironmentDataStore;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataRepository;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
+import com.__25J_323.HarvestPrediction.repository.MongoEnvironmentDataStore;
+import com.__25J_323.HarvestPrediction.service.DeviceLivenessTracker;
+import com.__25J_323.HarvestPrediction.service.MqttService;
+import com.__25J_323.HarvestPrediction.service.RecentReadingsBuffer;
+import com.__25J_323.HarvestPrediction.service.SensorOutlierFilter;
+import com.__25J_323.HarvestPrediction.service.SensorWindowAggregator;
+import com.__25J_323.HarvestPrediction.service.ThresholdRuleEngine;
+import com.__25J_323.HarvestPrediction.service.ThresholdRuleService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.web.client.RestTemplate;
 
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class ApplicationConfig {
 
@@ -18,8 +37,101 @@ public class ApplicationConfig {
         return objectMapper;
     }
 
+    /**
+     * Built through the Boot builder so Flask calls are timed as http.client.requests
+     */
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder) {
+        return restTemplateBuilder.build();
+    }
+
+    /**
+     * Under spring.main.lazy-initialization (fast profile) ingest and threshold-rule loading still
+     * start with the application; everything else, including the Flask-backed ML services, is
+     * created on first use
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter ingestEagerInitialization() {
+        return LazyInitializationExcludeFilter.forBeanTypes(MqttService.class, ThresholdRuleService.class);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public DeviceLivenessTracker deviceLivenessTracker(
+            @Value("${device.liveness.timeout-ms:30000}") long timeoutMillis,
+            @Value("${device.liveness.tick-ms:100}") long tickMillis,
+            @Value("${device.liveness.wheel-size:512}") int wheelSize,
+            @Value("${device.liveness.evict-after-ms:86400000}") long evictAfterMillis) {
+        return new DeviceLivenessTracker(timeoutMillis, tickMillis, wheelSize, evictAfterMillis, System::nanoTime);
+    }
+
+    /**
+     * Wall clock for ingest timestamps and aggregation windows; replay swaps in a ReplayClock
+     */
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+
+    @Bean
+    public SensorWindowAggregator sensorWindowAggregator(
+            @Value("${environment.window.seconds:30}") long windowSeconds,
+            @Value("${device.liveness.timeout-ms:30000}") long idleMillis, Clock clock) {
+        // A device idle past the liveness timeout, its last window flushed, is forgotten
+        return new SensorWindowAggregator(TimeUnit.SECONDS.toMillis(windowSeconds), idleMillis, clock::millis);
+    }
+
+    /**
+     * Drops out-of-range, too-fast and Hampel-outlying readings before they are aggregated; the
+     * per-sensor limits are {@link SensorOutlierFilter#DEFAULT_LIMITS}
+     */
+    @Bean
+    public SensorOutlierFilter sensorOutlierFilter(
+            @Value("${ingest.filter.enabled:true}") boolean enabled,
+            @Value("${ingest.filter.window:7}") int window,
+            @Value("${ingest.filter.threshold:3.0}") double threshold,
+            @Value("${ingest.filter.reset-after-ms:600000}") long resetAfterMillis) {
+        return enabled
+                ? new SensorOutlierFilter(window, threshold, resetAfterMillis, SensorOutlierFilter.DEFAULT_LIMITS)
+                : SensorOutlierFilter.acceptAll();
+    }
+
+    /**
+     * Compiled threshold rules, loaded and reloaded by ThresholdRuleService
+     */
+    @Bean
+    public ThresholdRuleEngine thresholdRuleEngine(Clock clock) {
+        return new ThresholdRuleEngine(clock.getZone());
+    }
+
+    /**
+     * Raw readings of the last horizon-hours kept off-heap, at most max-devices x capacity-per-device
+     * x 32 bytes; a row per device and second, so the default holds six hours (about 0.7 MB per device)
+     */
+    @Bean
+    public RecentReadingsBuffer recentReadingsBuffer(
+            @Value("${environment.recent.horizon-hours:6}") long horizonHours,
+            @Value("${environment.recent.capacity-per-device:21600}") int capacityPerDevice,
+            @Value("${environment.recent.max-devices:64}") int maxDevices,
+            Clock clock) {
+        return new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(horizonHours), capacityPerDevice, maxDevices, clock);
+    }
+
+    /**
+     * Where environment readings are stored: mongo (environment_data) or columnar (local Gorilla-compressed
+     * segments, closed on shutdown through its inferred close method)
+     */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public EnvironmentDataStore environmentDataStore(
+            @Value("${environment.storage:mongo}") String storage,
+            @Value("${environment.storage.columnar.directory:data/environment}") String directory,
+            @Value("${environment.storage.columnar.block-rows:1024}") int blockRows,
+            @Value("${environment.storage.columnar.flush-ms:10000}") long flushMillis,
+            EnvironmentDataRepository environmentDataRepository,
+            MongoTemplate mongoTemplate) {
+        return switch (storage) {
+            case "mongo" -> new MongoEnvironmentDataStore(environmentDataRepository, mongoTemplate);
+            case "columnar" -> new ColumnarEnvironmentDataStore(Path.of(directory), blockRows, flushMillis);
+            default -> throw new IllegalArgumentException("Unknown environment.storage: " + storage);
+        };
     }
 }
@@ -0,0 +1,348 @@
+package com.__25J_323.HarvestPrediction.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gives each WebSocket session its own bounded outbound queue drained by its own task, so
+ * sendMessage never blocks the broker's outbound channel. A slow client only fills its own
+ * queue, and the configured {@link SlowConsumerPolicy} decides what happens when that queue is full.
+ * <p>
+ * Spring's ConcurrentWebSocketSessionDecorator, which SubProtocolWebSocketHandler still puts around
+ * this one, writes on the calling outbound-channel thread and its DROP strategy discards any frame.
+ * Here only STOMP MESSAGE frames are ever dropped or conflated; CONNECTED, RECEIPT, ERROR and
+ * heartbeats are always delivered.
+ * <p>
+ * Publishers mark what may go: a frame is conflated only with older frames carrying the same
+ * destination and {@value #CONFLATION_KEY_HEADER} header (the device id, say), and a frame marked
+ * {@value #RELIABLE_HEADER} (alerts, liveness transitions, compact deltas) is never dropped. When
+ * reliable frames alone no longer fit, the session is closed instead, and the client starts over
+ * from a fresh subscription and keyframe.
+ */
+@Slf4j
+public class BackpressureSessionDecorator extends WebSocketSessionDecorator {
+
+    /**
+     * STOMP header naming the entity a frame describes; a newer frame replaces queued ones with the same key
+     */
+    public static final String CONFLATION_KEY_HEADER = "conflation-key";
+
+    /**
+     * STOMP header marking a MESSAGE frame that must not be dropped or conflated
+     */
+    public static final String RELIABLE_HEADER = "reliable";
+
+    private final Executor drainExecutor;
+    private final SlowConsumerPolicy policy;
+    private final int bufferSizeLimit;
+    private final long sendTimeLimitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private int queuedBytes;
+    private boolean draining;
+    private volatile long sendStartedNanos;
+    private volatile boolean closed;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long lastLagNanos;
+    private volatile long maxLagNanos;
+
+    public BackpressureSessionDecorator(WebSocketSession delegate, Executor drainExecutor, SlowConsumerPolicy policy,
+                                        int bufferSizeLimit, long sendTimeLimitMillis) {
+        super(delegate);
+        this.drainExecutor = drainExecutor;
+        this.policy = policy;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = sendTimeLimitMillis * 1_000_000L;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (closed) {
+            return;
+        }
+        Pending pending = new Pending(message, System.nanoTime());
+        boolean startDrain = false;
+        boolean disconnect = false;
+        String disconnectReason = "send buffer limit " + bufferSizeLimit + " bytes exceeded";
+
+        lock.lock();
+        try {
+            if (policy == SlowConsumerPolicy.CONFLATE && pending.conflationKey != null) {
+                // Anything still queued for the same destination and entity is superseded by this frame
+                conflate(pending);
+            }
+            boolean skip = false;
+            if (isOverLimit(pending.size)) {
+                if (policy == SlowConsumerPolicy.DISCONNECT) {
+                    disconnect = true;
+                } else {
+                    dropOldestUntilFits(pending.size);
+                    if (queuedBytes + pending.size > bufferSizeLimit) {
+                        if (pending.reliable) {
+                            disconnect = true;
+                            disconnectReason = "reliable frames exceed the send buffer limit";
+                        } else if (pending.droppable) {
+                            skip = true;
+                            droppedCount.incrementAndGet();
+                        }
+                    }
+                }
+            }
+            if (!disconnect && !skip) {
+                queue.addLast(pending);
+                queuedBytes += pending.size;
+                if (!draining) {
+                    draining = true;
+                    startDrain = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (disconnect) {
+            closeSlowSession(disconnectReason);
+        } else if (startDrain) {
+            drainExecutor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Over the limit if the queue cannot take the message, or the send in progress has been stuck too long
+     */
+    private boolean isOverLimit(int incomingSize) {
+        long started = sendStartedNanos;
+        boolean stuck = started != 0 && System.nanoTime() - started > sendTimeLimitNanos;
+        return queuedBytes + incomingSize > bufferSizeLimit || stuck;
+    }
+
+    /**
+     * Drops the oldest droppable MESSAGE frames until the incoming one fits. Control frames stay
+     * queued, so the queue may exceed the limit by those (they are small and rare).
+     */
+    private void dropOldestUntilFits(int incomingSize) {
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext() && queuedBytes + incomingSize > bufferSizeLimit) {
+            Pending queued = it.next();
+            if (queued.droppable) {
+                it.remove();
+                queuedBytes -= queued.size;
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void conflate(Pending incoming) {
+        Iterator<Pending> it = queue.iterator();
+        while (it.hasNext()) {
+            Pending queued = it.next();
+            if (incoming.conflationKey.equals(queued.conflationKey)) {
+                it.remove();
+                queuedBytes -= queued.size;
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void drain() {
+        while (!closed) {
+            Pending next;
+            lock.lock();
+            try {
+                next = queue.pollFirst();
+                if (next == null) {
+                    draining = false;
+                    return;
+                }
+                queuedBytes -= next.size;
+            } finally {
+                lock.unlock();
+            }
+
+            sendStartedNanos = System.nanoTime();
+            try {
+                getDelegate().sendMessage(next.message);
+                long lag = System.nanoTime() - next.enqueuedNanos;
+                lastLagNanos = lag;
+                if (lag > maxLagNanos) {
+                    maxLagNanos = lag;
+                }
+                sentCount.incrementAndGet();
+            } catch (Exception e) {
+                if (!getDelegate().isOpen()) {
+                    // The client went away; nothing slow about it
+                    log.debug("WebSocket session {} closed with {} frames queued", getId(), getQueuedMessages());
+                    discardQueue();
+                    return;
+                }
+                log.debug("Failed to send to WebSocket session {}: {}", getId(), e.getMessage());
+                closeSlowSession("send failed");
+            } finally {
+                sendStartedNanos = 0;
+            }
+        }
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        discardQueue();
+        super.close(status);
+    }
+
+    private void closeSlowSession(String reason) {
+        if (closed) {
+            return;
+        }
+        log.warn("Closing slow WebSocket session {}: {}", getId(), reason);
+        discardQueue();
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.debug("Error closing WebSocket session {}", getId(), e);
+        }
+    }
+
+    private void discardQueue() {
+        closed = true;
+        lock.lock();
+        try {
+            queue.clear();
+            queuedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedBytes() {
+        lock.lock();
+        try {
+            return queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedMessages() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True while a drain task owns the queue, including the frame it is writing right now
+     */
+    public boolean isDraining() {
+        lock.lock();
+        try {
+            return draining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public double getLastLagMillis() {
+        return lastLagNanos / 1_000_000.0;
+    }
+
+    public double getMaxLagMillis() {
+        return maxLagNanos / 1_000_000.0;
+    }
+
+    /**
+     * Closed for being slow, for a failed send, or by either side; nothing more is queued
+     */
+    public boolean isSlowConsumerClosed() {
+        return closed;
+    }
+
+    private static final class Pending {
+        final WebSocketMessage<?> message;
+        final long enqueuedNanos;
+        final int size;
+        // Only MESSAGE frames; dropping CONNECTED, RECEIPT or ERROR would break the STOMP exchange
+        final boolean droppable;
+        final boolean reliable;
+        // Destination plus the publisher's entity key, or null when the frame is not conflated
+        final String conflationKey;
+
+        Pending(WebSocketMessage<?> message, long enqueuedNanos) {
+            this.message = message;
+            this.enqueuedNanos = enqueuedNanos;
+            this.size = message.getPayloadLength();
+            String head = frameHead(message);
+            boolean messageFrame = head != null && head.startsWith("MESSAGE\n");
+            this.reliable = messageFrame && "true".equals(stompHeader(head, RELIABLE_HEADER));
+            this.droppable = messageFrame && !reliable;
+            String destination = droppable ? stompHeader(head, "destination") : null;
+            String key = destination != null ? stompHeader(head, CONFLATION_KEY_HEADER) : null;
+            this.conflationKey = key != null ? destination + '\n' + key : null;
+        }
+    }
+
+    /**
+     * The command and headers from the first bytes of a text or binary frame, or null
+     */
+    private static String frameHead(WebSocketMessage<?> message) {
+        String head;
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            head = payload.substring(0, Math.min(payload.length(), 512));
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer buffer = binary.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(buffer.remaining(), 512)];
+            buffer.get(bytes);
+            head = new String(bytes, StandardCharsets.UTF_8);
+        } else {
+            return null;
+        }
+        int body = head.indexOf("\n\n");
+        return body < 0 ? head : head.substring(0, body + 1);
+    }
+
+    /**
+     * Read the destination header of an outbound STOMP MESSAGE frame without a full parse
+     */
+    static String stompDestination(WebSocketMessage<?> message) {
+        String head = frameHead(message);
+        return head != null ? stompHeader(head, "destination") : null;
+    }
+
+    private static String stompHeader(String head, String name) {
+        String prefix = "\n" + name + ":";
+        int start = head.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        start += prefix.length();
+        int end = head.indexOf('\n', start);
+        return end < 0 ? null : head.substring(start, end);
+    }
+}
@@ -0,0 +1,104 @@
+package com.__25J_323.HarvestPrediction.config;
+
+import com.__25J_323.HarvestPrediction.service.DeviceLivenessTracker;
+import com.__25J_323.HarvestPrediction.service.MqttService;
+import com.__25J_323.HarvestPrediction.service.RecentReadingsBuffer;
+import com.__25J_323.HarvestPrediction.service.ThresholdRuleEngine;
+import com.__25J_323.HarvestPrediction.service.TomatoPlantService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gauges for state that lives outside Spring's auto-instrumented components. Repository, Mongo
+ * driver, RestTemplate (Flask) and JVM metrics come from Actuator auto-configuration.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder plantCacheMetrics(TomatoPlantService tomatoPlantService) {
+        return registry -> CaffeineCacheMetrics.monitor(registry, tomatoPlantService.getPlantCache(), "plants");
+    }
+
+    @Bean
+    public MeterBinder webSocketSessionMetrics(WebSocketSessionRegistry sessionRegistry) {
+        return registry -> {
+            Gauge.builder("websocket.sessions", sessionRegistry, r -> r.getSessions().size())
+                    .description("Open STOMP WebSocket sessions")
+                    .register(registry);
+            Gauge.builder("websocket.sessions.queued", sessionRegistry,
+                            r -> r.getSessions().values().stream().mapToInt(BackpressureSessionDecorator::getQueuedMessages).sum())
+                    .description("Messages waiting in per-session send queues")
+                    .register(registry);
+            Gauge.builder("websocket.sessions.queued.bytes", sessionRegistry,
+                            r -> r.getSessions().values().stream().mapToInt(BackpressureSessionDecorator::getQueuedBytes).sum())
+                    .description("Bytes waiting in per-session send queues")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("websocket.sessions.dropped", sessionRegistry,
+                            r -> r.getSessions().values().stream().mapToLong(BackpressureSessionDecorator::getDroppedCount).sum())
+                    .description("Messages dropped by the slow-consumer policy across open sessions")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder deviceLivenessMetrics(DeviceLivenessTracker deviceLivenessTracker) {
+        return registry -> {
+            Gauge.builder("devices.tracked", deviceLivenessTracker, DeviceLivenessTracker::trackedDevices)
+                    .description("Devices seen since startup")
+                    .register(registry);
+            Gauge.builder("devices.online", deviceLivenessTracker, DeviceLivenessTracker::onlineDevices)
+                    .description("Devices within their liveness timeout")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder mqttBrokerMetrics(MqttService mqttService) {
+        return registry -> {
+            Gauge.builder("mqtt.broker.connected", mqttService, s -> s.isBrokerConnected() ? 1 : 0)
+                    .description("1 while the broker connection is up")
+                    .register(registry);
+            FunctionCounter.builder("mqtt.broker.offline", mqttService,
+                            s -> s.getBrokerDowntimeNanos() / (double) TimeUnit.SECONDS.toNanos(1))
+                    .description("Time without a broker connection, including an outage in progress")
+                    .baseUnit("seconds")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder recentReadingsBufferMetrics(RecentReadingsBuffer recentReadingsBuffer) {
+        return registry -> {
+            Gauge.builder("recent.buffer.bytes", recentReadingsBuffer, RecentReadingsBuffer::getAllocatedBytes)
+                    .description("Off-heap memory allocated for recent readings")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("recent.buffer.readings", recentReadingsBuffer, RecentReadingsBuffer::getBufferedReadings)
+                    .description("Readings held in the recent-readings buffer")
+                    .register(registry);
+            Gauge.builder("recent.buffer.devices", recentReadingsBuffer, RecentReadingsBuffer::getBufferedDevices)
+                    .description("Devices with a recent-readings ring")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder thresholdRuleMetrics(ThresholdRuleEngine thresholdRuleEngine) {
+        return registry -> {
+            Gauge.builder("rules.loaded", thresholdRuleEngine, ThresholdRuleEngine::getRuleCount)
+                    .description("Enabled threshold rules compiled into the engine")
+                    .register(registry);
+            Gauge.builder("rules.firing", thresholdRuleEngine, ThresholdRuleEngine::getFiringCount)
+                    .description("Rule and device pairs currently in alert")
+                    .register(registry);
+        };
+    }
+}
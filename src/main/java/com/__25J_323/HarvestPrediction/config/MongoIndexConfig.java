@@ -0,0 +1,65 @@
+package com.__25J_323.HarvestPrediction.config;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.model.RipenessRollup;
+import com.__25J_323.HarvestPrediction.model.TomatoPlant;
+import com.__25J_323.HarvestPrediction.service.RipenessAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ensures the indexes the query paths rely on. Runs off the startup thread so an
+ * unreachable database does not delay or fail application startup.
+ */
+@Configuration
+@Slf4j
+@RequiredArgsConstructor
+public class MongoIndexConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                IndexOperations plantIndexes = mongoTemplate.indexOps(TomatoPlant.class);
+                // Equality on variety, keyset sort on _id, range on harvest date
+                plantIndexes.ensureIndex(new Index()
+                        .on("variety", Sort.Direction.ASC)
+                        .on("_id", Sort.Direction.ASC)
+                        .on("predictedHarvestDate", Sort.Direction.ASC)
+                        .named("variety_id_harvest"));
+                // Harvest range without variety: sort on _id first, range after it (equality, sort, range)
+                plantIndexes.ensureIndex(new Index()
+                        .on("_id", Sort.Direction.ASC)
+                        .on("predictedHarvestDate", Sort.Direction.ASC)
+                        .named("id_harvest"));
+
+                mongoTemplate.indexOps(RipenessRollup.class).ensureIndex(RipenessAnalyticsService.bucketIndex());
+
+                // Range and newest-first queries over environment_data, which bulk imports make large
+                mongoTemplate.indexOps(EnvironmentData.class).ensureIndex(new Index()
+                        .on("timestamp", Sort.Direction.DESC)
+                        .named("timestamp"));
+                // Day-by-day ripeness exports
+                mongoTemplate.indexOps(RipenessData.class).ensureIndex(new Index()
+                        .on("timestamp", Sort.Direction.ASC)
+                        .named("timestamp"));
+
+                log.info("MongoDB indexes ensured");
+            } catch (Exception e) {
+                log.error("Error ensuring MongoDB indexes", e);
+            }
+        });
+    }
+}
@@ -0,0 +1,13 @@
+package com.__25J_323.HarvestPrediction.config;
+
+/**
+ * What to do when a WebSocket session's outbound buffer is full
+ */
+public enum SlowConsumerPolicy {
+    // Discard the oldest droppable frames until the new one fits
+    DROP_OLDEST,
+    // Keep only the latest queued frame per destination and conflation key, then drop as DROP_OLDEST
+    CONFLATE,
+    // Close the session so the client reconnects and resynchronizes
+    DISCONNECT
+}
@@ -1,15 +1,39 @@
 package com.__25J_323.HarvestPrediction.config;
 
+import com.__25J_323.HarvestPrediction.service.CompactFrameService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final WebSocketSessionRegistry webSocketSessionRegistry;
+    // Looked up per message: the service needs the outbound channel this configuration builds
+    private final ObjectProvider<CompactFrameService> compactFrameService;
+
+    @Value("${websocket.inbound.pool-size:4}")
+    private int inboundPoolSize;
+
+    @Value("${websocket.outbound.pool-size:8}")
+    private int outboundPoolSize;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic");
@@ -21,5 +45,45 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Raw WebSocket endpoint for clients that use the binary ".cbor" topics (SockJS frames are text-only)
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*");
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Per-session queues and slow-consumer policy live in the decorator
+        registration.addDecoratorFactory(webSocketSessionRegistry);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(inboundPoolSize)
+                .maxPoolSize(inboundPoolSize);
+        registration.interceptors(new ExecutorChannelInterceptor() {
+            @Override
+            public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+                                            Exception ex) {
+                // Once the broker (not the annotation or user-destination handler) has registered a
+                // subscription, a compact-topic subscriber gets its own keyframe
+                if (ex == null && handler instanceof SimpleBrokerMessageHandler
+                        && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.SUBSCRIBE) {
+                    compactFrameService.getObject().onSubscribed(
+                            SimpMessageHeaderAccessor.getSessionId(message.getHeaders()),
+                            SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()),
+                            SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+                }
+            }
+        });
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Outbound threads only enqueue into per-session buffers, so they never wait on a slow socket
+        registration.taskExecutor()
+                .corePoolSize(outboundPoolSize)
+                .maxPoolSize(outboundPoolSize);
     }
 }
@@ -0,0 +1,80 @@
+package com.__25J_323.HarvestPrediction.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wraps every STOMP WebSocket session in a {@link BackpressureSessionDecorator} and keeps
+ * per-session delivery statistics. Each session drains on its own virtual thread, so a client
+ * stuck in a blocking write never occupies a shared pool thread.
+ */
+@Component
+public class WebSocketSessionRegistry implements WebSocketHandlerDecoratorFactory {
+
+    private final Map<String, BackpressureSessionDecorator> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService drainExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${websocket.session.policy:DROP_OLDEST}")
+    private SlowConsumerPolicy policy;
+
+    @Value("${websocket.session.send-buffer-bytes:524288}")
+    private int sendBufferBytes;
+
+    @Value("${websocket.session.send-time-limit-ms:10000}")
+    private long sendTimeLimitMillis;
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                BackpressureSessionDecorator decorated = new BackpressureSessionDecorator(
+                        session, drainExecutor, policy, sendBufferBytes, sendTimeLimitMillis);
+                sessions.put(session.getId(), decorated);
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                BackpressureSessionDecorator decorated = sessions.remove(session.getId());
+                super.afterConnectionClosed(decorated != null ? decorated : session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Per-session queue depth, drops and delivery lag (enqueue to socket write complete)
+     */
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        sessions.forEach((id, session) -> {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("sessionId", id);
+            entry.put("queuedMessages", session.getQueuedMessages());
+            entry.put("queuedBytes", session.getQueuedBytes());
+            entry.put("sent", session.getSentCount());
+            entry.put("dropped", session.getDroppedCount());
+            entry.put("lastLagMillis", session.getLastLagMillis());
+            entry.put("maxLagMillis", session.getMaxLagMillis());
+            stats.add(entry);
+        });
+        return stats;
+    }
+
+    public Map<String, BackpressureSessionDecorator> getSessions() {
+        return sessions;
+    }
+}
@@ -1,17 +1,37 @@
 package com.__25J_323.HarvestPrediction.controller;
 
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentStreamEvent;
+import com.__25J_323.HarvestPrediction.config.WebSocketSessionRegistry;
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
 import com.__25J_323.HarvestPrediction.service.EnvironmentDataService;
+import com.__25J_323.HarvestPrediction.service.EnvironmentImportService;
+import com.__25J_323.HarvestPrediction.service.EnvironmentStreamService;
+import com.__25J_323.HarvestPrediction.service.HistoryExportService;
+import com.__25J_323.HarvestPrediction.service.MqttCaptureWriter;
 import com.__25J_323.HarvestPrediction.service.MqttService;
+import com.__25J_323.HarvestPrediction.service.RecentReadingsBuffer;
+import com.__25J_323.HarvestPrediction.service.ThresholdRuleService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/environment")
@@ -22,6 +42,13 @@ public class EnvironmentController {
 
     private final EnvironmentDataService environmentDataService;
     private final MqttService mqttService;
+    private final EnvironmentStreamService environmentStreamService;
+    private final WebSocketSessionRegistry webSocketSessionRegistry;
+    private final MqttCaptureWriter mqttCaptureWriter;
+    private final RecentReadingsBuffer recentReadingsBuffer;
+    private final ThresholdRuleService thresholdRuleService;
+    private final EnvironmentImportService environmentImportService;
+    private final HistoryExportService historyExportService;
 
     /**
      * Get real-time current environment data
@@ -37,6 +64,97 @@ public class EnvironmentController {
         }
     }
 
+    /**
+     * Live feed of readings and device-status events as Server-Sent Events.
+     * Optional deviceId / sensor filters; reconnecting clients resume via Last-Event-ID.
+     * Spring MVC gives streaming reactive responses no async timeout, so the stream stays open
+     * until the client disconnects without changing spring.mvc.async.request-timeout.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<EnvironmentStreamEvent>> streamEnvironment(
+            @RequestParam(required = false) String deviceId,
+            @RequestParam(required = false) String sensor,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return environmentStreamService.subscribe(deviceId, sensor, lastEventId);
+    }
+
+    /**
+     * Per-session WebSocket delivery statistics (queue depth, drops, delivery lag)
+     */
+    @GetMapping("/websocket-sessions")
+    public ResponseEntity<List<Map<String, Object>>> getWebSocketSessions() {
+        return ResponseEntity.ok(webSocketSessionRegistry.getSessionStats());
+    }
+
+    /**
+     * MQTT traffic capture status (file and record count)
+     */
+    @GetMapping("/capture")
+    public ResponseEntity<Map<String, Object>> getCaptureStatus() {
+        return ResponseEntity.ok(mqttCaptureWriter.getStatus());
+    }
+
+    /**
+     * Start recording every received MQTT publish to a binary capture file for later replay
+     */
+    @PostMapping("/capture/start")
+    public ResponseEntity<Map<String, Object>> startCapture() {
+        if (mqttCaptureWriter.start() == null) {
+            return ResponseEntity.internalServerError().body(mqttCaptureWriter.getStatus());
+        }
+        return ResponseEntity.ok(mqttCaptureWriter.getStatus());
+    }
+
+    @PostMapping("/capture/stop")
+    public ResponseEntity<Map<String, Object>> stopCapture() {
+        return ResponseEntity.ok(mqttCaptureWriter.stop());
+    }
+
+    /**
+     * Threshold alert rules; alerts go to /topic/rule-alerts and the rules.alert-topic MQTT topic
+     */
+    @GetMapping("/rules")
+    public ResponseEntity<List<ThresholdRule>> getRules() {
+        return ResponseEntity.ok(thresholdRuleService.findAll());
+    }
+
+    @PostMapping("/rules")
+    public ResponseEntity<ThresholdRule> createRule(@RequestBody ThresholdRule rule) {
+        rule.setId(null);
+        return saveRule(rule);
+    }
+
+    @PutMapping("/rules/{id}")
+    public ResponseEntity<ThresholdRule> updateRule(@PathVariable String id, @RequestBody ThresholdRule rule) {
+        rule.setId(id);
+        return saveRule(rule);
+    }
+
+    private ResponseEntity<ThresholdRule> saveRule(ThresholdRule rule) {
+        try {
+            return ResponseEntity.ok(thresholdRuleService.save(rule));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected threshold rule: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @DeleteMapping("/rules/{id}")
+    public ResponseEntity<Void> deleteRule(@PathVariable String id) {
+        if (thresholdRuleService.deleteById(id)) {
+            return ResponseEntity.ok().build();
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Re-read threshold_rule now, e.g. after editing it directly in MongoDB
+     */
+    @PostMapping("/rules/reload")
+    public ResponseEntity<Map<String, Object>> reloadRules() {
+        return ResponseEntity.ok(Map.of("rules", thresholdRuleService.reload()));
+    }
+
     /**
      * Get device status information
      */
@@ -51,6 +169,19 @@ public class EnvironmentController {
         }
     }
 
+    /**
+     * Broker connection state, reconnect count and downtime alongside device freshness
+     */
+    @GetMapping("/connection-stats")
+    public ResponseEntity<Map<String, Object>> getConnectionStats() {
+        try {
+            return ResponseEntity.ok(mqttService.getConnectionStats());
+        } catch (Exception e) {
+            log.error("Error getting connection stats", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Check if device is online (simple boolean response)
      */
@@ -66,12 +197,12 @@ public class EnvironmentController {
     }
 
     /**
-     * Get recent historical environment data
+     * Every reading of the last few minutes, served from memory
      */
     @GetMapping("/recent")
     public ResponseEntity<List<EnvironmentData>> getRecentData() {
         try {
-            List<EnvironmentData> data = environmentDataService.getRecentEnvironmentData();
+            List<EnvironmentData> data = environmentDataService.getRecentReadings();
             return ResponseEntity.ok(data);
         } catch (Exception e) {
             log.error("Error getting recent environment data", e);
@@ -79,6 +210,14 @@ public class EnvironmentController {
         }
     }
 
+    /**
+     * Size, memory use and covered range of the in-memory recent-readings buffer
+     */
+    @GetMapping("/recent-buffer")
+    public ResponseEntity<Map<String, Object>> getRecentBufferStats() {
+        return ResponseEntity.ok(recentReadingsBuffer.getStats());
+    }
+
     /**
      * Get environment data between specific dates
      */
@@ -95,6 +234,54 @@ public class EnvironmentController {
         }
     }
 
+    /**
+     * Readings with start <= timestamp < end as a gzip CSV (default) or NDJSON download, streamed from
+     * the store a day at a time with constant memory; deviceId may be repeated
+     */
+    @GetMapping("/export")
+    public void exportEnvironmentData(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) Set<String> deviceId,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) throws IOException, InterruptedException {
+        HistoryExportService.Format exportFormat;
+        try {
+            exportFormat = HistoryExportService.Format.parse(format);
+            HistoryExportService.validate(HistoryExportService.Dataset.ENVIRONMENT, start, end, deviceId);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        response.setContentType("application/gzip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(HistoryExportService.fileName(HistoryExportService.Dataset.ENVIRONMENT, exportFormat, start, end))
+                .build().toString());
+        historyExportService.exportTo(response.getOutputStream(), HistoryExportService.Dataset.ENVIRONMENT,
+                exportFormat, start, end, deviceId);
+    }
+
+    /**
+     * Per-device means over fixed buckets between two dates, oldest first
+     */
+    @GetMapping("/downsampled")
+    public ResponseEntity<List<EnvironmentData>> getDownsampledData(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "300") long bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            List<EnvironmentData> data = environmentDataService.getDownsampledEnvironmentData(
+                    start, end, Duration.ofSeconds(bucketSeconds));
+            return ResponseEntity.ok(data);
+        } catch (Exception e) {
+            log.error("Error getting downsampled environment data", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * Get environment data for the last N hours
      */
@@ -126,6 +313,33 @@ public class EnvironmentController {
         }
     }
 
+    /**
+     * Bulk import of historical readings from a CSV or NDJSON file (optionally gzipped) sent as the
+     * raw request body; progress, including rows per second, is streamed as SSE
+     */
+    @PostMapping(value = "/import",
+            consumes = {"text/csv", "application/x-ndjson", "application/gzip", MediaType.TEXT_PLAIN_VALUE,
+                    MediaType.APPLICATION_OCTET_STREAM_VALUE},
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter importEnvironmentData(@RequestParam(defaultValue = "import") String name,
+                                            @RequestParam(required = false) String deviceId,
+                                            HttpServletRequest request) throws IOException {
+        log.info("Starting environment data import: {}", name);
+        SseEmitter emitter = new SseEmitter(0L);
+        environmentImportService.submitUpload(name, request.getInputStream(), deviceId, progress -> {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(progress, MediaType.APPLICATION_JSON));
+                if (progress.isDone()) {
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                // Client went away; the import keeps running
+                log.debug("Progress client disconnected for import {}", name);
+            }
+        });
+        return emitter;
+    }
+
     /**
      * Get statistics for environment data
      */
@@ -133,44 +347,50 @@ public class EnvironmentController {
     public ResponseEntity<EnvironmentStats> getEnvironmentStats() {
         try {
             List<EnvironmentData> recentData = environmentDataService.getRecentEnvironmentData();
-
-            if (recentData.isEmpty()) {
-                return ResponseEntity.ok(new EnvironmentStats());
-            }
-
-            // Calculate statistics
-            double avgTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).average().orElse(0.0);
-            double avgHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).average().orElse(0.0);
-            double avgSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).average().orElse(0.0);
-
-            double maxTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).max().orElse(0.0);
-            double minTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).min().orElse(0.0);
-
-            double maxHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).max().orElse(0.0);
-            double minHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).min().orElse(0.0);
-
-            double maxSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).max().orElse(0.0);
-            double minSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).min().orElse(0.0);
-
-            EnvironmentStats stats = new EnvironmentStats();
-            stats.setAverageTemperature(avgTemp);
-            stats.setAverageHumidity(avgHumidity);
-            stats.setAverageSoilMoisture(avgSoilMoisture);
-            stats.setMaxTemperature(maxTemp);
-            stats.setMinTemperature(minTemp);
-            stats.setMaxHumidity(maxHumidity);
-            stats.setMinHumidity(minHumidity);
-            stats.setMaxSoilMoisture(maxSoilMoisture);
-            stats.setMinSoilMoisture(minSoilMoisture);
-            stats.setTotalReadings(recentData.size());
-
-            return ResponseEntity.ok(stats);
+            return ResponseEntity.ok(computeStats(recentData));
         } catch (Exception e) {
             log.error("Error getting environment statistics", e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Averages and extremes over a batch of readings
+     */
+    static EnvironmentStats computeStats(List<EnvironmentData> recentData) {
+        if (recentData.isEmpty()) {
+            return new EnvironmentStats();
+        }
+
+        // Calculate statistics
+        double avgTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).average().orElse(0.0);
+        double avgHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).average().orElse(0.0);
+        double avgSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).average().orElse(0.0);
+
+        double maxTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).max().orElse(0.0);
+        double minTemp = recentData.stream().mapToDouble(EnvironmentData::getTemperature).min().orElse(0.0);
+
+        double maxHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).max().orElse(0.0);
+        double minHumidity = recentData.stream().mapToDouble(EnvironmentData::getHumidity).min().orElse(0.0);
+
+        double maxSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).max().orElse(0.0);
+        double minSoilMoisture = recentData.stream().mapToDouble(EnvironmentData::getSoilMoisture).min().orElse(0.0);
+
+        EnvironmentStats stats = new EnvironmentStats();
+        stats.setAverageTemperature(avgTemp);
+        stats.setAverageHumidity(avgHumidity);
+        stats.setAverageSoilMoisture(avgSoilMoisture);
+        stats.setMaxTemperature(maxTemp);
+        stats.setMinTemperature(minTemp);
+        stats.setMaxHumidity(maxHumidity);
+        stats.setMinHumidity(minHumidity);
+        stats.setMaxSoilMoisture(maxSoilMoisture);
+        stats.setMinSoilMoisture(minSoilMoisture);
+        stats.setTotalReadings(recentData.size());
+
+        return stats;
+    }
+
     // Inner class for statistics
     public static class EnvironmentStats {
         private double averageTemperature;
@@ -2,22 +2,43 @@ package com.__25J_323.HarvestPrediction.controller;
 
 import com.__25J_323.HarvestPrediction.DTO.HarvestPredictionRequest;
 import com.__25J_323.HarvestPrediction.DTO.HarvestPredictionResponse;
+import com.__25J_323.HarvestPrediction.DTO.PlantPage;
 import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.model.RipenessRollup;
 import com.__25J_323.HarvestPrediction.model.TomatoPlant;
-import com.__25J_323.HarvestPrediction.repository.TomatoPlantRepository;
+import com.__25J_323.HarvestPrediction.service.BulkRipenessDetectionService;
 import com.__25J_323.HarvestPrediction.service.HarvestPredictionService;
+import com.__25J_323.HarvestPrediction.service.HistoryExportService;
+import com.__25J_323.HarvestPrediction.service.RipenessAnalyticsService;
 import com.__25J_323.HarvestPrediction.service.RipenessDetectionService;
+import com.__25J_323.HarvestPrediction.service.TomatoPlantService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/tomato")
@@ -27,12 +48,16 @@ import java.util.List;
 public class TomatoController {
     private final HarvestPredictionService harvestPredictionService;
     private final RipenessDetectionService ripenessDetectionService;
-    private final TomatoPlantRepository tomatoPlantRepository;
+    private final RipenessAnalyticsService ripenessAnalyticsService;
+    private final BulkRipenessDetectionService bulkRipenessDetectionService;
+    private final TomatoPlantService tomatoPlantService;
+    private final HistoryExportService historyExportService;
 
     @PostMapping("/plants")
     public ResponseEntity<TomatoPlant> savePlant(@RequestBody TomatoPlant plant) {
         log.info("Saving new plant: {}", plant.getPlantName());
-        TomatoPlant savedPlant = tomatoPlantRepository.save(plant);
+        plant.setLastUpdated(LocalDateTime.now());
+        TomatoPlant savedPlant = tomatoPlantService.save(plant);
         return ResponseEntity.ok(savedPlant);
     }
 
@@ -40,16 +65,65 @@ public class TomatoController {
     @GetMapping("/plants")
     public ResponseEntity<List<TomatoPlant>> getAllPlants() {
         log.info("Fetching all plants");
-        List<TomatoPlant> plants = tomatoPlantRepository.findAll();
+        List<TomatoPlant> plants = tomatoPlantService.findAll();
         return ResponseEntity.ok(plants);
     }
 
+    // Keyset-paginated plant listing; conditional GETs get 304 without the body being serialized
+    @GetMapping("/plants/page")
+    public ResponseEntity<PlantPage> getPlantPage(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + TomatoPlantService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String variety,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate harvestFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate harvestTo) {
+        log.debug("Fetching plant page after={} limit={} variety={} harvest={}..{}",
+                after, limit, variety, harvestFrom, harvestTo);
+        PlantPage page = tomatoPlantService.findPage(after, limit, variety, harvestFrom, harvestTo);
+
+        // No Last-Modified: the newest lastUpdated on a page goes backwards when plants are deleted or
+        // move off it, which would turn If-Modified-Since into stale 304s
+        return ResponseEntity.ok()
+                .eTag(pageETag(page))
+                .body(page);
+    }
+
+    /**
+     * Strong validator for a page: SHA-256 over every field of every item and the cursor
+     */
+    private static String pageETag(PlantPage page) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (TomatoPlant plant : page.getItems()) {
+            for (Object field : new Object[]{plant.getId(), plant.getPlantName(), plant.getVariety(),
+                    plant.getPlantingDate(), plant.getPredictedHarvestDate(), plant.getLastUpdated()}) {
+                // Separator keeps ("ab", "c") and ("a", "bc") apart; null differs from "null"
+                digest.update(field != null ? ("=" + field).getBytes(StandardCharsets.UTF_8) : new byte[0]);
+                digest.update((byte) 0);
+            }
+        }
+        digest.update(String.valueOf(page.getNextCursor()).getBytes(StandardCharsets.UTF_8));
+        return "\"" + HexFormat.of().formatHex(digest.digest()) + "\"";
+    }
+
     // Get plant by ID
     @GetMapping("/plants/{id}")
     public ResponseEntity<TomatoPlant> getPlant(@PathVariable String id) {
         log.info("Fetching plant with ID: {}", id);
-        return tomatoPlantRepository.findById(id)
-                .map(ResponseEntity::ok)
+        return tomatoPlantService.findById(id)
+                .map(plant -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (plant.getLastUpdated() != null) {
+                        Instant lastModified = plant.getLastUpdated().atZone(ZoneId.systemDefault()).toInstant();
+                        response.eTag("W/\"" + plant.getId() + "-" + lastModified.toEpochMilli() + "\"")
+                                .lastModified(lastModified);
+                    }
+                    return response.body(plant);
+                })
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -57,10 +131,11 @@ public class TomatoController {
     @PutMapping("/plants/{id}")
     public ResponseEntity<TomatoPlant> updatePlant(@PathVariable String id, @RequestBody TomatoPlant plant) {
         log.info("Updating plant with ID: {}", id);
-        return tomatoPlantRepository.findById(id)
+        return tomatoPlantService.findById(id)
                 .map(existingPlant -> {
                     plant.setId(id);
-                    return ResponseEntity.ok(tomatoPlantRepository.save(plant));
+                    plant.setLastUpdated(LocalDateTime.now());
+                    return ResponseEntity.ok(tomatoPlantService.save(plant));
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -69,19 +144,24 @@ public class TomatoController {
     @DeleteMapping("/plants/{id}")
     public ResponseEntity<Void> deletePlant(@PathVariable String id) {
         log.info("Deleting plant with ID: {}", id);
-        if (tomatoPlantRepository.existsById(id)) {
-            tomatoPlantRepository.deleteById(id);
+        if (tomatoPlantService.deleteById(id)) {
             return ResponseEntity.ok().build();
         }
         return ResponseEntity.notFound().build();
     }
 
+    // Plant cache hit ratio and load latency
+    @GetMapping("/plants/cache-stats")
+    public ResponseEntity<Map<String, Object>> getPlantCacheStats() {
+        return ResponseEntity.ok(tomatoPlantService.getCacheStats());
+    }
+
     // Predict harvest for existing plant
     @PostMapping("/plants/{id}/predict")
     public ResponseEntity<HarvestPredictionResponse> predictForPlant(@PathVariable String id) {
         log.info("Predicting harvest for plant ID: {}", id);
 
-        return tomatoPlantRepository.findById(id)
+        return tomatoPlantService.findById(id)
                 .map(plant -> {
                     HarvestPredictionRequest request = new HarvestPredictionRequest();
                     request.setPlantId(plant.getId());
@@ -99,7 +179,7 @@ public class TomatoController {
     public ResponseEntity<HarvestPredictionResponse> getPlantStatus(@PathVariable String id) {
         log.info("Getting status for plant ID: {}", id);
 
-        return tomatoPlantRepository.findById(id)
+        return tomatoPlantService.findById(id)
                 .map(plant -> {
                     HarvestPredictionResponse response = new HarvestPredictionResponse();
                     response.setPlantId(plant.getId());
@@ -130,9 +210,76 @@ public class TomatoController {
         return ResponseEntity.ok(result);
     }
 
+    // Bulk detection over a zip / tar / tar.gz sent as the raw request body; progress is streamed as SSE
+    @PostMapping(value = "/detect-ripeness/archive",
+            consumes = {"application/zip", "application/x-tar", "application/gzip", MediaType.APPLICATION_OCTET_STREAM_VALUE},
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter detectRipenessArchive(@RequestParam(defaultValue = "archive") String name,
+                                            HttpServletRequest request) throws IOException {
+        log.info("Starting bulk ripeness detection for archive: {}", name);
+        SseEmitter emitter = new SseEmitter(0L);
+        bulkRipenessDetectionService.submitArchive(name, request.getInputStream(), progress -> {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(progress, MediaType.APPLICATION_JSON));
+                if (progress.isDone()) {
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                // Client went away; detection keeps running and results are still saved
+                log.debug("Progress client disconnected for archive {}", name);
+            }
+        });
+        return emitter;
+    }
+
     @GetMapping("/ripeness-history")
     public ResponseEntity<List<RipenessData>> getRipenessHistory() {
         List<RipenessData> history = ripenessDetectionService.getRipenessHistory();
         return ResponseEntity.ok(history);
     }
+
+    // Detections with start <= timestamp < end as a gzip CSV (one row per tomato) or NDJSON download,
+    // streamed a day at a time with constant memory
+    @GetMapping("/ripeness-export")
+    public void exportRipenessHistory(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "csv") String format,
+            HttpServletResponse response) throws IOException, InterruptedException {
+        HistoryExportService.Format exportFormat;
+        try {
+            exportFormat = HistoryExportService.Format.parse(format);
+            HistoryExportService.validate(HistoryExportService.Dataset.RIPENESS, start, end, null);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        response.setContentType("application/gzip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(HistoryExportService.fileName(HistoryExportService.Dataset.RIPENESS, exportFormat, start, end))
+                .build().toString());
+        historyExportService.exportTo(response.getOutputStream(), HistoryExportService.Dataset.RIPENESS,
+                exportFormat, start, end, null);
+    }
+
+    // Per-day or per-hour ripeness counts read from the pre-aggregated rollups
+    @GetMapping("/ripeness-analytics")
+    public ResponseEntity<List<RipenessRollup>> getRipenessAnalytics(
+            @RequestParam(defaultValue = "DAY") String granularity,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+        return ResponseEntity.ok(ripenessAnalyticsService.getRollups(granularity, start, end));
+    }
+
+    // Rebuild rollups from the full ripeness history (one-off, after upgrades or data fixes);
+    // 409 while another rebuild is running
+    @PostMapping("/ripeness-analytics/rebuild")
+    public ResponseEntity<Long> rebuildRipenessAnalytics() {
+        log.info("Rebuilding ripeness rollups");
+        try {
+            return ResponseEntity.ok(ripenessAnalyticsService.rebuildRollups());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package com.__25J_323.HarvestPrediction.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
 @Data
 @Document(collection = "environment_data")
@@ -16,4 +19,67 @@ public class EnvironmentData {
     private Double humidity;
     private Double soilMoisture;
     private LocalDateTime timestamp;
+
+    // Tumbling-window fields; temperature/humidity/soilMoisture hold the window means
+    private String deviceId;
+    private LocalDateTime windowStart;
+    private LocalDateTime windowEnd;
+    private Map<String, SensorStats> stats;
+
+    // Writers whose samples are merged into this window (see EnvironmentDataStore#mergeWindow)
+    @JsonIgnore
+    private List<String> parts;
+
+    /**
+     * Id of the one document per device and window, whichever instance, batch or import writes it
+     */
+    public static String windowId(String deviceId, long windowStartEpochMillis) {
+        return deviceId + ":" + windowStartEpochMillis;
+    }
+
+    @Data
+    public static class SensorStats {
+        private long count;
+        private double sum;
+        private double sumOfSquares;
+        private double min;
+        private double max;
+
+        public double getMean() {
+            return count > 0 ? sum / count : 0.0;
+        }
+
+        /**
+         * Count one sample
+         */
+        public void add(double value) {
+            min = count > 0 ? Math.min(min, value) : value;
+            max = count > 0 ? Math.max(max, value) : value;
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+        }
+
+        /**
+         * Add another part of the same window, e.g. a backfilled batch or the other side of a hand-over
+         */
+        public void merge(SensorStats other) {
+            if (other == null || other.count == 0) {
+                return;
+            }
+            min = count > 0 ? Math.min(min, other.min) : other.min;
+            max = count > 0 ? Math.max(max, other.max) : other.max;
+            count += other.count;
+            sum += other.sum;
+            sumOfSquares += other.sumOfSquares;
+        }
+
+        public double getStdDev() {
+            if (count < 2) {
+                return 0.0;
+            }
+            double mean = sum / count;
+            return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+        }
+    }
 }
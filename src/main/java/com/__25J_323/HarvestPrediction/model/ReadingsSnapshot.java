@@ -0,0 +1,52 @@
+package com.__25J_323.HarvestPrediction.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Immutable view of the latest sensor readings. Every field belongs to the same published state,
+ * so a reader never mixes values from different updates. A null timestamp means nothing has been
+ * received yet.
+ */
+public record ReadingsSnapshot(double temperature, double humidity, double soilMoisture, LocalDateTime timestamp) {
+
+    public static final ReadingsSnapshot EMPTY = new ReadingsSnapshot(0.0, 0.0, 0.0, null);
+
+    public boolean isEmpty() {
+        return timestamp == null;
+    }
+
+    public ReadingsSnapshot withTemperature(double value, LocalDateTime at) {
+        return new ReadingsSnapshot(value, humidity, soilMoisture, at);
+    }
+
+    public ReadingsSnapshot withHumidity(double value, LocalDateTime at) {
+        return new ReadingsSnapshot(temperature, value, soilMoisture, at);
+    }
+
+    public ReadingsSnapshot withSoilMoisture(double value, LocalDateTime at) {
+        return new ReadingsSnapshot(temperature, humidity, value, at);
+    }
+
+    /**
+     * Apply several readings at once; bit 0/1/2 of {@code mask} selects temperature/humidity/soil moisture
+     */
+    public ReadingsSnapshot withReadings(int mask, double temperature, double humidity, double soilMoisture, LocalDateTime at) {
+        return new ReadingsSnapshot(
+                (mask & 1) != 0 ? temperature : this.temperature,
+                (mask & 2) != 0 ? humidity : this.humidity,
+                (mask & 4) != 0 ? soilMoisture : this.soilMoisture,
+                at);
+    }
+
+    /**
+     * Mutable document form for persistence and JSON broadcasts
+     */
+    public EnvironmentData toEnvironmentData() {
+        EnvironmentData data = new EnvironmentData();
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setSoilMoisture(soilMoisture);
+        data.setTimestamp(timestamp);
+        return data;
+    }
+}
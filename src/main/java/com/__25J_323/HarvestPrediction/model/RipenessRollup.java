@@ -0,0 +1,56 @@
+package com.__25J_323.HarvestPrediction.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pre-aggregated ripeness counts for one day or one hour bucket.
+ * Maintained incrementally by RipenessAnalyticsService so analytics never scan ripeness_data.
+ */
+@Data
+@Document(collection = "ripeness_rollup")
+public class RipenessRollup {
+
+    public static final String DAY = "DAY";
+    public static final String HOUR = "HOUR";
+
+    @Id
+    private String id;
+    private String granularity;
+    private LocalDateTime bucketStart;
+    private long imageCount;
+    private long tomatoCount;
+    private Map<String, StateStats> states = new HashMap<>();
+
+    @Data
+    public static class StateStats {
+        private long count;
+        private double confidenceSum;
+        // Confidence histogram in 10 bins of width 0.1, keyed "0".."9"
+        private Map<String, Long> confidenceHistogram = new HashMap<>();
+        private long boundingBoxWidthSum;
+        private long boundingBoxHeightSum;
+        private long boundingBoxAreaSum;
+
+        public double getMeanConfidence() {
+            return count > 0 ? confidenceSum / count : 0.0;
+        }
+
+        public double getMeanBoundingBoxWidth() {
+            return count > 0 ? (double) boundingBoxWidthSum / count : 0.0;
+        }
+
+        public double getMeanBoundingBoxHeight() {
+            return count > 0 ? (double) boundingBoxHeightSum / count : 0.0;
+        }
+
+        public double getMeanBoundingBoxArea() {
+            return count > 0 ? (double) boundingBoxAreaSum / count : 0.0;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.__25J_323.HarvestPrediction.model;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Alert when one sensor stays above or below a threshold. The rule fires once the reading has been
+ * past the threshold for durationSeconds and clears when it comes back past the threshold by
+ * hysteresis.
+ */
+@Data
+@Document(collection = "threshold_rule")
+public class ThresholdRule {
+
+    public static final String ABOVE = "ABOVE";
+    public static final String BELOW = "BELOW";
+
+    @Id
+    private String id;
+    private String name;
+    // null applies the rule to every device
+    private String deviceId;
+    // temperature, humidity or soilMoisture
+    private String sensor;
+    private String operator;
+    private double threshold;
+    private double hysteresis;
+    private long durationSeconds;
+    private String severity;
+    private boolean enabled = true;
+}
@@ -0,0 +1,804 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local store for environment readings, compressed with {@link GorillaCodec}.
+ * <p>
+ * One segment file per device and UTC day ({@code <directory>/<device>/<yyyy-MM-dd>.gts}): a 4-byte
+ * magic, then blocks of {@code int32 rows | int64 min timestamp | int64 max timestamp | int32 flags |
+ * int32 length | int32 CRC-32C | Gorilla bits}. Rows collect in an in-memory block that is sealed to
+ * the file when it reaches blockRows or on every flush interval, so a crash loses at most one
+ * interval. A segment opened after a crash drops a torn trailing block: one cut short, or whose CRC
+ * does not match. Scans map the segment read-only, skip blocks by their timestamp range and then read
+ * the open block.
+ * <p>
+ * A row holds the three means, the window length and each sensor's count, sum, sum of squares, min
+ * and max. Rows are keyed by device and timestamp, a window's being its nominal end. Files are only
+ * appended to, so a write for a key already stored appends a row that supersedes the old one: save
+ * replaces it, {@link #mergeWindow} merges the stats into it and {@link #insertAll} skips it. Blocks
+ * holding such rows are flagged, and scans over them keep the last row per key.
+ * <p>
+ * Segments without writes for a whole flush interval are sealed and dropped from memory.
+ */
+@Slf4j
+public class ColumnarEnvironmentDataStore implements EnvironmentDataStore, Closeable {
+
+    static final int MAGIC = 0x47545332; // "GTS2"
+    static final int BLOCK_HEADER_BYTES = 4 + 8 + 8 + 4 + 4 + 4;
+    // The block has rows superseding rows of earlier blocks, or of itself
+    private static final int FLAG_REPLACES = 1;
+
+    static final String[] SENSORS = {"temperature", "humidity", "soilMoisture"};
+    private static final int WINDOW_MILLIS = SENSORS.length;
+    private static final int FIRST_STATS = WINDOW_MILLIS + 1;
+    private static final int STATS_FIELDS = 5; // count, sum, sum of squares, min, max
+    private static final int COLUMNS = FIRST_STATS + SENSORS.length * STATS_FIELDS;
+
+    // Parts merged into windows are remembered this long (in windows), to skip redelivered batches
+    private static final int MAX_RECENT_PARTS = 10_000;
+    private static final String SEGMENT_SUFFIX = ".gts";
+    // URLEncoder never yields a bare "~", so it cannot collide with an encoded device id
+    private static final String NO_DEVICE = "~";
+
+    private final Path directory;
+    private final int blockRows;
+    private final Map<Path, Segment> segments = new ConcurrentHashMap<>();
+    private final Set<String> recentParts = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_RECENT_PARTS;
+                }
+            }));
+    private final ScheduledExecutorService flusher;
+
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(String deviceId, long timestampMillis, double temperature, double humidity, double soilMoisture);
+    }
+
+    /**
+     * Every column of a row; values is reused between calls
+     */
+    @FunctionalInterface
+    private interface RowSink {
+        void accept(long timestampMillis, double[] values);
+    }
+
+    public ColumnarEnvironmentDataStore(Path directory, int blockRows, long flushIntervalMillis) {
+        try {
+            this.directory = Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.blockRows = blockRows;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("columnar-flush").daemon().factory());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Columnar environment store at {} ({} rows per block)", this.directory.toAbsolutePath(), blockRows);
+    }
+
+    @Override
+    public EnvironmentData save(EnvironmentData data) {
+        long millis = keyOf(data);
+        double[] row = toRow(data);
+        while (!segment(data.getDeviceId(), millis).put(millis, row)) {
+            // Evicted between lookup and write; the next lookup opens it again
+        }
+        return data;
+    }
+
+    /**
+     * Merge the window's stats into the stored row with the same device and window end. A part
+     * already merged is skipped while it is among the last {@value #MAX_RECENT_PARTS} parts seen by
+     * this process.
+     */
+    @Override
+    public EnvironmentData mergeWindow(EnvironmentData window, String part) {
+        long millis = keyOf(window);
+        double[] row = toRow(window);
+        String partKey = window.getDeviceId() + ":" + millis + "/" + part;
+        while (!segment(window.getDeviceId(), millis).merge(millis, row, partKey)) {
+            // Evicted between lookup and write
+        }
+        return window;
+    }
+
+    /**
+     * Skips readings whose device and timestamp are already stored, one scan per segment touched
+     */
+    @Override
+    public int insertAll(List<EnvironmentData> batch) {
+        return insertNew(batch, stored -> { });
+    }
+
+    /**
+     * Inserts the windows not stored yet as {@link #insertAll} does, remembering their parts, and
+     * merges the rest
+     */
+    @Override
+    public int insertOrMergeAll(List<EnvironmentData> windows) {
+        List<EnvironmentData> stored = new ArrayList<>();
+        int inserted = insertNew(windows, stored::add);
+        for (EnvironmentData window : stored) {
+            mergeWindow(window, window.getParts().get(0));
+        }
+        return inserted;
+    }
+
+    private int insertNew(List<EnvironmentData> batch, Consumer<EnvironmentData> alreadyStored) {
+        Map<Path, List<EnvironmentData>> bySegment = new LinkedHashMap<>();
+        for (EnvironmentData data : batch) {
+            Path file = fileOf(data.getDeviceId(), keyOf(data));
+            bySegment.computeIfAbsent(file, f -> new ArrayList<>()).add(data);
+        }
+        int inserted = 0;
+        for (Map.Entry<Path, List<EnvironmentData>> entry : bySegment.entrySet()) {
+            Path file = entry.getKey();
+            int added;
+            while ((added = segment(file.getParent(), file).insertNew(entry.getValue(), alreadyStored)) < 0) {
+                // Evicted between lookup and write
+            }
+            inserted += added;
+        }
+        return inserted;
+    }
+
+    @Override
+    public List<EnvironmentData> findRecent(int limit) {
+        List<EnvironmentData> recent = new ArrayList<>();
+        for (Path deviceDirectory : list(directory)) {
+            // Newest day first, until this device alone could fill the limit
+            List<EnvironmentData> device = new ArrayList<>();
+            List<Path> days = list(deviceDirectory);
+            for (int i = days.size() - 1; i >= 0 && device.size() < limit; i--) {
+                Segment segment = segment(deviceDirectory, days.get(i));
+                segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, toEnvironmentData(segment.deviceId, device::add));
+            }
+            recent.addAll(device);
+        }
+        recent.sort(Comparator.comparing(EnvironmentData::getTimestamp).reversed());
+        return recent.size() > limit ? new ArrayList<>(recent.subList(0, limit)) : recent;
+    }
+
+    @Override
+    public List<EnvironmentData> findBetween(LocalDateTime start, LocalDateTime end) {
+        List<EnvironmentData> rows = new ArrayList<>();
+        scanSegments(EnvironmentDownsampler.toMillis(start) + 1, EnvironmentDownsampler.toMillis(end) - 1, null,
+                segment -> toEnvironmentData(segment.deviceId, rows::add));
+        rows.sort(Comparator.comparing(EnvironmentData::getTimestamp).reversed());
+        return rows;
+    }
+
+    @Override
+    public List<EnvironmentData> findDownsampled(LocalDateTime start, LocalDateTime end, Duration bucket) {
+        EnvironmentDownsampler downsampler = new EnvironmentDownsampler(start, bucket);
+        scan(start, end, downsampler::add);
+        return downsampler.result();
+    }
+
+    /**
+     * Visit every row strictly between start and end, without materializing it
+     */
+    public void scan(LocalDateTime start, LocalDateTime end, RowVisitor visitor) {
+        scanSegments(EnvironmentDownsampler.toMillis(start) + 1, EnvironmentDownsampler.toMillis(end) - 1, null,
+                segment -> (millis, values) -> visitor.visit(segment.deviceId, millis, values[0], values[1], values[2]));
+    }
+
+    @Override
+    public void forEachInRange(LocalDateTime start, LocalDateTime end, Set<String> deviceIds,
+                               Consumer<EnvironmentData> consumer) {
+        scanSegments(EnvironmentDownsampler.toMillis(start), EnvironmentDownsampler.toMillis(end) - 1, deviceIds,
+                segment -> toEnvironmentData(segment.deviceId, consumer));
+    }
+
+    /**
+     * Rows with from <= timestamp <= to, of the given devices or all of them if deviceIds is null
+     */
+    private void scanSegments(long from, long to, Set<String> deviceIds,
+                              Function<Segment, RowSink> sinks) {
+        if (from > to) {
+            return;
+        }
+        LocalDate firstDay = dayOf(from);
+        LocalDate lastDay = dayOf(to);
+        for (Path deviceDirectory : list(directory)) {
+            if (deviceIds != null && !deviceIds.contains(deviceIdOf(deviceDirectory))) {
+                continue;
+            }
+            for (LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                Path file = deviceDirectory.resolve(day + SEGMENT_SUFFIX);
+                if (segments.containsKey(file) || Files.exists(file)) {
+                    Segment segment = segment(deviceDirectory, file);
+                    segment.scan(from, to, sinks.apply(segment));
+                }
+            }
+        }
+    }
+
+    /**
+     * Seal every open block to its segment file, and drop segments nobody wrote to since the last flush
+     */
+    @Override
+    public void flush() {
+        for (Map.Entry<Path, Segment> entry : segments.entrySet()) {
+            Segment segment = entry.getValue();
+            segment.seal();
+            if (segment.retireIfIdle()) {
+                segments.remove(entry.getKey(), segment);
+            }
+        }
+    }
+
+    /**
+     * Bytes in sealed blocks on disk
+     */
+    public long sizeOnDisk() {
+        long bytes = 0;
+        for (Path deviceDirectory : list(directory)) {
+            for (Path file : list(deviceDirectory)) {
+                try {
+                    bytes += Files.size(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Segments held in memory
+     */
+    int openSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        flush();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Error flushing columnar environment store", e);
+        }
+    }
+
+    private Path fileOf(String deviceId, long millis) {
+        String name = deviceId != null ? URLEncoder.encode(deviceId, StandardCharsets.UTF_8) : NO_DEVICE;
+        return directory.resolve(name).resolve(dayOf(millis) + SEGMENT_SUFFIX);
+    }
+
+    private Segment segment(String deviceId, long millis) {
+        Path file = fileOf(deviceId, millis);
+        return segment(file.getParent(), file);
+    }
+
+    private Segment segment(Path deviceDirectory, Path file) {
+        Segment segment = segments.get(file);
+        if (segment == null || segment.retired) {
+            if (segment != null) {
+                segments.remove(file, segment);
+            }
+            String deviceId = deviceIdOf(deviceDirectory);
+            segment = segments.computeIfAbsent(file, f -> new Segment(f, deviceId));
+        }
+        return segment;
+    }
+
+    private static LocalDate dayOf(long millis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static String deviceIdOf(Path deviceDirectory) {
+        String name = deviceDirectory.getFileName().toString();
+        return NO_DEVICE.equals(name) ? null : URLDecoder.decode(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A window is keyed by its nominal end, so its parts meet whenever each was flushed
+     */
+    private static long keyOf(EnvironmentData data) {
+        if (data.getWindowEnd() != null) {
+            return EnvironmentDownsampler.toMillis(data.getWindowEnd());
+        }
+        return EnvironmentDownsampler.toMillis(data.getTimestamp() != null ? data.getTimestamp() : LocalDateTime.now());
+    }
+
+    private static double[] toRow(EnvironmentData data) {
+        double[] row = new double[COLUMNS];
+        Arrays.fill(row, Double.NaN);
+        row[0] = nanIfNull(data.getTemperature());
+        row[1] = nanIfNull(data.getHumidity());
+        row[2] = nanIfNull(data.getSoilMoisture());
+        if (data.getWindowStart() != null && data.getWindowEnd() != null) {
+            row[WINDOW_MILLIS] = EnvironmentDownsampler.toMillis(data.getWindowEnd())
+                    - EnvironmentDownsampler.toMillis(data.getWindowStart());
+        }
+        if (data.getStats() != null) {
+            for (int sensor = 0; sensor < SENSORS.length; sensor++) {
+                EnvironmentData.SensorStats stats = data.getStats().get(SENSORS[sensor]);
+                if (stats != null && stats.getCount() > 0) {
+                    writeStats(row, sensor, stats);
+                }
+            }
+        }
+        return row;
+    }
+
+    private static EnvironmentData.SensorStats readStats(double[] row, int sensor) {
+        int column = FIRST_STATS + sensor * STATS_FIELDS;
+        if (Double.isNaN(row[column])) {
+            return null;
+        }
+        EnvironmentData.SensorStats stats = new EnvironmentData.SensorStats();
+        stats.setCount((long) row[column]);
+        stats.setSum(row[column + 1]);
+        stats.setSumOfSquares(row[column + 2]);
+        stats.setMin(row[column + 3]);
+        stats.setMax(row[column + 4]);
+        return stats;
+    }
+
+    private static void writeStats(double[] row, int sensor, EnvironmentData.SensorStats stats) {
+        int column = FIRST_STATS + sensor * STATS_FIELDS;
+        row[column] = stats.getCount();
+        row[column + 1] = stats.getSum();
+        row[column + 2] = stats.getSumOfSquares();
+        row[column + 3] = stats.getMin();
+        row[column + 4] = stats.getMax();
+    }
+
+    /**
+     * Add incoming's stats to stored's, and recompute the means; a sensor without samples keeps a
+     * carried-forward value, the incoming one if it has one
+     */
+    private static double[] mergeRows(double[] stored, double[] incoming) {
+        double[] merged = stored.clone();
+        for (int sensor = 0; sensor < SENSORS.length; sensor++) {
+            EnvironmentData.SensorStats stats = readStats(stored, sensor);
+            EnvironmentData.SensorStats added = readStats(incoming, sensor);
+            if (stats == null) {
+                stats = added;
+            } else {
+                stats.merge(added);
+            }
+            if (stats != null) {
+                writeStats(merged, sensor, stats);
+                merged[sensor] = stats.getMean();
+            } else if (!Double.isNaN(incoming[sensor])) {
+                merged[sensor] = incoming[sensor];
+            }
+        }
+        if (!Double.isNaN(incoming[WINDOW_MILLIS])) {
+            merged[WINDOW_MILLIS] = incoming[WINDOW_MILLIS];
+        }
+        return merged;
+    }
+
+    private static RowSink toEnvironmentData(String deviceId, Consumer<EnvironmentData> consumer) {
+        return (millis, values) -> {
+            EnvironmentData data = new EnvironmentData();
+            data.setDeviceId(deviceId);
+            data.setTimestamp(EnvironmentDownsampler.toLocalDateTime(millis));
+            data.setTemperature(nullIfNaN(values[0]));
+            data.setHumidity(nullIfNaN(values[1]));
+            data.setSoilMoisture(nullIfNaN(values[2]));
+            if (!Double.isNaN(values[WINDOW_MILLIS])) {
+                long windowStart = millis - (long) values[WINDOW_MILLIS];
+                data.setId(EnvironmentData.windowId(deviceId, windowStart));
+                data.setWindowStart(EnvironmentDownsampler.toLocalDateTime(windowStart));
+                data.setWindowEnd(data.getTimestamp());
+                Map<String, EnvironmentData.SensorStats> stats = new HashMap<>();
+                for (int sensor = 0; sensor < SENSORS.length; sensor++) {
+                    EnvironmentData.SensorStats sensorStats = readStats(values, sensor);
+                    if (sensorStats != null) {
+                        stats.put(SENSORS[sensor], sensorStats);
+                    }
+                }
+                data.setStats(stats);
+            }
+            consumer.accept(data);
+        };
+    }
+
+    private static List<Path> list(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double nanIfNull(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double nullIfNaN(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * One device-day file plus its open block. The write methods return false, or -1, once the
+     * segment has been evicted, and the caller looks it up again.
+     */
+    private final class Segment {
+        final Path file;
+        final String deviceId;
+        final ReentrantLock lock = new ReentrantLock();
+        GorillaCodec.Encoder open;
+        boolean openReplaces;
+        // Newest timestamp stored; a write past it cannot supersede a row
+        long maxTimestamp = Long.MIN_VALUE;
+        boolean recovered;
+        boolean touched;
+        volatile boolean retired;
+
+        Segment(Path file, String deviceId) {
+            this.file = file;
+            this.deviceId = deviceId;
+        }
+
+        boolean put(long millis, double[] row) {
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                recoverLocked();
+                appendLocked(millis, row, millis <= maxTimestamp && findLocked(millis) != null);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean merge(long millis, double[] row, String partKey) {
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+                recoverLocked();
+                if (recentParts.contains(partKey)) {
+                    return true;
+                }
+                double[] stored = millis <= maxTimestamp ? findLocked(millis) : null;
+                appendLocked(millis, stored != null ? mergeRows(stored, row) : row, stored != null);
+                recentParts.add(partKey);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int insertNew(List<EnvironmentData> batch, Consumer<EnvironmentData> alreadyStored) {
+            lock.lock();
+            try {
+                if (retired) {
+                    return -1;
+                }
+                recoverLocked();
+                long first = Long.MAX_VALUE;
+                for (EnvironmentData data : batch) {
+                    first = Math.min(first, keyOf(data));
+                }
+                Set<Long> stored = new HashSet<>();
+                if (first <= maxTimestamp) {
+                    scan(first, maxTimestamp, (millis, values) -> stored.add(millis));
+                }
+                int inserted = 0;
+                for (EnvironmentData data : batch) {
+                    long millis = keyOf(data);
+                    if (stored.add(millis)) {
+                        appendLocked(millis, toRow(data), false);
+                        if (data.getParts() != null) {
+                            for (String part : data.getParts()) {
+                                recentParts.add(data.getDeviceId() + ":" + millis + "/" + part);
+                            }
+                        }
+                        inserted++;
+                    } else {
+                        alreadyStored.accept(data);
+                    }
+                }
+                return inserted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * The last row stored at millis, or null
+         */
+        private double[] findLocked(long millis) {
+            double[][] found = new double[1][];
+            scan(millis, millis, (timestamp, values) -> found[0] = values.clone());
+            return found[0];
+        }
+
+        private void appendLocked(long millis, double[] row, boolean replaces) {
+            if (open == null) {
+                open = new GorillaCodec.Encoder(COLUMNS);
+            }
+            open.append(millis, row);
+            openReplaces |= replaces;
+            maxTimestamp = Math.max(maxTimestamp, millis);
+            touched = true;
+            if (open.rows() >= blockRows) {
+                sealLocked();
+            }
+        }
+
+        void seal() {
+            lock.lock();
+            try {
+                sealLocked();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Evict after a flush interval without writes; the open block is sealed by then
+         */
+        boolean retireIfIdle() {
+            lock.lock();
+            try {
+                if (open == null && !touched) {
+                    retired = true;
+                }
+                touched = false;
+                return retired;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void sealLocked() {
+            if (open == null || open.rows() == 0) {
+                return;
+            }
+            byte[] bits = open.toByteArray();
+            try {
+                Files.createDirectories(file.getParent());
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND)) {
+                    boolean fresh = channel.size() == 0;
+                    ByteBuffer buffer = ByteBuffer.allocate((fresh ? 4 : 0) + BLOCK_HEADER_BYTES + bits.length);
+                    if (fresh) {
+                        buffer.putInt(MAGIC);
+                    }
+                    int header = buffer.position();
+                    buffer.putInt(open.rows())
+                            .putLong(open.minTimestamp())
+                            .putLong(open.maxTimestamp())
+                            .putInt(openReplaces ? FLAG_REPLACES : 0)
+                            .putInt(bits.length)
+                            .putInt(0)
+                            .put(bits);
+                    buffer.putInt(header + BLOCK_HEADER_BYTES - 4, crc(buffer, header, bits.length));
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                // Keep the block in memory and try again on the next seal
+                throw new UncheckedIOException("Could not append block to " + file, e);
+            }
+            open = null;
+            openReplaces = false;
+        }
+
+        /**
+         * Find the newest stored timestamp, and cut off a trailing block that a crash left torn
+         */
+        private void recoverLocked() {
+            if (recovered) {
+                return;
+            }
+            if (Files.exists(file)) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    long valid = size < 4 ? 0 : walk(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                    if (valid < size) {
+                        log.warn("Dropping torn block at offset {} of {} ({} bytes)", valid, file, size - valid);
+                        channel.truncate(valid);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            recovered = true;
+        }
+
+        /**
+         * @return the size of the valid prefix: up to the first incomplete block, less the last
+         * complete block if its CRC does not match
+         */
+        private long walk(MappedByteBuffer mapped) {
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IllegalStateException("Not a columnar segment: " + file);
+            }
+            int size = mapped.limit();
+            int position = 4;
+            int last = -1;
+            long maxBeforeLast = Long.MIN_VALUE;
+            while (position + BLOCK_HEADER_BYTES <= size) {
+                int rows = mapped.getInt(position);
+                int length = mapped.getInt(position + 24);
+                if (rows <= 0 || length < 0 || length > size - position - BLOCK_HEADER_BYTES) {
+                    break;
+                }
+                if (last >= 0) {
+                    maxBeforeLast = Math.max(maxBeforeLast, mapped.getLong(last + 12));
+                }
+                last = position;
+                position += BLOCK_HEADER_BYTES + length;
+            }
+            if (last < 0) {
+                return 4;
+            }
+            int length = mapped.getInt(last + 24);
+            if (mapped.getInt(last + 28) != crc(mapped, last, length)) {
+                maxTimestamp = maxBeforeLast;
+                return last;
+            }
+            maxTimestamp = Math.max(maxBeforeLast, mapped.getLong(last + 12));
+            return position;
+        }
+
+        /**
+         * Rows with from <= timestamp <= to; when a block in range supersedes rows, only the last
+         * row per timestamp
+         */
+        void scan(long from, long to, RowSink sink) {
+            long size;
+            byte[] openBits = null;
+            int openRows = 0;
+            boolean replaces = false;
+            lock.lock();
+            try {
+                recoverLocked();
+                // Sealed blocks up to this size are complete; later seals only append
+                size = Files.exists(file) ? Files.size(file) : 0;
+                if (open != null && open.rows() > 0 && open.maxTimestamp() >= from && open.minTimestamp() <= to) {
+                    openBits = open.toByteArray();
+                    openRows = open.rows();
+                    replaces = openReplaces;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                lock.unlock();
+            }
+
+            List<ByteBuffer> blocks = new ArrayList<>();
+            List<Integer> rows = new ArrayList<>();
+            if (size > 0) {
+                replaces |= sealedBlocks(size, from, to, blocks, rows);
+            }
+            if (openBits != null) {
+                blocks.add(ByteBuffer.wrap(openBits));
+                rows.add(openRows);
+            }
+
+            if (!replaces) {
+                for (int i = 0; i < blocks.size(); i++) {
+                    decode(blocks.get(i), rows.get(i), from, to, sink);
+                }
+                return;
+            }
+            Map<Long, double[]> latest = new HashMap<>();
+            for (int i = 0; i < blocks.size(); i++) {
+                decode(blocks.get(i), rows.get(i), from, to, (millis, values) -> latest.put(millis, values.clone()));
+            }
+            latest.forEach(sink::accept);
+        }
+
+        /**
+         * Collect the sealed blocks overlapping from..to
+         *
+         * @return whether any of them supersedes rows
+         */
+        private boolean sealedBlocks(long size, long from, long to, List<ByteBuffer> blocks, List<Integer> rows) {
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IllegalStateException("Not a columnar segment: " + file);
+            }
+            boolean replaces = false;
+            int position = 4;
+            while (position + BLOCK_HEADER_BYTES <= size) {
+                int count = mapped.getInt(position);
+                long min = mapped.getLong(position + 4);
+                long max = mapped.getLong(position + 12);
+                int flags = mapped.getInt(position + 20);
+                int length = mapped.getInt(position + 24);
+                int bits = position + BLOCK_HEADER_BYTES;
+                if (bits + length > size) {
+                    log.warn("Truncated block at offset {} in {}", position, file);
+                    break;
+                }
+                if (max >= from && min <= to) {
+                    blocks.add(mapped.slice(bits, length));
+                    rows.add(count);
+                    replaces |= (flags & FLAG_REPLACES) != 0;
+                }
+                position = bits + length;
+            }
+            return replaces;
+        }
+
+        private void decode(ByteBuffer block, int rows, long from, long to, RowSink sink) {
+            GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(block, rows, COLUMNS);
+            while (decoder.next()) {
+                long millis = decoder.timestamp();
+                if (millis >= from && millis <= to) {
+                    sink.accept(millis, decoder.values());
+                }
+            }
+        }
+    }
+
+    /**
+     * CRC-32C of a block's header, less the CRC field, and its bits
+     */
+    private static int crc(ByteBuffer buffer, int header, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(header, BLOCK_HEADER_BYTES - 4));
+        crc.update(buffer.slice(header + BLOCK_HEADER_BYTES, length));
+        return (int) crc.getValue();
+    }
+}
@@ -1,6 +1,7 @@
 package com.__25J_323.HarvestPrediction.repository;
 
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
@@ -11,4 +12,5 @@ import java.util.List;
 public interface EnvironmentDataRepository extends MongoRepository<EnvironmentData, String> {
     List<EnvironmentData> findByTimestampBetweenOrderByTimestampDesc(LocalDateTime start, LocalDateTime end);
     List<EnvironmentData> findTop24ByOrderByTimestampDesc();
+    List<EnvironmentData> findByOrderByTimestampDesc(Limit limit);
 }
@@ -0,0 +1,100 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine for environment readings, selected with environment.storage: mongo (default,
+ * {@link MongoEnvironmentDataStore}) or columnar ({@link ColumnarEnvironmentDataStore})
+ */
+public interface EnvironmentDataStore {
+
+    EnvironmentData save(EnvironmentData data);
+
+    /**
+     * Add a window's samples to the stored window with the same id (device and window start),
+     * or store it if there is none. A part already merged into that window, such as a redelivered
+     * backfill batch, is skipped. Engines without ids just save it.
+     *
+     * @param part identifies where the samples come from: a writer run or a batch
+     */
+    default EnvironmentData mergeWindow(EnvironmentData window, String part) {
+        return save(window);
+    }
+
+    /**
+     * Bulk write, returning how many readings were new. Readings whose id is already stored are
+     * skipped where the engine keeps ids, which makes re-running an import safe.
+     */
+    default int insertAll(List<EnvironmentData> batch) {
+        batch.forEach(this::save);
+        return batch.size();
+    }
+
+    /**
+     * Bulk write of windows that each carry their one part ({@link EnvironmentData#getParts}):
+     * windows not stored yet are inserted, and stored ones get the part merged in with
+     * {@link #mergeWindow}, once. This default inserts one window at a time.
+     *
+     * @return how many windows were new
+     */
+    default int insertOrMergeAll(List<EnvironmentData> windows) {
+        int inserted = 0;
+        for (EnvironmentData window : windows) {
+            if (insertAll(List.of(window)) == 1) {
+                inserted++;
+            } else {
+                mergeWindow(window, window.getParts().get(0));
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * Make everything saved so far durable and visible to queries
+     */
+    default void flush() {
+    }
+
+    /**
+     * The newest readings across devices, newest first
+     */
+    List<EnvironmentData> findRecent(int limit);
+
+    /**
+     * Readings strictly between start and end, newest first
+     */
+    List<EnvironmentData> findBetween(LocalDateTime start, LocalDateTime end);
+
+    /**
+     * Every reading with start <= timestamp < end, of the given devices only unless deviceIds is
+     * null, handed over one at a time in no particular order. The engines stream it; this default
+     * loads the range first.
+     */
+    default void forEachInRange(LocalDateTime start, LocalDateTime end, Set<String> deviceIds,
+                                Consumer<EnvironmentData> consumer) {
+        for (EnvironmentData data : findBetween(start.minusNanos(1), end)) {
+            if (deviceIds == null || deviceIds.contains(data.getDeviceId())) {
+                consumer.accept(data);
+            }
+        }
+    }
+
+    /**
+     * Per-device means over fixed buckets between start and end, oldest first. Each result carries
+     * the bucket bounds as its window; sensors without readings in a bucket are null.
+     */
+    default List<EnvironmentData> findDownsampled(LocalDateTime start, LocalDateTime end, Duration bucket) {
+        EnvironmentDownsampler downsampler = new EnvironmentDownsampler(start, bucket);
+        for (EnvironmentData data : findBetween(start, end)) {
+            downsampler.add(data.getDeviceId(), data.getTimestamp(),
+                    data.getTemperature(), data.getHumidity(), data.getSoilMoisture());
+        }
+        return downsampler.result();
+    }
+}
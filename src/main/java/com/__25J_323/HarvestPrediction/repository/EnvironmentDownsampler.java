@@ -0,0 +1,104 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streams readings into per-device, fixed-length buckets aligned to the range start and keeps
+ * only a count and sum per sensor, so a scan never materializes the raw rows
+ */
+public class EnvironmentDownsampler {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final long startMillis;
+    private final long bucketMillis;
+    private final Map<String, Map<Long, double[]>> buckets = new HashMap<>();
+    // Scans run in time order per device, so consecutive rows usually share a bucket
+    private String lastDevice;
+    private long lastIndex;
+    private double[] lastSums;
+
+    public EnvironmentDownsampler(LocalDateTime start, Duration bucket) {
+        if (bucket.isZero() || bucket.isNegative()) {
+            throw new IllegalArgumentException("Bucket length must be positive: " + bucket);
+        }
+        this.startMillis = toMillis(start);
+        this.bucketMillis = bucket.toMillis();
+    }
+
+    public void add(String deviceId, LocalDateTime timestamp, Double temperature, Double humidity, Double soilMoisture) {
+        add(deviceId, toMillis(timestamp),
+                temperature != null ? temperature : Double.NaN,
+                humidity != null ? humidity : Double.NaN,
+                soilMoisture != null ? soilMoisture : Double.NaN);
+    }
+
+    /**
+     * Sensors without a reading are passed as NaN
+     */
+    public void add(String deviceId, long timestampMillis, double temperature, double humidity, double soilMoisture) {
+        long index = Math.floorDiv(timestampMillis - startMillis, bucketMillis);
+        double[] sums = lastSums;
+        if (sums == null || index != lastIndex || !Objects.equals(deviceId, lastDevice)) {
+            // count and sum for each of the three sensors
+            sums = buckets
+                    .computeIfAbsent(Objects.requireNonNullElse(deviceId, ""), id -> new HashMap<>())
+                    .computeIfAbsent(index, i -> new double[6]);
+            lastDevice = deviceId;
+            lastIndex = index;
+            lastSums = sums;
+        }
+        accumulate(sums, 0, temperature);
+        accumulate(sums, 2, humidity);
+        accumulate(sums, 4, soilMoisture);
+    }
+
+    private static void accumulate(double[] sums, int offset, double value) {
+        if (!Double.isNaN(value)) {
+            sums[offset]++;
+            sums[offset + 1] += value;
+        }
+    }
+
+    public List<EnvironmentData> result() {
+        List<EnvironmentData> result = new ArrayList<>();
+        buckets.forEach((deviceId, deviceBuckets) -> deviceBuckets.forEach((index, sums) -> {
+            long bucketStart = startMillis + index * bucketMillis;
+            EnvironmentData data = new EnvironmentData();
+            data.setDeviceId(deviceId.isEmpty() ? null : deviceId);
+            data.setTemperature(mean(sums, 0));
+            data.setHumidity(mean(sums, 2));
+            data.setSoilMoisture(mean(sums, 4));
+            data.setTimestamp(toLocalDateTime(bucketStart));
+            data.setWindowStart(toLocalDateTime(bucketStart));
+            data.setWindowEnd(toLocalDateTime(bucketStart + bucketMillis));
+            result.add(data);
+        }));
+        result.sort(Comparator.comparing(EnvironmentData::getTimestamp)
+                .thenComparing(data -> Objects.requireNonNullElse(data.getDeviceId(), "")));
+        return result;
+    }
+
+    private static Double mean(double[] sums, int offset) {
+        return sums[offset] > 0 ? sums[offset + 1] / sums[offset] : null;
+    }
+
+    static long toMillis(LocalDateTime time) {
+        return time.atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE);
+    }
+}
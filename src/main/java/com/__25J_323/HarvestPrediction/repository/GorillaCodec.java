@@ -0,0 +1,298 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla time-series compression (Pelkonen et al., VLDB 2015) for rows of one timestamp and a
+ * fixed number of double columns.
+ * <p>
+ * Timestamps are stored as delta-of-delta in 1, 9, 12, 16 or 68 bits, so a steady sampling rate
+ * costs one bit per row. Each column value is XORed with the column's previous value: an unchanged
+ * value costs one bit, and a change that fits the previous meaningful-bit window costs two bits
+ * plus the window. Row 0 is stored raw; the first timestamp also goes into the block header.
+ */
+public final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Encodes one block of rows. Not thread-safe.
+     */
+    public static final class Encoder {
+        private final int columns;
+        private final BitOutput out = new BitOutput();
+        private final long[] previousBits;
+        private final int[] previousLeading;
+        private final int[] previousTrailing;
+        private int rows;
+        private long firstTimestamp;
+        private long previousTimestamp;
+        private long previousDelta;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+
+        public Encoder(int columns) {
+            this.columns = columns;
+            this.previousBits = new long[columns];
+            this.previousLeading = new int[columns];
+            this.previousTrailing = new int[columns];
+        }
+
+        public void append(long timestamp, double[] values) {
+            if (rows == 0) {
+                firstTimestamp = timestamp;
+                out.write(timestamp, 64);
+                for (int column = 0; column < columns; column++) {
+                    previousBits[column] = Double.doubleToRawLongBits(values[column]);
+                    previousLeading[column] = Integer.MAX_VALUE;
+                    out.write(previousBits[column], 64);
+                }
+            } else {
+                long delta = timestamp - previousTimestamp;
+                writeDeltaOfDelta(delta - previousDelta);
+                previousDelta = delta;
+                for (int column = 0; column < columns; column++) {
+                    writeValue(column, Double.doubleToRawLongBits(values[column]));
+                }
+            }
+            previousTimestamp = timestamp;
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            rows++;
+        }
+
+        private void writeDeltaOfDelta(long dod) {
+            if (dod == 0) {
+                out.write(0b0, 1);
+            } else if (dod >= -64 && dod <= 63) {
+                out.write(0b10, 2);
+                out.write(dod, 7);
+            } else if (dod >= -256 && dod <= 255) {
+                out.write(0b110, 3);
+                out.write(dod, 9);
+            } else if (dod >= -2048 && dod <= 2047) {
+                out.write(0b1110, 4);
+                out.write(dod, 12);
+            } else {
+                // Millisecond timestamps with irregular gaps do not fit the paper's 32-bit escape
+                out.write(0b1111, 4);
+                out.write(dod, 64);
+            }
+        }
+
+        private void writeValue(int column, long bits) {
+            long xor = bits ^ previousBits[column];
+            previousBits[column] = bits;
+            if (xor == 0) {
+                out.write(0b0, 1);
+                return;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (leading >= previousLeading[column] && trailing >= previousTrailing[column]) {
+                // Fits the previous window
+                int meaningful = 64 - previousLeading[column] - previousTrailing[column];
+                out.write(0b10, 2);
+                out.write(xor >>> previousTrailing[column], meaningful);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                out.write(0b11, 2);
+                out.write(leading, 5);
+                // 64 meaningful bits only happen with 0 leading and trailing zeros; stored as 0
+                out.write(meaningful & 0x3f, 6);
+                out.write(xor >>> trailing, meaningful);
+                previousLeading[column] = leading;
+                previousTrailing[column] = trailing;
+            }
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public long firstTimestamp() {
+            return firstTimestamp;
+        }
+
+        public long minTimestamp() {
+            return minTimestamp;
+        }
+
+        public long maxTimestamp() {
+            return maxTimestamp;
+        }
+
+        /**
+         * The encoded bits so far, padded to whole bytes
+         */
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Decodes the rows of one block in order. Not thread-safe.
+     */
+    public static final class Decoder {
+        private final BitInput in;
+        private final int rows;
+        private final long[] previousBits;
+        private final int[] previousLeading;
+        private final int[] previousTrailing;
+        private final double[] values;
+        private int row;
+        private long timestamp;
+        private long previousDelta;
+
+        public Decoder(ByteBuffer block, int rows, int columns) {
+            this.in = new BitInput(block);
+            this.rows = rows;
+            this.previousBits = new long[columns];
+            this.previousLeading = new int[columns];
+            this.previousTrailing = new int[columns];
+            this.values = new double[columns];
+        }
+
+        /**
+         * Advance to the next row
+         *
+         * @return false once every row has been read
+         */
+        public boolean next() {
+            if (row == rows) {
+                return false;
+            }
+            if (row == 0) {
+                timestamp = in.read(64);
+                for (int column = 0; column < values.length; column++) {
+                    previousBits[column] = in.read(64);
+                }
+            } else {
+                previousDelta += readDeltaOfDelta();
+                timestamp += previousDelta;
+                for (int column = 0; column < values.length; column++) {
+                    readValue(column);
+                }
+            }
+            for (int column = 0; column < values.length; column++) {
+                values[column] = Double.longBitsToDouble(previousBits[column]);
+            }
+            row++;
+            return true;
+        }
+
+        private long readDeltaOfDelta() {
+            if (in.read(1) == 0) {
+                return 0;
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(7);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(9);
+            }
+            if (in.read(1) == 0) {
+                return in.readSigned(12);
+            }
+            return in.read(64);
+        }
+
+        private void readValue(int column) {
+            if (in.read(1) == 0) {
+                return;
+            }
+            if (in.read(1) == 1) {
+                previousLeading[column] = (int) in.read(5);
+                int meaningful = (int) in.read(6);
+                if (meaningful == 0) {
+                    meaningful = 64;
+                }
+                previousTrailing[column] = 64 - previousLeading[column] - meaningful;
+            }
+            int meaningful = 64 - previousLeading[column] - previousTrailing[column];
+            previousBits[column] ^= in.read(meaningful) << previousTrailing[column];
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Values of the current row; the array is reused by the next call to {@link #next()}
+         */
+        public double[] values() {
+            return values;
+        }
+    }
+
+    private static final class BitOutput {
+        private long[] words = new long[16];
+        private long bits;
+
+        void write(long value, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (count < 64) {
+                value &= (1L << count) - 1;
+            }
+            int word = (int) (bits >>> 6);
+            int used = (int) (bits & 63);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+            int free = 64 - used;
+            if (count <= free) {
+                words[word] |= value << (free - count);
+            } else {
+                words[word] |= value >>> (count - free);
+                words[word + 1] |= value << (64 - (count - free));
+            }
+            bits += count;
+        }
+
+        byte[] toByteArray() {
+            int length = (int) ((bits + 7) >>> 3);
+            ByteBuffer buffer = ByteBuffer.allocate(((length + 7) >>> 3) << 3);
+            for (int i = 0; i < buffer.capacity() >>> 3; i++) {
+                buffer.putLong(words[i]);
+            }
+            return Arrays.copyOf(buffer.array(), length);
+        }
+    }
+
+    private static final class BitInput {
+        private final ByteBuffer buffer;
+        private final int base;
+        private long position;
+
+        BitInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.base = buffer.position();
+        }
+
+        long read(int count) {
+            long value = 0;
+            int remaining = count;
+            while (remaining > 0) {
+                int index = base + (int) (position >>> 3);
+                int offset = (int) (position & 7);
+                int available = 8 - offset;
+                int take = Math.min(available, remaining);
+                int current = buffer.get(index) & 0xff;
+                int chunk = (current >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                position += take;
+                remaining -= take;
+            }
+            return value;
+        }
+
+        long readSigned(int count) {
+            long value = read(count);
+            return (value << (64 - count)) >> (64 - count);
+        }
+    }
+}
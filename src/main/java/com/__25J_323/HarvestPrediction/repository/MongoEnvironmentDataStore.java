@@ -0,0 +1,184 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * One environment_data document per reading or window
+ */
+@RequiredArgsConstructor
+public class MongoEnvironmentDataStore implements EnvironmentDataStore {
+
+    private static final int CURSOR_BATCH_SIZE = 2_000;
+
+    private final EnvironmentDataRepository environmentDataRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public EnvironmentData save(EnvironmentData data) {
+        return environmentDataRepository.save(data);
+    }
+
+    /**
+     * One atomic upsert with a two-stage pipeline: add the part's counts and sums to the stored
+     * stats and record the part, then recompute the means from the merged stats. Filtering on the
+     * part makes a repeated part miss the document and fail its insert on the duplicate id.
+     * <p>
+     * A duplicate id also happens when two parts race to create the window: both miss, one insert
+     * wins. The update is therefore retried once, and matches if the part is still missing; only a
+     * second duplicate id means the part is already in the window.
+     */
+    @Override
+    public EnvironmentData mergeWindow(EnvironmentData window, String part) {
+        Document merged = new Document()
+                .append("deviceId", literal(window.getDeviceId()))
+                .append("windowStart", mongoTemplate.getConverter().convertToMongoType(window.getWindowStart()))
+                .append("windowEnd", mongoTemplate.getConverter().convertToMongoType(window.getWindowEnd()))
+                .append("timestamp", new Document("$max", Arrays.asList("$timestamp",
+                        mongoTemplate.getConverter().convertToMongoType(window.getTimestamp()))))
+                .append("parts", new Document("$concatArrays", Arrays.asList(
+                        new Document("$ifNull", Arrays.asList("$parts", List.of())), List.of(literal(part)))));
+        if (window.getStats() != null) {
+            for (Map.Entry<String, EnvironmentData.SensorStats> entry : window.getStats().entrySet()) {
+                String path = "$stats." + entry.getKey() + ".";
+                EnvironmentData.SensorStats stats = entry.getValue();
+                merged.append("stats." + entry.getKey(), new Document()
+                        .append("count", add(path + "count", stats.getCount()))
+                        .append("sum", add(path + "sum", stats.getSum()))
+                        .append("sumOfSquares", add(path + "sumOfSquares", stats.getSumOfSquares()))
+                        .append("min", new Document("$min", Arrays.asList(path + "min", stats.getMin())))
+                        .append("max", new Document("$max", Arrays.asList(path + "max", stats.getMax()))));
+            }
+        }
+        Document means = new Document()
+                .append("temperature", mean("temperature", window.getTemperature()))
+                .append("humidity", mean("humidity", window.getHumidity()))
+                .append("soilMoisture", mean("soilMoisture", window.getSoilMoisture()));
+
+        Document filter = new Document("_id", window.getId()).append("parts", new Document("$ne", part));
+        List<Document> update = List.of(new Document("$set", merged), new Document("$set", means));
+        MongoCollection<Document> collection =
+                mongoTemplate.getCollection(mongoTemplate.getCollectionName(EnvironmentData.class));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                collection.updateOne(filter, update, new UpdateOptions().upsert(true));
+                return window;
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                if (attempt == 2) {
+                    // The window exists and still did not match: this part is already in it
+                    return window;
+                }
+            }
+        }
+    }
+
+    private static Document add(String field, Object value) {
+        return new Document("$add", Arrays.asList(new Document("$ifNull", Arrays.asList(field, 0)), value));
+    }
+
+    private static Document literal(Object value) {
+        return new Document("$literal", value);
+    }
+
+    /**
+     * Mean from the merged stats; a sensor without samples keeps a carried-forward value, the newest
+     * part's if it has one
+     */
+    private static Document mean(String sensor, Double incoming) {
+        String count = "$stats." + sensor + ".count";
+        return new Document("$cond", Arrays.asList(
+                new Document("$gt", Arrays.asList(new Document("$ifNull", Arrays.asList(count, 0)), 0)),
+                new Document("$divide", Arrays.asList("$stats." + sensor + ".sum", count)),
+                new Document("$ifNull", Arrays.asList(incoming, "$" + sensor))));
+    }
+
+    /**
+     * One unordered insertMany: the server applies the batch in any order and keeps going past
+     * duplicate keys, which are counted as already stored
+     */
+    @Override
+    public int insertAll(List<EnvironmentData> batch) {
+        return insertUnordered(batch, stored -> { });
+    }
+
+    /**
+     * The same insertMany, with each window's part stored alongside it; the windows that hit a
+     * duplicate key are merged one by one
+     */
+    @Override
+    public int insertOrMergeAll(List<EnvironmentData> windows) {
+        return insertUnordered(windows, window -> mergeWindow(window, window.getParts().get(0)));
+    }
+
+    private int insertUnordered(List<EnvironmentData> batch, Consumer<EnvironmentData> alreadyStored) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        try {
+            return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, EnvironmentData.class)
+                    .insert(batch)
+                    .execute()
+                    .getInsertedCount();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+            for (BulkWriteError error : e.getErrors()) {
+                alreadyStored.accept(batch.get(error.getIndex()));
+            }
+            return e.getResult().getInsertedCount();
+        }
+    }
+
+    /**
+     * Oldest first from a cursor, so memory does not grow with the range
+     */
+    @Override
+    public void forEachInRange(LocalDateTime start, LocalDateTime end, Set<String> deviceIds,
+                               Consumer<EnvironmentData> consumer) {
+        Criteria criteria = Criteria.where("timestamp").gte(start).lt(end);
+        if (deviceIds != null) {
+            criteria = criteria.and("deviceId").in(deviceIds);
+        }
+        Query query = Query.query(criteria).with(Sort.by("timestamp")).cursorBatchSize(CURSOR_BATCH_SIZE);
+        try (Stream<EnvironmentData> stream = mongoTemplate.stream(query, EnvironmentData.class)) {
+            stream.forEach(consumer);
+        }
+    }
+
+    @Override
+    public List<EnvironmentData> findRecent(int limit) {
+        return environmentDataRepository.findByOrderByTimestampDesc(Limit.of(limit));
+    }
+
+    @Override
+    public List<EnvironmentData> findBetween(LocalDateTime start, LocalDateTime end) {
+        return environmentDataRepository.findByTimestampBetweenOrderByTimestampDesc(start, end);
+    }
+}
@@ -0,0 +1,16 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.RipenessRollup;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RipenessRollupRepository extends MongoRepository<RipenessRollup, String> {
+
+    @Query(value = "{ 'granularity': ?0, 'bucketStart': { $gte: ?1, $lte: ?2 } }", sort = "{ 'bucketStart': 1 }")
+    List<RipenessRollup> findBuckets(String granularity, LocalDateTime start, LocalDateTime end);
+}
@@ -0,0 +1,12 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ThresholdRuleRepository extends MongoRepository<ThresholdRule, String> {
+    List<ThresholdRule> findByEnabledTrue();
+}
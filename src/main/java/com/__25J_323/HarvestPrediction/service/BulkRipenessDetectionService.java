@@ -0,0 +1,325 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.BulkDetectionProgress;
+import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.repository.RipenessDataRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Runs ripeness detection over every image in a zip / tar / tar.gz archive.
+ * Entries are extracted as the archive is read, detection runs with bounded parallelism,
+ * and results are bulk-inserted in batches.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class BulkRipenessDetectionService {
+
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("jpg", "jpeg", "png", "bmp", "webp");
+
+    private final RipenessDetectionService ripenessDetectionService;
+    private final RipenessDataRepository ripenessDataRepository;
+    private final RipenessAnalyticsService ripenessAnalyticsService;
+
+    @Value("${ripeness.bulk.parallelism:4}")
+    private int parallelism;
+
+    @Value("${ripeness.bulk.batch-size:50}")
+    private int batchSize;
+
+    @Value("${ripeness.bulk.max-entry-bytes:26214400}")
+    private long maxEntryBytes;
+
+    private ExecutorService archiveExecutor;
+    private ExecutorService detectionExecutor;
+    // At most parallelism detections at once over all archives, whatever the executor
+    private Semaphore detectionPermits;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @PostConstruct
+    public void init() {
+        detectionPermits = new Semaphore(parallelism);
+        if (virtualThreads) {
+            // Detection is I/O bound (Flask call, file write); detectionPermits keeps it at parallelism
+            archiveExecutor = Executors.newVirtualThreadPerTaskExecutor();
+            detectionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            archiveExecutor = Executors.newCachedThreadPool();
+            detectionExecutor = Executors.newFixedThreadPool(parallelism);
+        }
+    }
+
+    /**
+     * Process an archive on a background thread, reporting progress after each image
+     */
+    public void submitArchive(String archiveName, InputStream archive, Consumer<BulkDetectionProgress> listener) {
+        archiveExecutor.execute(() -> {
+            try (InputStream in = archive) {
+                processArchive(archiveName, in, listener);
+            } catch (Exception e) {
+                log.error("Error processing archive {}", archiveName, e);
+                BulkDetectionProgress failed = new BulkDetectionProgress();
+                failed.setArchiveName(archiveName);
+                failed.setDone(true);
+                failed.setError(e.getMessage());
+                listener.accept(failed);
+            }
+        });
+    }
+
+    public BulkDetectionProgress processArchive(String archiveName, InputStream archive,
+                                                Consumer<BulkDetectionProgress> listener)
+            throws IOException, ArchiveException, InterruptedException {
+        BulkDetectionProgress progress = new BulkDetectionProgress();
+        progress.setArchiveName(archiveName);
+        // Counters change under the lock; the listener writes to the client outside it, so a slow
+        // client holds up at most the one worker delivering, never the others
+        ReentrantLock progressLock = new ReentrantLock();
+        ProgressPublisher publisher = new ProgressPublisher(listener);
+
+        // At most 2x parallelism images are held in memory at once
+        int maxInFlight = parallelism * 2;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<RipenessData> pending = new ArrayList<>(batchSize);
+
+        try (ArchiveInputStream<? extends ArchiveEntry> entries = openArchive(archive)) {
+            ArchiveEntry entry;
+            while ((entry = entries.getNextEntry()) != null) {
+                boolean skip = !isImage(entry) || !entries.canReadEntryData(entry);
+                progressLock.lock();
+                try {
+                    progress.setEntriesRead(progress.getEntriesRead() + 1);
+                    if (skip) {
+                        progress.setEntriesSkipped(progress.getEntriesSkipped() + 1);
+                    }
+                } finally {
+                    progressLock.unlock();
+                }
+                if (skip) {
+                    continue;
+                }
+
+                String name = FilenameUtils.getName(entry.getName());
+                byte[] bytes = entries.readNBytes((int) Math.min(maxEntryBytes + 1, Integer.MAX_VALUE - 8));
+                if (bytes.length > maxEntryBytes) {
+                    log.warn("Skipping archive entry {}: larger than {} bytes", name, maxEntryBytes);
+                    report(progress, progressLock, publisher, 0, 0, 1, 0);
+                    continue;
+                }
+
+                inFlight.acquire();
+                detectionExecutor.execute(() -> {
+                    try {
+                        RipenessData result;
+                        try {
+                            detectionPermits.acquire();
+                            try {
+                                result = ripenessDetectionService.analyzeImage(name, bytes);
+                            } finally {
+                                detectionPermits.release();
+                            }
+                        } catch (Exception e) {
+                            log.warn("Ripeness detection failed for archive entry {}: {}", name, e.getMessage());
+                            report(progress, progressLock, publisher, 0, 1, 0, 0);
+                            return;
+                        }
+                        List<RipenessData> batch = null;
+                        synchronized (pending) {
+                            pending.add(result);
+                            if (pending.size() >= batchSize) {
+                                batch = new ArrayList<>(pending);
+                                pending.clear();
+                            }
+                        }
+                        report(progress, progressLock, publisher, 1, 0, 0, 0);
+                        if (batch != null) {
+                            saveBatch(batch, progress, progressLock, publisher);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            // Wait for in-flight detections, then save what they left behind even if reading the
+            // archive failed
+            inFlight.acquireUninterruptibly(maxInFlight);
+            inFlight.release(maxInFlight);
+            List<RipenessData> remaining;
+            synchronized (pending) {
+                remaining = new ArrayList<>(pending);
+                pending.clear();
+            }
+            saveBatch(remaining, progress, progressLock, publisher);
+        }
+
+        progressLock.lock();
+        try {
+            progress.setDone(true);
+            publisher.offer(copyOf(progress));
+        } finally {
+            progressLock.unlock();
+        }
+        publisher.deliver();
+        log.info("Processed archive {}: {} entries, {} images, {} failed, {} saved",
+                archiveName, progress.getEntriesRead(), progress.getImagesProcessed(),
+                progress.getImagesFailed(), progress.getImagesSaved());
+        return progress;
+    }
+
+    private ArchiveInputStream<? extends ArchiveEntry> openArchive(InputStream archive) throws IOException, ArchiveException {
+        InputStream in = new BufferedInputStream(archive);
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        if (b1 == 0x1f && b2 == 0x8b) {
+            in = new BufferedInputStream(new GzipCompressorInputStream(in));
+        }
+        return new ArchiveStreamFactory().createArchiveInputStream(in);
+    }
+
+    /**
+     * Insert a batch, retrying once; a batch that still fails counts all its images as failed
+     */
+    private void saveBatch(List<RipenessData> batch, BulkDetectionProgress progress, ReentrantLock progressLock,
+                           ProgressPublisher publisher) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<RipenessData> saved;
+        try {
+            saved = insert(batch);
+        } catch (Exception first) {
+            log.warn("Saving {} ripeness results failed, retrying: {}", batch.size(), first.getMessage());
+            try {
+                saved = insert(batch);
+            } catch (Exception e) {
+                log.error("Could not save {} ripeness results", batch.size(), e);
+                report(progress, progressLock, publisher, 0, batch.size(), 0, 0);
+                return;
+            }
+        }
+        report(progress, progressLock, publisher, 0, 0, 0, saved.size());
+    }
+
+    private List<RipenessData> insert(List<RipenessData> batch) {
+        List<RipenessData> saved = ripenessDataRepository.insert(batch);
+        saved.forEach(ripenessAnalyticsService::recordDetection);
+        return saved;
+    }
+
+    private void report(BulkDetectionProgress progress, ReentrantLock progressLock, ProgressPublisher publisher,
+                        int processed, int failed, int skipped, int saved) {
+        progressLock.lock();
+        try {
+            progress.setImagesProcessed(progress.getImagesProcessed() + processed);
+            progress.setImagesFailed(progress.getImagesFailed() + failed);
+            progress.setEntriesSkipped(progress.getEntriesSkipped() + skipped);
+            progress.setImagesSaved(progress.getImagesSaved() + saved);
+            // Offered under the lock, so a newer copy never gets replaced by an older one
+            publisher.offer(copyOf(progress));
+        } finally {
+            progressLock.unlock();
+        }
+        publisher.deliver();
+    }
+
+    private static BulkDetectionProgress copyOf(BulkDetectionProgress progress) {
+        BulkDetectionProgress copy = new BulkDetectionProgress();
+        copy.setArchiveName(progress.getArchiveName());
+        copy.setEntriesRead(progress.getEntriesRead());
+        copy.setImagesProcessed(progress.getImagesProcessed());
+        copy.setImagesFailed(progress.getImagesFailed());
+        copy.setImagesSaved(progress.getImagesSaved());
+        copy.setEntriesSkipped(progress.getEntriesSkipped());
+        copy.setDone(progress.isDone());
+        copy.setError(progress.getError());
+        return copy;
+    }
+
+    private static boolean isImage(ArchiveEntry entry) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        String name = FilenameUtils.getName(entry.getName());
+        if (name.startsWith(".")) {
+            return false; // macOS resource forks and hidden files
+        }
+        return IMAGE_EXTENSIONS.contains(FilenameUtils.getExtension(name).toLowerCase(Locale.ROOT));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        archiveExecutor.shutdownNow();
+        detectionExecutor.shutdown();
+        try {
+            if (!detectionExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                detectionExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            detectionExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands progress copies to the listener one at a time and newest only: a worker finding another
+     * one delivering leaves its copy behind for it and carries on
+     */
+    private static final class ProgressPublisher {
+        private final Consumer<BulkDetectionProgress> listener;
+        private final AtomicReference<BulkDetectionProgress> latest = new AtomicReference<>();
+        private final AtomicBoolean delivering = new AtomicBoolean();
+
+        ProgressPublisher(Consumer<BulkDetectionProgress> listener) {
+            this.listener = listener;
+        }
+
+        void offer(BulkDetectionProgress copy) {
+            latest.set(copy);
+        }
+
+        void deliver() {
+            while (latest.get() != null && delivering.compareAndSet(false, true)) {
+                try {
+                    BulkDetectionProgress next;
+                    while ((next = latest.getAndSet(null)) != null) {
+                        listener.accept(next);
+                    }
+                } finally {
+                    delivering.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.BackpressureSessionDecorator;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Compact CBOR, delta-encoded variants of /topic/environment and /topic/device-status.
+ * Clients opt in by subscribing to the ".cbor" destinations over the raw /ws-native endpoint
+ * (SockJS is text-only). Every frame carries a sequence number "s"; keyframes ("k": true) hold the
+ * full state and are sent to everyone every N frames, and all other frames only hold fields that
+ * changed. A new compact subscriber gets its own keyframe carrying the current sequence number, so
+ * nobody else sees an extra frame. A client that sees a sequence gap waits for the next keyframe.
+ */
+@Service
+@Slf4j
+public class CompactFrameService {
+
+    public static final String ENVIRONMENT_DESTINATION = "/topic/environment.cbor";
+    public static final String DEVICE_STATUS_DESTINATION = "/topic/device-status.cbor";
+    public static final MimeType CBOR = MimeType.valueOf("application/cbor");
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MessageChannel clientOutboundChannel;
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final boolean enabled;
+    // Timestamps go out as epoch millis in the zone the window ids use
+    private final ZoneId zone;
+
+    private final DeltaEncoder environmentEncoder;
+    private final DeltaEncoder statusEncoder;
+
+    public CompactFrameService(SimpMessagingTemplate messagingTemplate,
+                               @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                               @Value("${websocket.compact.enabled:true}") boolean enabled,
+                               @Value("${websocket.compact.keyframe-interval:30}") int keyframeInterval,
+                               Clock clock) {
+        this.messagingTemplate = messagingTemplate;
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.enabled = enabled;
+        this.zone = clock.getZone();
+        this.environmentEncoder = new DeltaEncoder(cborMapper, keyframeInterval);
+        this.statusEncoder = new DeltaEncoder(cborMapper, keyframeInterval);
+    }
+
+    public void publishEnvironment(EnvironmentData data) {
+        if (enabled) {
+            send(ENVIRONMENT_DESTINATION, environmentEncoder.encode(environmentFields(data, zone)));
+        }
+    }
+
+    public void publishDeviceStatus(Map<String, Object> status) {
+        if (enabled) {
+            Map<String, Object> fields = new HashMap<>();
+            status.forEach((key, value) -> fields.put(key, compactValue(value, zone)));
+            send(DEVICE_STATUS_DESTINATION, statusEncoder.encode(fields));
+        }
+    }
+
+    /**
+     * A new compact subscriber needs full state: send that session alone a keyframe of the current
+     * state. Called once the broker has registered the subscription, so deltas after the keyframe
+     * reach it too.
+     */
+    public void onSubscribed(String sessionId, String subscriptionId, String destination) {
+        if (!enabled || destination == null || sessionId == null || subscriptionId == null) {
+            return;
+        }
+        byte[] keyframe = destination.equals(ENVIRONMENT_DESTINATION) ? environmentEncoder.snapshot()
+                : destination.equals(DEVICE_STATUS_DESTINATION) ? statusEncoder.snapshot()
+                : null;
+        if (keyframe == null) {
+            return;
+        }
+        try {
+            // Straight to the session, the way the broker addresses a subscriber, instead of through the topic
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setSessionId(sessionId);
+            accessor.setSubscriptionId(subscriptionId);
+            accessor.setDestination(destination);
+            accessor.setContentType(CBOR);
+            accessor.setNativeHeader(BackpressureSessionDecorator.RELIABLE_HEADER, "true");
+            clientOutboundChannel.send(MessageBuilder.createMessage(keyframe, accessor.getMessageHeaders()));
+        } catch (Exception e) {
+            log.error("Error sending compact keyframe to session {}", sessionId, e);
+        }
+    }
+
+    private void send(String destination, byte[] frame) {
+        if (frame == null) {
+            return;
+        }
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+            accessor.setContentType(CBOR);
+            // A lost delta corrupts the client's state until the next keyframe, so deltas are never dropped
+            accessor.setNativeHeader(BackpressureSessionDecorator.RELIABLE_HEADER, "true");
+            accessor.setLeaveMutable(true);
+            Message<byte[]> message = MessageBuilder.createMessage(frame, accessor.getMessageHeaders());
+            // send() skips payload conversion, so the CBOR bytes go out as-is
+            messagingTemplate.send(destination, message);
+        } catch (Exception e) {
+            log.error("Error sending compact frame to {}", destination, e);
+        }
+    }
+
+    static Map<String, Object> environmentFields(EnvironmentData data, ZoneId zone) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("t", data.getTemperature());
+        fields.put("h", data.getHumidity());
+        fields.put("m", data.getSoilMoisture());
+        fields.put("ts", compactValue(data.getTimestamp(), zone));
+        return fields;
+    }
+
+    private static Object compactValue(Object value, ZoneId zone) {
+        if (value instanceof LocalDateTime time) {
+            return time.atZone(zone).toInstant().toEpochMilli();
+        }
+        return value;
+    }
+
+    /**
+     * Tracks the last state sent on one destination and produces keyframes or deltas against it
+     */
+    static class DeltaEncoder {
+        private final ObjectMapper mapper;
+        private final int keyframeInterval;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Map<String, Object> lastState = new HashMap<>();
+        private long sequence = 0;
+        private int sinceKeyframe = Integer.MAX_VALUE;
+
+        DeltaEncoder(ObjectMapper mapper, int keyframeInterval) {
+            this.mapper = mapper;
+            this.keyframeInterval = keyframeInterval;
+        }
+
+        byte[] encode(Map<String, Object> state) {
+            lock.lock();
+            try {
+                Map<String, Object> frame = new LinkedHashMap<>();
+                frame.put("s", ++sequence);
+                if (sinceKeyframe >= keyframeInterval) {
+                    frame.put("k", true);
+                    frame.put("d", state);
+                    sinceKeyframe = 0;
+                } else {
+                    Map<String, Object> changed = new HashMap<>();
+                    state.forEach((key, value) -> {
+                        if (!lastState.containsKey(key) || !Objects.equals(lastState.get(key), value)) {
+                            changed.put(key, value);
+                        }
+                    });
+                    List<String> removed = new ArrayList<>();
+                    for (String key : lastState.keySet()) {
+                        if (!state.containsKey(key)) {
+                            removed.add(key);
+                        }
+                    }
+                    if (changed.isEmpty() && removed.isEmpty()) {
+                        sequence--;
+                        return null; // nothing to send
+                    }
+                    frame.put("d", changed);
+                    if (!removed.isEmpty()) {
+                        frame.put("r", removed);
+                    }
+                    sinceKeyframe++;
+                }
+                lastState = new HashMap<>(state);
+                return mapper.writeValueAsBytes(frame);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not encode compact frame", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Keyframe of the last state sent, under the last sequence number sent, for one new
+         * subscriber; the shared sequence does not move. Null before the first frame.
+         */
+        byte[] snapshot() {
+            lock.lock();
+            try {
+                if (lastState.isEmpty()) {
+                    return null;
+                }
+                Map<String, Object> frame = new LinkedHashMap<>();
+                frame.put("s", sequence);
+                frame.put("k", true);
+                frame.put("d", lastState);
+                return mapper.writeValueAsBytes(frame);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not encode compact frame", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-device online/offline detection on a hashed timing wheel.
+ * <p>
+ * A message only writes the device's monotonic deadline (no allocation, no lock), so the cost
+ * per message is constant. The wheel thread visits one slot per tick; an entry whose deadline has
+ * moved on since it was slotted is lazily re-slotted, and one whose deadline has passed goes
+ * offline. Work per tick is proportional to the entries in that slot, not to the number of devices,
+ * and offline transitions fire within one tick of the exact timeout. Listeners only hear about
+ * transitions, one at a time and in order: each notification reports the device's state at the time
+ * it is delivered, so an expiry that loses a race with a touch is never reported after the touch.
+ * A device that stays offline for evictAfter is slotted once more and then forgotten.
+ */
+@Slf4j
+public class DeviceLivenessTracker {
+
+    public interface Listener {
+        void onOnline(String deviceId);
+
+        void onOffline(String deviceId, long silentNanos);
+    }
+
+    public static final long DEFAULT_EVICT_AFTER_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private final long timeoutNanos;
+    private final long evictAfterNanos;
+    private final long tickNanos;
+    private final int mask;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    private final Map<String, Entry> devices = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    // Held while listeners run; never taken while holding wheelLock
+    private final ReentrantLock notifyLock = new ReentrantLock();
+    private final List<Entry>[] wheel;
+    private long currentTick = 0;
+
+    private volatile Thread ticker;
+    private volatile boolean running;
+
+    public DeviceLivenessTracker(long timeoutMillis, long tickMillis, int wheelSize) {
+        this(timeoutMillis, tickMillis, wheelSize, DEFAULT_EVICT_AFTER_MILLIS, System::nanoTime);
+    }
+
+    public DeviceLivenessTracker(long timeoutMillis, long tickMillis, int wheelSize, LongSupplier nanoClock) {
+        this(timeoutMillis, tickMillis, wheelSize, DEFAULT_EVICT_AFTER_MILLIS, nanoClock);
+    }
+
+    @SuppressWarnings("unchecked")
+    public DeviceLivenessTracker(long timeoutMillis, long tickMillis, int wheelSize, long evictAfterMillis,
+                                 LongSupplier nanoClock) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two: " + wheelSize);
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.evictAfterNanos = TimeUnit.MILLISECONDS.toNanos(evictAfterMillis);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        this.wheel = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Record a message from a device and push its offline deadline out by the timeout
+     */
+    public void touch(String deviceId) {
+        long now = nanoClock.getAsLong();
+        while (true) {
+            Entry entry = devices.get(deviceId);
+            if (entry == null) {
+                entry = devices.computeIfAbsent(deviceId, Entry::new);
+            }
+            entry.lastSeenNanos = now;
+            entry.deadlineNanos = now + timeoutNanos;
+            if (entry.online) {
+                return;
+            }
+
+            boolean cameOnline = false;
+            boolean evicted = false;
+            wheelLock.lock();
+            try {
+                if (entry.evicted) {
+                    evicted = true; // removed from the map under our feet; start over with a fresh entry
+                } else if (!entry.online) {
+                    if (entry.slotted) {
+                        // Still waiting in its eviction slot
+                        wheel[(int) (entry.slotTick & mask)].remove(entry);
+                    }
+                    entry.online = true;
+                    schedule(entry);
+                    cameOnline = true;
+                }
+            } finally {
+                wheelLock.unlock();
+            }
+            if (cameOnline) {
+                notifyListeners(entry, now);
+            }
+            if (!evicted) {
+                return;
+            }
+        }
+    }
+
+    public boolean isOnline(String deviceId) {
+        Entry entry = devices.get(deviceId);
+        return entry != null && entry.online;
+    }
+
+    /**
+     * Monotonic time of the last message from the device, or -1 if never seen
+     */
+    public long lastSeenNanos(String deviceId) {
+        Entry entry = devices.get(deviceId);
+        return entry != null ? entry.lastSeenNanos : -1;
+    }
+
+    public long getTimeoutSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(timeoutNanos);
+    }
+
+    public int trackedDevices() {
+        return devices.size();
+    }
+
+    public long onlineDevices() {
+        return devices.values().stream().filter(entry -> entry.online).count();
+    }
+
+    /**
+     * Process every tick up to the given monotonic time. Called by the wheel thread; tests and replay
+     * tools can drive it directly with their own clock.
+     */
+    public void advanceTo(long nowNanos) {
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        List<Entry> expired = new ArrayList<>();
+
+        wheelLock.lock();
+        try {
+            while (currentTick < targetTick) {
+                currentTick++;
+                List<Entry> slot = wheel[(int) (currentTick & mask)];
+                if (slot.isEmpty()) {
+                    continue;
+                }
+                List<Entry> due = new ArrayList<>(slot);
+                slot.clear();
+                for (Entry entry : due) {
+                    if (entry.slotTick > currentTick) {
+                        slot.add(entry); // belongs to a later revolution
+                    } else if (!entry.online) {
+                        // Offline for evictAfter without a message
+                        entry.slotted = false;
+                        entry.evicted = true;
+                        devices.remove(entry.deviceId, entry);
+                    } else if (entry.deadlineNanos - nowNanos > 0) {
+                        schedule(entry); // touched since it was slotted
+                    } else {
+                        entry.online = false;
+                        // A touch racing with expiry either sees online == false and re-arms itself,
+                        // or wrote its deadline before this re-read
+                        if (entry.deadlineNanos - nowNanos > 0) {
+                            entry.online = true;
+                            schedule(entry);
+                        } else {
+                            expired.add(entry);
+                            scheduleEviction(entry);
+                        }
+                    }
+                }
+            }
+        } finally {
+            wheelLock.unlock();
+        }
+
+        for (Entry entry : expired) {
+            notifyListeners(entry, nowNanos);
+        }
+    }
+
+    /**
+     * Tell listeners about the entry's current state if it differs from the last state they heard.
+     * Every transition calls this after making it, so a notification that lost a race reports
+     * nothing rather than a stale state.
+     */
+    private void notifyListeners(Entry entry, long nowNanos) {
+        notifyLock.lock();
+        try {
+            boolean online = entry.online;
+            if (online == entry.notifiedOnline) {
+                return;
+            }
+            entry.notifiedOnline = online;
+            long silent = nowNanos - entry.lastSeenNanos;
+            for (Listener listener : listeners) {
+                try {
+                    if (online) {
+                        listener.onOnline(entry.deviceId);
+                    } else {
+                        listener.onOffline(entry.deviceId, silent);
+                    }
+                } catch (Exception e) {
+                    log.error("Error in liveness listener for device {}", entry.deviceId, e);
+                }
+            }
+        } finally {
+            notifyLock.unlock();
+        }
+    }
+
+    /**
+     * Slot the entry at the first tick boundary at or after its deadline. Caller holds wheelLock.
+     */
+    private void schedule(Entry entry) {
+        slot(entry, entry.deadlineNanos);
+    }
+
+    /**
+     * Slot an entry that just went offline at the tick where it will be forgotten. Caller holds wheelLock.
+     */
+    private void scheduleEviction(Entry entry) {
+        slot(entry, entry.deadlineNanos + evictAfterNanos);
+    }
+
+    private void slot(Entry entry, long atNanos) {
+        long ticks = Math.floorDiv(atNanos - startNanos + tickNanos - 1, tickNanos);
+        entry.slotTick = Math.max(ticks, currentTick + 1);
+        entry.slotted = true;
+        wheel[(int) (entry.slotTick & mask)].add(entry);
+    }
+
+    public void start() {
+        running = true;
+        ticker = new Thread(() -> {
+            long next = nanoClock.getAsLong() + tickNanos;
+            while (running) {
+                long wait = next - nanoClock.getAsLong();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                try {
+                    advanceTo(nanoClock.getAsLong());
+                } catch (Exception e) {
+                    log.error("Error advancing liveness wheel", e);
+                }
+                next += tickNanos;
+            }
+        }, "device-liveness-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread thread = ticker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static final class Entry {
+        final String deviceId;
+        volatile long lastSeenNanos;
+        volatile long deadlineNanos;
+        volatile boolean online;
+        // Guarded by wheelLock
+        long slotTick;
+        boolean slotted;
+        boolean evicted;
+        // Guarded by notifyLock
+        boolean notifiedOnline;
+
+        Entry(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+}
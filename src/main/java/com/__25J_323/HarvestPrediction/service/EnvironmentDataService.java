@@ -1,33 +1,110 @@
 package com.__25J_323.HarvestPrediction.service;
 
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
-import com.__25J_323.HarvestPrediction.repository.EnvironmentDataRepository;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class EnvironmentDataService {
 
-    private final EnvironmentDataRepository environmentDataRepository;
+    private static final int RECENT_READINGS = 24;
+
+    private final EnvironmentDataStore environmentDataStore;
+    private final RecentReadingsBuffer recentReadingsBuffer;
+    private final Clock clock;
+
+    @Value("${environment.window.seconds:30}")
+    private long windowSeconds = 30;
+
+    @Value("${environment.recent.view-minutes:15}")
+    private long recentViewMinutes = 15;
+
+    // In a shared-subscription group each instance only buffers the devices it owns
+    @Value("${mqtt.shared-subscription.group:}")
+    private String sharedGroup = "";
 
     public EnvironmentData saveEnvironmentData(EnvironmentData data) {
         if (data.getTimestamp() == null) {
-            data.setTimestamp(LocalDateTime.now());
+            data.setTimestamp(LocalDateTime.now(clock));
         }
-        return environmentDataRepository.save(data);
+        return environmentDataStore.save(data);
+    }
+
+    /**
+     * One document per device and window: parts of the same window written by another instance,
+     * a backfilled batch or an import are merged into it
+     */
+    public EnvironmentData saveWindow(EnvironmentData window, String part) {
+        return environmentDataStore.mergeWindow(window, part);
     }
 
     public List<EnvironmentData> getRecentEnvironmentData() {
-        return environmentDataRepository.findTop24ByOrderByTimestampDesc();
+        return environmentDataStore.findRecent(RECENT_READINGS);
+    }
+
+    /**
+     * Every reading of the last view-minutes from the in-memory buffer, newest first, or the latest
+     * stored windows when the buffer has nothing for that time
+     */
+    public List<EnvironmentData> getRecentReadings() {
+        long endMillis = clock.millis();
+        long coveredFrom = sharedGroup.isEmpty() ? recentReadingsBuffer.coveredFrom() : Long.MAX_VALUE;
+        List<EnvironmentData> readings = coveredFrom < endMillis
+                ? recentReadingsBuffer.between(Math.max(endMillis - TimeUnit.MINUTES.toMillis(recentViewMinutes), coveredFrom),
+                endMillis)
+                : List.of();
+        return readings.isEmpty() ? getRecentEnvironmentData() : readings;
     }
 
+    /**
+     * Windows with their timestamp strictly between start and end, newest first. The windows from
+     * the first one starting after the recent-readings buffer's coverage are aggregated from memory
+     * and include the one still open; only the earlier ones go to the store.
+     */
     public List<EnvironmentData> getEnvironmentDataBetween(LocalDateTime start, LocalDateTime end) {
-        return environmentDataRepository.findByTimestampBetweenOrderByTimestampDesc(start, end);
+        long coveredFrom = sharedGroup.isEmpty() ? recentReadingsBuffer.coveredFrom() : Long.MAX_VALUE;
+        long windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        // A window partly before the coverage comes whole from the store
+        long split = coveredFrom == Long.MAX_VALUE ? Long.MAX_VALUE
+                : coveredFrom + Math.floorMod(-coveredFrom, windowMillis);
+        long startMillis = toMillis(start);
+        long endMillis = toMillis(end);
+        if (endMillis <= split) {
+            return environmentDataStore.findBetween(start, end);
+        }
+        List<EnvironmentData> readings = new ArrayList<>();
+        for (EnvironmentData window : recentReadingsBuffer.windows(split, endMillis, windowMillis)) {
+            long at = toMillis(window.getTimestamp());
+            if (at > startMillis && at < endMillis) {
+                readings.add(window);
+            }
+        }
+        if (startMillis < split) {
+            // Up to and including the window that ends at split
+            LocalDateTime storeEnd = LocalDateTime.ofInstant(Instant.ofEpochMilli(split + 1), clock.getZone());
+            readings.addAll(environmentDataStore.findBetween(start, storeEnd.isBefore(end) ? storeEnd : end));
+        }
+        return readings;
+    }
+
+    public List<EnvironmentData> getDownsampledEnvironmentData(LocalDateTime start, LocalDateTime end, Duration bucket) {
+        return environmentDataStore.findDownsampled(start, end, bucket);
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(clock.getZone()).toInstant().toEpochMilli();
     }
 }
@@ -0,0 +1,59 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentImportProgress;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Command-line import: start the application with --environment.import.file=&lt;path&gt; (and
+ * --environment.import.device-id=&lt;id&gt; for files without a device column) to import the file,
+ * log progress and exit with 0 on success or 1 on failure.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty("environment.import.file")
+public class EnvironmentImportCommand implements ApplicationRunner {
+
+    private final EnvironmentImportService environmentImportService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${environment.import.file}")
+    private String file;
+
+    @Value("${environment.import.device-id:}")
+    private String deviceId;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Path path = Path.of(file);
+        int exitCode;
+        try {
+            environmentImportService.importFile(path, path.getFileName().toString(),
+                    deviceId.isBlank() ? null : deviceId, EnvironmentImportCommand::logProgress);
+            exitCode = 0;
+        } catch (Exception e) {
+            log.error("Import of {} failed", path, e);
+            exitCode = 1;
+        }
+        int status = exitCode;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+    private static void logProgress(EnvironmentImportProgress progress) {
+        if (!progress.isDone()) {
+            log.info("Imported {} rows ({} rejected), {} of {} MB, {} rows/s", progress.getRowsImported(),
+                    progress.getRowsRejected(), progress.getBytesRead() >> 20, progress.getBytesTotal() >> 20,
+                    progress.getRowsPerSecond());
+        }
+    }
+}
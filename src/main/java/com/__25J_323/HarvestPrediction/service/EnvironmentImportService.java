@@ -0,0 +1,578 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentImportProgress;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk import of historical readings from CSV or NDJSON files (see {@link EnvironmentRecordParser}),
+ * optionally gzipped.
+ * <p>
+ * The file is split into chunk-mb byte ranges cut at line ends and the chunks are parsed in parallel
+ * from a read-only mapping. Rows are aggregated into the same windows as live ingest, with the same
+ * ids ({@link EnvironmentData#windowId}), per-sensor stats and means, and each worker writes them in
+ * batch-size unordered bulk inserts. A window already stored, by live ingest or another import, gets
+ * the imported stats merged into it. Every window of one file carries the same part, derived from the
+ * file's content, so re-running an import merges nothing twice. Windows
+ * that may continue in another chunk (a device's first and last of each chunk) are merged across
+ * chunks and written at the end; this relies on each device's rows being in time order, as in an
+ * export. Afterwards the store is flushed and the recent readings buffer stops answering for the
+ * imported time range.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class EnvironmentImportService {
+
+    private static final long REPORT_INTERVAL_MILLIS = 500;
+    private static final int MAX_LOGGED_REJECTIONS = 10;
+    private static final int SCAN_BYTES = 64 * 1024;
+    private static final int MAX_HEADER_BYTES = 1024 * 1024;
+
+    private final EnvironmentDataStore environmentDataStore;
+    private final RecentReadingsBuffer recentReadingsBuffer;
+
+    // 0: two workers per core, so parsing overlaps the insert round trips
+    @Value("${environment.import.parallelism:0}")
+    private int parallelism;
+
+    @Value("${environment.window.seconds:30}")
+    private long windowSeconds = 30;
+
+    @Value("${environment.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${environment.import.chunk-mb:16}")
+    private int chunkMegabytes;
+
+    // Empty: the system temp directory
+    @Value("${environment.import.spool-directory:}")
+    private String spoolDirectory;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private ExecutorService importExecutor;
+    private ExecutorService chunkExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (parallelism <= 0) {
+            parallelism = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        // Uploads spend their time on the network, chunks on parsing: only the former gets virtual threads
+        importExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+        AtomicInteger workers = new AtomicInteger();
+        chunkExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "environment-import-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Spool an upload to disk and import it on a background thread, reporting progress about twice
+     * a second and once when done
+     */
+    public void submitUpload(String fileName, InputStream upload, String defaultDeviceId,
+                             Consumer<EnvironmentImportProgress> listener) {
+        importExecutor.execute(() -> {
+            Path spooled = null;
+            try (InputStream in = upload) {
+                spooled = createSpoolFile();
+                Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+                importFile(spooled, fileName, defaultDeviceId, listener);
+            } catch (Exception e) {
+                log.error("Error importing {}", fileName, e);
+                EnvironmentImportProgress failed = new EnvironmentImportProgress();
+                failed.setFileName(fileName);
+                failed.setDone(true);
+                failed.setError(e.getMessage());
+                listener.accept(failed);
+            } finally {
+                deleteQuietly(spooled);
+            }
+        });
+    }
+
+    /**
+     * Import a local file on the calling thread
+     *
+     * @throws IllegalArgumentException if the header cannot be used
+     */
+    public EnvironmentImportProgress importFile(Path file, String fileName, String defaultDeviceId,
+                                                Consumer<EnvironmentImportProgress> listener)
+            throws IOException, InterruptedException {
+        if (isGzip(file)) {
+            // Gzip cannot be split, so it is inflated to a plain file first
+            Path inflated = createSpoolFile();
+            try {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(file), SCAN_BYTES)) {
+                    Files.copy(in, inflated, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return importFile(inflated, fileName, defaultDeviceId, listener);
+            } finally {
+                deleteQuietly(inflated);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long firstLineEnd = lineEnd(channel, 0, MAX_HEADER_BYTES);
+            String firstLine = readLine(channel, 0, firstLineEnd);
+            ZoneId zone = ZoneId.systemDefault();
+            EnvironmentRecordParser parser = EnvironmentRecordParser.forFirstLine(firstLine, defaultDeviceId, zone);
+
+            ImportRun run = new ImportRun(fileName, parser.hasHeader() ? "csv" : "ndjson", size,
+                    TimeUnit.SECONDS.toMillis(windowSeconds), zone, importPart(channel, size), listener);
+            long dataStart = parser.hasHeader() ? firstLineEnd : 0;
+            run.bytesRead.add(dataStart);
+
+            List<Future<?>> chunks = new ArrayList<>();
+            long chunkBytes = (long) chunkMegabytes * 1024 * 1024;
+            for (long start = dataStart; start < size; ) {
+                long end = start + chunkBytes >= size ? size : lineEnd(channel, start + chunkBytes, Long.MAX_VALUE);
+                long chunkStart = start;
+                chunks.add(chunkExecutor.submit(() -> importChunk(channel, chunkStart, end, parser, run)));
+                start = end;
+            }
+            try {
+                for (Future<?> chunk : chunks) {
+                    chunk.get();
+                }
+            } catch (ExecutionException e) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                chunks.forEach(chunk -> chunk.cancel(true));
+                throw e;
+            }
+
+            // The windows cut by chunk boundaries, each merged from its parts
+            List<EnvironmentData> batch = new ArrayList<>(batchSize);
+            for (ImportedWindow window : run.edges.values()) {
+                batch.add(window.toEnvironmentData(run));
+                if (batch.size() >= batchSize) {
+                    run.windowsDone(batch.size(), environmentDataStore.insertOrMergeAll(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                run.windowsDone(batch.size(), environmentDataStore.insertOrMergeAll(batch));
+            }
+
+            environmentDataStore.flush();
+            LocalDateTime newest = run.newest;
+            if (newest != null) {
+                recentReadingsBuffer.markStoredUntil(newest.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+            EnvironmentImportProgress result = run.finish();
+            log.info("Imported {}: {} rows ({} rejected) into {} new windows ({} merged into stored ones) in {} ms, {} rows/s",
+                    fileName, result.getRowsImported(), result.getRowsRejected(), result.getWindowsInserted(),
+                    result.getWindowsAlreadyStored(), result.getElapsedMillis(), result.getRowsPerSecond());
+            return result;
+        }
+    }
+
+    private void importChunk(FileChannel channel, long start, long end, EnvironmentRecordParser parser, ImportRun run) {
+        MappedByteBuffer chunk;
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Per device, the window its rows currently go to; the first one is an edge
+        Map<String, ImportedWindow> current = new HashMap<>();
+        Set<String> pastFirstWindow = new HashSet<>();
+        List<EnvironmentData> batch = new ArrayList<>(batchSize);
+        byte[] line = new byte[256];
+        int limit = chunk.limit();
+        int lineStart = 0;
+        int reportStart = 0;
+        int rows = 0;
+        int rejected = 0;
+        LocalDateTime newest = null;
+
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit && chunk.get(i) != '\n') {
+                continue;
+            }
+            int length = i - lineStart;
+            if (length > 0 && chunk.get(lineStart + length - 1) == '\r') {
+                length--;
+            }
+            if (length > 0) {
+                if (length > line.length) {
+                    line = Arrays.copyOf(line, Math.max(length, line.length * 2));
+                }
+                chunk.get(lineStart, line, 0, length);
+                String text = new String(line, 0, length, StandardCharsets.UTF_8);
+                try {
+                    EnvironmentData data = parser.parse(text);
+                    if (data != null) {
+                        rows++;
+                        if (newest == null || data.getTimestamp().isAfter(newest)) {
+                            newest = data.getTimestamp();
+                        }
+                        long windowStart = run.windowStart(
+                                data.getWindowStart() != null ? data.getWindowStart() : data.getTimestamp());
+                        ImportedWindow window = current.get(data.getDeviceId());
+                        if (window == null || windowStart > window.startMillis) {
+                            if (window != null) {
+                                if (pastFirstWindow.add(window.deviceId)) {
+                                    run.edge(window);
+                                } else {
+                                    batch.add(window.toEnvironmentData(run));
+                                }
+                            }
+                            window = new ImportedWindow(data.getDeviceId(), windowStart);
+                            current.put(data.getDeviceId(), window);
+                            window.add(data);
+                        } else if (windowStart == window.startMillis) {
+                            window.add(data);
+                        } else {
+                            // Out of order: its window may be written already, so it can only join an edge
+                            ImportedWindow late = new ImportedWindow(data.getDeviceId(), windowStart);
+                            late.add(data);
+                            run.edge(late);
+                        }
+                    }
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    run.logRejection(start + lineStart, e.getMessage());
+                }
+            }
+            lineStart = i + 1;
+
+            if (i == limit) {
+                // The last window of each device may continue in the next chunk
+                current.values().forEach(run::edge);
+            }
+            if (batch.size() >= batchSize || (i == limit && !batch.isEmpty())) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                run.windowsDone(batch.size(), environmentDataStore.insertOrMergeAll(batch));
+                batch = new ArrayList<>(batchSize);
+            }
+            if (rows >= batchSize || i == limit) {
+                run.rowsDone(rows, rejected, Math.min(lineStart, limit) - reportStart, newest);
+                reportStart = Math.min(lineStart, limit);
+                rows = 0;
+                rejected = 0;
+            }
+        }
+    }
+
+    /**
+     * Part id of every window of this file: the same for the same content, whatever its name
+     */
+    private static String importPart(FileChannel channel, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+            crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+        }
+        return "import-" + size + "-" + Long.toHexString(crc.getValue());
+    }
+
+    private Path createSpoolFile() throws IOException {
+        if (spoolDirectory == null || spoolDirectory.isBlank()) {
+            return Files.createTempFile("environment-import-", ".part");
+        }
+        return Files.createTempFile(Files.createDirectories(Path.of(spoolDirectory)), "environment-import-", ".part");
+    }
+
+    private static boolean isGzip(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Position just past the first newline at or after from, or the end of the file
+     */
+    private static long lineEnd(FileChannel channel, long from, long maxBytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        long position = from;
+        long size = channel.size();
+        while (position < size) {
+            if (position - from >= maxBytes) {
+                throw new IllegalArgumentException("First line is longer than " + maxBytes + " bytes");
+            }
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static String readLine(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+            // keep reading
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).strip();
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete import spool file {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        importExecutor.shutdownNow();
+        chunkExecutor.shutdownNow();
+        try {
+            chunkExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Counters shared by the chunk workers of one import. Progress goes out at most every
+     * REPORT_INTERVAL_MILLIS; a worker that finds another one reporting just carries on.
+     */
+    private static final class ImportRun {
+        final String fileName;
+        final String format;
+        final long bytesTotal;
+        final Consumer<EnvironmentImportProgress> listener;
+        final long startedNanos = System.nanoTime();
+        final LongAdder bytesRead = new LongAdder();
+        final long windowMillis;
+        final ZoneId zone;
+        final String part;
+        final LongAdder rowsImported = new LongAdder();
+        final LongAdder rowsRejected = new LongAdder();
+        final LongAdder windowsWritten = new LongAdder();
+        final LongAdder windowsInserted = new LongAdder();
+        // Windows that may have rows in more than one chunk, by id
+        final Map<String, ImportedWindow> edges = new ConcurrentHashMap<>();
+        final AtomicInteger loggedRejections = new AtomicInteger();
+        // ReentrantLock rather than synchronized: the listener may write to a client while holding it
+        final ReentrantLock reportLock = new ReentrantLock();
+        long lastReportNanos = System.nanoTime();
+        volatile LocalDateTime newest;
+
+        ImportRun(String fileName, String format, long bytesTotal, long windowMillis, ZoneId zone, String part,
+                  Consumer<EnvironmentImportProgress> listener) {
+            this.fileName = fileName;
+            this.format = format;
+            this.bytesTotal = bytesTotal;
+            this.windowMillis = windowMillis;
+            this.zone = zone;
+            this.part = part;
+            this.listener = listener;
+        }
+
+        long windowStart(LocalDateTime timestamp) {
+            long millis = toMillis(timestamp);
+            return millis - Math.floorMod(millis, windowMillis);
+        }
+
+        long toMillis(LocalDateTime timestamp) {
+            return timestamp.atZone(zone).toInstant().toEpochMilli();
+        }
+
+        LocalDateTime toLocalDateTime(long millis) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+        }
+
+        void edge(ImportedWindow window) {
+            edges.merge(EnvironmentData.windowId(window.deviceId, window.startMillis), window, ImportedWindow::merge);
+        }
+
+        void windowsDone(int written, int inserted) {
+            windowsWritten.add(written);
+            windowsInserted.add(inserted);
+        }
+
+        void rowsDone(int rows, int rejected, long bytes, LocalDateTime chunkNewest) {
+            rowsImported.add(rows);
+            rowsRejected.add(rejected);
+            bytesRead.add(bytes);
+            if (chunkNewest != null) {
+                synchronized (this) {
+                    if (newest == null || chunkNewest.isAfter(newest)) {
+                        newest = chunkNewest;
+                    }
+                }
+            }
+            if (!reportLock.tryLock()) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                if (now - lastReportNanos >= TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL_MILLIS)) {
+                    lastReportNanos = now;
+                    listener.accept(snapshot(false));
+                }
+            } finally {
+                reportLock.unlock();
+            }
+        }
+
+        void logRejection(long offset, String reason) {
+            if (loggedRejections.incrementAndGet() <= MAX_LOGGED_REJECTIONS) {
+                log.warn("Skipping unreadable row of {} at byte {}: {}", fileName, offset, reason);
+            }
+        }
+
+        EnvironmentImportProgress finish() {
+            reportLock.lock();
+            try {
+                EnvironmentImportProgress done = snapshot(true);
+                listener.accept(done);
+                return done;
+            } finally {
+                reportLock.unlock();
+            }
+        }
+
+        private EnvironmentImportProgress snapshot(boolean done) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+            long imported = rowsImported.sum();
+            long inserted = windowsInserted.sum();
+            EnvironmentImportProgress progress = new EnvironmentImportProgress();
+            progress.setFileName(fileName);
+            progress.setFormat(format);
+            progress.setBytesTotal(bytesTotal);
+            progress.setBytesRead(bytesRead.sum());
+            progress.setRowsImported(imported);
+            progress.setWindowsInserted(inserted);
+            progress.setWindowsAlreadyStored(windowsWritten.sum() - inserted);
+            progress.setRowsRejected(rowsRejected.sum());
+            progress.setRowsPerSecond(elapsedMillis > 0 ? imported * 1000 / elapsedMillis : imported);
+            progress.setElapsedMillis(elapsedMillis);
+            progress.setDone(done);
+            return progress;
+        }
+    }
+
+    /**
+     * Rows of one device and window, or of the part of it in one chunk
+     */
+    private static final class ImportedWindow {
+        final String deviceId;
+        final long startMillis;
+        final EnvironmentData.SensorStats[] stats = new EnvironmentData.SensorStats[SensorWindowAggregator.SENSORS.length];
+
+        ImportedWindow(String deviceId, long startMillis) {
+            this.deviceId = deviceId;
+            this.startMillis = startMillis;
+        }
+
+        void add(EnvironmentData row) {
+            add(SensorWindowAggregator.TEMPERATURE, row.getTemperature());
+            add(SensorWindowAggregator.HUMIDITY, row.getHumidity());
+            add(SensorWindowAggregator.SOIL_MOISTURE, row.getSoilMoisture());
+        }
+
+        private void add(int sensor, Double value) {
+            if (value == null) {
+                return;
+            }
+            if (stats[sensor] == null) {
+                stats[sensor] = new EnvironmentData.SensorStats();
+            }
+            stats[sensor].add(value);
+        }
+
+        /**
+         * Called by ConcurrentHashMap.merge, which runs it atomically for the id
+         */
+        ImportedWindow merge(ImportedWindow other) {
+            for (int sensor = 0; sensor < stats.length; sensor++) {
+                if (stats[sensor] == null) {
+                    stats[sensor] = other.stats[sensor];
+                } else {
+                    stats[sensor].merge(other.stats[sensor]);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Shaped like a live window; a sensor without rows has no mean, as nothing is carried forward
+         */
+        EnvironmentData toEnvironmentData(ImportRun run) {
+            EnvironmentData data = new EnvironmentData();
+            Map<String, EnvironmentData.SensorStats> byName = new HashMap<>();
+            Double[] means = new Double[stats.length];
+            for (int sensor = 0; sensor < stats.length; sensor++) {
+                if (stats[sensor] != null) {
+                    byName.put(SensorWindowAggregator.SENSORS[sensor], stats[sensor]);
+                    means[sensor] = stats[sensor].getMean();
+                }
+            }
+            data.setId(EnvironmentData.windowId(deviceId, startMillis));
+            data.setDeviceId(deviceId);
+            data.setTemperature(means[SensorWindowAggregator.TEMPERATURE]);
+            data.setHumidity(means[SensorWindowAggregator.HUMIDITY]);
+            data.setSoilMoisture(means[SensorWindowAggregator.SOIL_MOISTURE]);
+            data.setStats(byName);
+            data.setWindowStart(run.toLocalDateTime(startMillis));
+            data.setWindowEnd(run.toLocalDateTime(startMillis + run.windowMillis));
+            data.setTimestamp(data.getWindowEnd());
+            data.setParts(List.of(run.part));
+            return data;
+        }
+    }
+}
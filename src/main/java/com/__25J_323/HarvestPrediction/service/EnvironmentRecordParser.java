@@ -0,0 +1,247 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns one line of a historical export into a reading: CSV with a header row, or NDJSON.
+ * <p>
+ * Columns and JSON fields are matched by name, ignoring case, underscores and dashes: timestamp
+ * (or time, datetime, ts), deviceId (or device), temperature (or temp), humidity (or hum) and
+ * soilMoisture (or soil, moisture), and windowStart, which places an exported window in its own
+ * window rather than the one its end timestamp falls in; anything else is ignored. Timestamps are ISO local date-times
+ * (space or T), ISO instants or offsets, or epoch seconds / milliseconds. CSV fields may be quoted
+ * but may not contain the delimiter (comma, semicolon or tab, whichever the header uses).
+ * <p>
+ * Instances are immutable and shared by the parsing threads.
+ */
+public class EnvironmentRecordParser {
+
+    private static final int TIMESTAMP = 0;
+    private static final int DEVICE = 1;
+    private static final int TEMPERATURE = 2;
+    private static final int HUMIDITY = 3;
+    private static final int SOIL_MOISTURE = 4;
+    private static final int WINDOW_START = 5;
+    private static final int FIELDS = 6;
+
+    private static final Map<String, Integer> NAMES = Map.ofEntries(
+            Map.entry("timestamp", TIMESTAMP), Map.entry("time", TIMESTAMP),
+            Map.entry("datetime", TIMESTAMP), Map.entry("ts", TIMESTAMP),
+            Map.entry("deviceid", DEVICE), Map.entry("device", DEVICE),
+            Map.entry("temperature", TEMPERATURE), Map.entry("temp", TEMPERATURE),
+            Map.entry("humidity", HUMIDITY), Map.entry("hum", HUMIDITY),
+            Map.entry("soilmoisture", SOIL_MOISTURE), Map.entry("soil", SOIL_MOISTURE),
+            Map.entry("moisture", SOIL_MOISTURE), Map.entry("windowstart", WINDOW_START));
+
+    // Below this an epoch number is taken as seconds (1e11 ms is March 1973)
+    private static final double SECONDS_LIMIT = 1e11;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final boolean json;
+    private final char delimiter;
+    private final int[] columns;
+    private final String defaultDeviceId;
+    private final ZoneId zone;
+
+    private EnvironmentRecordParser(boolean json, char delimiter, int[] columns, String defaultDeviceId, ZoneId zone) {
+        this.json = json;
+        this.delimiter = delimiter;
+        this.columns = columns;
+        this.defaultDeviceId = defaultDeviceId;
+        this.zone = zone;
+    }
+
+    /**
+     * Picks the format from the first line of the file: NDJSON if it is an object, otherwise a CSV
+     * header. defaultDeviceId is used for rows without a device (may be null).
+     *
+     * @throws IllegalArgumentException if the header lacks a timestamp or sensor column, or has no
+     *                                  device column and no default was given
+     */
+    public static EnvironmentRecordParser forFirstLine(String firstLine, String defaultDeviceId, ZoneId zone) {
+        String line = stripBom(firstLine).trim();
+        if (line.startsWith("{")) {
+            return new EnvironmentRecordParser(true, ',', null, defaultDeviceId, zone);
+        }
+        char delimiter = detectDelimiter(line);
+        String[] header = split(line, delimiter);
+        int[] columns = new int[header.length];
+        boolean[] present = new boolean[FIELDS];
+        for (int i = 0; i < header.length; i++) {
+            Integer field = NAMES.get(normalize(header[i]));
+            columns[i] = field != null ? field : -1;
+            if (field != null) {
+                present[field] = true;
+            }
+        }
+        if (!present[TIMESTAMP]) {
+            throw new IllegalArgumentException("CSV header has no timestamp column: " + line);
+        }
+        if (!present[TEMPERATURE] && !present[HUMIDITY] && !present[SOIL_MOISTURE]) {
+            throw new IllegalArgumentException("CSV header has no sensor column: " + line);
+        }
+        if (!present[DEVICE] && (defaultDeviceId == null || defaultDeviceId.isBlank())) {
+            throw new IllegalArgumentException("CSV header has no deviceId column and no default device was given");
+        }
+        return new EnvironmentRecordParser(false, delimiter, columns, defaultDeviceId, zone);
+    }
+
+    /**
+     * Whether the first line is a header rather than a record
+     */
+    public boolean hasHeader() {
+        return !json;
+    }
+
+    /**
+     * The reading on this line, or null for a blank line
+     *
+     * @throws IllegalArgumentException if the line cannot be read as a reading
+     */
+    public EnvironmentData parse(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        String[] values = json ? jsonValues(line) : csvValues(line);
+        if (values[TIMESTAMP] == null) {
+            throw new IllegalArgumentException("No timestamp");
+        }
+        String deviceId = values[DEVICE] != null ? values[DEVICE] : defaultDeviceId;
+        if (deviceId == null || deviceId.isBlank()) {
+            throw new IllegalArgumentException("No deviceId");
+        }
+        Double temperature = number(values[TEMPERATURE]);
+        Double humidity = number(values[HUMIDITY]);
+        Double soilMoisture = number(values[SOIL_MOISTURE]);
+        if (temperature == null && humidity == null && soilMoisture == null) {
+            throw new IllegalArgumentException("No sensor values");
+        }
+
+        long millis = epochMillis(values[TIMESTAMP]);
+        EnvironmentData data = new EnvironmentData();
+        data.setDeviceId(deviceId);
+        data.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone));
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setSoilMoisture(soilMoisture);
+        if (values[WINDOW_START] != null) {
+            data.setWindowStart(LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis(values[WINDOW_START])), zone));
+        }
+        return data;
+    }
+
+    private String[] csvValues(String line) {
+        String[] fields = split(line, delimiter);
+        String[] values = new String[FIELDS];
+        for (int i = 0; i < fields.length && i < columns.length; i++) {
+            if (columns[i] >= 0 && !fields[i].isEmpty()) {
+                values[columns[i]] = fields[i];
+            }
+        }
+        return values;
+    }
+
+    private static String[] jsonValues(String line) {
+        String[] values = new String[FIELDS];
+        try (JsonParser parser = JSON.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Integer field = NAMES.get(normalize(parser.currentName()));
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                } else if (field != null && value != JsonToken.VALUE_NULL) {
+                    values[field] = parser.getText();
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getMessage());
+        }
+        return values;
+    }
+
+    private static Double number(String value) {
+        return value != null ? Double.valueOf(value) : null;
+    }
+
+    private long epochMillis(String value) {
+        char first = value.charAt(0);
+        if (Character.isDigit(first) && value.indexOf('-') < 0 && value.indexOf(':') < 0) {
+            double epoch = Double.parseDouble(value);
+            return epoch < SECONDS_LIMIT ? Math.round(epoch * 1000) : Math.round(epoch);
+        }
+        String iso = value.replace(' ', 'T');
+        try {
+            return LocalDateTime.parse(iso).atZone(zone).toInstant().toEpochMilli();
+        } catch (DateTimeParseException notLocal) {
+            try {
+                return OffsetDateTime.parse(iso).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Unreadable timestamp: " + value);
+            }
+        }
+    }
+
+    private static char detectDelimiter(String header) {
+        char best = ',';
+        long bestCount = header.chars().filter(c -> c == ',').count();
+        for (char candidate : new char[]{';', '\t'}) {
+            long count = header.chars().filter(c -> c == candidate).count();
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static String[] split(String line, char delimiter) {
+        int fields = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == delimiter) {
+                fields++;
+            }
+        }
+        String[] values = new String[fields];
+        int start = 0;
+        for (int i = 0; i < fields; i++) {
+            int end = line.indexOf(delimiter, start);
+            if (end < 0) {
+                end = line.length();
+            }
+            values[i] = unquote(line.substring(start, end).trim());
+            start = end + 1;
+        }
+        return values;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1).trim();
+        }
+        return value;
+    }
+
+    private static String normalize(String name) {
+        return stripBom(name).replace("_", "").replace("-", "").replace("\"", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String stripBom(String value) {
+        return !value.isEmpty() && value.charAt(0) == '﻿' ? value.substring(1) : value;
+    }
+}
@@ -0,0 +1,118 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentStreamEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hot, multicast stream of readings and device-status events for SSE clients.
+ * The sink keeps a small replay buffer so reconnecting clients can resume from Last-Event-ID;
+ * each subscriber only ever holds the latest pending event, so a slow client costs one slot
+ * of memory and never slows the publisher or other subscribers.
+ * <p>
+ * SSE ids are {@code <epoch>-<sequence>}, where the epoch is this process's start time. A client
+ * resuming with an id from an earlier run gets the whole replay buffer, since the sequence
+ * restarted and everything buffered is newer than what it saw.
+ */
+@Service
+@Slf4j
+public class EnvironmentStreamService {
+
+    private final Sinks.Many<EnvironmentStreamEvent> sink;
+    private final ReentrantLock emitLock = new ReentrantLock();
+    private final Duration heartbeatInterval;
+    private final String epoch = Long.toString(System.currentTimeMillis());
+    private long sequence = 0;
+
+    public EnvironmentStreamService(@Value("${environment.stream.replay-size:256}") int replaySize,
+                                    @Value("${environment.stream.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.sink = Sinks.many().replay().limit(replaySize);
+        this.heartbeatInterval = Duration.ofSeconds(heartbeatSeconds);
+    }
+
+    public void publishReading(String deviceId, String sensor, Object reading) {
+        publish(EnvironmentStreamEvent.READING, deviceId, sensor, reading);
+    }
+
+    public void publishDeviceStatus(String deviceId, Object status) {
+        publish(EnvironmentStreamEvent.DEVICE_STATUS, deviceId, null, status);
+    }
+
+    private void publish(String type, String deviceId, String sensor, Object data) {
+        // Ids must be assigned in emission order for Last-Event-ID replay, and the sink needs serialized emits
+        emitLock.lock();
+        try {
+            EnvironmentStreamEvent event = new EnvironmentStreamEvent(++sequence, type, deviceId, sensor, data);
+            Sinks.EmitResult result = sink.tryEmitNext(event);
+            if (result.isFailure()) {
+                log.debug("Dropped stream event {}: {}", event.getId(), result);
+            }
+        } finally {
+            emitLock.unlock();
+        }
+    }
+
+    /**
+     * Per-subscriber view of the stream. Without lastEventId only new events are delivered;
+     * with one from this run, buffered events after it are replayed first, and with one from
+     * an earlier run (or one this run has not reached) the whole buffer is.
+     */
+    public Flux<ServerSentEvent<EnvironmentStreamEvent>> subscribe(String deviceId, String sensor, String lastEventId) {
+        return Flux.defer(() -> {
+            long after = resumeAfter(lastEventId);
+
+            Flux<ServerSentEvent<EnvironmentStreamEvent>> events = sink.asFlux()
+                    .filter(event -> event.getId() > after)
+                    .filter(event -> deviceId == null || deviceId.equals(event.getDeviceId()))
+                    .filter(event -> sensor == null || event.getSensor() == null || sensor.equals(event.getSensor()))
+                    .onBackpressureLatest()
+                    .map(event -> ServerSentEvent.<EnvironmentStreamEvent>builder()
+                            .id(epoch + "-" + event.getId())
+                            .event(event.getType())
+                            .data(event)
+                            .build());
+
+            // Comment frames keep idle connections open through proxies
+            Flux<ServerSentEvent<EnvironmentStreamEvent>> heartbeats = Flux.interval(heartbeatInterval)
+                    .map(tick -> ServerSentEvent.<EnvironmentStreamEvent>builder().comment("keepalive").build())
+                    .onBackpressureDrop();
+
+            return Flux.merge(events, heartbeats);
+        });
+    }
+
+    private long resumeAfter(String lastEventId) {
+        long current = currentSequence();
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return current;
+        }
+        int dash = lastEventId.lastIndexOf('-');
+        if (dash > 0 && lastEventId.substring(0, dash).equals(epoch)) {
+            try {
+                long seen = Long.parseLong(lastEventId.substring(dash + 1));
+                if (seen <= current) {
+                    return seen;
+                }
+            } catch (NumberFormatException e) {
+                // Not one of ours: resynchronize below
+            }
+        }
+        return 0;
+    }
+
+    private long currentSequence() {
+        emitLock.lock();
+        try {
+            return sequence;
+        } finally {
+            emitLock.unlock();
+        }
+    }
+}
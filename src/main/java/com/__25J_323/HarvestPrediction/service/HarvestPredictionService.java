@@ -3,9 +3,10 @@ package com.__25J_323.HarvestPrediction.service;
 import com.__25J_323.HarvestPrediction.DTO.HarvestPredictionRequest;
 import com.__25J_323.HarvestPrediction.DTO.HarvestPredictionResponse;
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.ReadingsSnapshot;
 import com.__25J_323.HarvestPrediction.model.TomatoPlant;
-import com.__25J_323.HarvestPrediction.repository.EnvironmentDataRepository;
-import com.__25J_323.HarvestPrediction.repository.TomatoPlantRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -29,10 +30,11 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class HarvestPredictionService {
 
-    private final TomatoPlantRepository tomatoPlantRepository;
-    private final EnvironmentDataRepository environmentDataRepository;
+    private final TomatoPlantService tomatoPlantService;
+    private final EnvironmentDataService environmentDataService;
     private final RestTemplate restTemplate;
     private final MqttService mqttService; // Add this dependency
+    private final MeterRegistry meterRegistry;
 
     @Value("${flask.api.url:http://localhost:5000}")
     private String flaskApiUrl;
@@ -48,45 +50,50 @@ public class HarvestPredictionService {
     private static final double SOIL_MOISTURE_IMPACT_FACTOR = 0.3;
 
     // Temperature ranges for optimal growth
-    private static final double MIN_TEMP_THRESHOLD = 15.0;
-    private static final double MAX_TEMP_THRESHOLD = 35.0;
+    static final double MIN_TEMP_THRESHOLD = 15.0;
+    static final double MAX_TEMP_THRESHOLD = 35.0;
 
     // Humidity ranges for optimal growth
-    private static final double MIN_HUMIDITY_THRESHOLD = 30.0;
-    private static final double MAX_HUMIDITY_THRESHOLD = 90.0;
+    static final double MIN_HUMIDITY_THRESHOLD = 30.0;
+    static final double MAX_HUMIDITY_THRESHOLD = 90.0;
 
     // Soil moisture ranges for optimal growth
-    private static final double MIN_SOIL_MOISTURE_THRESHOLD = 20.0;
-    private static final double MAX_SOIL_MOISTURE_THRESHOLD = 80.0;
+    static final double MIN_SOIL_MOISTURE_THRESHOLD = 20.0;
+    static final double MAX_SOIL_MOISTURE_THRESHOLD = 80.0;
 
     public HarvestPredictionResponse predictHarvestDate(HarvestPredictionRequest request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
         try {
             log.info("Starting enhanced harvest prediction for variety: {}, planting date: {}",
                     request.getVariety(), request.getPlantingDate());
 
             // Get real-time environment data first
-            EnvironmentData currentData = mqttService.getCurrentReadings();
-            log.info("Current real-time conditions - Temperature: {}°C, Humidity: {}%, Soil Moisture: {}%",
-                    currentData.getTemperature(), currentData.getHumidity(), currentData.getSoilMoisture());
+            ReadingsSnapshot currentData = mqttService.getCurrentSnapshot();
+            log.debug("Current real-time conditions - Temperature: {}°C, Humidity: {}%, Soil Moisture: {}%",
+                    currentData.temperature(), currentData.humidity(), currentData.soilMoisture());
 
             // Get recent historical data for trend analysis
-            List<EnvironmentData> recentData = environmentDataRepository.findTop24ByOrderByTimestampDesc();
-            log.info("Retrieved {} historical environment data records", recentData.size());
+            List<EnvironmentData> recentData = environmentDataService.getRecentEnvironmentData();
+            log.debug("Retrieved {} historical environment data records", recentData.size());
 
             // Calculate predicted harvest date using enhanced algorithm
-            LocalDate predictedDate = calculateEnhancedHarvestDate(
-                    request.getPlantingDate(),
-                    request.getVariety(),
-                    currentData,
-                    recentData
-            );
+            LocalDate predictedDate = Timer.builder("harvest.prediction.compute")
+                    .description("Harvest date calculation from current and historical conditions")
+                    .register(meterRegistry)
+                    .record(() -> calculateEnhancedHarvestDate(
+                            request.getPlantingDate(),
+                            request.getVariety(),
+                            currentData,
+                            recentData
+                    ));
 
             log.info("Enhanced predicted harvest date: {}", predictedDate);
 
             // Save or update plant information
             TomatoPlant plant;
             if (request.getPlantId() != null && !request.getPlantId().isEmpty()) {
-                plant = tomatoPlantRepository.findById(request.getPlantId())
+                plant = tomatoPlantService.findById(request.getPlantId())
                         .orElse(new TomatoPlant());
             } else {
                 plant = new TomatoPlant();
@@ -97,11 +104,11 @@ public class HarvestPredictionService {
             plant.setPredictedHarvestDate(predictedDate);
             plant.setLastUpdated(LocalDateTime.now());
 
-            TomatoPlant savedPlant = tomatoPlantRepository.save(plant);
+            TomatoPlant savedPlant = tomatoPlantService.save(plant);
 
             // Calculate days to harvest
             long daysToHarvest = ChronoUnit.DAYS.between(LocalDate.now(), predictedDate);
-            log.info("Days to harvest: {}", daysToHarvest);
+            log.debug("Days to harvest: {}", daysToHarvest);
 
             // Prepare response
             HarvestPredictionResponse response = new HarvestPredictionResponse();
@@ -110,36 +117,43 @@ public class HarvestPredictionService {
             response.setPredictedHarvestDate(savedPlant.getPredictedHarvestDate());
             response.setDaysToHarvest((int) daysToHarvest);
 
+            outcome = "success";
             return response;
         } catch (Exception e) {
             log.error("Error predicting harvest date", e);
             throw new RuntimeException("Failed to predict harvest date: " + e.getMessage(), e);
+        } finally {
+            sample.stop(Timer.builder("harvest.prediction")
+                    .description("End-to-end harvest prediction requests")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
         }
     }
 
     /**
      * Enhanced harvest date calculation using real-time environmental conditions
      */
-    private LocalDate calculateEnhancedHarvestDate(LocalDate plantingDate, String variety,
-                                                   EnvironmentData currentData, List<EnvironmentData> historicalData) {
+    LocalDate calculateEnhancedHarvestDate(LocalDate plantingDate, String variety,
+                                          ReadingsSnapshot currentData, List<EnvironmentData> historicalData) {
         try {
-            log.info("Calculating enhanced harvest date with real-time environmental data");
+            log.debug("Calculating enhanced harvest date with real-time environmental data");
 
             // Get base maturation days for the variety
             int baseDays = getBaseDaysForVariety(variety);
-            log.info("Base maturation days for variety '{}': {}", variety, baseDays);
+            log.debug("Base maturation days for variety '{}': {}", variety, baseDays);
 
             // Calculate environmental impact using current real-time data
-            double environmentalMultiplier = calculateEnvironmentalImpact(currentData);
-            log.info("Environmental impact multiplier based on current conditions: {}", environmentalMultiplier);
+            double environmentalMultiplier = calculateEnvironmentalImpact(
+                    currentData.temperature(), currentData.humidity(), currentData.soilMoisture());
+            log.debug("Environmental impact multiplier based on current conditions: {}", environmentalMultiplier);
 
             // Calculate historical trend impact (last 7 days average if available)
             double trendMultiplier = calculateTrendImpact(historicalData);
-            log.info("Historical trend multiplier: {}", trendMultiplier);
+            log.debug("Historical trend multiplier: {}", trendMultiplier);
 
             // Combine current conditions with historical trends (70% current, 30% trend)
             double finalMultiplier = (environmentalMultiplier * 0.7) + (trendMultiplier * 0.3);
-            log.info("Final combined multiplier: {}", finalMultiplier);
+            log.debug("Final combined multiplier: {}", finalMultiplier);
 
             // Apply multiplier to base days
             int adjustedDays = (int) Math.round(baseDays * finalMultiplier);
@@ -149,7 +163,7 @@ public class HarvestPredictionService {
 
             LocalDate harvestDate = plantingDate.plusDays(adjustedDays);
 
-            log.info("Enhanced prediction: Base={}d, Multiplier={}, Adjusted={}d, Harvest={}",
+            log.debug("Enhanced prediction: Base={}d, Multiplier={}, Adjusted={}d, Harvest={}",
                     baseDays, finalMultiplier, adjustedDays, harvestDate);
 
             return harvestDate;
@@ -164,11 +178,7 @@ public class HarvestPredictionService {
      * Calculate environmental impact based on current conditions
      * Returns multiplier: <1.0 = faster growth (better conditions), >1.0 = slower growth (poor conditions)
      */
-    private double calculateEnvironmentalImpact(EnvironmentData currentData) {
-        double temperature = currentData.getTemperature() != null ? currentData.getTemperature() : OPTIMAL_TEMPERATURE;
-        double humidity = currentData.getHumidity() != null ? currentData.getHumidity() : OPTIMAL_HUMIDITY;
-        double soilMoisture = currentData.getSoilMoisture() != null ? currentData.getSoilMoisture() : OPTIMAL_SOIL_MOISTURE;
-
+    double calculateEnvironmentalImpact(double temperature, double humidity, double soilMoisture) {
         // Calculate individual parameter impacts
         double tempImpact = calculateTemperatureImpact(temperature);
         double humidityImpact = calculateHumidityImpact(humidity);
@@ -266,7 +276,7 @@ public class HarvestPredictionService {
     /**
      * Calculate trend impact based on historical data (last 7 days)
      */
-    private double calculateTrendImpact(List<EnvironmentData> historicalData) {
+    double calculateTrendImpact(List<EnvironmentData> historicalData) {
         if (historicalData == null || historicalData.isEmpty()) {
             return 1.0; // No impact if no historical data
         }
@@ -297,16 +307,10 @@ public class HarvestPredictionService {
         avgHumidity /= validRecords;
         avgSoilMoisture /= validRecords;
 
-        // Create average environment data
-        EnvironmentData avgData = new EnvironmentData();
-        avgData.setTemperature(avgTemperature);
-        avgData.setHumidity(avgHumidity);
-        avgData.setSoilMoisture(avgSoilMoisture);
-
         log.debug("Historical averages over {} records - Temp: {}, Humidity: {}, Soil: {}",
                 validRecords, avgTemperature, avgHumidity, avgSoilMoisture);
 
-        return calculateEnvironmentalImpact(avgData);
+        return calculateEnvironmentalImpact(avgTemperature, avgHumidity, avgSoilMoisture);
     }
 
     /**
@@ -362,19 +366,19 @@ public class HarvestPredictionService {
 
             requestBody.put("environmentData", envDataList);
 
-            log.info("Flask API request body: {}", requestBody);
+            log.debug("Flask API request body: {}", requestBody);
 
             // Create the request
             HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
 
             // Make the API call
             Map<String, Object> response = restTemplate.postForObject(url, request, Map.class);
-            log.info("Flask API response: {}", response);
+            log.debug("Flask API response: {}", response);
 
             if (response != null && response.containsKey("predictedHarvestDate")) {
                 // Extract the predicted harvest date
                 String harvestDateStr = (String) response.get("predictedHarvestDate");
-                log.info("Received harvest date string: {}", harvestDateStr);
+                log.debug("Received harvest date string: {}", harvestDateStr);
 
                 try {
                     // Try different date formats
@@ -417,8 +421,8 @@ public class HarvestPredictionService {
         }
 
         // Fallback to enhanced calculation
-        EnvironmentData currentData = mqttService.getCurrentReadings();
-        List<EnvironmentData> recentData = environmentDataRepository.findTop24ByOrderByTimestampDesc();
+        ReadingsSnapshot currentData = mqttService.getCurrentSnapshot();
+        List<EnvironmentData> recentData = environmentDataService.getRecentEnvironmentData();
         return calculateEnhancedHarvestDate(plantingDate, variety, currentData, recentData);
     }
 
@@ -0,0 +1,80 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Command-line export: start the application with --export.directory=&lt;path&gt;,
+ * --export.start and --export.end (ISO dates or date-times), and optionally --export.dataset
+ * (environment or ripeness), --export.format (csv or ndjson) and --export.device-id (comma
+ * separated) to write one gzip file per day and exit with 0 on success or 1 on failure.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty("export.directory")
+public class HistoryExportCommand implements ApplicationRunner {
+
+    private final HistoryExportService historyExportService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${export.directory}")
+    private String directory;
+
+    @Value("${export.dataset:environment}")
+    private String dataset;
+
+    @Value("${export.format:csv}")
+    private String format;
+
+    @Value("${export.start:}")
+    private String start;
+
+    @Value("${export.end:}")
+    private String end;
+
+    @Value("${export.device-id:}")
+    private String deviceIds;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode;
+        try {
+            Set<String> devices = deviceIds.isBlank() ? null : Arrays.stream(deviceIds.split(","))
+                    .map(String::trim)
+                    .collect(Collectors.toSet());
+            historyExportService.exportToDirectory(Path.of(directory),
+                    HistoryExportService.Dataset.valueOf(dataset.toUpperCase(Locale.ROOT)),
+                    HistoryExportService.Format.parse(format), parse(start, "export.start"), parse(end, "export.end"),
+                    devices);
+            exitCode = 0;
+        } catch (Exception e) {
+            log.error("Export to {} failed", directory, e);
+            exitCode = 1;
+        }
+        int status = exitCode;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+    private static LocalDateTime parse(String value, String property) {
+        if (value.isBlank()) {
+            throw new IllegalArgumentException(property + " is required");
+        }
+        return value.contains("T") ? LocalDateTime.parse(value) : LocalDate.parse(value).atStartOfDay();
+    }
+}
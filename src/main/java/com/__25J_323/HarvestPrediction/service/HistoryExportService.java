@@ -0,0 +1,543 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams environment or ripeness history out as gzip CSV or NDJSON, one day per partition.
+ * <p>
+ * Days are exported in parallel, each from its own cursor straight into a gzip stream, so memory
+ * stays the same whatever the range. A download is one gzip file made of one gzip member per day:
+ * at most parallelism days are spooled ahead (in memory up to 1 MB each, then on disk) and copied
+ * out in order, which gzip readers see as a single stream. A directory export writes {@code <dataset>/date=<day>.<ext>} files instead.
+ * <p>
+ * Environment CSV uses the columns {@link EnvironmentRecordParser} reads, so an export can be
+ * imported again. Ripeness CSV has one row per detected tomato.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class HistoryExportService {
+
+    public enum Dataset {
+        ENVIRONMENT, RIPENESS
+    }
+
+    public enum Format {
+        CSV, NDJSON;
+
+        public String extension() {
+            return name().toLowerCase(Locale.ROOT) + ".gz";
+        }
+
+        /**
+         * @throws IllegalArgumentException for anything but csv or ndjson
+         */
+        public static Format parse(String format) {
+            try {
+                return valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown export format: " + format + " (csv or ndjson)");
+            }
+        }
+    }
+
+    public record ExportSummary(int days, long rows, long bytes, long elapsedMillis) {
+        public long rowsPerSecond() {
+            return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+        }
+    }
+
+    private record DayResult(Path file, long rows) {
+    }
+
+    private record SpooledDay(DaySpool spool, long rows) {
+    }
+
+    private static final String ENVIRONMENT_HEADER =
+            "timestamp,deviceId,temperature,humidity,soilMoisture,windowStart,windowEnd";
+    private static final String RIPENESS_HEADER =
+            "timestamp,id,imageUrl,ripenessState,confidence,x,y,width,height";
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int CURSOR_BATCH_SIZE = 2_000;
+    // A day's gzip member stays in memory up to this size, so quiet days never touch the disk
+    private static final int SPILL_BYTES = 1024 * 1024;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final EnvironmentDataStore environmentDataStore;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${export.parallelism:4}")
+    private int parallelism;
+
+    // Empty: the system temp directory
+    @Value("${export.spool-directory:}")
+    private String spoolDirectory;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger workers = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "history-export-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException if the range is empty or devices are given for ripeness data
+     */
+    public static void validate(Dataset dataset, LocalDateTime start, LocalDateTime end, Set<String> deviceIds) {
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("Export start must be before end");
+        }
+        if (dataset == Dataset.RIPENESS && deviceIds != null) {
+            throw new IllegalArgumentException("Ripeness data has no device to filter on");
+        }
+    }
+
+    public static String fileName(Dataset dataset, Format format, LocalDateTime start, LocalDateTime end) {
+        return dataset.name().toLowerCase(Locale.ROOT) + "_" + start.toLocalDate() + "_" + end.toLocalDate()
+                + "." + format.extension();
+    }
+
+    /**
+     * The whole range as one gzip stream, oldest day first. out is not closed.
+     */
+    public ExportSummary exportTo(OutputStream out, Dataset dataset, Format format, LocalDateTime start,
+                                  LocalDateTime end, Set<String> deviceIds) throws IOException, InterruptedException {
+        validate(dataset, start, end, deviceIds);
+        long started = System.nanoTime();
+        List<LocalDateTime[]> days = days(start, end);
+        CountingOutputStream counting = new CountingOutputStream(out);
+        if (format == Format.CSV) {
+            // Its own member, so every day member is plain rows
+            try (OutputStream header = new GZIPOutputStream(new NonClosingOutputStream(counting))) {
+                header.write((header(dataset) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        List<Future<SpooledDay>> pending = new ArrayList<>();
+        long rows = 0;
+        try {
+            for (int i = 0; i < days.size(); i++) {
+                // Keep at most parallelism days spooled ahead of the one being copied out
+                while (pending.size() < days.size() && pending.size() < i + parallelism) {
+                    LocalDateTime[] day = days.get(pending.size());
+                    pending.add(executor.submit(() -> spoolDay(dataset, format, day[0], day[1], deviceIds)));
+                }
+                SpooledDay result = await(pending.get(i));
+                try {
+                    result.spool().copyTo(counting);
+                } finally {
+                    result.spool().delete();
+                }
+                rows += result.rows();
+            }
+        } finally {
+            for (Future<SpooledDay> day : pending) {
+                discard(day);
+            }
+        }
+        counting.flush();
+        ExportSummary summary = new ExportSummary(days.size(), rows, counting.count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        log.info("Exported {} {} rows over {} days ({} bytes) in {} ms, {} rows/s", rows, dataset, days.size(),
+                summary.bytes(), summary.elapsedMillis(), summary.rowsPerSecond());
+        return summary;
+    }
+
+    /**
+     * One file per day under directory/dataset, written in parallel; existing files are replaced
+     */
+    public ExportSummary exportToDirectory(Path directory, Dataset dataset, Format format, LocalDateTime start,
+                                           LocalDateTime end, Set<String> deviceIds)
+            throws IOException, InterruptedException {
+        validate(dataset, start, end, deviceIds);
+        long started = System.nanoTime();
+        Path target = Files.createDirectories(directory.resolve(dataset.name().toLowerCase(Locale.ROOT)));
+        List<Future<DayResult>> days = new ArrayList<>();
+        for (LocalDateTime[] day : days(start, end)) {
+            Path file = target.resolve("date=" + day[0].toLocalDate() + "." + format.extension());
+            days.add(executor.submit(() -> {
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    return new DayResult(file, writeDay(out, dataset, format, day[0], day[1], deviceIds, true));
+                }
+            }));
+        }
+
+        long rows = 0;
+        long bytes = 0;
+        try {
+            for (Future<DayResult> day : days) {
+                DayResult result = await(day);
+                rows += result.rows();
+                bytes += Files.size(result.file());
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            days.forEach(day -> day.cancel(true));
+            throw e;
+        }
+        ExportSummary summary = new ExportSummary(days.size(), rows, bytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        log.info("Exported {} {} rows over {} days to {} ({} bytes) in {} ms, {} rows/s", rows, dataset, days.size(),
+                target, bytes, summary.elapsedMillis(), summary.rowsPerSecond());
+        return summary;
+    }
+
+    private SpooledDay spoolDay(Dataset dataset, Format format, LocalDateTime from, LocalDateTime to,
+                                Set<String> deviceIds) throws IOException {
+        DaySpool spool = new DaySpool();
+        try (spool) {
+            long rows = writeDay(spool, dataset, format, from, to, deviceIds, false);
+            if (Thread.currentThread().isInterrupted()) {
+                // Cancelled while the cursor was running; nobody will copy or delete this spool
+                throw new InterruptedIOException("Export cancelled");
+            }
+            return new SpooledDay(spool, rows);
+        } catch (IOException | RuntimeException e) {
+            spool.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * One gzip member with every row of [from, to)
+     */
+    long writeDay(OutputStream out, Dataset dataset, Format format, LocalDateTime from, LocalDateTime to,
+                  Set<String> deviceIds, boolean header) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out), BUFFER_BYTES);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), BUFFER_BYTES)) {
+            if (header && format == Format.CSV) {
+                writer.write(header(dataset));
+                writer.write('\n');
+            }
+            RowWriter rows = new RowWriter(writer, format);
+            try {
+                if (dataset == Dataset.ENVIRONMENT) {
+                    environmentDataStore.forEachInRange(from, to, deviceIds, rows::environment);
+                } else {
+                    Query query = Query.query(Criteria.where("timestamp").gte(from).lt(to))
+                            .with(Sort.by("timestamp"))
+                            .cursorBatchSize(CURSOR_BATCH_SIZE);
+                    try (Stream<RipenessData> stream = mongoTemplate.stream(query, RipenessData.class)) {
+                        stream.forEach(rows::ripeness);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            rows.close();
+            return rows.count;
+        }
+    }
+
+    private static String header(Dataset dataset) {
+        return dataset == Dataset.ENVIRONMENT ? ENVIRONMENT_HEADER : RIPENESS_HEADER;
+    }
+
+    /**
+     * [start, end) cut at every midnight
+     */
+    static List<LocalDateTime[]> days(LocalDateTime start, LocalDateTime end) {
+        List<LocalDateTime[]> days = new ArrayList<>();
+        LocalDateTime from = start;
+        while (from.isBefore(end)) {
+            LocalDateTime midnight = from.toLocalDate().plusDays(1).atStartOfDay();
+            LocalDateTime to = midnight.isBefore(end) ? midnight : end;
+            days.add(new LocalDateTime[]{from, to});
+            from = to;
+        }
+        return days;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw cause instanceof RuntimeException runtime ? runtime : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Cancel a day that was not copied out, and remove its spool file if it got written anyway
+     */
+    private static void discard(Future<SpooledDay> day) {
+        if (day.cancel(true) || day.isCancelled()) {
+            return;
+        }
+        try {
+            day.get().spool().delete();
+        } catch (Exception e) {
+            // Failed days clean up after themselves; copied days are already gone
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * CSV or NDJSON rows onto one writer; JSON timestamps are ISO strings, as the importer reads them
+     */
+    private static final class RowWriter {
+        final Writer writer;
+        final Format format;
+        final JsonGenerator json;
+        long count;
+
+        RowWriter(Writer writer, Format format) throws IOException {
+            this.writer = writer;
+            this.format = format;
+            this.json = format == Format.NDJSON
+                    ? JSON.createGenerator(writer).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    : null;
+        }
+
+        void environment(EnvironmentData data) {
+            try {
+                if (format == Format.CSV) {
+                    csv(data.getTimestamp(), data.getDeviceId(), data.getTemperature(), data.getHumidity(),
+                            data.getSoilMoisture(), data.getWindowStart(), data.getWindowEnd());
+                } else {
+                    json.writeStartObject();
+                    json.writeStringField("timestamp", string(data.getTimestamp()));
+                    json.writeStringField("deviceId", data.getDeviceId());
+                    number("temperature", data.getTemperature());
+                    number("humidity", data.getHumidity());
+                    number("soilMoisture", data.getSoilMoisture());
+                    if (data.getWindowStart() != null) {
+                        json.writeStringField("windowStart", string(data.getWindowStart()));
+                        json.writeStringField("windowEnd", string(data.getWindowEnd()));
+                    }
+                    endJson();
+                }
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void ripeness(RipenessData data) {
+            try {
+                List<RipenessData.DetectedTomato> tomatoes = data.getDetectedTomatoes() != null
+                        ? data.getDetectedTomatoes() : List.of();
+                if (format == Format.CSV) {
+                    if (tomatoes.isEmpty()) {
+                        csv(data.getTimestamp(), data.getId(), data.getImageUrl(), null, null, null, null, null, null);
+                    }
+                    for (RipenessData.DetectedTomato tomato : tomatoes) {
+                        RipenessData.BoundingBox box = tomato.getBoundingBox();
+                        csv(data.getTimestamp(), data.getId(), data.getImageUrl(), tomato.getRipenessState(),
+                                tomato.getConfidence(), box != null ? box.getX() : null, box != null ? box.getY() : null,
+                                box != null ? box.getWidth() : null, box != null ? box.getHeight() : null);
+                    }
+                } else {
+                    json.writeStartObject();
+                    json.writeStringField("timestamp", string(data.getTimestamp()));
+                    json.writeStringField("id", data.getId());
+                    json.writeStringField("imageUrl", data.getImageUrl());
+                    json.writeArrayFieldStart("detectedTomatoes");
+                    for (RipenessData.DetectedTomato tomato : tomatoes) {
+                        json.writeStartObject();
+                        json.writeStringField("ripenessState", tomato.getRipenessState());
+                        json.writeNumberField("confidence", tomato.getConfidence());
+                        RipenessData.BoundingBox box = tomato.getBoundingBox();
+                        if (box != null) {
+                            json.writeObjectFieldStart("boundingBox");
+                            json.writeNumberField("x", box.getX());
+                            json.writeNumberField("y", box.getY());
+                            json.writeNumberField("width", box.getWidth());
+                            json.writeNumberField("height", box.getHeight());
+                            json.writeEndObject();
+                        }
+                        json.writeEndObject();
+                    }
+                    json.writeEndArray();
+                    endJson();
+                }
+                count++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void csv(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                Object value = values[i];
+                if (value != null) {
+                    String text = value.toString();
+                    if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0) {
+                        text = '"' + text.replace("\"", "\"\"") + '"';
+                    }
+                    writer.write(text);
+                }
+            }
+            writer.write('\n');
+        }
+
+        private void number(String field, Double value) throws IOException {
+            if (value != null) {
+                json.writeNumberField(field, value);
+            }
+        }
+
+        private void endJson() throws IOException {
+            json.writeEndObject();
+            json.flush();
+            writer.write('\n');
+        }
+
+        private static String string(LocalDateTime time) {
+            return time != null ? time.toString() : null;
+        }
+
+        void close() throws IOException {
+            if (json != null) {
+                json.close();
+            }
+        }
+    }
+
+    /**
+     * One day's gzip member, in memory until it outgrows SPILL_BYTES and then in a spool file
+     */
+    private final class DaySpool extends OutputStream {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        Path file;
+        OutputStream fileOut;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (fileOut == null && memory.size() + length > SPILL_BYTES) {
+                file = spoolDirectory == null || spoolDirectory.isBlank()
+                        ? Files.createTempFile("history-export-", ".gz")
+                        : Files.createTempFile(Files.createDirectories(Path.of(spoolDirectory)), "history-export-", ".gz");
+                fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut != null) {
+                fileOut.write(bytes, offset, length);
+            } else {
+                memory.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        void copyTo(OutputStream out) throws IOException {
+            if (file != null) {
+                Files.copy(file, out);
+            } else {
+                memory.writeTo(out);
+            }
+        }
+
+        void delete() throws IOException {
+            memory = null;
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Lets a gzip member finish without closing the stream that follows it
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+}
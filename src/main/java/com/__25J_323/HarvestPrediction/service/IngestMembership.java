@@ -0,0 +1,82 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instances sharing one MQTT ingest group and the device ownership derived from them.
+ * <p>
+ * Each device is owned by the member with the highest rendezvous hash for it, so every instance
+ * that sees the same members picks the same owner, and a join or leave only moves the devices of
+ * the member that changed.
+ */
+public class IngestMembership {
+
+    private final String self;
+    private final Set<String> members = ConcurrentHashMap.newKeySet();
+
+    public IngestMembership(String self) {
+        this.self = self;
+        members.add(self);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * @return whether the member was new
+     */
+    public boolean join(String member) {
+        return members.add(member);
+    }
+
+    /**
+     * @return whether the member was known; this instance never leaves its own view
+     */
+    public boolean leave(String member) {
+        return !member.equals(self) && members.remove(member);
+    }
+
+    public List<String> getMembers() {
+        return members.stream().sorted().toList();
+    }
+
+    public String ownerOf(String deviceId) {
+        long deviceHash = hash(deviceId);
+        String owner = self;
+        long best = Long.MIN_VALUE;
+        for (String member : members) {
+            long score = mix(hash(member) ^ deviceHash);
+            // Ties are broken by name so every instance agrees
+            if (score > best || (score == best && member.compareTo(owner) < 0)) {
+                best = score;
+                owner = member;
+            }
+        }
+        return owner;
+    }
+
+    public boolean owns(String deviceId) {
+        return self.equals(ownerOf(deviceId));
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the UTF-8 bytes: stable across JVMs, unlike identity or seeded hashes
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long mix(long z) {
+        // SplitMix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
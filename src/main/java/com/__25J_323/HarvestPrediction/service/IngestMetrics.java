@@ -0,0 +1,123 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the MQTT ingest hot path. Each meter is registered once per tag value and cached, so
+ * recording on the message path is a map lookup plus a lock-free update.
+ * <p>
+ * Callers only pass bounded tag values (configured topics, sensor names, transports).
+ */
+@Component
+public class IngestMetrics {
+
+    public static final String UNMATCHED_TOPIC = "unmatched";
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> messages = new ConcurrentHashMap<>();
+    private final Map<String, Counter> parseFailures = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejections = new ConcurrentHashMap<>();
+    private final Map<String, Timer> ingestLatency = new ConcurrentHashMap<>();
+    private final Map<String, Timer> fanOutLatency = new ConcurrentHashMap<>();
+    private final Counter windowsSaved;
+    private final Counter forwarded;
+    private final Timer brokerDowntime;
+
+    public IngestMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.windowsSaved = Counter.builder("environment.windows.saved")
+                .description("Aggregation windows persisted to environment_data")
+                .register(registry);
+        this.forwarded = Counter.builder("mqtt.messages.forwarded")
+                .description("Messages received through the shared subscription and forwarded to the device's owner")
+                .register(registry);
+        this.brokerDowntime = Timer.builder("mqtt.broker.downtime")
+                .description("Broker outages ended by a reconnect; the count is the number of reconnects")
+                .register(registry);
+    }
+
+    public void messageReceived(String topic) {
+        Counter counter = messages.get(topic);
+        if (counter == null) {
+            counter = messages.computeIfAbsent(topic, t -> Counter.builder("mqtt.messages")
+                    .description("MQTT messages received")
+                    .tag("topic", t)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    public void parseFailed(String topic) {
+        Counter counter = parseFailures.get(topic);
+        if (counter == null) {
+            counter = parseFailures.computeIfAbsent(topic, t -> Counter.builder("mqtt.parse.failures")
+                    .description("MQTT payloads without a numeric reading")
+                    .tag("topic", t)
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * A reading dropped by the outlier filter; reason is a {@link SensorOutlierFilter.Verdict}
+     */
+    public void rejected(String sensor, SensorOutlierFilter.Verdict reason) {
+        String key = sensor + ":" + reason;
+        Counter counter = rejections.get(key);
+        if (counter == null) {
+            counter = rejections.computeIfAbsent(key, k -> Counter.builder("mqtt.readings.rejected")
+                    .description("Readings dropped by the outlier filter")
+                    .tag("sensor", sensor)
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(registry));
+        }
+        counter.increment();
+    }
+
+    /**
+     * Arrival of the MQTT message to the end of its WebSocket/SSE broadcast
+     */
+    public void ingested(String sensor, long nanos) {
+        Timer timer = ingestLatency.get(sensor);
+        if (timer == null) {
+            timer = ingestLatency.computeIfAbsent(sensor, s -> Timer.builder("mqtt.ingest")
+                    .description("MQTT arrival to broadcast latency")
+                    .tag("sensor", s)
+                    .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time spent handing one reading to a transport (stomp, sse or cbor)
+     */
+    public void fannedOut(String transport, long nanos) {
+        Timer timer = fanOutLatency.get(transport);
+        if (timer == null) {
+            timer = fanOutLatency.computeIfAbsent(transport, t -> Timer.builder("websocket.fanout")
+                    .description("Broadcast of one reading to subscribers")
+                    .tag("transport", t)
+                    .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void windowSaved() {
+        windowsSaved.increment();
+    }
+
+    public void forwarded() {
+        forwarded.increment();
+    }
+
+    public void brokerReconnected(long downtimeNanos) {
+        brokerDowntime.record(downtimeNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,58 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sequential reader for capture files written by {@link MqttCaptureWriter}
+ */
+public class MqttCaptureReader implements AutoCloseable {
+
+    public record Record(long offsetNanos, String topic, byte[] payload) {
+    }
+
+    private final DataInputStream in;
+    private final long startEpochMillis;
+
+    public MqttCaptureReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        if (in.readInt() != MqttCaptureWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not an MQTT capture file: " + file);
+        }
+        this.startEpochMillis = in.readLong();
+    }
+
+    /**
+     * Wall-clock time at which the capture started
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * Next record, or null at the end of the capture (a truncated trailing record counts as the end)
+     */
+    public Record next() throws IOException {
+        try {
+            long offsetNanos = in.readLong();
+            byte[] topicBytes = new byte[in.readUnsignedShort()];
+            in.readFully(topicBytes);
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new Record(offsetNanos, new String(topicBytes, StandardCharsets.UTF_8), payload);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
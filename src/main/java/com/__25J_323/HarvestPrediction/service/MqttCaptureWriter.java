@@ -0,0 +1,226 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records every received MQTT publish to a compact binary log for offline replay.
+ * <p>
+ * File layout (big-endian): int magic "MQC1", long capture start (epoch millis), then per record
+ * long arrival offset in nanoseconds since capture start, unsigned short topic length, topic UTF-8,
+ * int payload length, payload bytes. Read back with {@link MqttCaptureReader}.
+ * <p>
+ * Buffered records are flushed at most a second after they arrive, by the next record or, when
+ * the topic goes quiet, by a background flush.
+ */
+@Component
+@Slf4j
+public class MqttCaptureWriter {
+
+    static final int MAGIC = 0x4D514331; // "MQC1"
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path directory;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean capturing;
+    private DataOutputStream out;
+    private Path file;
+    private long startNanos;
+    private long lastFlushNanos;
+    private long records;
+    private ScheduledExecutorService flusher;
+    private ScheduledFuture<?> flushTask;
+
+    public MqttCaptureWriter(@Value("${mqtt.capture.directory:captures}") String directory,
+                             @Value("${mqtt.capture.enabled:false}") boolean enabled) {
+        this.directory = Paths.get(directory);
+        if (enabled) {
+            start();
+        }
+    }
+
+    public boolean isCapturing() {
+        return capturing;
+    }
+
+    /**
+     * Open a new capture file; a capture already in progress keeps going
+     */
+    public Path start() {
+        lock.lock();
+        try {
+            if (capturing) {
+                return file;
+            }
+            Files.createDirectories(directory);
+            out = new DataOutputStream(new BufferedOutputStream(createCaptureFile(), 64 * 1024));
+            startNanos = System.nanoTime();
+            lastFlushNanos = startNanos;
+            records = 0;
+            out.writeInt(MAGIC);
+            out.writeLong(System.currentTimeMillis());
+            capturing = true;
+            if (flusher == null) {
+                flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "mqtt-capture-flush");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            flushTask = flusher.scheduleWithFixedDelay(this::flushIfIdle, 1, 1, TimeUnit.SECONDS);
+            log.info("MQTT capture started: {}", file.toAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            log.error("Could not start MQTT capture in {}", directory, e);
+            closeQuietly();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A new file named after the current time; never reuses or truncates an existing capture
+     */
+    private OutputStream createCaptureFile() throws IOException {
+        String name = "mqtt-" + LocalDateTime.now().format(FILE_TIME);
+        for (int attempt = 0; ; attempt++) {
+            file = directory.resolve(attempt == 0 ? name + ".bin" : name + "-" + attempt + ".bin");
+            try {
+                return Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                // Started twice within a millisecond, or the clock went back
+            }
+        }
+    }
+
+    /**
+     * Append one publish; a no-op unless capturing. Arrival time comes from System.nanoTime().
+     */
+    public void record(String topic, byte[] payload, long arrivalNanos) {
+        if (!capturing) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!capturing) {
+                return;
+            }
+            byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+            out.writeLong(arrivalNanos - startNanos);
+            out.writeShort(topicBytes.length);
+            out.write(topicBytes);
+            out.writeInt(payload.length);
+            out.write(payload);
+            records++;
+            // Bounded loss on a crash without a syscall per message
+            if (arrivalNanos - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                out.flush();
+                lastFlushNanos = arrivalNanos;
+            }
+        } catch (IOException e) {
+            log.error("MQTT capture write failed, stopping capture {}", file, e);
+            closeQuietly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush records that have sat in the buffer for the flush interval with nothing arriving after them
+     */
+    private void flushIfIdle() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (capturing && now - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                out.flush();
+                lastFlushNanos = now;
+            }
+        } catch (IOException e) {
+            log.error("MQTT capture flush failed, stopping capture {}", file, e);
+            closeQuietly();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stop() {
+        lock.lock();
+        try {
+            if (capturing) {
+                closeQuietly();
+                log.info("MQTT capture stopped: {} ({} records)", file.toAbsolutePath(), records);
+            }
+            return getStatus();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stop();
+        lock.lock();
+        try {
+            if (flusher != null) {
+                flusher.shutdownNow();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        lock.lock();
+        try {
+            Map<String, Object> status = new HashMap<>();
+            status.put("capturing", capturing);
+            status.put("file", file != null ? file.toAbsolutePath().toString() : null);
+            status.put("records", records);
+            return status;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeQuietly() {
+        capturing = false;
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("Error closing MQTT capture {}", file, e);
+            }
+            out = null;
+        }
+    }
+}
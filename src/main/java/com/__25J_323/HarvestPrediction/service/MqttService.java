@@ -1,30 +1,50 @@
 package com.__25J_323.HarvestPrediction.service;
 
+import com.__25J_323.HarvestPrediction.config.BackpressureSessionDecorator;
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.ReadingsSnapshot;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttDisconnectSource;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
 import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5ClientBuilder;
 import com.hivemq.client.mqtt.mqtt5.message.connect.connack.Mqtt5ConnAck;
 import com.hivemq.client.mqtt.mqtt5.message.publish.Mqtt5Publish;
+import com.hivemq.client.mqtt.mqtt5.message.subscribe.suback.Mqtt5SubAck;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,25 +56,56 @@ public class MqttService {
     private final EnvironmentDataService environmentDataService;
     private final ObjectMapper objectMapper;
     private final SimpMessagingTemplate messagingTemplate;
-
-    private Mqtt5BlockingClient mqttClient;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
-
-    // Current sensor readings cache
-    private final ConcurrentHashMap<String, Double> currentReadings = new ConcurrentHashMap<>();
-    private volatile LocalDateTime lastUpdateTime = LocalDateTime.now();
-    private volatile LocalDateTime lastSavedTime = null;
+    private final EnvironmentStreamService environmentStreamService;
+    private final CompactFrameService compactFrameService;
+    private final DeviceLivenessTracker deviceLivenessTracker;
+    private final SensorWindowAggregator sensorWindowAggregator;
+    private final SensorOutlierFilter sensorOutlierFilter;
+    private final ThresholdRuleEngine thresholdRuleEngine;
+    private final MqttCaptureWriter mqttCaptureWriter;
+    private final IngestMetrics ingestMetrics;
+    private final RecentReadingsBuffer recentReadingsBuffer;
+    private final Clock clock;
+
+    private volatile Mqtt5BlockingClient mqttClient;
+    private ScheduledExecutorService scheduler;
+
+    // Identifies this instance in its MQTT client id and its shared-subscription group. Only a
+    // configured mqtt.instance.id stays the same across restarts, so that the broker hands the
+    // persistent session back; the default is the host name plus a random suffix, unique per process
+    @org.springframework.beans.factory.annotation.Value("${mqtt.instance.id:}")
+    private String instanceId;
+
+    // Part key of the live windows this process saves; a restarted process writes a new part
+    private final String livePart = "live-" + UUID.randomUUID();
+
+    // Shared-subscription ingest; null when every instance receives every message
+    private IngestMembership membership;
+    private String membersTopic;
+    private String forwardPrefix;
+    private String forwardTopic;
+
+    // Current sensor readings, published as one immutable snapshot so readers never see a torn state
+    private final AtomicReference<ReadingsSnapshot> currentSnapshot = new AtomicReference<>(ReadingsSnapshot.EMPTY);
+    // The same for devices other than mqtt.device.id, on wildcard sensor topics
+    private final Map<String, ReadingsSnapshot> deviceSnapshots = new ConcurrentHashMap<>();
 
     // Device status tracking
     private volatile boolean deviceOnline = false;
     private volatile LocalDateTime lastOnlineTime = null;
     private volatile LocalDateTime deviceOfflineSince = null;
 
-    // Configuration for faster disconnect detection
-    private static final long DATA_FRESHNESS_SECONDS = 30; // Consider device offline after 30 seconds
-    private static final long MIN_SAVE_INTERVAL_SECONDS = 30; // Minimum interval between saves
-    private static final long STATUS_CHECK_INTERVAL_SECONDS = 5; // Check device status every 5 seconds
-    private static final long SAVE_DATA_INTERVAL_SECONDS = 30; // Save data every 30 seconds
+    // Broker session state; the client reconnects on its own, these only record what happened
+    private volatile boolean brokerConnected = false;
+    private volatile boolean shuttingDown = false;
+    private volatile long brokerDisconnectedNanos = -1;
+    private volatile LocalDateTime brokerConnectedSince = null;
+    private volatile String lastDisconnectCause = null;
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong brokerDowntimeNanos = new AtomicLong();
+
+    // Persistence of tumbling-window aggregates
+    private static final long WINDOW_CHECK_INTERVAL_MILLIS = 1000; // Upper bound on how late a window is persisted
 
     // Pattern to extract numeric values from strings with units
     private static final Pattern NUMERIC_PATTERN = Pattern.compile("([0-9]*\\.?[0-9]+)");
@@ -65,6 +116,9 @@ public class MqttService {
     @org.springframework.beans.factory.annotation.Value("${mqtt.broker.port}")
     private int brokerPort;
 
+    @org.springframework.beans.factory.annotation.Value("${mqtt.broker.ssl:true}")
+    private boolean brokerSsl;
+
     @org.springframework.beans.factory.annotation.Value("${mqtt.client.id:tomato-client-}")
     private String clientId;
 
@@ -77,83 +131,389 @@ public class MqttService {
     @org.springframework.beans.factory.annotation.Value("${mqtt.topic.soil-moisture}")
     private String soilMoistureTopic;
 
+    @org.springframework.beans.factory.annotation.Value("${mqtt.topic.packed:esp32/packed}")
+    private String packedTopic;
+
+    // Rejected readings are published here as JSON when set
+    @org.springframework.beans.factory.annotation.Value("${mqtt.topic.diagnostics:}")
+    private String diagnosticsTopic;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.device.id:esp32}")
+    private String deviceId;
+
     @org.springframework.beans.factory.annotation.Value("${mqtt.username:}")
     private String username;
 
     @org.springframework.beans.factory.annotation.Value("${mqtt.password:}")
     private String password;
 
+    @org.springframework.beans.factory.annotation.Value("${mqtt.connect.async:false}")
+    private boolean connectAsync;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.session.expiry-seconds:3600}")
+    private long sessionExpirySeconds;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.reconnect.initial-delay-ms:500}")
+    private long reconnectInitialDelayMillis;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.reconnect.max-delay-ms:30000}")
+    private long reconnectMaxDelayMillis;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.shared-subscription.group:}")
+    private String sharedGroup;
+
+    @org.springframework.beans.factory.annotation.Value("${mqtt.shared-subscription.control-topic:harvest/ingest}")
+    private String controlTopic;
+
+    @org.springframework.beans.factory.annotation.Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @PostConstruct
     public void init() {
+        instanceId = resolveInstanceId(instanceId);
+        // Window saves and the broker handshake block on I/O; on virtual threads they release the carrier
+        scheduler = virtualThreads
+                ? Executors.newScheduledThreadPool(2, Thread.ofVirtual().name("mqtt-scheduler-", 0).factory())
+                : Executors.newScheduledThreadPool(2);
+
+        // Online/offline transitions come from the liveness wheel instead of a periodic scan
+        deviceLivenessTracker.addListener(new DeviceLivenessTracker.Listener() {
+            @Override
+            public void onOnline(String id) {
+                onDeviceOnline(id);
+            }
+
+            @Override
+            public void onOffline(String id, long silentNanos) {
+                onDeviceOffline(id, silentNanos);
+            }
+        });
+
+        // Persist each tumbling window shortly after it closes, aligned to window boundaries
+        scheduler.scheduleAtFixedRate(this::aggregateAndSaveData,
+                sensorWindowAggregator.millisUntilNextBoundary(),
+                Math.min(sensorWindowAggregator.getWindowMillis(), WINDOW_CHECK_INTERVAL_MILLIS),
+                TimeUnit.MILLISECONDS);
+
+        if (sharedGroup != null && !sharedGroup.isEmpty()) {
+            membership = new IngestMembership(instanceId);
+            membersTopic = controlTopic + "/" + sharedGroup + "/members/";
+            forwardPrefix = controlTopic + "/" + sharedGroup + "/forward/";
+            forwardTopic = forwardPrefix + instanceId + "/";
+        }
+
+        if (!connectAsync) {
+            connect();
+        }
+    }
+
+    static String resolveInstanceId(String configured) {
+        if (configured != null && !configured.isBlank()) {
+            return configured;
+        }
+        String host = null;
         try {
-            // Create an MQTT client
-            mqttClient = Mqtt5Client.builder()
-                    .identifier(clientId + UUID.randomUUID().toString())
-                    .serverHost(brokerUrl.replace("ssl://", ""))
-                    .serverPort(brokerPort)
-                    .sslWithDefaultConfig()
-                    .buildBlocking();
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.debug("Could not resolve the local host name: {}", e.getMessage());
+        }
+        if (host == null || host.isBlank()) {
+            host = System.getenv("HOSTNAME");
+        }
+        // Two processes on one host, or containers sharing a host name, must not share a client id:
+        // they would take each other's session over in a loop
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        String generated = host != null && !host.isBlank() ? host + "-" + suffix : suffix;
+        log.warn("No mqtt.instance.id; using {}, so the MQTT session will not survive a restart", generated);
+        return generated;
+    }
+
+    /**
+     * With mqtt.connect.async, client setup (Netty, TLS) and the broker handshake start only once
+     * the application is serving
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void connectAfterStartup() {
+        if (connectAsync) {
+            scheduler.execute(this::connect);
+        }
+    }
 
-            // Connect with username and password if provided
-            Mqtt5ConnAck connAck;
+    private void connect() {
+        try {
+            // Create an MQTT client (plain TCP only for local/embedded brokers). The identifier stays
+            // the same across reconnects so the broker can resume the persistent session.
+            Mqtt5ClientBuilder clientBuilder = Mqtt5Client.builder()
+                    .identifier(clientId + instanceId)
+                    .serverHost(brokerUrl.replace("ssl://", "").replace("tcp://", ""))
+                    .serverPort(brokerPort)
+                    .addConnectedListener(this::onBrokerConnected)
+                    .addDisconnectedListener(this::onBrokerDisconnected);
+            if (brokerSsl) {
+                clientBuilder = clientBuilder.sslWithDefaultConfig();
+            }
+            mqttClient = clientBuilder.buildBlocking();
+
+            Mqtt5AsyncClient asyncClient = mqttClient.toAsync();
+
+            // Registered before connecting, so QoS 1 messages the broker queued for a resumed
+            // session are handled as soon as the connection is up
+            asyncClient.publishes(MqttGlobalPublishFilter.ALL, this::handleMessage);
+
+            // Persistent session: the broker keeps subscriptions and queues QoS 1 messages while
+            // the connection is down, for up to the session expiry. The connect completes only once
+            // an attempt succeeds (failed attempts are retried by the disconnected listener), so it
+            // must not block startup.
+            var connect = asyncClient.connectWith()
+                    .cleanStart(false)
+                    .sessionExpiryInterval(sessionExpirySeconds);
+            if (membership != null) {
+                // Clears this instance's retained presence if it drops off without a clean disconnect
+                connect = connect.willPublish()
+                        .topic(membersTopic + instanceId)
+                        .payload(new byte[0])
+                        .qos(MqttQos.AT_LEAST_ONCE)
+                        .retain(true)
+                        .applyWillPublish();
+            }
+            CompletableFuture<Mqtt5ConnAck> connecting;
             if (username != null && !username.isEmpty()) {
-                connAck = mqttClient.connectWith()
+                connecting = connect
                         .simpleAuth()
                         .username(username)
                         .password(password.getBytes(StandardCharsets.UTF_8))
                         .applySimpleAuth()
                         .send();
             } else {
-                connAck = mqttClient.connect();
+                connecting = connect.send();
             }
 
-            log.info("MQTT client connected: {}", connAck.getReasonCode());
+            connecting.thenCompose(connAck -> {
+                log.info("MQTT client connected: {} (session present: {})", connAck.getReasonCode(), connAck.isSessionPresent());
+                // After later reconnects the client resubscribes by itself if the session expired
+                CompletableFuture<Void> data = CompletableFuture.allOf(
+                        subscribeToTopic(asyncClient, sharedFilter(temperatureTopic)),
+                        subscribeToTopic(asyncClient, sharedFilter(humidityTopic)),
+                        subscribeToTopic(asyncClient, sharedFilter(soilMoistureTopic)),
+                        subscribeToTopic(asyncClient, sharedFilter(packedTopic)));
+                if (membership == null) {
+                    return data;
+                }
+                // Presence and forwarded messages are per instance, so not shared
+                return CompletableFuture.allOf(data,
+                        subscribeToTopic(asyncClient, membersTopic + "+"),
+                        subscribeToTopic(asyncClient, forwardTopic + "#"));
+            }).whenComplete((subscribed, e) -> {
+                if (e != null) {
+                    log.error("Error connecting MQTT client", e);
+                } else {
+                    log.info("MQTT Service initialized ({}s offline threshold, timing-wheel liveness)", deviceLivenessTracker.getTimeoutSeconds());
+                }
+            });
 
-            // Subscribe to topics
-            subscribeToTopic(temperatureTopic);
-            subscribeToTopic(humidityTopic);
-            subscribeToTopic(soilMoistureTopic);
+        } catch (Exception e) {
+            log.error("Error initializing MQTT client", e);
+        }
+    }
 
-            // Set up a global callback for all messages
-            mqttClient.toAsync().publishes(MqttGlobalPublishFilter.ALL, this::handleMessage);
+    private void onBrokerConnected(MqttClientConnectedContext context) {
+        brokerConnected = true;
+        brokerConnectedSince = LocalDateTime.now(clock);
+        if (membership != null) {
+            // Also after reconnects, since the will may have cleared it
+            announcePresence(instanceId.getBytes(StandardCharsets.UTF_8));
+        }
+        long disconnectedAt = brokerDisconnectedNanos;
+        brokerDisconnectedNanos = -1;
+        if (disconnectedAt >= 0) {
+            long downtime = System.nanoTime() - disconnectedAt;
+            reconnects.incrementAndGet();
+            brokerDowntimeNanos.addAndGet(downtime);
+            ingestMetrics.brokerReconnected(downtime);
+            log.info("MQTT client reconnected after {} ms", TimeUnit.NANOSECONDS.toMillis(downtime));
+        }
+    }
 
-            // Schedule periodic data aggregation and saving - with faster interval
-            scheduler.scheduleAtFixedRate(this::aggregateAndSaveData, 10, SAVE_DATA_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    /**
+     * Called for lost connections and failed connect attempts alike. Schedules the next attempt
+     * with exponential backoff and equal jitter, so a fleet of instances does not reconnect in step.
+     */
+    private void onBrokerDisconnected(MqttClientDisconnectedContext context) {
+        if (brokerConnected) {
+            brokerDisconnectedNanos = System.nanoTime();
+        }
+        brokerConnected = false;
+        brokerConnectedSince = null;
+        lastDisconnectCause = String.valueOf(context.getCause().getMessage());
+        if (shuttingDown || context.getSource() == MqttDisconnectSource.USER) {
+            return;
+        }
 
-            // Schedule periodic device status checking - more frequent
-            scheduler.scheduleAtFixedRate(this::checkDeviceStatus, 5, STATUS_CHECK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        int attempts = context.getReconnector().getAttempts();
+        long ceiling = reconnectInitialDelayMillis << Math.min(attempts, 20);
+        long backoff = Math.min(reconnectMaxDelayMillis, ceiling);
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        context.getReconnector()
+                .reconnect(true)
+                .resubscribeIfSessionExpired(true)
+                .delay(delay, TimeUnit.MILLISECONDS);
+        if (attempts == 0) {
+            log.warn("MQTT connection lost ({}), reconnecting in {} ms", lastDisconnectCause, delay);
+        } else {
+            log.debug("MQTT reconnect attempt {} failed ({}), next in {} ms", attempts, lastDisconnectCause, delay);
+        }
+    }
 
-            log.info("MQTT Service initialized with faster disconnect detection ({}s offline threshold, {}s status check)",
-                    DATA_FRESHNESS_SECONDS, STATUS_CHECK_INTERVAL_SECONDS);
+    private CompletableFuture<Mqtt5SubAck> subscribeToTopic(Mqtt5AsyncClient client, String topic) {
+        return client.subscribeWith()
+                .topicFilter(topic)
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .send()
+                .whenComplete((subAck, e) -> {
+                    if (e == null) {
+                        log.info("Subscribed to topic: {}", topic);
+                    }
+                });
+    }
 
-        } catch (Exception e) {
-            log.error("Error initializing MQTT client", e);
+    /**
+     * With a shared-subscription group, MQTT 5 "$share/group/topic" subscriptions make the broker hand
+     * each message to one instance of the group
+     */
+    private String sharedFilter(String topic) {
+        return membership == null ? topic : "$share/" + sharedGroup + "/" + topic;
+    }
+
+    void handleMessage(Mqtt5Publish publish) {
+        long arrivalNanos = System.nanoTime();
+        String topic = publish.getTopic().toString();
+        byte[] payload = publish.getPayloadAsBytes();
+        if (membership != null) {
+            if (topic.startsWith(membersTopic)) {
+                onMemberPresence(topic.substring(membersTopic.length()), payload);
+                return;
+            }
+            if (topic.startsWith(forwardTopic)) {
+                topic = topic.substring(forwardTopic.length());
+            } else {
+                // Per-device state (window, snapshot, liveness) lives on the device's owner only
+                String device = deviceOf(topic);
+                if (device != null && !membership.owns(device)) {
+                    forward(membership.ownerOf(device), topic, payload, arrivalNanos);
+                    return;
+                }
+            }
         }
+        mqttCaptureWriter.record(topic, payload, arrivalNanos);
+        handleMessage(topic, payload, arrivalNanos);
     }
 
-    private void subscribeToTopic(String topic) {
-        mqttClient.subscribeWith()
-                .topicFilter(topic)
+    private void forward(String owner, String topic, byte[] payload, long arrivalNanos) {
+        mqttClient.toAsync().publishWith()
+                .topic(forwardPrefix + owner + "/" + topic)
+                .payload(payload)
                 .qos(MqttQos.AT_LEAST_ONCE)
-                .send();
-        log.info("Subscribed to topic: {}", topic);
+                .send()
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        // Better a split window than a lost reading
+                        log.warn("Could not forward {} to {}, ingesting locally: {}", topic, owner, e.getMessage());
+                        mqttCaptureWriter.record(topic, payload, arrivalNanos);
+                        handleMessage(topic, payload, arrivalNanos);
+                    }
+                });
+        ingestMetrics.forwarded();
     }
 
-    private void handleMessage(Mqtt5Publish publish) {
-        try {
-            String topic = publish.getTopic().toString();
-            byte[] payload = publish.getPayloadAsBytes();
-            String message = new String(payload, StandardCharsets.UTF_8);
+    private void announcePresence(byte[] payload) {
+        mqttClient.toAsync().publishWith()
+                .topic(membersTopic + instanceId)
+                .payload(payload)
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .retain(true)
+                .send()
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.warn("Could not publish ingest group presence: {}", e.getMessage());
+                    }
+                });
+    }
 
-            log.debug("Received message on topic {}: {}", topic, message);
+    /**
+     * Retained presence of a group member: a non-empty payload joins, an empty one (clean leave or
+     * will) leaves
+     */
+    private void onMemberPresence(String member, byte[] payload) {
+        boolean changed = payload.length > 0 ? membership.join(member) : membership.leave(member);
+        if (!changed) {
+            return;
+        }
+        log.info("Ingest group {} is now {}; {} owned by {}", sharedGroup, membership.getMembers(),
+                deviceId, membership.owns(deviceId) ? "this instance" : membership.ownerOf(deviceId));
+        // Hand over: keep the samples of open windows of devices that moved; the new owner's part
+        // of each window is merged into the same document
+        for (String device : sensorWindowAggregator.devices()) {
+            if (membership.owns(device)) {
+                continue;
+            }
+            try {
+                SensorWindowAggregator.ClosedWindow window = sensorWindowAggregator.flush(device);
+                if (window != null) {
+                    saveWindow(window, livePart, true);
+                }
+            } catch (Exception e) {
+                log.error("Error saving the open aggregation window of {} on hand-over", device, e);
+            }
+        }
+    }
+
+    /**
+     * Ingest one message; entry point for both the live subscription and capture replay
+     */
+    public void handleMessage(String topic, byte[] payload) {
+        handleMessage(topic, payload, System.nanoTime());
+    }
 
+    private void handleMessage(String topic, byte[] payload, long arrivalNanos) {
+        try {
             // Process the message based on the topic
-            if (topic.equals(temperatureTopic)) {
-                processTemperature(message);
-            } else if (topic.equals(humidityTopic)) {
-                processHumidity(message);
-            } else if (topic.equals(soilMoistureTopic)) {
-                processSoilMoisture(message);
+            String sensor;
+            String filter;
+            Outcome outcome;
+            String device;
+            if ((device = deviceOf(packedTopic, topic)) != null) {
+                log.debug("Received {} byte packed message on topic {}", payload.length, topic);
+                sensor = "packed";
+                filter = packedTopic;
+                outcome = processPacked(device, payload);
+            } else {
+                String message = new String(payload, StandardCharsets.UTF_8);
+                log.debug("Received message on topic {}: {}", topic, message);
+
+                if ((device = deviceOf(temperatureTopic, topic)) != null) {
+                    sensor = "temperature";
+                    filter = temperatureTopic;
+                    outcome = processTemperature(device, message);
+                } else if ((device = deviceOf(humidityTopic, topic)) != null) {
+                    sensor = "humidity";
+                    filter = humidityTopic;
+                    outcome = processHumidity(device, message);
+                } else if ((device = deviceOf(soilMoistureTopic, topic)) != null) {
+                    sensor = "soilMoisture";
+                    filter = soilMoistureTopic;
+                    outcome = processSoilMoisture(device, message);
+                } else {
+                    ingestMetrics.messageReceived(IngestMetrics.UNMATCHED_TOPIC);
+                    return;
+                }
+            }
+
+            // Tagged with the configured topic, so per-device topics do not multiply the meters
+            ingestMetrics.messageReceived(filter);
+            if (outcome == Outcome.INGESTED) {
+                ingestMetrics.ingested(sensor, System.nanoTime() - arrivalNanos);
+            } else if (outcome == Outcome.UNPARSED) {
+                ingestMetrics.parseFailed(filter);
             }
 
         } catch (Exception e) {
@@ -161,10 +521,49 @@ public class MqttService {
         }
     }
 
+    /**
+     * Device of a message on any sensor topic, or null if the topic is none of them
+     */
+    private String deviceOf(String topic) {
+        String device = deviceOf(packedTopic, topic);
+        if (device == null) {
+            device = deviceOf(temperatureTopic, topic);
+        }
+        if (device == null) {
+            device = deviceOf(humidityTopic, topic);
+        }
+        if (device == null) {
+            device = deviceOf(soilMoistureTopic, topic);
+        }
+        return device;
+    }
+
+    /**
+     * Match a topic against a configured sensor topic. A "+" level in the configured topic (for
+     * example +/temperature) is the device id, so each device has its own owner in a shared group;
+     * a topic without one belongs to mqtt.device.id.
+     *
+     * @return the device, or null if the topic does not match
+     */
+    String deviceOf(String configured, String topic) {
+        int plus = configured.indexOf('+');
+        if (plus < 0) {
+            return configured.equals(topic) ? deviceId : null;
+        }
+        // "+" spans one whole level: same prefix and suffix, and no "/" in between
+        String suffix = configured.substring(plus + 1);
+        if (topic.length() <= plus + suffix.length()
+                || !topic.startsWith(configured.substring(0, plus)) || !topic.endsWith(suffix)) {
+            return null;
+        }
+        String device = topic.substring(plus, topic.length() - suffix.length());
+        return device.indexOf('/') < 0 ? device : null;
+    }
+
     /**
      * Extract numeric value from a string that may contain units
      */
-    private Double extractNumericValue(String payload) {
+    Double extractNumericValue(String payload) {
         if (payload == null || payload.trim().isEmpty()) {
             return null;
         }
@@ -179,122 +578,326 @@ public class MqttService {
                 try {
                     return Double.parseDouble(matcher.group(1));
                 } catch (NumberFormatException ex) {
-                    log.warn("Could not parse numeric value from: {}", cleanPayload);
+                    log.debug("Could not parse numeric value from: {}", cleanPayload);
                     return null;
                 }
             }
         }
 
-        log.warn("No numeric value found in payload: {}", cleanPayload);
+        log.debug("No numeric value found in payload: {}", cleanPayload);
         return null;
     }
 
-    private void processTemperature(String payload) {
+    private Outcome processTemperature(String device, String payload) {
         try {
             Double temperature = extractNumericValue(payload);
             if (temperature != null) {
-                currentReadings.put("temperature", temperature);
-                updateDeviceStatus();
-                log.debug("Updated temperature: {} at {}", temperature, LocalDateTime.now());
-                broadcastCurrentReadings();
-            } else {
-                log.warn("Failed to extract temperature from payload: {}", payload);
+                long now = clock.millis();
+                if (!admit(device, SensorWindowAggregator.TEMPERATURE, temperature, now)) {
+                    return Outcome.REJECTED;
+                }
+                sensorWindowAggregator.record(device, SensorWindowAggregator.TEMPERATURE, temperature);
+                thresholdRuleEngine.evaluate(device, SensorWindowAggregator.TEMPERATURE, temperature, now);
+                publishReadings(device, 1 << SensorWindowAggregator.TEMPERATURE, temperature, 0.0, 0.0, "temperature");
+                log.debug("Updated temperature: {}", temperature);
+                return Outcome.INGESTED;
             }
+            log.debug("Failed to extract temperature from payload: {}", payload);
         } catch (Exception e) {
             log.error("Error processing temperature data", e);
         }
+        return Outcome.UNPARSED;
     }
 
-    private void processHumidity(String payload) {
+    private Outcome processHumidity(String device, String payload) {
         try {
             Double humidity = extractNumericValue(payload);
             if (humidity != null) {
-                currentReadings.put("humidity", humidity);
-                updateDeviceStatus();
-                log.debug("Updated humidity: {} at {}", humidity, LocalDateTime.now());
-                broadcastCurrentReadings();
-            } else {
-                log.warn("Failed to extract humidity from payload: {}", payload);
+                long now = clock.millis();
+                if (!admit(device, SensorWindowAggregator.HUMIDITY, humidity, now)) {
+                    return Outcome.REJECTED;
+                }
+                sensorWindowAggregator.record(device, SensorWindowAggregator.HUMIDITY, humidity);
+                thresholdRuleEngine.evaluate(device, SensorWindowAggregator.HUMIDITY, humidity, now);
+                publishReadings(device, 1 << SensorWindowAggregator.HUMIDITY, 0.0, humidity, 0.0, "humidity");
+                log.debug("Updated humidity: {}", humidity);
+                return Outcome.INGESTED;
             }
+            log.debug("Failed to extract humidity from payload: {}", payload);
         } catch (Exception e) {
             log.error("Error processing humidity data", e);
         }
+        return Outcome.UNPARSED;
     }
 
-    private void processSoilMoisture(String payload) {
+    private Outcome processSoilMoisture(String device, String payload) {
         try {
             Double soilMoisture = extractNumericValue(payload);
             if (soilMoisture != null) {
-                currentReadings.put("soilMoisture", soilMoisture);
-                updateDeviceStatus();
-                log.debug("Updated soil moisture: {} at {}", soilMoisture, LocalDateTime.now());
-                broadcastCurrentReadings();
-            } else {
-                log.warn("Failed to extract soil moisture from payload: {}", payload);
+                long now = clock.millis();
+                if (!admit(device, SensorWindowAggregator.SOIL_MOISTURE, soilMoisture, now)) {
+                    return Outcome.REJECTED;
+                }
+                sensorWindowAggregator.record(device, SensorWindowAggregator.SOIL_MOISTURE, soilMoisture);
+                thresholdRuleEngine.evaluate(device, SensorWindowAggregator.SOIL_MOISTURE, soilMoisture, now);
+                publishReadings(device, 1 << SensorWindowAggregator.SOIL_MOISTURE, 0.0, 0.0, soilMoisture, "soilMoisture");
+                log.debug("Updated soil moisture: {}", soilMoisture);
+                return Outcome.INGESTED;
             }
+            log.debug("Failed to extract soil moisture from payload: {}", payload);
         } catch (Exception e) {
             log.error("Error processing soil moisture data", e);
         }
+        return Outcome.UNPARSED;
     }
 
     /**
-     * Update device status when new data is received
+     * Packed multi-sensor sample or batch of timestamped samples (JSON or binary). Samples in the open
+     * window join the live aggregation; older ones (a device flushing its offline buffer) are
+     * aggregated into their own windows and saved right away. The newest live sample updates the
+     * snapshot with a single broadcast. Backfilled samples go through their own outlier filter,
+     * since they predate the live one's history, and are not checked against threshold rules.
      */
-    private void updateDeviceStatus() {
-        LocalDateTime now = LocalDateTime.now();
-        lastUpdateTime = now;
-
-        if (!deviceOnline) {
-            deviceOnline = true;
-            lastOnlineTime = now;
-            deviceOfflineSince = null;
-            log.info("Device came online at: {} (reconnected)", lastOnlineTime);
-            broadcastDeviceStatus();
-        } else {
-            // Device was already online, just update the last seen time
-            log.debug("Device heartbeat received at: {}", now);
+    private Outcome processPacked(String device, byte[] payload) {
+        List<PackedPayloadDecoder.Sample> samples;
+        try {
+            samples = PackedPayloadDecoder.decode(payload);
+        } catch (IllegalArgumentException e) {
+            log.debug("Failed to decode packed payload: {}", e.getMessage());
+            return Outcome.UNPARSED;
+        }
+        if (samples.isEmpty()) {
+            return Outcome.UNPARSED;
+        }
+
+        try {
+            long now = clock.millis();
+            long openWindowStart = sensorWindowAggregator.windowStart(now);
+            SensorWindowAggregator backfill = null;
+            SensorOutlierFilter backfillFilter = null;
+            PackedPayloadDecoder.Sample latest = null;
+            int admitted = 0;
+
+            // Oldest first, so backfilled windows roll over in order
+            List<PackedPayloadDecoder.Sample> ordered = samples.size() == 1 ? samples : samples.stream()
+                    .sorted(Comparator.comparingLong(sample -> sampleTime(sample, now)))
+                    .toList();
+            for (PackedPayloadDecoder.Sample sample : ordered) {
+                long at = sampleTime(sample, now);
+                if (at < openWindowStart) {
+                    if (backfill == null) {
+                        backfill = new SensorWindowAggregator(sensorWindowAggregator.getWindowMillis());
+                        backfillFilter = sensorOutlierFilter.newEmpty();
+                    }
+                    sample = admit(device, backfillFilter, sample, at);
+                    if (sample != null) {
+                        recordSample(device, backfill, sample, at);
+                    }
+                } else {
+                    sample = admit(device, sensorOutlierFilter, sample, at);
+                    if (sample != null) {
+                        recordSample(device, sensorWindowAggregator, sample, now);
+                        evaluateRules(device, sample, at);
+                        latest = sample;
+                    }
+                }
+                if (sample != null) {
+                    admitted++;
+                }
+            }
+            if (admitted == 0) {
+                return Outcome.REJECTED;
+            }
+
+            if (backfill != null) {
+                // A device re-sending the same batch (no PUBACK before it dropped) yields the same key
+                String batchPart = "batch-" + UUID.nameUUIDFromBytes(payload);
+                List<SensorWindowAggregator.ClosedWindow> windows = backfill.flushAll();
+                for (SensorWindowAggregator.ClosedWindow window : windows) {
+                    saveWindow(window, batchPart, false);
+                }
+                log.info("Backfilled {} windows from {} buffered samples", windows.size(), samples.size());
+            }
+            if (latest != null) {
+                publishReadings(device, latest.mask(), latest.temperature(), latest.humidity(), latest.soilMoisture(), "packed");
+            } else {
+                updateDeviceStatus(device);
+            }
+            return Outcome.INGESTED;
+        } catch (Exception e) {
+            log.error("Error processing packed data", e);
+            return Outcome.UNPARSED;
+        }
+    }
+
+    private void evaluateRules(String device, PackedPayloadDecoder.Sample sample, long atMillis) {
+        for (int sensor = 0; sensor < SensorWindowAggregator.SENSORS.length; sensor++) {
+            if (sample.has(sensor)) {
+                thresholdRuleEngine.evaluate(device, sensor, sample.value(sensor), atMillis);
+            }
         }
     }
 
     /**
-     * Periodically check device status with faster detection
+     * The sample without the readings the filter rejects, or null if none is left
      */
-    private void checkDeviceStatus() {
+    private PackedPayloadDecoder.Sample admit(String device, SensorOutlierFilter filter, PackedPayloadDecoder.Sample sample, long atMillis) {
+        int mask = sample.mask();
+        for (int sensor = 0; sensor < SensorWindowAggregator.SENSORS.length; sensor++) {
+            if (sample.has(sensor) && !admit(device, filter, sensor, sample.value(sensor), atMillis)) {
+                mask &= ~(1 << sensor);
+            }
+        }
+        if (mask == sample.mask()) {
+            return sample;
+        }
+        return mask == 0 ? null : new PackedPayloadDecoder.Sample(sample.timestampMillis(), mask,
+                sample.temperature(), sample.humidity(), sample.soilMoisture());
+    }
+
+    private boolean admit(String device, int sensor, double value, long atMillis) {
+        return admit(device, sensorOutlierFilter, sensor, value, atMillis);
+    }
+
+    private boolean admit(String device, SensorOutlierFilter filter, int sensor, double value, long atMillis) {
+        SensorOutlierFilter.Verdict verdict = filter.check(device, sensor, value, atMillis);
+        if (verdict == SensorOutlierFilter.Verdict.ACCEPTED) {
+            return true;
+        }
+        String name = SensorWindowAggregator.SENSORS[sensor];
+        ingestMetrics.rejected(name, verdict);
+        log.debug("Rejected {} reading {} from {}: {}", name, value, device, verdict);
+        publishRejection(device, name, value, verdict, atMillis);
+        return false;
+    }
+
+    private void publishRejection(String device, String sensor, double value, SensorOutlierFilter.Verdict verdict, long atMillis) {
+        if (diagnosticsTopic == null || diagnosticsTopic.isEmpty()
+                || mqttClient == null || !mqttClient.getState().isConnected()) {
+            return;
+        }
         try {
-            boolean currentlyOnline = isDataFresh();
-            LocalDateTime now = LocalDateTime.now();
-
-            if (deviceOnline && !currentlyOnline) {
-                // Device just went offline
-                deviceOnline = false;
-                deviceOfflineSince = now;
-                long secondsSinceLastUpdate = lastUpdateTime != null ?
-                        ChronoUnit.SECONDS.between(lastUpdateTime, now) : 0;
-
-                log.warn("Device went OFFLINE at: {} ({}s since last update: {})",
-                        deviceOfflineSince, secondsSinceLastUpdate, lastUpdateTime);
-                broadcastDeviceStatus();
-
-            } else if (!deviceOnline && currentlyOnline) {
-                // Device came back online (this shouldn't happen without updateDeviceStatus being called)
-                deviceOnline = true;
-                lastOnlineTime = now;
-                deviceOfflineSince = null;
-                log.info("Device came back ONLINE at: {} (status check detected)", lastOnlineTime);
-                broadcastDeviceStatus();
+            Map<String, Object> rejection = new HashMap<>();
+            rejection.put("device", device);
+            rejection.put("sensor", sensor);
+            rejection.put("value", value);
+            rejection.put("reason", verdict.name());
+            rejection.put("timestamp", atMillis);
+            mqttClient.toAsync().publishWith()
+                    .topic(diagnosticsTopic)
+                    .payload(objectMapper.writeValueAsBytes(rejection))
+                    .qos(MqttQos.AT_MOST_ONCE)
+                    .send();
+        } catch (Exception e) {
+            log.debug("Could not publish rejected reading: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Device time of a sample, or arrival time when it has none or it lies in the future (clock skew)
+     */
+    private static long sampleTime(PackedPayloadDecoder.Sample sample, long now) {
+        long at = sample.timestampMillis();
+        return at <= 0 || at > now ? now : at;
+    }
+
+    private void recordSample(String device, SensorWindowAggregator aggregator, PackedPayloadDecoder.Sample sample, long atMillis) {
+        for (int sensor = 0; sensor < SensorWindowAggregator.SENSORS.length; sensor++) {
+            if (sample.has(sensor)) {
+                aggregator.record(device, sensor, sample.value(sensor), atMillis);
             }
+        }
+    }
 
-            // Debug logging for monitoring
-            if (lastUpdateTime != null) {
-                long secondsSinceUpdate = ChronoUnit.SECONDS.between(lastUpdateTime, now);
-                if (secondsSinceUpdate > 15) { // Log warning if no updates for 15+ seconds
-                    log.debug("No updates for {}s. Last update: {}, Device status: {}",
-                            secondsSinceUpdate, lastUpdateTime, deviceOnline ? "ONLINE" : "OFFLINE");
-                }
+    /**
+     * Common tail of every payload format: one snapshot update, one liveness touch and one
+     * broadcast, however many readings the message carried. The configured device feeds the live
+     * view; other devices only go to their own SSE stream.
+     */
+    private void publishReadings(String device, int mask, double temperature, double humidity, double soilMoisture,
+                                 String sensor) {
+        long nowMillis = clock.millis();
+        LocalDateTime now = toLocalDateTime(nowMillis);
+        boolean primary = deviceId.equals(device);
+        ReadingsSnapshot snapshot = primary
+                ? currentSnapshot.updateAndGet(current -> current.withReadings(mask, temperature, humidity, soilMoisture, now))
+                : deviceSnapshots.compute(device, (key, current) -> (current != null ? current : ReadingsSnapshot.EMPTY)
+                        .withReadings(mask, temperature, humidity, soilMoisture, now));
+        // Only what this message carried; the buffer fills the rest in from earlier rows
+        recentReadingsBuffer.record(device, nowMillis,
+                (mask & 1 << SensorWindowAggregator.TEMPERATURE) != 0 ? temperature : Double.NaN,
+                (mask & 1 << SensorWindowAggregator.HUMIDITY) != 0 ? humidity : Double.NaN,
+                (mask & 1 << SensorWindowAggregator.SOIL_MOISTURE) != 0 ? soilMoisture : Double.NaN);
+        updateDeviceStatus(device);
+        if (primary) {
+            broadcastCurrentReadings(sensor, snapshot);
+        } else {
+            try {
+                EnvironmentData data = snapshot.toEnvironmentData();
+                data.setDeviceId(device);
+                environmentStreamService.publishReading(device, sensor, data);
+            } catch (Exception e) {
+                log.error("Error publishing readings of {}", device, e);
             }
+        }
+    }
 
+    /**
+     * Update device status when new data is received
+     */
+    private void updateDeviceStatus(String device) {
+        // Re-arms the device's offline deadline; the online transition (if any) arrives via the listener
+        deviceLivenessTracker.touch(device);
+    }
+
+    /**
+     * Liveness transition: device started sending again
+     */
+    private void onDeviceOnline(String id) {
+        broadcastLivenessTransition(id, true);
+        if (!deviceId.equals(id)) {
+            return;
+        }
+        deviceOnline = true;
+        lastOnlineTime = LocalDateTime.now(clock);
+        deviceOfflineSince = null;
+        log.info("Device came online at: {} (reconnected)", lastOnlineTime);
+        broadcastDeviceStatus();
+    }
+
+    /**
+     * Liveness transition: no message within the freshness timeout
+     */
+    private void onDeviceOffline(String id, long silentNanos) {
+        if (membership != null && !membership.owns(id)) {
+            // Handed over to another instance, not silent
+            return;
+        }
+        broadcastLivenessTransition(id, false);
+        if (!deviceId.equals(id)) {
+            return;
+        }
+        deviceOnline = false;
+        deviceOfflineSince = LocalDateTime.now(clock);
+        log.warn("Device went OFFLINE at: {} ({}s since last update: {})",
+                deviceOfflineSince, TimeUnit.NANOSECONDS.toSeconds(silentNanos), getLastUpdateTime());
+        broadcastDeviceStatus();
+    }
+
+    /**
+     * Broadcast a per-device online/offline transition for fleet dashboards
+     */
+    private void broadcastLivenessTransition(String id, boolean online) {
+        try {
+            Map<String, Object> transition = new HashMap<>();
+            transition.put("deviceId", id);
+            transition.put("online", online);
+            transition.put("timestamp", LocalDateTime.now(clock));
+            // Every transition counts, so a slow client must not lose one
+            messagingTemplate.convertAndSend("/topic/device-liveness", transition,
+                    Map.of(BackpressureSessionDecorator.RELIABLE_HEADER, "true"));
         } catch (Exception e) {
-            log.error("Error checking device status", e);
+            log.error("Error broadcasting liveness transition for {}", id, e);
         }
     }
 
@@ -304,7 +907,10 @@ public class MqttService {
     private void broadcastDeviceStatus() {
         try {
             Map<String, Object> status = getDeviceStatus();
-            messagingTemplate.convertAndSend("/topic/device-status", status);
+            messagingTemplate.convertAndSend("/topic/device-status", status,
+                    Map.of(BackpressureSessionDecorator.CONFLATION_KEY_HEADER, deviceId));
+            environmentStreamService.publishDeviceStatus(deviceId, status);
+            compactFrameService.publishDeviceStatus(status);
             log.info("Broadcasted device status: {} - {}", status.get("status"),
                     deviceOnline ? "Online since: " + lastOnlineTime : "Offline since: " + deviceOfflineSince);
         } catch (Exception e) {
@@ -313,97 +919,98 @@ public class MqttService {
     }
 
     /**
-     * Check if the current data is fresh enough (using seconds now for faster detection)
+     * Check if the current data is fresh enough (device has not passed its liveness deadline)
      */
     private boolean isDataFresh() {
-        if (lastUpdateTime == null) {
-            return false;
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        long secondsSinceUpdate = ChronoUnit.SECONDS.between(lastUpdateTime, now);
-
-        return secondsSinceUpdate <= DATA_FRESHNESS_SECONDS;
+        return deviceLivenessTracker.isOnline(deviceId);
     }
 
     /**
-     * Check if enough time has passed since the last save
+     * Persist one enriched document per closed tumbling window (count/mean/min/max/stddev per sensor).
+     * Sensors silent for the whole window carry their last known value forward as the mean.
+     * Runs on the scheduler, or from a replay after each clock advance.
      */
-    private boolean shouldSaveData() {
-        if (lastSavedTime == null) {
-            return true;
+    public void aggregateAndSaveData() {
+        try {
+            List<SensorWindowAggregator.ClosedWindow> closed = sensorWindowAggregator.closeWindows(clock.millis());
+            for (SensorWindowAggregator.ClosedWindow window : closed) {
+                saveWindow(window, livePart, true);
+            }
+        } catch (Exception e) {
+            log.error("Error aggregating and saving environment data", e);
         }
-
-        LocalDateTime now = LocalDateTime.now();
-        long secondsSinceLastSave = ChronoUnit.SECONDS.between(lastSavedTime, now);
-
-        return secondsSinceLastSave >= MIN_SAVE_INTERVAL_SECONDS;
     }
 
     /**
-     * Aggregate current readings and save as a single EnvironmentData object
-     * Now with better logging and freshness checks
+     * @param part         the live windows of this process, or one backfilled batch; the store merges
+     *                     each part into the device's window once
+     * @param carryForward fill silent sensors from the current snapshot; off for backfilled windows,
+     *                     where the current values say nothing about the past
      */
-    private void aggregateAndSaveData() {
-        try {
-            LocalDateTime now = LocalDateTime.now();
+    private void saveWindow(SensorWindowAggregator.ClosedWindow window, String part, boolean carryForward) {
+        ReadingsSnapshot snapshot = deviceId.equals(window.deviceId())
+                ? currentSnapshot.get() : deviceSnapshots.getOrDefault(window.deviceId(), ReadingsSnapshot.EMPTY);
+        boolean fillSilent = carryForward && !snapshot.isEmpty();
+        double[] lastKnown = {snapshot.temperature(), snapshot.humidity(), snapshot.soilMoisture()};
 
-            if (currentReadings.isEmpty()) {
-                log.debug("No current readings available, skipping save");
-                return;
-            }
-
-            // Check if data is fresh before saving
-            if (!isDataFresh()) {
-                long secondsSinceUpdate = lastUpdateTime != null ?
-                        ChronoUnit.SECONDS.between(lastUpdateTime, now) : 0;
-                log.debug("Data is not fresh ({}s old, threshold: {}s), skipping save. Last update: {}",
-                        secondsSinceUpdate, DATA_FRESHNESS_SECONDS, lastUpdateTime);
-                return;
-            }
-
-            // Check if enough time has passed since last save
-            if (!shouldSaveData()) {
-                long secondsSinceLastSave = lastSavedTime != null ?
-                        ChronoUnit.SECONDS.between(lastSavedTime, now) : 0;
-                log.debug("Not enough time has passed since last save ({}s ago, minimum: {}s)",
-                        secondsSinceLastSave, MIN_SAVE_INTERVAL_SECONDS);
-                return;
+        EnvironmentData data = new EnvironmentData();
+        Map<String, EnvironmentData.SensorStats> stats = new HashMap<>();
+        Double[] means = new Double[SensorWindowAggregator.SENSORS.length];
+        long samples = 0;
+        for (int i = 0; i < SensorWindowAggregator.SENSORS.length; i++) {
+            EnvironmentData.SensorStats sensorStats = window.stats()[i];
+            if (sensorStats != null) {
+                stats.put(SensorWindowAggregator.SENSORS[i], sensorStats);
+                means[i] = sensorStats.getMean();
+                samples += sensorStats.getCount();
+            } else if (fillSilent) {
+                means[i] = lastKnown[i];
             }
+        }
 
-            // Create and save environment data
-            EnvironmentData data = new EnvironmentData();
-            data.setTemperature(currentReadings.getOrDefault("temperature", 0.0));
-            data.setHumidity(currentReadings.getOrDefault("humidity", 0.0));
-            data.setSoilMoisture(currentReadings.getOrDefault("soilMoisture", 0.0));
-            data.setTimestamp(lastUpdateTime); // Use the actual last update time, not current time
-
-            environmentDataService.saveEnvironmentData(data);
-            lastSavedTime = now;
-
-            long secondsSinceUpdate = ChronoUnit.SECONDS.between(lastUpdateTime, now);
-            log.info("Saved FRESH environment data: T={}, H={}, SM={} (Data age: {}s, Last update: {})",
-                    data.getTemperature(), data.getHumidity(), data.getSoilMoisture(),
-                    secondsSinceUpdate, lastUpdateTime);
+        // One document per device and window: a backfilled batch overlapping the live window and the
+        // two halves of a window split by an ownership hand-over merge into it
+        data.setId(EnvironmentData.windowId(window.deviceId(), window.startMillis()));
+        data.setDeviceId(window.deviceId());
+        data.setTemperature(means[SensorWindowAggregator.TEMPERATURE]);
+        data.setHumidity(means[SensorWindowAggregator.HUMIDITY]);
+        data.setSoilMoisture(means[SensorWindowAggregator.SOIL_MOISTURE]);
+        data.setStats(stats);
+        data.setWindowStart(toLocalDateTime(window.startMillis()));
+        data.setWindowEnd(toLocalDateTime(window.endMillis()));
+        // A window flushed early (shutdown) is stamped with the flush time, not its nominal end
+        data.setTimestamp(toLocalDateTime(Math.min(window.endMillis(), clock.millis())));
+
+        environmentDataService.saveWindow(data, part);
+        ingestMetrics.windowSaved();
+        log.debug("Saved {}s window for {}: {} samples, T={}, H={}, SM={} ({} - {})",
+                sensorWindowAggregator.getWindowSeconds(), window.deviceId(), samples,
+                data.getTemperature(), data.getHumidity(), data.getSoilMoisture(),
+                data.getWindowStart(), data.getWindowEnd());
+    }
 
-        } catch (Exception e) {
-            log.error("Error aggregating and saving environment data", e);
-        }
+    private LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), clock.getZone());
     }
 
     /**
-     * Broadcast current readings via WebSocket
+     * Broadcast current readings via WebSocket and the SSE stream
      */
-    private void broadcastCurrentReadings() {
+    private void broadcastCurrentReadings(String sensor, ReadingsSnapshot snapshot) {
         try {
-            EnvironmentData currentData = new EnvironmentData();
-            currentData.setTemperature(currentReadings.getOrDefault("temperature", 0.0));
-            currentData.setHumidity(currentReadings.getOrDefault("humidity", 0.0));
-            currentData.setSoilMoisture(currentReadings.getOrDefault("soilMoisture", 0.0));
-            currentData.setTimestamp(lastUpdateTime); // Use actual last update time
-
-            messagingTemplate.convertAndSend("/topic/environment", currentData);
-            log.debug("Broadcasted current readings via WebSocket (timestamp: {})", lastUpdateTime);
+            EnvironmentData currentData = snapshot.toEnvironmentData();
+
+            long started = System.nanoTime();
+            messagingTemplate.convertAndSend("/topic/environment", currentData,
+                    Map.of(BackpressureSessionDecorator.CONFLATION_KEY_HEADER, deviceId));
+            long stompDone = System.nanoTime();
+            environmentStreamService.publishReading(deviceId, sensor, currentData);
+            long sseDone = System.nanoTime();
+            compactFrameService.publishEnvironment(currentData);
+            ingestMetrics.fannedOut("stomp", stompDone - started);
+            ingestMetrics.fannedOut("sse", sseDone - stompDone);
+            ingestMetrics.fannedOut("cbor", System.nanoTime() - sseDone);
+            log.debug("Broadcasted current readings via WebSocket (timestamp: {})", snapshot.timestamp());
 
         } catch (Exception e) {
             log.error("Error broadcasting current readings", e);
@@ -414,12 +1021,14 @@ public class MqttService {
      * Get current real-time readings
      */
     public EnvironmentData getCurrentReadings() {
-        EnvironmentData data = new EnvironmentData();
-        data.setTemperature(currentReadings.getOrDefault("temperature", 0.0));
-        data.setHumidity(currentReadings.getOrDefault("humidity", 0.0));
-        data.setSoilMoisture(currentReadings.getOrDefault("soilMoisture", 0.0));
-        data.setTimestamp(lastUpdateTime);
-        return data;
+        return currentSnapshot.get().toEnvironmentData();
+    }
+
+    /**
+     * Get the current readings as one consistent, immutable snapshot (no copy, no lock)
+     */
+    public ReadingsSnapshot getCurrentSnapshot() {
+        return currentSnapshot.get();
     }
 
     /**
@@ -434,8 +1043,9 @@ public class MqttService {
      */
     public Map<String, Object> getDeviceStatus() {
         Map<String, Object> status = new HashMap<>();
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now(clock);
 
+        LocalDateTime lastUpdateTime = getLastUpdateTime();
         boolean actuallyOnline = isDataFresh();
         status.put("online", actuallyOnline);
         status.put("status", actuallyOnline ? "ONLINE" : "OFFLINE");
@@ -457,7 +1067,7 @@ public class MqttService {
         }
 
         // Add freshness info
-        status.put("dataFreshThresholdSeconds", DATA_FRESHNESS_SECONDS);
+        status.put("dataFreshThresholdSeconds", deviceLivenessTracker.getTimeoutSeconds());
         status.put("isDataFresh", actuallyOnline);
 
         return status;
@@ -467,7 +1077,7 @@ public class MqttService {
      * Get the last update time
      */
     public LocalDateTime getLastUpdateTime() {
-        return lastUpdateTime;
+        return currentSnapshot.get().timestamp();
     }
 
     /**
@@ -476,7 +1086,7 @@ public class MqttService {
     public void setDeviceOffline() {
         if (deviceOnline) {
             deviceOnline = false;
-            deviceOfflineSince = LocalDateTime.now();
+            deviceOfflineSince = LocalDateTime.now(clock);
             log.warn("Device manually set to OFFLINE at: {}", deviceOfflineSince);
             broadcastDeviceStatus();
         }
@@ -487,14 +1097,27 @@ public class MqttService {
      */
     public Map<String, Object> getConnectionStats() {
         Map<String, Object> stats = new HashMap<>();
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime lastUpdateTime = getLastUpdateTime();
 
         stats.put("currentTime", now);
         stats.put("lastUpdateTime", lastUpdateTime);
         stats.put("deviceOnline", deviceOnline);
         stats.put("dataFresh", isDataFresh());
-        stats.put("freshThresholdSeconds", DATA_FRESHNESS_SECONDS);
-        stats.put("statusCheckIntervalSeconds", STATUS_CHECK_INTERVAL_SECONDS);
+        stats.put("freshThresholdSeconds", deviceLivenessTracker.getTimeoutSeconds());
+        stats.put("trackedDevices", deviceLivenessTracker.trackedDevices());
+        stats.put("onlineDevices", deviceLivenessTracker.onlineDevices());
+        stats.put("brokerConnected", brokerConnected);
+        stats.put("brokerConnectedSince", brokerConnectedSince);
+        stats.put("brokerReconnects", reconnects.get());
+        stats.put("brokerDowntimeSeconds", TimeUnit.NANOSECONDS.toMillis(getBrokerDowntimeNanos()) / 1000.0);
+        stats.put("lastDisconnectCause", lastDisconnectCause);
+        stats.put("instanceId", instanceId);
+        if (membership != null) {
+            stats.put("sharedGroup", sharedGroup);
+            stats.put("groupMembers", membership.getMembers());
+            stats.put("deviceOwner", membership.ownerOf(deviceId));
+        }
 
         if (lastUpdateTime != null) {
             stats.put("secondsSinceLastUpdate", ChronoUnit.SECONDS.between(lastUpdateTime, now));
@@ -503,8 +1126,29 @@ public class MqttService {
         return stats;
     }
 
+    /**
+     * Whether the broker connection is currently up
+     */
+    public boolean isBrokerConnected() {
+        return brokerConnected;
+    }
+
+    public long getBrokerReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * Total time without a broker connection since the first successful connect, including an outage in progress
+     */
+    public long getBrokerDowntimeNanos() {
+        long disconnectedAt = brokerDisconnectedNanos;
+        long ongoing = disconnectedAt >= 0 ? System.nanoTime() - disconnectedAt : 0;
+        return brokerDowntimeNanos.get() + ongoing;
+    }
+
     @PreDestroy
     public void destroy() {
+        shuttingDown = true;
         try {
             if (scheduler != null && !scheduler.isShutdown()) {
                 scheduler.shutdown();
@@ -512,13 +1156,31 @@ public class MqttService {
                     scheduler.shutdownNow();
                 }
             }
-            if (mqttClient != null) {
+            if (mqttClient != null && mqttClient.getState().isConnected()) {
+                if (membership != null) {
+                    // Leave the group before disconnecting; the will only fires on unclean disconnects
+                    mqttClient.publishWith()
+                            .topic(membersTopic + instanceId)
+                            .payload(new byte[0])
+                            .qos(MqttQos.AT_LEAST_ONCE)
+                            .retain(true)
+                            .send();
+                }
                 mqttClient.disconnect();
                 log.info("MQTT client disconnected");
             }
         } catch (Exception e) {
             log.error("Error disconnecting MQTT client", e);
         }
+
+        try {
+            // Keep the samples of the partially filled window
+            for (SensorWindowAggregator.ClosedWindow window : sensorWindowAggregator.flushAll()) {
+                saveWindow(window, livePart, true);
+            }
+        } catch (Exception e) {
+            log.error("Error saving the open aggregation window on shutdown", e);
+        }
     }
 
     public void publishMessage(String topic, String payload) {
@@ -533,4 +1195,12 @@ public class MqttService {
             log.error("Error publishing MQTT message", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * What became of one message: ingested, every reading dropped by the outlier filter, or no
+     * reading found
+     */
+    private enum Outcome {
+        INGESTED, REJECTED, UNPARSED
+    }
+}
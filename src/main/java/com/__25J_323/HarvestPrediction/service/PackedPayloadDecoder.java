@@ -0,0 +1,175 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes multi-sensor device messages: one packed sample or a batch of timestamped samples
+ * (e.g. buffered while the device was offline), as JSON or as fixed-layout binary.
+ * <p>
+ * JSON: {@code {"ts":1717243200000,"t":24.5,"h":61.0,"sm":40.2}} (long names temperature, humidity
+ * and soilMoisture also work; ts is optional), a batch as {@code {"samples":[...]}} or a top-level array.
+ * <p>
+ * Binary, big-endian. Packed: {@code 0x01 | record}. Batch: {@code 0x02 | uint16 count | count x record}.
+ * A record is 21 bytes: {@code int64 epoch millis (0 = arrival time) | uint8 presence mask (bit 0
+ * temperature, bit 1 humidity, bit 2 soil moisture) | float32 temperature | float32 humidity | float32 soil moisture}.
+ */
+public final class PackedPayloadDecoder {
+
+    public static final byte TYPE_PACKED = 0x01;
+    public static final byte TYPE_BATCH = 0x02;
+    public static final int RECORD_BYTES = 21;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String[][] JSON_NAMES = {
+            {"t", "temperature"},
+            {"h", "humidity"},
+            {"sm", "soilMoisture"}
+    };
+
+    /**
+     * One multi-sensor sample; {@code timestampMillis} is 0 when the device sent none, and values
+     * whose bit is not set in {@code mask} are meaningless
+     */
+    public record Sample(long timestampMillis, int mask, double temperature, double humidity, double soilMoisture) {
+
+        public boolean has(int sensor) {
+            return (mask & (1 << sensor)) != 0;
+        }
+
+        public double value(int sensor) {
+            return switch (sensor) {
+                case SensorWindowAggregator.TEMPERATURE -> temperature;
+                case SensorWindowAggregator.HUMIDITY -> humidity;
+                default -> soilMoisture;
+            };
+        }
+    }
+
+    private PackedPayloadDecoder() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the payload is neither valid JSON nor a valid binary frame
+     */
+    public static List<Sample> decode(byte[] payload) {
+        int first = firstNonWhitespace(payload);
+        if (first < 0) {
+            throw new IllegalArgumentException("Empty payload");
+        }
+        byte type = payload[first];
+        if (type == '{' || type == '[') {
+            return decodeJson(payload);
+        }
+        return decodeBinary(payload);
+    }
+
+    private static List<Sample> decodeJson(byte[] payload) {
+        JsonNode root;
+        try {
+            root = JSON.readTree(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed JSON payload: " + e.getMessage(), e);
+        }
+        JsonNode samples = root.isArray() ? root : root.get("samples");
+        List<Sample> decoded = new ArrayList<>();
+        if (samples == null) {
+            decoded.add(jsonSample(root));
+        } else {
+            if (!samples.isArray()) {
+                throw new IllegalArgumentException("\"samples\" must be an array");
+            }
+            for (JsonNode sample : samples) {
+                decoded.add(jsonSample(sample));
+            }
+        }
+        return decoded;
+    }
+
+    private static Sample jsonSample(JsonNode node) {
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("Sample must be an object: " + node);
+        }
+        double[] values = new double[JSON_NAMES.length];
+        int mask = 0;
+        for (int sensor = 0; sensor < JSON_NAMES.length; sensor++) {
+            for (String name : JSON_NAMES[sensor]) {
+                JsonNode value = node.get(name);
+                if (value != null && value.isNumber()) {
+                    values[sensor] = value.doubleValue();
+                    mask |= 1 << sensor;
+                    break;
+                }
+            }
+        }
+        if (mask == 0) {
+            throw new IllegalArgumentException("Sample carries no reading: " + node);
+        }
+        JsonNode ts = node.get("ts");
+        long timestamp = ts != null && ts.canConvertToLong() ? ts.longValue() : 0;
+        return new Sample(timestamp, mask, values[0], values[1], values[2]);
+    }
+
+    private static List<Sample> decodeBinary(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        try {
+            byte type = buffer.get();
+            int count;
+            if (type == TYPE_PACKED) {
+                count = 1;
+            } else if (type == TYPE_BATCH) {
+                count = Short.toUnsignedInt(buffer.getShort());
+            } else {
+                throw new IllegalArgumentException("Unknown frame type: " + type);
+            }
+            if (buffer.remaining() != count * RECORD_BYTES) {
+                throw new IllegalArgumentException("Expected " + count + " records, got " + buffer.remaining() + " bytes");
+            }
+            List<Sample> decoded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long timestamp = buffer.getLong();
+                int mask = buffer.get() & 0x07;
+                decoded.add(new Sample(timestamp, mask, buffer.getFloat(), buffer.getFloat(), buffer.getFloat()));
+            }
+            return decoded;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary frame", e);
+        }
+    }
+
+    /**
+     * Binary form of the given samples: a packed frame for one sample, a batch frame otherwise
+     */
+    public static byte[] encode(List<Sample> samples) {
+        boolean packed = samples.size() == 1;
+        ByteBuffer buffer = ByteBuffer.allocate((packed ? 1 : 3) + samples.size() * RECORD_BYTES);
+        if (packed) {
+            buffer.put(TYPE_PACKED);
+        } else {
+            buffer.put(TYPE_BATCH).putShort((short) samples.size());
+        }
+        for (Sample sample : samples) {
+            buffer.putLong(sample.timestampMillis())
+                    .put((byte) sample.mask())
+                    .putFloat((float) sample.temperature())
+                    .putFloat((float) sample.humidity())
+                    .putFloat((float) sample.soilMoisture());
+        }
+        return buffer.array();
+    }
+
+    private static int firstNonWhitespace(byte[] payload) {
+        for (int i = 0; i < payload.length; i++) {
+            if (!Character.isWhitespace(payload[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
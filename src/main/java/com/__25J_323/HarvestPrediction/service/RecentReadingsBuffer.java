@@ -0,0 +1,365 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Every reading of the last few hours, per device, in fixed-size off-heap rings.
+ * <p>
+ * Each device gets one direct buffer holding four primitive columns (epoch millis, temperature,
+ * humidity, soil moisture) of capacity rows, so the memory is allocated once, stays outside the
+ * heap and is bounded by max-devices x capacity x 32 bytes. A row holds what the device reported in
+ * one second, NaN for the sensors it did not report: the messages of one tick, one per sensor,
+ * share a row, so capacity rows always last capacity seconds.
+ * <p>
+ * The buffer answers for a time range only if it has every reading in it: since it started, within
+ * the horizon, not yet overwritten, and after anything written to the store behind its back (see
+ * {@link #markStoredUntil(long)}). {@link #coveredFrom()} is the start of that range; anything older
+ * comes from the store.
+ */
+@Slf4j
+public class RecentReadingsBuffer {
+
+    public static final int BYTES_PER_ROW = 4 * Long.BYTES;
+    // Readings within one second of epoch share a row
+    static final long ROW_MILLIS = 1_000;
+
+    private final long horizonMillis;
+    private final int capacity;
+    private final int maxDevices;
+    private final Clock clock;
+    private final long startedMillis;
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicLong storedUntil = new AtomicLong(Long.MIN_VALUE);
+    private volatile boolean overflowed = false;
+
+    public RecentReadingsBuffer(long horizonMillis, int capacityPerDevice, int maxDevices, Clock clock) {
+        if (horizonMillis <= 0 || capacityPerDevice <= 0 || maxDevices <= 0) {
+            throw new IllegalArgumentException("Horizon, capacity and device limit must be positive");
+        }
+        this.horizonMillis = horizonMillis;
+        this.capacity = capacityPerDevice;
+        this.maxDevices = maxDevices;
+        this.clock = clock;
+        this.startedMillis = clock.millis();
+        log.info("Recent readings buffer: {} h horizon, {} readings per device, up to {} MB off-heap",
+                TimeUnit.MILLISECONDS.toHours(horizonMillis), capacityPerDevice,
+                getMaxBytes() / (1024 * 1024));
+    }
+
+    /**
+     * @param temperature NaN, like humidity and soilMoisture, if this message did not carry it
+     */
+    public void record(String deviceId, long atMillis, double temperature, double humidity, double soilMoisture) {
+        Ring ring = rings.get(deviceId);
+        if (ring == null) {
+            ring = allocate(deviceId);
+            if (ring == null) {
+                return;
+            }
+        }
+        ring.append(atMillis, temperature, humidity, soilMoisture);
+    }
+
+    private Ring allocate(String deviceId) {
+        return rings.computeIfAbsent(deviceId, id -> {
+            if (allocated.get() >= maxDevices) {
+                if (!overflowed) {
+                    overflowed = true;
+                    log.warn("Recent readings buffer is full ({} devices); {} and later devices are served from the store",
+                            maxDevices, id);
+                }
+                return null;
+            }
+            allocated.incrementAndGet();
+            return new Ring(id, capacity);
+        });
+    }
+
+    /**
+     * Start of the range the buffer holds completely, or Long.MAX_VALUE if some device could not be
+     * buffered
+     */
+    public long coveredFrom() {
+        if (overflowed) {
+            return Long.MAX_VALUE;
+        }
+        long from = Math.max(startedMillis, clock.millis() - horizonMillis);
+        long stored = storedUntil.get();
+        if (stored != Long.MIN_VALUE) {
+            from = Math.max(from, stored + 1);
+        }
+        for (Ring ring : rings.values()) {
+            from = Math.max(from, ring.oldestIfOverwritten());
+        }
+        return from;
+    }
+
+    /**
+     * Readings up to atMillis went straight to the store (e.g. a bulk import), so the buffer no
+     * longer holds everything before that
+     */
+    public void markStoredUntil(long atMillis) {
+        storedUntil.accumulateAndGet(atMillis, Math::max);
+    }
+
+    /**
+     * Readings of every device with fromMillis <= timestamp < toMillis, newest first. A sensor the
+     * row has no reading for carries the device's previous reading forward, or is null if there is none.
+     */
+    public List<EnvironmentData> between(long fromMillis, long toMillis) {
+        List<EnvironmentData> rows = new ArrayList<>();
+        for (Ring ring : rings.values()) {
+            ring.collect(fromMillis, toMillis, rows);
+        }
+        rows.sort(Comparator.comparing(EnvironmentData::getTimestamp).reversed());
+        return rows;
+    }
+
+    /**
+     * Readings with fromMillis <= timestamp < toMillis aggregated into windows of windowMillis
+     * aligned to the epoch, shaped like the stored ones: same id, bounds and per-sensor stats, and
+     * the previous reading carried forward for a sensor silent during the window. A window still
+     * open is stamped with the current time. Newest first.
+     */
+    public List<EnvironmentData> windows(long fromMillis, long toMillis, long windowMillis) {
+        List<EnvironmentData> windows = new ArrayList<>();
+        for (Ring ring : rings.values()) {
+            ring.aggregate(fromMillis, toMillis, windowMillis, windows);
+        }
+        windows.sort(Comparator.comparing(EnvironmentData::getTimestamp).reversed());
+        return windows;
+    }
+
+    public int getBufferedDevices() {
+        return allocated.get();
+    }
+
+    public long getAllocatedBytes() {
+        return (long) allocated.get() * capacity * BYTES_PER_ROW;
+    }
+
+    public long getMaxBytes() {
+        return (long) maxDevices * capacity * BYTES_PER_ROW;
+    }
+
+    public long getBufferedReadings() {
+        return rings.values().stream().mapToLong(Ring::size).sum();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long coveredFrom = coveredFrom();
+        stats.put("devices", getBufferedDevices());
+        stats.put("maxDevices", maxDevices);
+        stats.put("readings", getBufferedReadings());
+        stats.put("capacityPerDevice", capacity);
+        stats.put("horizonHours", horizonMillis / (double) TimeUnit.HOURS.toMillis(1));
+        stats.put("offHeapBytes", getAllocatedBytes());
+        stats.put("maxOffHeapBytes", getMaxBytes());
+        stats.put("coveredFrom", coveredFrom == Long.MAX_VALUE ? null : toLocalDateTime(coveredFrom));
+        stats.put("overflowed", overflowed);
+        return stats;
+    }
+
+    private LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), clock.getZone());
+    }
+
+    /**
+     * Column-major ring: [timestamps | temperature | humidity | soil moisture], each capacity long
+     */
+    private final class Ring {
+        final String deviceId;
+        final ByteBuffer columns;
+        final int capacity;
+        final ReentrantLock lock = new ReentrantLock();
+        // Total rows ever appended; the next row goes to written % capacity
+        long written;
+
+        Ring(String deviceId, int capacity) {
+            this.deviceId = deviceId;
+            this.capacity = capacity;
+            this.columns = ByteBuffer.allocateDirect(capacity * BYTES_PER_ROW);
+        }
+
+        void append(long atMillis, double temperature, double humidity, double soilMoisture) {
+            lock.lock();
+            try {
+                int column = capacity * Long.BYTES;
+                if (written > 0) {
+                    int newest = (int) ((written - 1) % capacity) * Long.BYTES;
+                    if (Math.floorDiv(columns.getLong(newest), ROW_MILLIS) == Math.floorDiv(atMillis, ROW_MILLIS)) {
+                        // Same second: fill in this message's sensors
+                        columns.putLong(newest, atMillis);
+                        putIfReported(column + newest, temperature);
+                        putIfReported(2 * column + newest, humidity);
+                        putIfReported(3 * column + newest, soilMoisture);
+                        return;
+                    }
+                }
+                int slot = (int) (written % capacity) * Long.BYTES;
+                columns.putLong(slot, atMillis);
+                columns.putDouble(column + slot, temperature);
+                columns.putDouble(2 * column + slot, humidity);
+                columns.putDouble(3 * column + slot, soilMoisture);
+                written++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void putIfReported(int index, double value) {
+            if (!Double.isNaN(value)) {
+                columns.putDouble(index, value);
+            }
+        }
+
+        long size() {
+            lock.lock();
+            try {
+                return Math.min(written, capacity);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Timestamp of the oldest row still held once the ring has wrapped; anything before it is lost
+         */
+        long oldestIfOverwritten() {
+            lock.lock();
+            try {
+                return written > capacity ? columns.getLong((int) (written % capacity) * Long.BYTES) : Long.MIN_VALUE;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void collect(long fromMillis, long toMillis, List<EnvironmentData> rows) {
+            lock.lock();
+            try {
+                int column = capacity * Long.BYTES;
+                double[] lastKnown = {Double.NaN, Double.NaN, Double.NaN};
+                // Oldest first, from the oldest row held, so earlier readings can be carried forward
+                for (long row = Math.max(0, written - capacity); row < written; row++) {
+                    int slot = (int) (row % capacity) * Long.BYTES;
+                    long at = columns.getLong(slot);
+                    if (at >= toMillis) {
+                        break;
+                    }
+                    for (int sensor = 0; sensor < lastKnown.length; sensor++) {
+                        double value = columns.getDouble((sensor + 1) * column + slot);
+                        if (!Double.isNaN(value)) {
+                            lastKnown[sensor] = value;
+                        }
+                    }
+                    if (at < fromMillis) {
+                        continue;
+                    }
+                    EnvironmentData data = new EnvironmentData();
+                    data.setDeviceId(deviceId);
+                    data.setTimestamp(toLocalDateTime(at));
+                    data.setTemperature(nullIfNaN(lastKnown[0]));
+                    data.setHumidity(nullIfNaN(lastKnown[1]));
+                    data.setSoilMoisture(nullIfNaN(lastKnown[2]));
+                    rows.add(data);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void aggregate(long fromMillis, long toMillis, long windowMillis, List<EnvironmentData> windows) {
+            lock.lock();
+            try {
+                int column = capacity * Long.BYTES;
+                double[] lastKnown = {Double.NaN, Double.NaN, Double.NaN};
+                EnvironmentData.SensorStats[] stats = new EnvironmentData.SensorStats[lastKnown.length];
+                double[] carried = new double[lastKnown.length];
+                long windowStart = Long.MIN_VALUE;
+                for (long row = Math.max(0, written - capacity); row < written; row++) {
+                    int slot = (int) (row % capacity) * Long.BYTES;
+                    long at = columns.getLong(slot);
+                    if (at >= toMillis) {
+                        break;
+                    }
+                    long start = at - Math.floorMod(at, windowMillis);
+                    if (at >= fromMillis && start != windowStart) {
+                        if (windowStart != Long.MIN_VALUE) {
+                            windows.add(window(windowStart, windowMillis, stats, carried));
+                        }
+                        windowStart = start;
+                        Arrays.fill(stats, null);
+                        System.arraycopy(lastKnown, 0, carried, 0, carried.length);
+                    }
+                    for (int sensor = 0; sensor < lastKnown.length; sensor++) {
+                        double value = columns.getDouble((sensor + 1) * column + slot);
+                        if (Double.isNaN(value)) {
+                            continue;
+                        }
+                        lastKnown[sensor] = value;
+                        if (at >= fromMillis) {
+                            if (stats[sensor] == null) {
+                                stats[sensor] = new EnvironmentData.SensorStats();
+                            }
+                            stats[sensor].add(value);
+                        }
+                    }
+                }
+                if (windowStart != Long.MIN_VALUE) {
+                    windows.add(window(windowStart, windowMillis, stats, carried));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private EnvironmentData window(long start, long windowMillis, EnvironmentData.SensorStats[] stats,
+                                       double[] carried) {
+            EnvironmentData data = new EnvironmentData();
+            Map<String, EnvironmentData.SensorStats> byName = new HashMap<>();
+            Double[] means = new Double[stats.length];
+            for (int sensor = 0; sensor < stats.length; sensor++) {
+                if (stats[sensor] != null) {
+                    byName.put(SensorWindowAggregator.SENSORS[sensor], stats[sensor]);
+                    means[sensor] = stats[sensor].getMean();
+                } else {
+                    means[sensor] = nullIfNaN(carried[sensor]);
+                }
+            }
+            data.setId(EnvironmentData.windowId(deviceId, start));
+            data.setDeviceId(deviceId);
+            data.setTemperature(means[SensorWindowAggregator.TEMPERATURE]);
+            data.setHumidity(means[SensorWindowAggregator.HUMIDITY]);
+            data.setSoilMoisture(means[SensorWindowAggregator.SOIL_MOISTURE]);
+            data.setStats(byName);
+            data.setWindowStart(toLocalDateTime(start));
+            data.setWindowEnd(toLocalDateTime(start + windowMillis));
+            data.setTimestamp(toLocalDateTime(Math.min(start + windowMillis, clock.millis())));
+            return data;
+        }
+    }
+
+    private static Double nullIfNaN(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
@@ -0,0 +1,62 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock that only moves when a replay tells it to. It is positioned at capture start plus the
+ * offset of the record being replayed, so wall-clock readers (snapshot timestamps, aggregation
+ * windows) and monotonic readers (liveness deadlines, via {@link #nanoTime()}) both see capture
+ * time whatever the replay speed.
+ */
+public class ReplayClock extends Clock {
+
+    private final long startEpochMillis;
+    private final ZoneId zone;
+    private volatile long offsetNanos;
+
+    public ReplayClock(long startEpochMillis, ZoneId zone) {
+        this.startEpochMillis = startEpochMillis;
+        this.zone = zone;
+    }
+
+    /**
+     * Move to the given offset from capture start; never moves backwards
+     */
+    public void advanceTo(long offsetNanos) {
+        if (offsetNanos > this.offsetNanos) {
+            this.offsetNanos = offsetNanos;
+        }
+    }
+
+    /**
+     * Monotonic nanoseconds since capture start, for {@link DeviceLivenessTracker}
+     */
+    public long nanoTime() {
+        return offsetNanos;
+    }
+
+    @Override
+    public long millis() {
+        return startEpochMillis + TimeUnit.NANOSECONDS.toMillis(offsetNanos);
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(startEpochMillis).plusNanos(offsetNanos);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        ReplayClock clock = new ReplayClock(startEpochMillis, zone);
+        clock.offsetNanos = offsetNanos;
+        return clock;
+    }
+}
@@ -0,0 +1,211 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.model.RipenessRollup;
+import com.__25J_323.HarvestPrediction.repository.RipenessRollupRepository;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RipenessAnalyticsService {
+
+    private static final int CONFIDENCE_BINS = 10;
+    private static final String UNKNOWN_STATE = "unknown";
+    // A rebuild writes here and renames it over ripeness_rollup when done
+    private static final String STAGING_COLLECTION = "ripeness_rollup_rebuild";
+    // Detection ids already folded into the staging rollups, so each is counted once
+    private static final String STAGING_SEEN_COLLECTION = "ripeness_rollup_rebuild_seen";
+
+    private final MongoTemplate mongoTemplate;
+    private final RipenessRollupRepository ripenessRollupRepository;
+
+    // Read: one live increment. Write: switching a rebuild on or swapping its result in
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    // Guarded by rebuildLock
+    private boolean rebuilding;
+
+    /**
+     * The (granularity, bucketStart) index analytics queries use, on the live and the staging collection
+     */
+    public static Index bucketIndex() {
+        return new Index()
+                .on("granularity", Sort.Direction.ASC)
+                .on("bucketStart", Sort.Direction.ASC)
+                .named("granularity_bucket");
+    }
+
+    /**
+     * Fold a saved detection result into its day and hour rollups using atomic $inc upserts.
+     * While a rebuild runs it is also folded into the staging rollups, at most once per detection.
+     */
+    public void recordDetection(RipenessData data) {
+        if (data == null) {
+            return;
+        }
+        rebuildLock.readLock().lock();
+        try {
+            fold(data, mongoTemplate.getCollectionName(RipenessRollup.class));
+            if (rebuilding) {
+                foldIntoStaging(data);
+            }
+        } catch (Exception e) {
+            // Rollups are derived data; a failure must not fail the detection request
+            log.error("Error updating ripeness rollups for {}", data.getId(), e);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    public List<RipenessRollup> getRollups(String granularity, LocalDateTime start, LocalDateTime end) {
+        String normalized = normalizeGranularity(granularity);
+        ChronoUnit unit = RipenessRollup.HOUR.equals(normalized) ? ChronoUnit.HOURS : ChronoUnit.DAYS;
+        return ripenessRollupRepository.findBuckets(normalized, start.truncatedTo(unit), end);
+    }
+
+    /**
+     * Rebuild all rollups from ripeness_data (one pass over history, streamed) into a staging
+     * collection and rename it over the live one. Analytics keep reading the old rollups until the
+     * swap; detections recorded meanwhile go to both, and the staging side skips any the history
+     * pass has already counted.
+     *
+     * @throws IllegalStateException if a rebuild is already running
+     */
+    public long rebuildRollups() {
+        String liveCollection = mongoTemplate.getCollectionName(RipenessRollup.class);
+        rebuildLock.writeLock().lock();
+        try {
+            if (rebuilding) {
+                throw new IllegalStateException("Ripeness rollups are already being rebuilt");
+            }
+            // Leftovers of a rebuild that did not finish
+            mongoTemplate.dropCollection(STAGING_COLLECTION);
+            mongoTemplate.dropCollection(STAGING_SEEN_COLLECTION);
+            mongoTemplate.indexOps(STAGING_COLLECTION).ensureIndex(bucketIndex());
+            rebuilding = true;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+
+        long processed = 0;
+        // Everything recorded before this point is in ripeness_data already
+        try (Stream<RipenessData> stream = mongoTemplate.stream(new Query(), RipenessData.class)) {
+            for (RipenessData data : (Iterable<RipenessData>) stream::iterator) {
+                foldIntoStaging(data);
+                processed++;
+            }
+        } catch (RuntimeException e) {
+            endRebuild();
+            mongoTemplate.dropCollection(STAGING_COLLECTION);
+            throw e;
+        }
+
+        rebuildLock.writeLock().lock();
+        try {
+            mongoTemplate.getCollection(STAGING_COLLECTION).renameCollection(
+                    new MongoNamespace(mongoTemplate.getDb().getName(), liveCollection),
+                    new RenameCollectionOptions().dropTarget(true));
+        } finally {
+            rebuilding = false;
+            rebuildLock.writeLock().unlock();
+        }
+        mongoTemplate.dropCollection(STAGING_SEEN_COLLECTION);
+        log.info("Rebuilt ripeness rollups from {} detection records", processed);
+        return processed;
+    }
+
+    private void endRebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            rebuilding = false;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        mongoTemplate.dropCollection(STAGING_SEEN_COLLECTION);
+    }
+
+    private void foldIntoStaging(RipenessData data) {
+        if (data.getId() != null) {
+            try {
+                mongoTemplate.insert(new Document("_id", data.getId()), STAGING_SEEN_COLLECTION);
+            } catch (DuplicateKeyException alreadyCounted) {
+                return;
+            }
+        }
+        fold(data, STAGING_COLLECTION);
+    }
+
+    private void fold(RipenessData data, String collection) {
+        LocalDateTime timestamp = data.getTimestamp() != null ? data.getTimestamp() : LocalDateTime.now();
+        upsertRollup(RipenessRollup.DAY, timestamp.truncatedTo(ChronoUnit.DAYS), data, collection);
+        upsertRollup(RipenessRollup.HOUR, timestamp.truncatedTo(ChronoUnit.HOURS), data, collection);
+    }
+
+    private void upsertRollup(String granularity, LocalDateTime bucketStart, RipenessData data, String collection) {
+        Update update = new Update()
+                .setOnInsert("granularity", granularity)
+                .setOnInsert("bucketStart", bucketStart)
+                .inc("imageCount", 1);
+
+        int tomatoCount = 0;
+        if (data.getDetectedTomatoes() != null) {
+            for (RipenessData.DetectedTomato tomato : data.getDetectedTomatoes()) {
+                String prefix = "states." + stateKey(tomato.getRipenessState()) + ".";
+                update.inc(prefix + "count", 1)
+                        .inc(prefix + "confidenceSum", tomato.getConfidence())
+                        .inc(prefix + "confidenceHistogram." + confidenceBin(tomato.getConfidence()), 1);
+
+                RipenessData.BoundingBox box = tomato.getBoundingBox();
+                if (box != null) {
+                    update.inc(prefix + "boundingBoxWidthSum", box.getWidth())
+                            .inc(prefix + "boundingBoxHeightSum", box.getHeight())
+                            .inc(prefix + "boundingBoxAreaSum", (long) box.getWidth() * box.getHeight());
+                }
+                tomatoCount++;
+            }
+        }
+        update.inc("tomatoCount", tomatoCount);
+
+        String id = granularity + ":" + bucketStart;
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id)), update, RipenessRollup.class, collection);
+    }
+
+    private String normalizeGranularity(String granularity) {
+        return granularity != null && granularity.equalsIgnoreCase(RipenessRollup.HOUR)
+                ? RipenessRollup.HOUR : RipenessRollup.DAY;
+    }
+
+    /**
+     * Ripeness states become field names, so strip characters Mongo does not allow in keys
+     */
+    private static String stateKey(String state) {
+        if (state == null || state.isBlank()) {
+            return UNKNOWN_STATE;
+        }
+        return state.trim().toLowerCase().replace('.', '_').replace('$', '_');
+    }
+
+    private static int confidenceBin(double confidence) {
+        int bin = (int) (confidence * CONFIDENCE_BINS);
+        return Math.max(0, Math.min(CONFIDENCE_BINS - 1, bin));
+    }
+}
@@ -34,6 +34,7 @@ public class RipenessDetectionService {
 
     private final RipenessDataRepository ripenessDataRepository;
     private final RestTemplate restTemplate;
+    private final RipenessAnalyticsService ripenessAnalyticsService;
 
     @Value("${spring.servlet.multipart.location:./uploads}")
     private String uploadDir;
@@ -53,52 +54,63 @@ public class RipenessDetectionService {
 
     public RipenessData detectRipeness(MultipartFile image) {
         try {
-            // Save uploaded image
-            String filename = UUID.randomUUID() + "_" + image.getOriginalFilename();
-            Path filePath = Paths.get(uploadDir, filename);
-            image.transferTo(filePath);
-
-            // Call Flask API for ripeness detection
-            Map<String, Object> detectionResult = callFlaskRipenessDetection(image);
-
-            // Parse the detected tomatoes from the response
-            List<RipenessData.DetectedTomato> detectedTomatoes = new ArrayList<>();
-            List<Map<String, Object>> detections = (List<Map<String, Object>>) detectionResult.get("detectedTomatoes");
-
-            for (Map<String, Object> detection : detections) {
-                RipenessData.DetectedTomato tomato = new RipenessData.DetectedTomato();
-                tomato.setRipenessState((String) detection.get("ripenessState"));
-                tomato.setConfidence((Double) detection.get("confidence"));
-
-                Map<String, Integer> bbox = (Map<String, Integer>) detection.get("boundingBox");
-                RipenessData.BoundingBox box = new RipenessData.BoundingBox();
-                box.setX(bbox.get("x"));
-                box.setY(bbox.get("y"));
-                box.setWidth(bbox.get("width"));
-                box.setHeight(bbox.get("height"));
-                tomato.setBoundingBox(box);
-
-                detectedTomatoes.add(tomato);
-            }
+            RipenessData ripenessData = analyzeImage(image.getOriginalFilename(), image.getBytes());
 
             // Save results to database
-            RipenessData ripenessData = new RipenessData();
-            ripenessData.setImageUrl("/images/" + filename);
-            ripenessData.setDetectedTomatoes(detectedTomatoes);
-            ripenessData.setTimestamp(LocalDateTime.now());
-
-            return ripenessDataRepository.save(ripenessData);
+            RipenessData saved = ripenessDataRepository.save(ripenessData);
+            ripenessAnalyticsService.recordDetection(saved);
+            return saved;
         } catch (Exception e) {
             log.error("Error detecting ripeness", e);
             throw new RuntimeException("Failed to process image for ripeness detection", e);
         }
     }
 
+    /**
+     * Store the image and run detection on it without persisting the result,
+     * so bulk callers can batch the inserts themselves
+     */
+    public RipenessData analyzeImage(String originalFilename, byte[] imageBytes) throws IOException {
+        // Save uploaded image
+        String filename = UUID.randomUUID() + "_" + originalFilename;
+        Path filePath = Paths.get(uploadDir, filename);
+        Files.write(filePath, imageBytes);
+
+        // Call Flask API for ripeness detection
+        Map<String, Object> detectionResult = callFlaskRipenessDetection(originalFilename, imageBytes);
+
+        // Parse the detected tomatoes from the response
+        List<RipenessData.DetectedTomato> detectedTomatoes = new ArrayList<>();
+        List<Map<String, Object>> detections = (List<Map<String, Object>>) detectionResult.get("detectedTomatoes");
+
+        for (Map<String, Object> detection : detections) {
+            RipenessData.DetectedTomato tomato = new RipenessData.DetectedTomato();
+            tomato.setRipenessState((String) detection.get("ripenessState"));
+            tomato.setConfidence((Double) detection.get("confidence"));
+
+            Map<String, Integer> bbox = (Map<String, Integer>) detection.get("boundingBox");
+            RipenessData.BoundingBox box = new RipenessData.BoundingBox();
+            box.setX(bbox.get("x"));
+            box.setY(bbox.get("y"));
+            box.setWidth(bbox.get("width"));
+            box.setHeight(bbox.get("height"));
+            tomato.setBoundingBox(box);
+
+            detectedTomatoes.add(tomato);
+        }
+
+        RipenessData ripenessData = new RipenessData();
+        ripenessData.setImageUrl("/images/" + filename);
+        ripenessData.setDetectedTomatoes(detectedTomatoes);
+        ripenessData.setTimestamp(LocalDateTime.now());
+        return ripenessData;
+    }
+
     public List<RipenessData> getRipenessHistory() {
         return ripenessDataRepository.findAll();
     }
 
-    private Map<String, Object> callFlaskRipenessDetection(MultipartFile image) throws IOException {
+    private Map<String, Object> callFlaskRipenessDetection(String originalFilename, byte[] imageBytes) {
         String url = flaskApiUrl + "/detect-ripeness";
 
         // Create headers
@@ -107,10 +119,10 @@ public class RipenessDetectionService {
 
         // Create a MultiValueMap to contain the image file
         MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-        ByteArrayResource resource = new ByteArrayResource(image.getBytes()) {
+        ByteArrayResource resource = new ByteArrayResource(imageBytes) {
             @Override
             public String getFilename() {
-                return image.getOriginalFilename();
+                return originalFilename;
             }
         };
 
@@ -0,0 +1,209 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streaming outlier rejection per device and sensor, applied before a reading reaches the snapshot
+ * or the aggregation windows.
+ * <p>
+ * A sample is rejected when it is outside the sensor's physical range, when it moves away from the
+ * last accepted value faster than the sensor's rate limit, or by a Hampel filter: more than
+ * threshold scaled MADs from the median of the last window samples. Every in-range sample enters
+ * the Hampel window, so a real level change is accepted once it makes up most of the window, and
+ * the rate limit loosens with the time since the last accepted sample. State is a pair of primitive
+ * rings per sensor, so each sample costs O(window) with no allocation.
+ */
+public class SensorOutlierFilter {
+
+    public enum Verdict {
+        ACCEPTED, OUT_OF_RANGE, RATE_OF_CHANGE, HAMPEL
+    }
+
+    /**
+     * Physical range, fastest believable change per second, and the smallest deviation the Hampel
+     * test scales (keeps a steady signal with zero MAD from rejecting its own noise)
+     */
+    public record Limits(double min, double max, double maxRatePerSecond, double minDeviation) {
+    }
+
+    /**
+     * DHT22 temperature (°C) and humidity (%RH), capacitive soil moisture (%)
+     */
+    public static final Limits[] DEFAULT_LIMITS = {
+            new Limits(-40.0, 85.0, 1.0, 0.5),
+            new Limits(0.0, 100.0, 5.0, 2.0),
+            new Limits(0.0, 100.0, 5.0, 2.0)
+    };
+
+    // MAD to standard deviation for normally distributed noise
+    private static final double MAD_SCALE = 1.4826;
+    private static final int MIN_SAMPLES = 3;
+    private static final long MIN_RATE_INTERVAL_MILLIS = 1_000;
+
+    private final boolean enabled;
+    private final int window;
+    private final double threshold;
+    private final long resetAfterMillis;
+    private final Limits[] limits;
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+
+    public SensorOutlierFilter(int window, double threshold, long resetAfterMillis, Limits[] limits) {
+        this(true, window, threshold, resetAfterMillis, limits);
+    }
+
+    private SensorOutlierFilter(boolean enabled, int window, double threshold, long resetAfterMillis, Limits[] limits) {
+        if (window < MIN_SAMPLES || threshold <= 0 || limits.length != SensorWindowAggregator.SENSORS.length) {
+            throw new IllegalArgumentException("Filter window must be at least " + MIN_SAMPLES
+                    + ", threshold positive and one limit per sensor");
+        }
+        this.enabled = enabled;
+        this.window = window;
+        this.threshold = threshold;
+        this.resetAfterMillis = resetAfterMillis;
+        this.limits = limits.clone();
+    }
+
+    /**
+     * A filter that accepts everything
+     */
+    public static SensorOutlierFilter acceptAll() {
+        return new SensorOutlierFilter(false, MIN_SAMPLES, 1.0, 0, DEFAULT_LIMITS);
+    }
+
+    /**
+     * Same settings, no history, e.g. for a backfilled batch that predates the live state
+     */
+    public SensorOutlierFilter newEmpty() {
+        return new SensorOutlierFilter(enabled, window, threshold, resetAfterMillis, limits);
+    }
+
+    public Verdict check(String deviceId, int sensor, double value, long atMillis) {
+        if (!enabled) {
+            return Verdict.ACCEPTED;
+        }
+        Limits limit = limits[sensor];
+        if (!(value >= limit.min() && value <= limit.max())) {
+            return Verdict.OUT_OF_RANGE;
+        }
+        DeviceState device = devices.get(deviceId);
+        if (device == null) {
+            device = devices.computeIfAbsent(deviceId, id -> new DeviceState(window));
+        }
+
+        device.lock.lock();
+        try {
+            SensorState state = device.sensors[sensor];
+            if (state.hasAccepted && atMillis - state.lastAcceptedMillis > resetAfterMillis) {
+                // After a long silence the old level says little about the new one
+                state.reset();
+            }
+            Verdict verdict = Verdict.ACCEPTED;
+            if (state.hasAccepted) {
+                long elapsed = Math.max(atMillis - state.lastAcceptedMillis, MIN_RATE_INTERVAL_MILLIS);
+                if (Math.abs(value - state.lastAccepted) > limit.maxRatePerSecond() * elapsed / 1000.0) {
+                    verdict = Verdict.RATE_OF_CHANGE;
+                }
+            }
+            if (verdict == Verdict.ACCEPTED && state.count >= MIN_SAMPLES) {
+                double median = state.median();
+                double mad = Math.max(state.medianAbsoluteDeviation(median), limit.minDeviation());
+                if (Math.abs(value - median) > threshold * MAD_SCALE * mad) {
+                    verdict = Verdict.HAMPEL;
+                }
+            }
+            state.add(value);
+            if (verdict == Verdict.ACCEPTED) {
+                state.hasAccepted = true;
+                state.lastAccepted = value;
+                state.lastAcceptedMillis = atMillis;
+            }
+            return verdict;
+        } finally {
+            device.lock.unlock();
+        }
+    }
+
+    private static final class DeviceState {
+        final ReentrantLock lock = new ReentrantLock();
+        final SensorState[] sensors = new SensorState[SensorWindowAggregator.SENSORS.length];
+
+        DeviceState(int window) {
+            for (int i = 0; i < sensors.length; i++) {
+                sensors[i] = new SensorState(window);
+            }
+        }
+    }
+
+    /**
+     * Last window samples in arrival order plus the same values kept sorted, and scratch space for
+     * the absolute deviations
+     */
+    private static final class SensorState {
+        final double[] ring;
+        final double[] sorted;
+        final double[] deviations;
+        int next;
+        int count;
+        boolean hasAccepted;
+        double lastAccepted;
+        long lastAcceptedMillis;
+
+        SensorState(int window) {
+            ring = new double[window];
+            sorted = new double[window];
+            deviations = new double[window];
+        }
+
+        void add(double value) {
+            if (count == ring.length) {
+                removeSorted(ring[next]);
+            } else {
+                count++;
+            }
+            ring[next] = value;
+            next = (next + 1) % ring.length;
+            insertSorted(value);
+        }
+
+        private void removeSorted(double value) {
+            int index = Arrays.binarySearch(sorted, 0, count, value);
+            System.arraycopy(sorted, index + 1, sorted, index, count - index - 1);
+        }
+
+        private void insertSorted(double value) {
+            // count already includes the new value
+            int index = count - 1;
+            while (index > 0 && sorted[index - 1] > value) {
+                sorted[index] = sorted[index - 1];
+                index--;
+            }
+            sorted[index] = value;
+        }
+
+        double median() {
+            return median(sorted, count);
+        }
+
+        double medianAbsoluteDeviation(double median) {
+            for (int i = 0; i < count; i++) {
+                deviations[i] = Math.abs(sorted[i] - median);
+            }
+            Arrays.sort(deviations, 0, count);
+            return median(deviations, count);
+        }
+
+        private static double median(double[] values, int count) {
+            int middle = count / 2;
+            return count % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+        }
+
+        void reset() {
+            next = 0;
+            count = 0;
+            hasAccepted = false;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Tumbling-window statistics per device and sensor.
+ * <p>
+ * Each sample updates primitive count/sum/sum-of-squares/min/max accumulators under the device's
+ * lock, so recording allocates nothing. Windows are aligned to multiples of the window length in
+ * epoch time. A sample that lands after its device's window has ended rolls that window over
+ * itself; otherwise {@link #closeWindows(long)} collects every window whose end has passed.
+ * A device whose window is closed and that has sent nothing for the idle timeout is forgotten,
+ * so churning device ids do not accumulate.
+ */
+public class SensorWindowAggregator {
+
+    public static final int TEMPERATURE = 0;
+    public static final int HUMIDITY = 1;
+    public static final int SOIL_MOISTURE = 2;
+    public static final String[] SENSORS = {"temperature", "humidity", "soilMoisture"};
+
+    // The default device liveness timeout
+    private static final long DEFAULT_IDLE_MILLIS = 30_000;
+
+    /**
+     * Statistics of one device over one window; entries in {@code stats} are null for sensors
+     * that reported nothing in the window
+     */
+    public record ClosedWindow(String deviceId, long startMillis, long endMillis,
+                               EnvironmentData.SensorStats[] stats) {
+    }
+
+    private final long windowMillis;
+    private final long idleMillis;
+    private final LongSupplier millisClock;
+    private final Map<String, DeviceWindow> windows = new ConcurrentHashMap<>();
+    private final Queue<ClosedWindow> rolledOver = new ConcurrentLinkedQueue<>();
+
+    public SensorWindowAggregator(long windowMillis) {
+        this(windowMillis, System::currentTimeMillis);
+    }
+
+    public SensorWindowAggregator(long windowMillis, LongSupplier millisClock) {
+        this(windowMillis, DEFAULT_IDLE_MILLIS, millisClock);
+    }
+
+    /**
+     * @param idleMillis how long after its last sample a device with no open window is dropped,
+     *                   normally the liveness timeout
+     */
+    public SensorWindowAggregator(long windowMillis, long idleMillis, LongSupplier millisClock) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window length must be positive: " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+        this.idleMillis = idleMillis;
+        this.millisClock = millisClock;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Add one sample to the device's open window
+     */
+    public void record(String deviceId, int sensor, double value) {
+        record(deviceId, sensor, value, millisClock.getAsLong());
+    }
+
+    /**
+     * Add one sample taken at the given time. Times must not go backwards per device; a sample for a
+     * later window rolls the open one over.
+     */
+    public void record(String deviceId, int sensor, double value, long atMillis) {
+        while (true) {
+            DeviceWindow window = windows.get(deviceId);
+            if (window == null) {
+                window = windows.computeIfAbsent(deviceId, DeviceWindow::new);
+            }
+
+            window.lock.lock();
+            try {
+                if (window.evicted) {
+                    // Removed between the lookup and the lock; the next lookup creates a fresh one
+                    continue;
+                }
+                if (window.startMillis >= 0 && atMillis >= window.startMillis + windowMillis) {
+                    rolledOver.add(window.close(windowMillis));
+                }
+                if (window.startMillis < 0) {
+                    window.startMillis = windowStart(atMillis);
+                }
+                window.add(sensor, value);
+                window.lastSampleMillis = atMillis;
+                return;
+            } finally {
+                window.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Close and return every window that ended at or before the given time, and forget devices
+     * idle since before the idle timeout
+     */
+    public List<ClosedWindow> closeWindows(long nowMillis) {
+        List<ClosedWindow> closed = new ArrayList<>();
+        ClosedWindow pending;
+        while ((pending = rolledOver.poll()) != null) {
+            closed.add(pending);
+        }
+        for (DeviceWindow window : windows.values()) {
+            window.lock.lock();
+            try {
+                if (window.startMillis >= 0 && nowMillis >= window.startMillis + windowMillis) {
+                    closed.add(window.close(windowMillis));
+                }
+                if (window.startMillis < 0 && nowMillis - window.lastSampleMillis >= idleMillis) {
+                    window.evicted = true;
+                    windows.remove(window.deviceId, window);
+                }
+            } finally {
+                window.lock.unlock();
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Close every open window regardless of its end, e.g. on shutdown
+     */
+    public List<ClosedWindow> flushAll() {
+        return closeWindows(Long.MAX_VALUE);
+    }
+
+    /**
+     * Close one device's open window regardless of its end, e.g. when another instance takes the
+     * device over
+     *
+     * @return the closed window, or null if the device had none open
+     */
+    public ClosedWindow flush(String deviceId) {
+        DeviceWindow window = windows.get(deviceId);
+        if (window == null) {
+            return null;
+        }
+        window.lock.lock();
+        try {
+            return window.startMillis >= 0 ? window.close(windowMillis) : null;
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+    /**
+     * Devices with a window here that have not been forgotten as idle; their window may or may not be open
+     */
+    public Set<String> devices() {
+        return Set.copyOf(windows.keySet());
+    }
+
+    /**
+     * Start of the window that contains the given time
+     */
+    public long windowStart(long millis) {
+        return millis - Math.floorMod(millis, windowMillis);
+    }
+
+    /**
+     * Milliseconds until the next window boundary, for aligning a flush schedule
+     */
+    public long millisUntilNextBoundary() {
+        long now = millisClock.getAsLong();
+        return windowMillis - Math.floorMod(now, windowMillis);
+    }
+
+    public long getWindowSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(windowMillis);
+    }
+
+    private static final class DeviceWindow {
+        final String deviceId;
+        final ReentrantLock lock = new ReentrantLock();
+        long startMillis = -1;
+        long lastSampleMillis;
+        // Removed from the map; a recorder that finds it must look the device up again
+        boolean evicted;
+        final long[] count = new long[SENSORS.length];
+        final double[] sum = new double[SENSORS.length];
+        final double[] sumOfSquares = new double[SENSORS.length];
+        final double[] min = new double[SENSORS.length];
+        final double[] max = new double[SENSORS.length];
+
+        DeviceWindow(String deviceId) {
+            this.deviceId = deviceId;
+        }
+
+        void add(int sensor, double value) {
+            if (count[sensor] == 0) {
+                min[sensor] = value;
+                max[sensor] = value;
+            } else {
+                min[sensor] = Math.min(min[sensor], value);
+                max[sensor] = Math.max(max[sensor], value);
+            }
+            count[sensor]++;
+            sum[sensor] += value;
+            sumOfSquares[sensor] += value * value;
+        }
+
+        /**
+         * Snapshot the accumulators and reset them. Caller holds the lock.
+         */
+        ClosedWindow close(long windowMillis) {
+            EnvironmentData.SensorStats[] stats = new EnvironmentData.SensorStats[SENSORS.length];
+            for (int i = 0; i < SENSORS.length; i++) {
+                if (count[i] > 0) {
+                    EnvironmentData.SensorStats sensorStats = new EnvironmentData.SensorStats();
+                    sensorStats.setCount(count[i]);
+                    sensorStats.setSum(sum[i]);
+                    sensorStats.setSumOfSquares(sumOfSquares[i]);
+                    sensorStats.setMin(min[i]);
+                    sensorStats.setMax(max[i]);
+                    stats[i] = sensorStats;
+                }
+                count[i] = 0;
+                sum[i] = 0.0;
+                sumOfSquares[i] = 0.0;
+            }
+            ClosedWindow closed = new ClosedWindow(deviceId, startMillis, startMillis + windowMillis, stats);
+            startMillis = -1;
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Threshold rules compiled into flat arrays and evaluated on every ingested reading.
+ * <p>
+ * Rules are grouped per device (device rules plus the rules for every device) and per sensor and
+ * direction. A BELOW rule is an ABOVE rule on the negated reading, so each group is one array of
+ * triggers sorted ascending plus the same rules sorted by clear point (trigger minus hysteresis).
+ * Every rule with a trigger below the last reading is breaching and every breaching rule has its
+ * clear point at or below it, so a new reading only touches the rules whose trigger or clear point
+ * lies between the last reading and this one: two binary searches and the rules that change state.
+ * Breaches waiting out their duration are checked as the sensor's next readings arrive. Evaluation
+ * allocates only when a rule fires or clears.
+ * <p>
+ * {@link #load(List)} swaps in a new compiled set; devices carry their rule state over by rule id.
+ */
+@Slf4j
+public class ThresholdRuleEngine {
+
+    public static final String FIRING = "FIRING";
+    public static final String CLEARED = "CLEARED";
+
+    /**
+     * A rule starting or ending an alert
+     */
+    public record Alert(String ruleId, String ruleName, String severity, String deviceId, String sensor,
+                        String operator, double threshold, double value, String state, LocalDateTime timestamp) {
+    }
+
+    public interface Listener {
+        void onAlert(Alert alert);
+    }
+
+    private static final long NOT_BREACHING = Long.MIN_VALUE;
+    private static final int DIRECTIONS = 2 * SensorWindowAggregator.SENSORS.length;
+
+    private final ZoneId zone;
+    private final Map<String, DeviceState> devices = new ConcurrentHashMap<>();
+    private volatile Compiled compiled = Compiled.EMPTY;
+    private volatile Listener listener = alert -> {
+    };
+
+    public ThresholdRuleEngine(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Compile and swap in the given rules; invalid and disabled rules are skipped
+     */
+    public void load(List<ThresholdRule> rules) {
+        List<ThresholdRule> valid = new ArrayList<>(rules.size());
+        for (ThresholdRule rule : rules) {
+            try {
+                validate(rule);
+                if (rule.isEnabled()) {
+                    valid.add(rule);
+                }
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping threshold rule {}: {}", rule.getId(), e.getMessage());
+            }
+        }
+        compiled = Compiled.of(valid);
+        log.info("Loaded {} threshold rules", valid.size());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rule cannot be compiled
+     */
+    public static void validate(ThresholdRule rule) {
+        if (sensorIndex(rule.getSensor()) < 0) {
+            throw new IllegalArgumentException("Unknown sensor: " + rule.getSensor());
+        }
+        if (!ThresholdRule.ABOVE.equals(rule.getOperator()) && !ThresholdRule.BELOW.equals(rule.getOperator())) {
+            throw new IllegalArgumentException("Operator must be ABOVE or BELOW: " + rule.getOperator());
+        }
+        if (!Double.isFinite(rule.getThreshold()) || !Double.isFinite(rule.getHysteresis()) || rule.getHysteresis() < 0) {
+            throw new IllegalArgumentException("Threshold must be finite and hysteresis finite and non-negative");
+        }
+        if (rule.getDurationSeconds() < 0) {
+            throw new IllegalArgumentException("Duration must not be negative: " + rule.getDurationSeconds());
+        }
+    }
+
+    public int getRuleCount() {
+        return compiled.rules.length;
+    }
+
+    /**
+     * Rules currently firing, across devices
+     */
+    public int getFiringCount() {
+        Compiled current = compiled;
+        int firing = 0;
+        for (DeviceState device : devices.values()) {
+            device.lock.lock();
+            try {
+                if (device.compiled != current) {
+                    device.recompile(current);
+                }
+                for (DirectionState direction : device.directions) {
+                    for (boolean f : direction.firing) {
+                        if (f) {
+                            firing++;
+                        }
+                    }
+                }
+            } finally {
+                device.lock.unlock();
+            }
+        }
+        return firing;
+    }
+
+    public void evaluate(String deviceId, int sensor, double value, long atMillis) {
+        Compiled current = compiled;
+        if (current.rules.length == 0 || Double.isNaN(value)) {
+            return;
+        }
+        DeviceState device = devices.get(deviceId);
+        if (device == null) {
+            device = devices.computeIfAbsent(deviceId, id -> new DeviceState(id, current));
+        }
+
+        device.lock.lock();
+        try {
+            if (device.compiled != current) {
+                device.recompile(current);
+            }
+            evaluate(device, device.directions[2 * sensor], value, atMillis);
+            evaluate(device, device.directions[2 * sensor + 1], -value, atMillis);
+        } finally {
+            device.lock.unlock();
+        }
+    }
+
+    private void evaluate(DeviceState device, DirectionState state, double x, long atMillis) {
+        Direction direction = state.direction;
+        if (direction.size() == 0) {
+            return;
+        }
+        double last = state.last;
+        state.last = x;
+        if (Double.isNaN(last)) {
+            for (int slot = 0; slot < direction.size(); slot++) {
+                if (state.breachSince[slot] == NOT_BREACHING) {
+                    if (x > direction.trigger[slot]) {
+                        startBreach(device, state, slot, x, atMillis);
+                    }
+                } else if (x < direction.clear[slot]) {
+                    endBreach(device, state, slot, x, atMillis);
+                }
+            }
+        } else if (x > last) {
+            // Rules with last <= trigger < x start breaching
+            for (int slot = lowerBound(direction.trigger, last); slot < direction.size() && direction.trigger[slot] < x; slot++) {
+                if (state.breachSince[slot] == NOT_BREACHING) {
+                    startBreach(device, state, slot, x, atMillis);
+                }
+            }
+        } else if (x < last) {
+            // Rules with x < clear <= last stop breaching
+            for (int i = upperBound(direction.clearSorted, x); i < direction.size() && direction.clearSorted[i] <= last; i++) {
+                int slot = direction.byClear[i];
+                if (state.breachSince[slot] != NOT_BREACHING) {
+                    endBreach(device, state, slot, x, atMillis);
+                }
+            }
+        }
+
+        // Breaches waiting out their duration
+        int kept = 0;
+        for (int i = 0; i < state.pendingCount; i++) {
+            int slot = state.pending[i];
+            long since = state.breachSince[slot];
+            if (since == NOT_BREACHING || state.firing[slot]) {
+                continue;
+            }
+            if (atMillis - since >= direction.durationMillis[slot]) {
+                fire(device, state, slot, x, atMillis);
+            } else {
+                state.pending[kept++] = slot;
+            }
+        }
+        state.pendingCount = kept;
+    }
+
+    private void startBreach(DeviceState device, DirectionState state, int slot, double x, long atMillis) {
+        state.breachSince[slot] = atMillis;
+        if (state.direction.durationMillis[slot] == 0) {
+            fire(device, state, slot, x, atMillis);
+        } else {
+            state.pending[state.pendingCount++] = slot;
+        }
+    }
+
+    private void endBreach(DeviceState device, DirectionState state, int slot, double x, long atMillis) {
+        state.breachSince[slot] = NOT_BREACHING;
+        if (state.firing[slot]) {
+            state.firing[slot] = false;
+            emit(device, state, slot, x, CLEARED, atMillis);
+        }
+    }
+
+    private void fire(DeviceState device, DirectionState state, int slot, double x, long atMillis) {
+        if (!state.firing[slot]) {
+            state.firing[slot] = true;
+            emit(device, state, slot, x, FIRING, atMillis);
+        }
+    }
+
+    private void emit(DeviceState device, DirectionState state, int slot, double x, String alertState, long atMillis) {
+        ThresholdRule rule = state.direction.rules[slot];
+        Alert alert = new Alert(rule.getId(), rule.getName(), rule.getSeverity(), device.deviceId, rule.getSensor(),
+                rule.getOperator(), rule.getThreshold(), state.direction.sign * x, alertState,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(atMillis), zone));
+        try {
+            listener.onAlert(alert);
+        } catch (Exception e) {
+            log.error("Error publishing threshold alert", e);
+        }
+    }
+
+    static int sensorIndex(String sensor) {
+        for (int i = 0; i < SensorWindowAggregator.SENSORS.length; i++) {
+            if (SensorWindowAggregator.SENSORS[i].equals(sensor)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * First index with values[index] >= key
+     */
+    private static int lowerBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * First index with values[index] > key
+     */
+    private static int upperBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Immutable compiled rule set: one program for devices without their own rules, one per device
+     * that has some
+     */
+    private record Compiled(ThresholdRule[] rules, Direction[] common, Map<String, Direction[]> perDevice) {
+
+        static final Compiled EMPTY = of(List.of());
+
+        static Compiled of(List<ThresholdRule> rules) {
+            List<ThresholdRule> common = new ArrayList<>();
+            Map<String, List<ThresholdRule>> byDevice = new HashMap<>();
+            for (ThresholdRule rule : rules) {
+                if (rule.getDeviceId() == null || rule.getDeviceId().isEmpty()) {
+                    common.add(rule);
+                } else {
+                    byDevice.computeIfAbsent(rule.getDeviceId(), id -> new ArrayList<>()).add(rule);
+                }
+            }
+            Map<String, Direction[]> perDevice = new HashMap<>();
+            byDevice.forEach((deviceId, deviceRules) -> {
+                List<ThresholdRule> merged = new ArrayList<>(common);
+                merged.addAll(deviceRules);
+                perDevice.put(deviceId, directions(merged));
+            });
+            return new Compiled(rules.toArray(ThresholdRule[]::new), directions(common), perDevice);
+        }
+
+        Direction[] program(String deviceId) {
+            return perDevice.getOrDefault(deviceId, common);
+        }
+
+        private static Direction[] directions(List<ThresholdRule> rules) {
+            Direction[] directions = new Direction[DIRECTIONS];
+            for (int d = 0; d < DIRECTIONS; d++) {
+                int sensor = d / 2;
+                String operator = d % 2 == 0 ? ThresholdRule.ABOVE : ThresholdRule.BELOW;
+                List<ThresholdRule> matching = rules.stream()
+                        .filter(rule -> sensorIndex(rule.getSensor()) == sensor && operator.equals(rule.getOperator()))
+                        .toList();
+                directions[d] = new Direction(d % 2 == 0 ? 1 : -1, matching);
+            }
+            return directions;
+        }
+    }
+
+    /**
+     * Rules of one sensor and operator, sorted by trigger, in the coordinates of sign x reading
+     */
+    private static final class Direction {
+        final double sign;
+        final ThresholdRule[] rules;
+        final double[] trigger;
+        final double[] clear;
+        final long[] durationMillis;
+        // Slots ordered by clear point, and those clear points
+        final int[] byClear;
+        final double[] clearSorted;
+
+        Direction(double sign, List<ThresholdRule> matching) {
+            this.sign = sign;
+            this.rules = matching.stream()
+                    .sorted(Comparator.comparingDouble(rule -> sign * rule.getThreshold()))
+                    .toArray(ThresholdRule[]::new);
+            int size = rules.length;
+            trigger = new double[size];
+            clear = new double[size];
+            durationMillis = new long[size];
+            for (int slot = 0; slot < size; slot++) {
+                trigger[slot] = sign * rules[slot].getThreshold();
+                clear[slot] = trigger[slot] - rules[slot].getHysteresis();
+                durationMillis[slot] = rules[slot].getDurationSeconds() * 1000;
+            }
+            byClear = IntStream.range(0, size).boxed()
+                    .sorted(Comparator.comparingDouble(slot -> clear[slot]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            clearSorted = new double[size];
+            for (int i = 0; i < size; i++) {
+                clearSorted[i] = clear[byClear[i]];
+            }
+        }
+
+        int size() {
+            return rules.length;
+        }
+    }
+
+    private static final class DeviceState {
+        final String deviceId;
+        final ReentrantLock lock = new ReentrantLock();
+        Compiled compiled;
+        DirectionState[] directions;
+
+        DeviceState(String deviceId, Compiled compiled) {
+            this.deviceId = deviceId;
+            this.compiled = compiled;
+            this.directions = new DirectionState[DIRECTIONS];
+            Direction[] program = compiled.program(deviceId);
+            for (int d = 0; d < DIRECTIONS; d++) {
+                directions[d] = new DirectionState(program[d]);
+            }
+        }
+
+        /**
+         * Move to a new rule set, keeping breach and firing state of rules that are still there; the
+         * next reading re-checks every rule against it
+         */
+        void recompile(Compiled next) {
+            Direction[] program = next.program(deviceId);
+            for (int d = 0; d < DIRECTIONS; d++) {
+                DirectionState previous = directions[d];
+                Map<String, Integer> previousSlots = new HashMap<>();
+                for (int slot = 0; slot < previous.direction.size(); slot++) {
+                    previousSlots.put(previous.direction.rules[slot].getId(), slot);
+                }
+                DirectionState state = new DirectionState(program[d]);
+                for (int slot = 0; slot < state.direction.size(); slot++) {
+                    Integer old = previousSlots.get(state.direction.rules[slot].getId());
+                    if (old != null) {
+                        state.breachSince[slot] = previous.breachSince[old];
+                        state.firing[slot] = previous.firing[old];
+                        if (state.breachSince[slot] != NOT_BREACHING && !state.firing[slot]) {
+                            state.pending[state.pendingCount++] = slot;
+                        }
+                    }
+                }
+                directions[d] = state;
+            }
+            compiled = next;
+        }
+    }
+
+    private static final class DirectionState {
+        final Direction direction;
+        final long[] breachSince;
+        final boolean[] firing;
+        final int[] pending;
+        int pendingCount;
+        // Last reading in direction coordinates; NaN until the first one
+        double last = Double.NaN;
+
+        DirectionState(Direction direction) {
+            this.direction = direction;
+            this.breachSince = new long[direction.size()];
+            this.firing = new boolean[direction.size()];
+            this.pending = new int[direction.size()];
+            Arrays.fill(breachSince, NOT_BREACHING);
+        }
+    }
+}
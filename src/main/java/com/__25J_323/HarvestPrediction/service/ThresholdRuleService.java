@@ -0,0 +1,162 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.BackpressureSessionDecorator;
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
+import com.__25J_323.HarvestPrediction.repository.ThresholdRuleRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threshold rules in threshold_rule. Changes made here recompile the engine right away; the
+ * collection is also re-read every rules.reload-seconds to pick up edits made elsewhere. Alerts
+ * leave the ingest thread and go to /topic/rule-alerts and the rules.alert-topic MQTT topic.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ThresholdRuleService {
+
+    private final ThresholdRuleRepository thresholdRuleRepository;
+    private final ThresholdRuleEngine thresholdRuleEngine;
+    private final MqttService mqttService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${rules.reload-seconds:30}")
+    private long reloadSeconds;
+
+    @Value("${rules.alert-topic:harvest/alerts}")
+    private String alertTopic;
+
+    @Value("${rules.seed-defaults:true}")
+    private boolean seedDefaults;
+
+    private ScheduledExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "threshold-rules");
+            thread.setDaemon(true);
+            return thread;
+        });
+        thresholdRuleEngine.setListener(alert -> executor.execute(() -> publish(alert)));
+    }
+
+    /**
+     * First load off the startup thread, so an unreachable database does not delay startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startReloading() {
+        executor.execute(() -> {
+            try {
+                if (seedDefaults && thresholdRuleRepository.count() == 0) {
+                    thresholdRuleRepository.saveAll(defaultRules());
+                    log.info("Seeded threshold rules from the agronomic defaults");
+                }
+            } catch (Exception e) {
+                log.error("Error seeding threshold rules", e);
+            }
+        });
+        executor.scheduleWithFixedDelay(this::reloadQuietly, 0, reloadSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<ThresholdRule> findAll() {
+        return thresholdRuleRepository.findAll();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rule cannot be compiled
+     */
+    public ThresholdRule save(ThresholdRule rule) {
+        ThresholdRuleEngine.validate(rule);
+        ThresholdRule saved = thresholdRuleRepository.save(rule);
+        reload();
+        return saved;
+    }
+
+    public boolean deleteById(String id) {
+        if (!thresholdRuleRepository.existsById(id)) {
+            return false;
+        }
+        thresholdRuleRepository.deleteById(id);
+        reload();
+        return true;
+    }
+
+    public int reload() {
+        thresholdRuleEngine.load(thresholdRuleRepository.findByEnabledTrue());
+        return thresholdRuleEngine.getRuleCount();
+    }
+
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Could not reload threshold rules, keeping the loaded ones: {}", e.getMessage());
+        }
+    }
+
+    private void publish(ThresholdRuleEngine.Alert alert) {
+        log.info("Threshold rule {} {} for {}: {} = {}", alert.ruleName(), alert.state(), alert.deviceId(),
+                alert.sensor(), alert.value());
+        try {
+            messagingTemplate.convertAndSend("/topic/rule-alerts", alert,
+                    Map.of(BackpressureSessionDecorator.RELIABLE_HEADER, "true"));
+        } catch (Exception e) {
+            log.error("Error sending threshold alert via WebSocket", e);
+        }
+        if (alertTopic != null && !alertTopic.isEmpty() && mqttService.isBrokerConnected()) {
+            try {
+                mqttService.publishMessage(alertTopic, objectMapper.writeValueAsString(alert));
+            } catch (Exception e) {
+                log.error("Error publishing threshold alert via MQTT", e);
+            }
+        }
+    }
+
+    /**
+     * The optimal-growth ranges HarvestPredictionService scores against, as alerts on a reading
+     * staying outside them for five minutes
+     */
+    static List<ThresholdRule> defaultRules() {
+        return List.of(
+                rule("Temperature too low", "temperature", ThresholdRule.BELOW, HarvestPredictionService.MIN_TEMP_THRESHOLD, 1.0),
+                rule("Temperature too high", "temperature", ThresholdRule.ABOVE, HarvestPredictionService.MAX_TEMP_THRESHOLD, 1.0),
+                rule("Humidity too low", "humidity", ThresholdRule.BELOW, HarvestPredictionService.MIN_HUMIDITY_THRESHOLD, 3.0),
+                rule("Humidity too high", "humidity", ThresholdRule.ABOVE, HarvestPredictionService.MAX_HUMIDITY_THRESHOLD, 3.0),
+                rule("Soil too dry", "soilMoisture", ThresholdRule.BELOW, HarvestPredictionService.MIN_SOIL_MOISTURE_THRESHOLD, 3.0),
+                rule("Soil too wet", "soilMoisture", ThresholdRule.ABOVE, HarvestPredictionService.MAX_SOIL_MOISTURE_THRESHOLD, 3.0));
+    }
+
+    private static ThresholdRule rule(String name, String sensor, String operator, double threshold, double hysteresis) {
+        ThresholdRule rule = new ThresholdRule();
+        rule.setName(name);
+        rule.setSensor(sensor);
+        rule.setOperator(operator);
+        rule.setThreshold(threshold);
+        rule.setHysteresis(hysteresis);
+        rule.setDurationSeconds(300);
+        rule.setSeverity("WARNING");
+        return rule;
+    }
+}
@@ -0,0 +1,301 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.PlantPage;
+import com.__25J_323.HarvestPrediction.model.TomatoPlant;
+import com.__25J_323.HarvestPrediction.repository.TomatoPlantRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plant reads and writes. Single-plant lookups go through a bounded read-through cache;
+ * writes made here update it, and an optional change-stream listener invalidates entries changed
+ * by other application instances (otherwise they are stale for at most the TTL).
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class TomatoPlantService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // "$changeStream is only supported on replica sets": a standalone mongod
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+    // CappedPositionLost, InvalidResumeToken, ChangeStreamFatalError, ChangeStreamHistoryLost:
+    // the resume token is useless and the stream has to start over
+    private static final Set<Integer> NON_RESUMABLE = Set.of(136, 260, 280, 286);
+
+    private final MongoTemplate mongoTemplate;
+    private final TomatoPlantRepository tomatoPlantRepository;
+
+    @Value("${plant.cache.max-size:10000}")
+    private long cacheMaxSize;
+
+    @Value("${plant.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    @Value("${plant.cache.change-stream.enabled:false}")
+    private boolean changeStreamEnabled;
+
+    private Cache<String, TomatoPlant> plantCache;
+    private volatile boolean running = true;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> changeCursor;
+
+    @PostConstruct
+    public void init() {
+        plantCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(cacheTtlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cached lookup by id. Callers get their own copy, so changing it does not touch the cache
+     * until it is persisted through {@link #save(TomatoPlant)}.
+     */
+    public Optional<TomatoPlant> findById(String id) {
+        return Optional.ofNullable(plantCache.get(id, key -> tomatoPlantRepository.findById(key).orElse(null)))
+                .map(TomatoPlantService::copyOf);
+    }
+
+    public TomatoPlant save(TomatoPlant plant) {
+        try {
+            TomatoPlant saved = tomatoPlantRepository.save(plant);
+            plantCache.put(saved.getId(), copyOf(saved));
+            return saved;
+        } catch (RuntimeException e) {
+            if (plant.getId() != null) {
+                plantCache.invalidate(plant.getId());
+            }
+            throw e;
+        }
+    }
+
+    public boolean deleteById(String id) {
+        plantCache.invalidate(id);
+        if (!tomatoPlantRepository.existsById(id)) {
+            return false;
+        }
+        tomatoPlantRepository.deleteById(id);
+        plantCache.invalidate(id);
+        return true;
+    }
+
+    public List<TomatoPlant> findAll() {
+        return tomatoPlantRepository.findAll();
+    }
+
+    /**
+     * Keyset page of plants ordered by id. Uses "_id > after" instead of skip/offset,
+     * so every page costs the same regardless of how deep the client has paged.
+     */
+    public PlantPage findPage(String after, int limit, String variety, LocalDate harvestFrom, LocalDate harvestTo) {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+
+        Criteria criteria = new Criteria();
+        if (variety != null && !variety.isBlank()) {
+            criteria.and("variety").is(variety);
+        }
+        if (harvestFrom != null || harvestTo != null) {
+            Criteria harvest = criteria.and("predictedHarvestDate");
+            if (harvestFrom != null) {
+                harvest.gte(harvestFrom);
+            }
+            if (harvestTo != null) {
+                harvest.lte(harvestTo);
+            }
+        }
+        if (after != null && !after.isBlank()) {
+            criteria.and("_id").gt(ObjectId.isValid(after) ? new ObjectId(after) : after);
+        }
+
+        // Fetch one extra row to know whether another page exists
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(pageSize + 1);
+        List<TomatoPlant> plants = mongoTemplate.find(query, TomatoPlant.class);
+
+        String nextCursor = null;
+        if (plants.size() > pageSize) {
+            plants = plants.subList(0, pageSize);
+            nextCursor = plants.get(pageSize - 1).getId();
+        }
+        return new PlantPage(plants, nextCursor);
+    }
+
+    /**
+     * Cache statistics: hit ratio, evictions and average load latency
+     */
+    public Map<String, Object> getCacheStats() {
+        CacheStats stats = plantCache.stats();
+        Map<String, Object> result = new HashMap<>();
+        result.put("size", plantCache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRatio", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadCount", stats.loadCount());
+        result.put("averageLoadMillis", stats.averageLoadPenalty() / 1_000_000.0);
+        return result;
+    }
+
+    public Cache<String, TomatoPlant> getPlantCache() {
+        return plantCache;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startChangeStreamListener() {
+        if (!changeStreamEnabled) {
+            return;
+        }
+        Thread listener = new Thread(this::watchPlantChanges, "plant-cache-change-stream");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    /**
+     * Follow the tomato_plant change stream and keep cached entries coherent with writes
+     * from other instances. Reconnects with the last resume token after errors; when the token
+     * is no longer usable the stream starts over and the cache is cleared, since changes in the
+     * gap are unknown. Stops for good on a deployment without change streams (standalone mongod),
+     * leaving the TTL to bound staleness.
+     */
+    private void watchPlantChanges() {
+        String collection = mongoTemplate.getCollectionName(TomatoPlant.class);
+        BsonDocument resumeToken = null;
+        long backoffMillis = 1000;
+
+        while (running) {
+            try {
+                var watch = mongoTemplate.getCollection(collection).watch()
+                        .fullDocument(FullDocument.UPDATE_LOOKUP)
+                        .maxAwaitTime(1, TimeUnit.SECONDS);
+                if (resumeToken != null) {
+                    watch = watch.resumeAfter(resumeToken);
+                }
+                try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = watch.cursor()) {
+                    changeCursor = cursor;
+                    log.info("Plant cache change-stream listener started");
+                    backoffMillis = 1000;
+                    while (running) {
+                        ChangeStreamDocument<Document> change = cursor.tryNext();
+                        // Advances on idle batches too, so a quiet collection still has a fresh token
+                        if (cursor.getResumeToken() != null) {
+                            resumeToken = cursor.getResumeToken();
+                        }
+                        if (change != null) {
+                            applyChange(change);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                int code = e instanceof MongoServerException server ? server.getCode() : 0;
+                if (code == CHANGE_STREAMS_UNSUPPORTED) {
+                    log.warn("Change streams are not supported by this MongoDB deployment; plant cache entries "
+                            + "changed by other instances are refreshed after {}s", cacheTtlSeconds);
+                    return;
+                }
+                if (NON_RESUMABLE.contains(code) || (e instanceof MongoException mongo
+                        && mongo.hasErrorLabel("NonResumableChangeStreamError"))) {
+                    resumeToken = null;
+                }
+                if (resumeToken == null) {
+                    // Starting over without a token: whatever changed in the gap is unknown
+                    plantCache.invalidateAll();
+                }
+                log.warn("Plant cache change stream interrupted ({}), retrying in {}ms", e.getMessage(), backoffMillis);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, 60_000);
+            }
+        }
+    }
+
+    private void applyChange(ChangeStreamDocument<Document> change) {
+        if (change.getOperationType() == OperationType.INVALIDATE
+                || change.getOperationType() == OperationType.DROP) {
+            plantCache.invalidateAll();
+            return;
+        }
+        BsonDocument key = change.getDocumentKey();
+        if (key == null || !key.containsKey("_id")) {
+            return;
+        }
+        BsonValue rawId = key.get("_id");
+        String id = rawId.isObjectId() ? rawId.asObjectId().getValue().toHexString()
+                : rawId.isString() ? rawId.asString().getValue() : rawId.toString();
+
+        Document fullDocument = change.getFullDocument();
+        if (fullDocument != null) {
+            // Refresh only entries this instance already holds
+            TomatoPlant fresh = mongoTemplate.getConverter().read(TomatoPlant.class, fullDocument);
+            plantCache.asMap().computeIfPresent(id, (k, v) -> fresh);
+        } else {
+            plantCache.invalidate(id);
+        }
+    }
+
+    private static TomatoPlant copyOf(TomatoPlant plant) {
+        TomatoPlant copy = new TomatoPlant();
+        copy.setId(plant.getId());
+        copy.setPlantName(plant.getPlantName());
+        copy.setVariety(plant.getVariety());
+        copy.setPlantingDate(plant.getPlantingDate());
+        copy.setPredictedHarvestDate(plant.getPredictedHarvestDate());
+        copy.setLastUpdated(plant.getLastUpdated());
+        return copy;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeCursor;
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (Exception e) {
+                log.debug("Error closing plant change stream", e);
+            }
+        }
+    }
+}
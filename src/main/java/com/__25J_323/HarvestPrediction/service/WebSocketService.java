@@ -1,5 +1,6 @@
 package com.__25J_323.HarvestPrediction.service;
 
+import com.__25J_323.HarvestPrediction.config.BackpressureSessionDecorator;
 import com.__25J_323.HarvestPrediction.model.EnvironmentData;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -7,6 +8,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
@@ -17,7 +20,12 @@ public class WebSocketService {
 
     public void sendEnvironmentUpdate(EnvironmentData data) {
         try {
-            messagingTemplate.convertAndSend("/topic/environment", data);
+            if (data.getDeviceId() != null) {
+                messagingTemplate.convertAndSend("/topic/environment", data,
+                        Map.of(BackpressureSessionDecorator.CONFLATION_KEY_HEADER, data.getDeviceId()));
+            } else {
+                messagingTemplate.convertAndSend("/topic/environment", data);
+            }
         } catch (Exception e) {
             log.error("Error sending environment update via WebSocket", e);
         }
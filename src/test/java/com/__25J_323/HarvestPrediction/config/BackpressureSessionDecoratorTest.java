@@ -0,0 +1,253 @@
+package com.__25J_323.HarvestPrediction.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Slow-client harness: one broadcaster fans out to healthy sessions and to sessions whose socket
+ * write is stuck until released. Assertions are on queue contents and drop counts, not timings.
+ */
+class BackpressureSessionDecoratorTest {
+
+    private static final int MESSAGES = 200;
+    private static final int BUFFER_LIMIT = 4_096;
+
+    private final ExecutorService drainExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        drainExecutor.shutdown();
+    }
+
+    @Test
+    void slowSubscribersDoNotDelayHealthyOnes() throws Exception {
+        List<String> healthyDelivered = Collections.synchronizedList(new ArrayList<>());
+        List<BackpressureSessionDecorator> healthy = new ArrayList<>();
+        List<BackpressureSessionDecorator> slow = new ArrayList<>();
+        List<CountDownLatch> slowEntered = new ArrayList<>();
+        int frameSize = frame("/topic/environment", 0).getPayloadLength();
+        for (int i = 0; i < 5; i++) {
+            // Room for the whole burst, so a healthy drain never has to drop however it is scheduled
+            healthy.add(new BackpressureSessionDecorator(session("healthy-" + i, null, healthyDelivered),
+                    drainExecutor, SlowConsumerPolicy.DROP_OLDEST, MESSAGES * frameSize, 600_000));
+            CountDownLatch entered = new CountDownLatch(1);
+            slowEntered.add(entered);
+            slow.add(decorate(session("slow-" + i, entered, null), SlowConsumerPolicy.DROP_OLDEST));
+        }
+
+        // The first frame is picked up by every slow drain and stays stuck in the socket write
+        broadcast(healthy, slow, 0);
+        for (CountDownLatch entered : slowEntered) {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+        }
+        // If sendMessage blocked on a stuck socket this loop would never finish
+        for (int i = 1; i < MESSAGES; i++) {
+            broadcast(healthy, slow, i);
+        }
+
+        int capacity = BUFFER_LIMIT / frameSize;
+        for (BackpressureSessionDecorator session : slow) {
+            assertEquals(capacity, session.getQueuedMessages());
+            assertTrue(session.getQueuedBytes() <= BUFFER_LIMIT);
+            assertEquals(MESSAGES - 1 - capacity, session.getDroppedCount());
+        }
+        for (BackpressureSessionDecorator session : healthy) {
+            awaitDrained(session);
+            assertEquals(MESSAGES, session.getSentCount());
+            assertEquals(0, session.getDroppedCount());
+        }
+        assertEquals(MESSAGES * healthy.size(), healthyDelivered.size());
+    }
+
+    @Test
+    void dropOldestNeverDropsControlFrames() throws Exception {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        BackpressureSessionDecorator session = decorate(session("stuck", entered, delivered),
+                SlowConsumerPolicy.DROP_OLDEST);
+
+        session.sendMessage(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000"));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\u0000"));
+        for (int i = 0; i < MESSAGES; i++) {
+            session.sendMessage(frame("/topic/environment", i));
+        }
+        session.sendMessage(new TextMessage("ERROR\nmessage:late\n\n\u0000"));
+
+        release.countDown();
+        awaitDrained(session);
+        assertTrue(delivered.get(0).startsWith("CONNECTED\n"));
+        assertTrue(delivered.get(1).startsWith("RECEIPT\n"));
+        assertTrue(delivered.get(delivered.size() - 1).startsWith("ERROR\n"));
+        assertEquals(MESSAGES - (delivered.size() - 3), session.getDroppedCount());
+    }
+
+    @Test
+    void conflatePolicyKeepsLatestFramePerDestinationAndKey() throws Exception {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        BackpressureSessionDecorator session = new BackpressureSessionDecorator(session("stuck", entered, delivered),
+                drainExecutor, SlowConsumerPolicy.CONFLATE, 1_000, 60_000);
+
+        session.sendMessage(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000"));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        session.sendMessage(new TextMessage("RECEIPT\nreceipt-id:1\n\n\u0000"));
+        for (int i = 0; i < 50; i++) {
+            session.sendMessage(frame("/topic/environment", "esp32", i));
+            session.sendMessage(frame("/topic/environment", "greenhouse/2", i));
+            session.sendMessage(frame("/topic/device-status", "esp32", i));
+        }
+
+        // The receipt plus the latest frame of each destination and device
+        assertEquals(4, session.getQueuedMessages());
+        assertEquals(147, session.getDroppedCount());
+        release.countDown();
+        awaitDrained(session);
+        assertEquals(List.of("CONNECTED", "RECEIPT", "MESSAGE", "MESSAGE", "MESSAGE"),
+                delivered.stream().map(payload -> payload.substring(0, payload.indexOf('\n'))).toList());
+        assertTrue(delivered.get(2).contains("conflation-key:esp32\n\n0049\u0000"));
+        assertTrue(delivered.get(3).contains("conflation-key:greenhouse/2\n\n0049\u0000"));
+        assertTrue(delivered.get(4).contains("/topic/device-status"));
+    }
+
+    @Test
+    void conflatePolicyNeverDropsLivenessAlertOrDeltaFrames() throws Exception {
+        List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch entered = new CountDownLatch(1);
+        BackpressureSessionDecorator session = new BackpressureSessionDecorator(session("stuck", entered, delivered),
+                drainExecutor, SlowConsumerPolicy.CONFLATE, 4_000, 60_000);
+
+        session.sendMessage(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000"));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        // Only the keyed environment frames conflate; the reliable ones all stay queued
+        for (int i = 0; i < 10; i++) {
+            session.sendMessage(reliableFrame("/topic/device-liveness", i));
+            session.sendMessage(reliableFrame("/topic/rule-alerts", i));
+            session.sendMessage(reliableFrame("/topic/environment.cbor", i));
+            session.sendMessage(frame("/topic/environment", "esp32", i));
+        }
+        assertEquals(9, session.getDroppedCount());
+        assertEquals(31, session.getQueuedMessages());
+
+        release.countDown();
+        awaitDrained(session);
+        for (String topic : List.of("/topic/device-liveness", "/topic/rule-alerts", "/topic/environment.cbor")) {
+            assertEquals(10, delivered.stream().filter(payload -> payload.contains("destination:" + topic + "\n")).count());
+        }
+    }
+
+    @Test
+    void reliableFramesThatNoLongerFitResetTheSession() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        WebSocketSession stuck = session("stuck", entered, null);
+        BackpressureSessionDecorator session = new BackpressureSessionDecorator(
+                stuck, drainExecutor, SlowConsumerPolicy.DROP_OLDEST, 1_000, 60_000);
+
+        session.sendMessage(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000"));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 20 && !session.isSlowConsumerClosed(); i++) {
+            session.sendMessage(frame("/topic/environment", i));
+            session.sendMessage(reliableFrame("/topic/environment.cbor", i));
+        }
+        // Keyed and unkeyed state frames went first; then the deltas alone overflowed
+        assertTrue(session.isSlowConsumerClosed());
+        assertTrue(session.getDroppedCount() > 0);
+        verify(stuck).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    void disconnectPolicyClosesSessionOverLimit() throws Exception {
+        WebSocketSession stuck = session("stuck", null, null);
+        BackpressureSessionDecorator session = new BackpressureSessionDecorator(
+                stuck, drainExecutor, SlowConsumerPolicy.DISCONNECT, 1_000, 60_000);
+
+        for (int i = 0; i < 50; i++) {
+            session.sendMessage(frame("/topic/environment", i));
+        }
+        assertTrue(session.isSlowConsumerClosed());
+        verify(stuck).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private static void broadcast(List<BackpressureSessionDecorator> healthy, List<BackpressureSessionDecorator> slow,
+                                  int body) throws Exception {
+        TextMessage frame = frame("/topic/environment", body);
+        for (BackpressureSessionDecorator session : healthy) {
+            session.sendMessage(frame);
+        }
+        for (BackpressureSessionDecorator session : slow) {
+            session.sendMessage(frame);
+        }
+    }
+
+    private static void awaitDrained(BackpressureSessionDecorator session) throws InterruptedException {
+        // Polls queue state only; the bound is a safety net, not part of the assertion
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while ((session.getQueuedMessages() > 0 || session.isDraining()) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, session.getQueuedMessages());
+    }
+
+    private BackpressureSessionDecorator decorate(WebSocketSession session, SlowConsumerPolicy policy) {
+        return new BackpressureSessionDecorator(session, drainExecutor, policy, BUFFER_LIMIT, 600_000);
+    }
+
+    /**
+     * A mock session; with entered set, its first write blocks until the test releases it
+     */
+    private WebSocketSession session(String id, CountDownLatch entered, List<String> delivered) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            if (entered != null && entered.getCount() > 0) {
+                entered.countDown();
+                release.await();
+            }
+            if (delivered != null) {
+                TextMessage message = invocation.getArgument(0);
+                delivered.add(message.getPayload());
+            }
+            return null;
+        }).when(session).sendMessage(any());
+        return session;
+    }
+
+    private static TextMessage frame(String destination, String key, long body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:0\n"
+                + BackpressureSessionDecorator.CONFLATION_KEY_HEADER + ":" + key + "\n\n"
+                + String.format("%04d", body) + "\u0000");
+    }
+
+    private static TextMessage reliableFrame(String destination, long body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:0\n"
+                + BackpressureSessionDecorator.RELIABLE_HEADER + ":true\n\n"
+                + String.format("%04d", body) + "\u0000");
+    }
+
+    private static TextMessage frame(String destination, long body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:0\n\n"
+                + String.format("%04d", body) + "\u0000");
+    }
+}
@@ -0,0 +1,90 @@
+package com.__25J_323.HarvestPrediction.loadtest;
+
+import com.hivemq.embedded.EmbeddedHiveMQ;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Local HiveMQ CE broker on a free loopback port with in-memory persistence, so MqttService
+ * can be exercised end to end without the cloud broker
+ */
+public class EmbeddedMqttBroker implements AutoCloseable {
+
+    private final int port;
+    private final Path workDir;
+    private final EmbeddedHiveMQ hiveMQ;
+
+    public EmbeddedMqttBroker() {
+        this(-1);
+    }
+
+    /**
+     * Broker on a given port, e.g. to bring one back where a stopped broker was
+     */
+    public EmbeddedMqttBroker(int port) {
+        try {
+            this.port = port > 0 ? port : freePort();
+            this.workDir = Files.createTempDirectory("embedded-hivemq");
+            Path configDir = Files.createDirectories(workDir.resolve("conf"));
+            Files.writeString(configDir.resolve("config.xml"), """
+                    <?xml version="1.0"?>
+                    <hivemq>
+                        <listeners>
+                            <tcp-listener>
+                                <port>%d</port>
+                                <bind-address>127.0.0.1</bind-address>
+                            </tcp-listener>
+                        </listeners>
+                        <persistence>
+                            <mode>in-memory</mode>
+                        </persistence>
+                        <anonymous-usage-statistics>
+                            <enabled>false</enabled>
+                        </anonymous-usage-statistics>
+                    </hivemq>
+                    """.formatted(this.port), StandardCharsets.UTF_8);
+
+            this.hiveMQ = EmbeddedHiveMQ.builder()
+                    .withConfigurationFolder(configDir)
+                    .withDataFolder(Files.createDirectories(workDir.resolve("data")))
+                    .withExtensionsFolder(Files.createDirectories(workDir.resolve("extensions")))
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public EmbeddedMqttBroker start() {
+        hiveMQ.start().join();
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            hiveMQ.stop().join();
+            hiveMQ.close();
+        } finally {
+            try (Stream<Path> paths = Files.walk(workDir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
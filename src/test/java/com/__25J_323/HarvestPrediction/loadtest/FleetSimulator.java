@@ -0,0 +1,147 @@
+package com.__25J_323.HarvestPrediction.loadtest;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5AsyncClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated ESP32 fleet: each device has its own MQTT connection and publishes temperature,
+ * humidity and soil moisture round-robin at a fixed rate. Every published value is unique within
+ * a run (it encodes a sequence number), so a {@link Listener} can correlate it with the value
+ * seen downstream.
+ */
+@Slf4j
+class FleetSimulator implements AutoCloseable {
+
+    static final String[] SENSORS = {"temperature", "humidity", "soilMoisture"};
+    private static final String[] UNITS = {"°C", "%", "%"};
+    private static final int DISTINCT_VALUES = 90_000;
+
+    /**
+     * Payload shapes seen from real firmware; all of them must survive extractNumericValue
+     */
+    enum PayloadFormat {
+        PLAIN,        // 24.512
+        UNIT_SUFFIX,  // 24.512°C
+        SPACED_UNIT,  // 24.512 °C
+        MIXED         // rotates through the above
+    }
+
+    interface Listener {
+        void onPublish(int sensor, double value, long publishNanos);
+    }
+
+    private final String host;
+    private final int port;
+    private final String[] topics;
+    private final int devices;
+    private final double messagesPerSecondPerDevice;
+    private final PayloadFormat format;
+    private final Listener listener;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<Mqtt5AsyncClient> clients = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param topics one topic per entry of {@link #SENSORS}
+     */
+    FleetSimulator(String host, int port, String[] topics, int devices, double messagesPerSecondPerDevice,
+                   PayloadFormat format, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.topics = topics;
+        this.devices = devices;
+        this.messagesPerSecondPerDevice = messagesPerSecondPerDevice;
+        this.format = format;
+        this.listener = listener;
+    }
+
+    void start() {
+        scheduler = Executors.newScheduledThreadPool(Math.min(devices, 4));
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / messagesPerSecondPerDevice);
+        for (int device = 0; device < devices; device++) {
+            Mqtt5AsyncClient client = Mqtt5Client.builder()
+                    .identifier("sim-esp32-" + device)
+                    .serverHost(host)
+                    .serverPort(port)
+                    .buildAsync();
+            client.connect().join();
+            clients.add(client);
+
+            int[] nextSensor = {device % SENSORS.length};
+            // Spread devices across the period so the fleet does not publish in lockstep
+            long initialDelay = periodNanos * device / devices;
+            scheduler.scheduleAtFixedRate(() -> {
+                int sensor = nextSensor[0];
+                nextSensor[0] = (sensor + 1) % SENSORS.length;
+                publish(client, sensor);
+            }, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        }
+        log.info("Fleet simulator started: {} devices x {} msg/s, format {}", devices, messagesPerSecondPerDevice, format);
+    }
+
+    private void publish(Mqtt5AsyncClient client, int sensor) {
+        long seq = sequence.getAndIncrement();
+        double value = 10 + (seq % DISTINCT_VALUES) / 1000.0;
+        String payload = format(value, sensor, seq);
+
+        long publishNanos = System.nanoTime();
+        listener.onPublish(sensor, value, publishNanos);
+        client.publishWith()
+                .topic(topics[sensor])
+                .payload(payload.getBytes(StandardCharsets.UTF_8))
+                .qos(MqttQos.AT_LEAST_ONCE)
+                .send()
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        failed.incrementAndGet();
+                    } else {
+                        published.incrementAndGet();
+                    }
+                });
+    }
+
+    private String format(double value, int sensor, long seq) {
+        String number = String.format(Locale.ROOT, "%.3f", value);
+        PayloadFormat effective = format == PayloadFormat.MIXED
+                ? PayloadFormat.values()[(int) (seq % 3)]
+                : format;
+        return switch (effective) {
+            case UNIT_SUFFIX -> number + UNITS[sensor];
+            case SPACED_UNIT -> number + " " + UNITS[sensor];
+            default -> number;
+        };
+    }
+
+    long getPublished() {
+        return published.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        for (Mqtt5AsyncClient client : clients) {
+            client.disconnect().join();
+        }
+    }
+}
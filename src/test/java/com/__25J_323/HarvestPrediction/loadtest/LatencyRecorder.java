@@ -0,0 +1,74 @@
+package com.__25J_323.HarvestPrediction.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects latency samples in nanoseconds and reports percentiles in milliseconds
+ */
+class LatencyRecorder {
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] samples = new long[1024];
+    private int size;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        lock.lock();
+        try {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int count() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Map<String, Object> summary() {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(samples, size);
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("name", name);
+        summary.put("count", sorted.length);
+        if (sorted.length > 0) {
+            summary.put("p50Ms", millis(percentile(sorted, 0.50)));
+            summary.put("p90Ms", millis(percentile(sorted, 0.90)));
+            summary.put("p99Ms", millis(percentile(sorted, 0.99)));
+            summary.put("maxMs", millis(sorted[sorted.length - 1]));
+        }
+        return summary;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,256 @@
+package com.__25J_323.HarvestPrediction.loadtest;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.service.EnvironmentDataService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load harness: embedded MQTT broker, simulated ESP32 fleet, the real ingest pipeline,
+ * a STOMP subscriber on /ws-native and an in-memory stand-in for environment_data persistence.
+ * <p>
+ * Reports publish-to-WebSocket latency per message, and publish-to-persistence latency for every
+ * sample covered by a saved window, to the log and to target/loadtest-result.json.
+ * <p>
+ * Opt-in, since it runs for a while:
+ * {@code mvn test -Dtest=MqttLoadHarnessTest -Dloadtest=true -Dloadtest.devices=50 -Dloadtest.rate=10 -Dloadtest.seconds=60 -Dloadtest.format=MIXED}
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.data.mongodb.uri=mongodb://localhost:27017/harvest-loadtest",
+        "plant.cache.change-stream.enabled=false",
+        "mqtt.broker.url=127.0.0.1",
+        "mqtt.broker.ssl=false",
+        "mqtt.username=",
+        "environment.window.seconds=1"
+})
+class MqttLoadHarnessTest {
+
+    private static EmbeddedMqttBroker broker;
+
+    @DynamicPropertySource
+    static void brokerProperties(DynamicPropertyRegistry registry) {
+        broker = new EmbeddedMqttBroker().start();
+        registry.add("mqtt.broker.port", broker::getPort);
+    }
+
+    @AfterAll
+    static void stopBroker() throws Exception {
+        if (broker != null) {
+            broker.close();
+        }
+    }
+
+    @TestConfiguration
+    static class PersistenceStandIn {
+        @Bean
+        @Primary
+        RecordingEnvironmentDataService recordingEnvironmentDataService() {
+            return new RecordingEnvironmentDataService();
+        }
+    }
+
+    /**
+     * Keeps saved windows in memory with their wall-clock save time instead of writing to Mongo
+     */
+    static class RecordingEnvironmentDataService extends EnvironmentDataService {
+        final List<long[]> savedWindows = new ArrayList<>();
+        final ReentrantLock lock = new ReentrantLock();
+
+        RecordingEnvironmentDataService() {
+            super(null, null, Clock.systemDefaultZone());
+        }
+
+        @Override
+        public EnvironmentData saveWindow(EnvironmentData data, String part) {
+            long savedAt = System.currentTimeMillis();
+            if (data.getWindowStart() != null && data.getWindowEnd() != null) {
+                lock.lock();
+                try {
+                    savedWindows.add(new long[]{epochMillis(data.getWindowStart()), epochMillis(data.getWindowEnd()), savedAt});
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return data;
+        }
+
+        private static long epochMillis(LocalDateTime time) {
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+
+    @LocalServerPort
+    private int serverPort;
+
+    @Autowired
+    private RecordingEnvironmentDataService persistence;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${mqtt.topic.temperature}")
+    private String temperatureTopic;
+
+    @Value("${mqtt.topic.humidity}")
+    private String humidityTopic;
+
+    @Value("${mqtt.topic.soil-moisture}")
+    private String soilMoistureTopic;
+
+    @Test
+    void publishToWebSocketAndPersistenceLatency() throws Exception {
+        int devices = Integer.getInteger("loadtest.devices", 10);
+        double rate = Double.parseDouble(System.getProperty("loadtest.rate", "20"));
+        int seconds = Integer.getInteger("loadtest.seconds", 20);
+        FleetSimulator.PayloadFormat format = FleetSimulator.PayloadFormat.valueOf(
+                System.getProperty("loadtest.format", "MIXED"));
+
+        // Values are unique per run, so (sensor, value) identifies the publish
+        Map<Long, Long> pendingDelivery = new ConcurrentHashMap<>();
+        Queue<Long> publishWallMillis = new ConcurrentLinkedQueue<>();
+        LatencyRecorder webSocketLatency = new LatencyRecorder("publishToWebSocket");
+        LatencyRecorder persistenceLatency = new LatencyRecorder("publishToPersistence");
+
+        StompSession session = connectStomp(pendingDelivery, webSocketLatency);
+
+        FleetSimulator simulator = new FleetSimulator("127.0.0.1", broker.getPort(),
+                new String[]{temperatureTopic, humidityTopic, soilMoistureTopic},
+                devices, rate, format, (sensor, value, publishNanos) -> {
+            pendingDelivery.put(key(sensor, value), publishNanos);
+            publishWallMillis.add(System.currentTimeMillis());
+        });
+        simulator.start();
+        TimeUnit.SECONDS.sleep(seconds);
+        simulator.close();
+
+        // Let in-flight messages land and the last window close
+        TimeUnit.SECONDS.sleep(3);
+        session.disconnect();
+
+        long[] published = publishWallMillis.stream().mapToLong(Long::longValue).sorted().toArray();
+        List<long[]> windows;
+        persistence.lock.lock();
+        try {
+            windows = new ArrayList<>(persistence.savedWindows);
+        } finally {
+            persistence.lock.unlock();
+        }
+        for (long[] window : windows) {
+            int from = lowerBound(published, window[0]);
+            int to = lowerBound(published, window[1]);
+            for (int i = from; i < to; i++) {
+                persistenceLatency.record(TimeUnit.MILLISECONDS.toNanos(window[2] - published[i]));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("devices", devices);
+        result.put("messagesPerSecondPerDevice", rate);
+        result.put("seconds", seconds);
+        result.put("format", format);
+        result.put("published", simulator.getPublished());
+        result.put("publishFailures", simulator.getFailed());
+        result.put("undelivered", pendingDelivery.size());
+        result.put("windowsSaved", windows.size());
+        result.put("webSocket", webSocketLatency.summary());
+        result.put("persistence", persistenceLatency.summary());
+
+        log.info("MQTT load harness result: {}", result);
+        objectMapper.copy().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(new File("target/loadtest-result.json"), result);
+
+        assertTrue(simulator.getPublished() > 0, "simulator published nothing");
+        assertTrue(webSocketLatency.count() > 0, "no reading reached the WebSocket subscriber");
+        assertTrue(!windows.isEmpty(), "no aggregation window was persisted");
+    }
+
+    private StompSession connectStomp(Map<Long, Long> pendingDelivery, LatencyRecorder webSocketLatency) throws Exception {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(converter);
+
+        StompSession session = stompClient
+                .connectAsync("ws://127.0.0.1:" + serverPort + "/ws-native", new StompSessionHandlerAdapter() {
+                })
+                .get(10, TimeUnit.SECONDS);
+        session.subscribe("/topic/environment", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                long now = System.nanoTime();
+                Map<?, ?> reading = (Map<?, ?>) payload;
+                for (int sensor = 0; sensor < FleetSimulator.SENSORS.length; sensor++) {
+                    if (reading.get(FleetSimulator.SENSORS[sensor]) instanceof Number value) {
+                        Long publishNanos = pendingDelivery.remove(key(sensor, value.doubleValue()));
+                        if (publishNanos != null) {
+                            webSocketLatency.record(now - publishNanos);
+                        }
+                    }
+                }
+            }
+        });
+        // The subscription is registered asynchronously on the server
+        TimeUnit.MILLISECONDS.sleep(500);
+        return session;
+    }
+
+    private static long key(int sensor, double value) {
+        return sensor * 1_000_000_000L + Math.round(value * 1000);
+    }
+
+    private static int lowerBound(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return -index - 1;
+        }
+        while (index > 0 && sorted[index - 1] == value) {
+            index--;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,138 @@
+package com.__25J_323.HarvestPrediction.loadtest;
+
+import com.__25J_323.HarvestPrediction.HarvestPredictionApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Platform vs virtual request threads: starts the application twice, once per thread model, and
+ * drives the same closed-loop load at an endpoint that blocks for a fixed time like a Flask or
+ * MongoDB call would. Reports requests/sec and latency percentiles per model to the log and to
+ * target/loadtest-threads-result.json.
+ * <p>
+ * Opt-in, since it runs for a while:
+ * {@code mvn test -Dtest=ThreadModelLoadTest -Dloadtest=true -Dloadtest.concurrency=400 -Dloadtest.seconds=20 -Dloadtest.io-millis=50}
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class ThreadModelLoadTest {
+
+    /**
+     * Stand-in for an I/O-bound handler: holds its request thread for millis
+     */
+    @RestController
+    static class BlockingEndpoint {
+        @GetMapping("/loadtest/io")
+        String io(@RequestParam long millis) throws InterruptedException {
+            Thread.sleep(millis);
+            return "ok";
+        }
+    }
+
+    @Test
+    void platformVersusVirtualRequestThreads() throws Exception {
+        int concurrency = Integer.getInteger("loadtest.concurrency", 400);
+        int seconds = Integer.getInteger("loadtest.seconds", 20);
+        long ioMillis = Long.getLong("loadtest.io-millis", 50);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("concurrency", concurrency);
+        result.put("seconds", seconds);
+        result.put("ioMillis", ioMillis);
+        result.put("platform", run(false, concurrency, seconds, ioMillis));
+        result.put("virtual", run(true, concurrency, seconds, ioMillis));
+
+        log.info("Thread model load test result: {}", result);
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(new File("target/loadtest-threads-result.json"), result);
+    }
+
+    private Map<String, Object> run(boolean virtualThreads, int concurrency, int seconds, long ioMillis)
+            throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                HarvestPredictionApplication.class, BlockingEndpoint.class)
+                .properties("server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "plant.cache.change-stream.enabled=false",
+                        "mqtt.connect.async=true")
+                .run()) {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            URI uri = URI.create("http://127.0.0.1:" + port + "/loadtest/io?millis=" + ioMillis);
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .build();
+            HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).build();
+
+            // Warm up the JIT and the connector before measuring
+            for (int i = 0; i < 200; i++) {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+            }
+
+            LatencyRecorder latency = new LatencyRecorder(virtualThreads ? "virtual" : "platform");
+            AtomicInteger errors = new AtomicInteger();
+            AtomicLong completed = new AtomicLong();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            CountDownLatch done = new CountDownLatch(concurrency);
+            long started = System.nanoTime();
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < concurrency; i++) {
+                    clients.execute(() -> {
+                        try {
+                            while (System.nanoTime() < deadline) {
+                                long sent = System.nanoTime();
+                                try {
+                                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                                    if (response.statusCode() == 200) {
+                                        latency.record(System.nanoTime() - sent);
+                                        completed.incrementAndGet();
+                                    } else {
+                                        errors.incrementAndGet();
+                                    }
+                                } catch (Exception e) {
+                                    errors.incrementAndGet();
+                                }
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+                done.await();
+            }
+            double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+            Map<String, Object> summary = latency.summary();
+            summary.put("requestsPerSecond", Math.round(completed.get() / elapsedSeconds));
+            summary.put("errors", errors.get());
+            assertTrue(completed.get() > 0, "no request completed");
+            return summary;
+        }
+    }
+}
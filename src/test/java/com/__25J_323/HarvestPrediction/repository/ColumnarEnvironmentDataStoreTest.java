@@ -0,0 +1,219 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColumnarEnvironmentDataStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 23, 0);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rangeScansAcrossSealedAndOpenBlocksAndDays() {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            // Two hours per second for one device crosses midnight in most zones; 250 rows for another
+            for (int i = 0; i < 7_200; i++) {
+                store.save(reading("esp32", START.plusSeconds(i), 20 + (i % 10) / 10.0, 60.0, i % 2 == 0 ? 40.0 : null));
+            }
+            for (int i = 0; i < 250; i++) {
+                store.save(reading("greenhouse/2", START.plusSeconds(i * 10L), 25.0, 55.0, 30.0));
+            }
+
+            List<EnvironmentData> range = store.findBetween(START.plusSeconds(100), START.plusSeconds(200));
+            // Strictly between: 99 rows of esp32 and 9 of the second device
+            assertEquals(108, range.size());
+            assertEquals(START.plusSeconds(199), range.get(0).getTimestamp());
+            assertEquals(START.plusSeconds(101), range.get(range.size() - 1).getTimestamp());
+
+            EnvironmentData sample = range.stream()
+                    .filter(data -> "esp32".equals(data.getDeviceId()) && data.getTimestamp().equals(START.plusSeconds(123)))
+                    .findFirst().orElseThrow();
+            assertEquals(20.3, sample.getTemperature());
+            assertNull(sample.getSoilMoisture());
+
+            List<EnvironmentData> recent = store.findRecent(24);
+            assertEquals(24, recent.size());
+            assertEquals(START.plusSeconds(7_199), recent.get(0).getTimestamp());
+        }
+    }
+
+    @Test
+    void sealedSegmentsSurviveReopenAndDownsample() {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 1024, 60_000)) {
+            for (int i = 0; i < 600; i++) {
+                store.save(reading("esp32", START.plusSeconds(i), i < 300 ? 20.0 : 30.0, null, 50.0));
+            }
+        }
+
+        try (ColumnarEnvironmentDataStore reopened = new ColumnarEnvironmentDataStore(directory, 1024, 60_000)) {
+            assertTrue(reopened.sizeOnDisk() > 0);
+            List<EnvironmentData> buckets = reopened.findDownsampled(
+                    START.minusSeconds(1), START.plusSeconds(600), Duration.ofMinutes(5));
+            assertEquals(3, buckets.size());
+            // The range starts a second early, so buckets are offset by one second
+            assertEquals(20.0, buckets.get(0).getTemperature());
+            assertEquals((20.0 + 299 * 30.0) / 300, buckets.get(1).getTemperature(), 1e-9);
+            assertEquals(30.0, buckets.get(2).getTemperature());
+            assertNull(buckets.get(0).getHumidity());
+            assertEquals(START.minusSeconds(1), buckets.get(0).getWindowStart());
+        }
+    }
+
+    @Test
+    void tornTrailingBlockIsDroppedOnOpen() throws IOException {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            for (int i = 0; i < 300; i++) {
+                store.save(reading("esp32", START.minusHours(1).plusSeconds(i), 20.0, 60.0, 40.0));
+            }
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory.resolve("esp32"))) {
+            segment = files.findFirst().orElseThrow();
+        }
+        long threeBlocks = Files.size(segment);
+
+        // A crash during the fourth seal: its header and part of its bits made it to disk
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            for (int i = 300; i < 400; i++) {
+                store.save(reading("esp32", START.minusHours(1).plusSeconds(i), 21.0, 60.0, 40.0));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(segment) - 5);
+        }
+        try (ColumnarEnvironmentDataStore reopened = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            assertEquals(300, reopened.findBetween(START.minusDays(1), START.plusDays(1)).size());
+            assertEquals(threeBlocks, Files.size(segment));
+        }
+
+        // A complete but corrupt third block fails its CRC
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x55}), threeBlocks - 1);
+        }
+        try (ColumnarEnvironmentDataStore reopened = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            assertEquals(200, reopened.findBetween(START.minusDays(1), START.plusDays(1)).size());
+            // Appends continue after the last valid block
+            reopened.save(reading("esp32", START.minusHours(1).plusSeconds(500), 22.0, 60.0, 40.0));
+            reopened.flush();
+            assertEquals(201, reopened.findBetween(START.minusDays(1), START.plusDays(1)).size());
+        }
+    }
+
+    @Test
+    void partsOfAWindowMergeIntoOneRowAndRedeliveredPartsAreSkipped() {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            // The live part is flushed early by a hand-over, then a backfilled batch adds to the window
+            EnvironmentData live = window("esp32", START, stats(2, 40.0, 19.0, 21.0), 55.0);
+            live.setTimestamp(START.plusSeconds(10));
+            store.mergeWindow(live, "live-a");
+            store.flush();
+            store.mergeWindow(window("esp32", START, stats(2, 44.0, 21.5, 22.5), null), "batch-1");
+            store.mergeWindow(window("esp32", START, stats(2, 44.0, 21.5, 22.5), null), "batch-1");
+            store.mergeWindow(window("esp32", START.plusSeconds(30), stats(1, 25.0, 25.0, 25.0), null), "live-a");
+        }
+
+        try (ColumnarEnvironmentDataStore reopened = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            List<EnvironmentData> rows = reopened.findBetween(START.minusMinutes(1), START.plusMinutes(2));
+            assertEquals(2, rows.size());
+            EnvironmentData merged = rows.get(1);
+            assertEquals(EnvironmentData.windowId("esp32", EnvironmentDownsampler.toMillis(START)), merged.getId());
+            assertEquals(START.plusSeconds(30), merged.getTimestamp());
+            assertEquals(START, merged.getWindowStart());
+            EnvironmentData.SensorStats temperature = merged.getStats().get("temperature");
+            assertEquals(4, temperature.getCount());
+            assertEquals(19.0, temperature.getMin());
+            assertEquals(22.5, temperature.getMax());
+            assertEquals(21.0, merged.getTemperature());
+            // Carried forward from the live part, which had no humidity samples
+            assertEquals(55.0, merged.getHumidity());
+
+            // A reading saved at the second window's end replaces that row
+            reopened.save(reading("esp32", START.plusMinutes(1), 30.0, null, null));
+            assertEquals(30.0, reopened.findBetween(START.minusMinutes(1), START.plusMinutes(2)).get(0).getTemperature());
+            assertEquals(2, reopened.findBetween(START.minusMinutes(1), START.plusMinutes(2)).size());
+        }
+    }
+
+    @Test
+    void insertAllSkipsStoredReadings() {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 8, 60_000)) {
+            List<EnvironmentData> batch = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                batch.add(reading("esp32", START.plusSeconds(i), 20.0 + i, null, null));
+            }
+            assertEquals(10, store.insertAll(batch));
+            for (int i = 10; i < 15; i++) {
+                batch.add(reading("esp32", START.plusSeconds(i), 20.0 + i, null, null));
+            }
+            assertEquals(5, store.insertAll(batch));
+            assertEquals(15, store.findBetween(START.minusSeconds(1), START.plusMinutes(1)).size());
+        }
+    }
+
+    @Test
+    void segmentsWithoutWritesAreEvicted() {
+        try (ColumnarEnvironmentDataStore store = new ColumnarEnvironmentDataStore(directory, 100, 60_000)) {
+            for (int day = 0; day < 5; day++) {
+                store.save(reading("esp32", START.minusDays(day), 20.0, null, null));
+            }
+            assertEquals(5, store.openSegments());
+            store.flush();
+            store.save(reading("esp32", START.plusSeconds(1), 20.0, null, null));
+            store.flush();
+            // Only the segment written since the first flush is left
+            assertEquals(1, store.openSegments());
+            assertEquals(6, store.findBetween(START.minusDays(10), START.plusDays(1)).size());
+        }
+    }
+
+    private static EnvironmentData window(String deviceId, LocalDateTime start, EnvironmentData.SensorStats temperature,
+                                          Double humidity) {
+        EnvironmentData data = reading(deviceId, start.plusSeconds(30), temperature.getMean(), humidity, null);
+        data.setId(EnvironmentData.windowId(deviceId, EnvironmentDownsampler.toMillis(start)));
+        data.setWindowStart(start);
+        data.setWindowEnd(start.plusSeconds(30));
+        data.setStats(Map.of("temperature", temperature));
+        return data;
+    }
+
+    private static EnvironmentData.SensorStats stats(long count, double sum, double min, double max) {
+        EnvironmentData.SensorStats stats = new EnvironmentData.SensorStats();
+        stats.setCount(count);
+        stats.setSum(sum);
+        stats.setSumOfSquares(min * min + max * max);
+        stats.setMin(min);
+        stats.setMax(max);
+        return stats;
+    }
+
+    private static EnvironmentData reading(String deviceId, LocalDateTime timestamp, Double temperature,
+                                           Double humidity, Double soilMoisture) {
+        EnvironmentData data = new EnvironmentData();
+        data.setDeviceId(deviceId);
+        data.setTimestamp(timestamp);
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setSoilMoisture(soilMoisture);
+        return data;
+    }
+}
@@ -0,0 +1,70 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GorillaCodecTest {
+
+    @Test
+    void roundTripsIrregularTimestampsAndEdgeValues() {
+        Random random = new Random(7);
+        int rows = 5_000;
+        long[] timestamps = new long[rows];
+        double[][] values = new double[rows][3];
+        long timestamp = 1_717_243_200_000L;
+        for (int i = 0; i < rows; i++) {
+            // Steady rate, jitter, long gaps and out-of-order backfill
+            timestamp += switch (i % 50) {
+                case 10 -> 3_600_000;
+                case 20 -> -45_000;
+                case 30 -> random.nextInt(5_000);
+                default -> 1_000;
+            };
+            timestamps[i] = timestamp;
+            values[i][0] = Math.round((20 + random.nextGaussian()) * 10) / 10.0;
+            values[i][1] = i % 7 == 0 ? Double.NaN : 60.0;
+            values[i][2] = switch (i % 5) {
+                case 0 -> -0.0;
+                case 1 -> Double.MAX_VALUE;
+                case 2 -> Double.MIN_VALUE;
+                default -> random.nextDouble();
+            };
+        }
+
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(3);
+        for (int i = 0; i < rows; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        GorillaCodec.Decoder decoder = new GorillaCodec.Decoder(ByteBuffer.wrap(encoder.toByteArray()), rows, 3);
+        for (int i = 0; i < rows; i++) {
+            assertTrue(decoder.next());
+            assertEquals(timestamps[i], decoder.timestamp(), "row " + i);
+            for (int column = 0; column < 3; column++) {
+                assertEquals(Double.doubleToRawLongBits(values[i][column]),
+                        Double.doubleToRawLongBits(decoder.values()[column]), "row " + i + " column " + column);
+            }
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    void steadySensorSeriesCompressesWell() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder(3);
+        double[] row = {24.5, 61.0, 40.2};
+        for (int i = 0; i < 3_600; i++) {
+            if (i % 60 == 0) {
+                row[0] = Math.round((row[0] + 0.1) * 10) / 10.0;
+            }
+            encoder.append(1_717_243_200_000L + i * 1_000L, row);
+        }
+        // 32 bytes per row as raw long + three doubles
+        double bytesPerRow = encoder.toByteArray().length / 3_600.0;
+        assertTrue(bytesPerRow < 1.0, "bytes per row: " + bytesPerRow);
+    }
+}
@@ -0,0 +1,126 @@
+package com.__25J_323.HarvestPrediction.repository;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MongoEnvironmentDataStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    // The parts merged into each stored window, standing in for the collection
+    private final Map<Object, Set<String>> stored = new HashMap<>();
+    private final AtomicInteger updates = new AtomicInteger();
+    private CyclicBarrier bothMissed;
+
+    @Test
+    void partsRacingToCreateAWindowAreBothMerged() throws Exception {
+        MongoEnvironmentDataStore store = new MongoEnvironmentDataStore(null, template());
+        bothMissed = new CyclicBarrier(2);
+
+        // Both upserts miss the empty window and try to insert it; one insert loses on the id
+        CompletableFuture<EnvironmentData> live = CompletableFuture.supplyAsync(() -> store.mergeWindow(window(), "live-a"));
+        CompletableFuture<EnvironmentData> batch = CompletableFuture.supplyAsync(() -> store.mergeWindow(window(), "batch-1"));
+        live.get(10, TimeUnit.SECONDS);
+        batch.get(10, TimeUnit.SECONDS);
+
+        assertEquals(Set.of("live-a", "batch-1"), stored.get(window().getId()));
+        assertEquals(3, updates.get());
+
+        // A redelivered part fails its insert twice and is left out
+        bothMissed = null;
+        store.mergeWindow(window(), "live-a");
+        assertEquals(Set.of("live-a", "batch-1"), stored.get(window().getId()));
+        assertEquals(5, updates.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongoTemplate template() {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        doAnswer(invocation -> {
+            updates.incrementAndGet();
+            Document filter = invocation.getArgument(0);
+            Object id = filter.get("_id");
+            String part = (String) filter.get("parts", Document.class).get("$ne");
+            synchronized (stored) {
+                Set<String> parts = stored.get(id);
+                if (parts != null) {
+                    if (parts.add(part)) {
+                        return null;
+                    }
+                    throw duplicateKey();
+                }
+            }
+            CyclicBarrier barrier = bothMissed;
+            if (barrier != null) {
+                barrier.await(10, TimeUnit.SECONDS);
+            }
+            synchronized (stored) {
+                if (stored.containsKey(id)) {
+                    throw duplicateKey();
+                }
+                stored.put(id, new HashSet<>(Set.of(part)));
+            }
+            return null;
+        }).when(collection).updateOne(any(Bson.class), anyList(), any(UpdateOptions.class));
+
+        MongoConverter converter = mock(MongoConverter.class);
+        when(converter.convertToMongoType(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        MongoTemplate template = mock(MongoTemplate.class);
+        when(template.getConverter()).thenReturn(converter);
+        when(template.getCollectionName(EnvironmentData.class)).thenReturn("environment_data");
+        when(template.getCollection("environment_data")).thenReturn(collection);
+        return template;
+    }
+
+    private static MongoWriteException duplicateKey() {
+        return new MongoWriteException(new WriteError(11000, "E11000 duplicate key error", new BsonDocument()),
+                new ServerAddress(), List.of());
+    }
+
+    private static EnvironmentData window() {
+        EnvironmentData.SensorStats temperature = new EnvironmentData.SensorStats();
+        temperature.setCount(2);
+        temperature.setSum(42.0);
+        temperature.setSumOfSquares(882.5);
+        temperature.setMin(20.5);
+        temperature.setMax(21.5);
+
+        EnvironmentData data = new EnvironmentData();
+        data.setId(EnvironmentData.windowId("esp32", EnvironmentDownsampler.toMillis(START)));
+        data.setDeviceId("esp32");
+        data.setTimestamp(START.plusSeconds(30));
+        data.setWindowStart(START);
+        data.setWindowEnd(START.plusSeconds(30));
+        data.setTemperature(21.0);
+        data.setStats(Map.of("temperature", temperature));
+        return data;
+    }
+}
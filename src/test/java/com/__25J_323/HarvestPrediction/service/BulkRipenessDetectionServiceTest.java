@@ -0,0 +1,164 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.BulkDetectionProgress;
+import com.__25J_323.HarvestPrediction.model.RipenessData;
+import com.__25J_323.HarvestPrediction.repository.RipenessDataRepository;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BulkRipenessDetectionServiceTest {
+
+    private final RipenessDetectionService detectionService = mock(RipenessDetectionService.class);
+    private final RipenessDataRepository repository = mock(RipenessDataRepository.class);
+    private final BulkRipenessDetectionService bulkService = new BulkRipenessDetectionService(
+            detectionService, repository, mock(RipenessAnalyticsService.class));
+
+    @AfterEach
+    void shutdown() {
+        bulkService.destroy();
+    }
+
+    @Test
+    void virtualThreadsStillDetectAtMostParallelismImagesAtOnce() throws Exception {
+        ReflectionTestUtils.setField(bulkService, "parallelism", 2);
+        ReflectionTestUtils.setField(bulkService, "batchSize", 5);
+        ReflectionTestUtils.setField(bulkService, "maxEntryBytes", 64L);
+        ReflectionTestUtils.setField(bulkService, "virtualThreads", true);
+        bulkService.init();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(detectionService.analyzeImage(any(), any())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return new RipenessData();
+        });
+        when(repository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        BulkDetectionProgress progress = bulkService.processArchive("images.zip",
+                new ByteArrayInputStream(zip(12, 1)), update -> { });
+
+        assertEquals(12, progress.getImagesProcessed());
+        assertEquals(12, progress.getImagesSaved());
+        assertTrue(peak.get() <= 2, "peak concurrent detections " + peak.get());
+        // The oversized entry is skipped, not failed, and the text file too
+        assertEquals(2, progress.getEntriesSkipped());
+        assertEquals(0, progress.getImagesFailed());
+    }
+
+    @Test
+    void failedSavesCountTheWholeBatchAndDetectionsBeforeABrokenEntryAreKept() throws Exception {
+        ReflectionTestUtils.setField(bulkService, "parallelism", 1);
+        ReflectionTestUtils.setField(bulkService, "batchSize", 5);
+        ReflectionTestUtils.setField(bulkService, "maxEntryBytes", 64L);
+        bulkService.init();
+
+        when(detectionService.analyzeImage(any(), any())).thenReturn(new RipenessData());
+        AtomicInteger inserts = new AtomicInteger();
+        // The first batch fails twice, so its retry fails too; later batches are saved
+        when(repository.insert(anyList())).thenAnswer(invocation -> {
+            if (inserts.incrementAndGet() <= 2) {
+                throw new IllegalStateException("mongo down");
+            }
+            return invocation.getArgument(0);
+        });
+
+        BulkDetectionProgress progress = bulkService.processArchive("images.zip",
+                new ByteArrayInputStream(zip(12, 0)), update -> { });
+        assertEquals(12, progress.getImagesProcessed());
+        assertEquals(5, progress.getImagesFailed());
+        assertEquals(7, progress.getImagesSaved());
+
+        // Reading the archive fails part way: the images detected before that are still saved
+        byte[] archive = zip(12, 0);
+        InputStream broken = new SequenceInputStream(new ByteArrayInputStream(archive, 0, archive.length / 2),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("connection reset");
+                    }
+                });
+        AtomicInteger detected = new AtomicInteger();
+        when(detectionService.analyzeImage(any(), any())).thenAnswer(invocation -> {
+            detected.incrementAndGet();
+            return new RipenessData();
+        });
+        AtomicInteger saved = new AtomicInteger();
+        when(repository.insert(anyList())).thenAnswer(invocation -> {
+            saved.addAndGet(invocation.<List<?>>getArgument(0).size());
+            return invocation.getArgument(0);
+        });
+        assertThrows(IOException.class, () -> bulkService.processArchive("broken.zip", broken, update -> { }));
+        assertTrue(detected.get() > 0);
+        assertEquals(detected.get(), saved.get());
+    }
+
+    @Test
+    void aSlowListenerDoesNotHoldUpDetection() throws Exception {
+        ReflectionTestUtils.setField(bulkService, "parallelism", 4);
+        ReflectionTestUtils.setField(bulkService, "batchSize", 50);
+        ReflectionTestUtils.setField(bulkService, "maxEntryBytes", 64L);
+        bulkService.init();
+
+        CountDownLatch allDetected = new CountDownLatch(8);
+        when(detectionService.analyzeImage(any(), any())).thenAnswer(invocation -> {
+            allDetected.countDown();
+            return new RipenessData();
+        });
+        when(repository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // The first update blocks until every image has been detected
+        AtomicInteger updates = new AtomicInteger();
+        BulkDetectionProgress progress = bulkService.processArchive("images.zip",
+                new ByteArrayInputStream(zip(8, 0)), update -> {
+                    if (updates.getAndIncrement() == 0) {
+                        try {
+                            assertTrue(allDetected.await(5, TimeUnit.SECONDS));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        assertEquals(8, progress.getImagesProcessed());
+        assertEquals(8, progress.getImagesSaved());
+        assertTrue(progress.isDone());
+    }
+
+    private static byte[] zip(int images, int oversized) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(bytes)) {
+            for (int i = 0; i < images + oversized; i++) {
+                zip.putArchiveEntry(new ZipArchiveEntry("tomato-" + i + ".jpg"));
+                zip.write(new byte[i < images ? 16 : 128]);
+                zip.closeArchiveEntry();
+            }
+            zip.putArchiveEntry(new ZipArchiveEntry("notes.txt"));
+            zip.write("not an image".getBytes(StandardCharsets.UTF_8));
+            zip.closeArchiveEntry();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,109 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactFrameServiceTest {
+
+    private final ObjectMapper cborMapper = new CBORMapper();
+    private final ObjectMapper jsonMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void firstFrameIsKeyframeThenOnlyChangedFieldsAreSent() throws Exception {
+        CompactFrameService.DeltaEncoder encoder = new CompactFrameService.DeltaEncoder(cborMapper, 30);
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+        Map<?, ?> keyframe = cborMapper.readValue(encoder.encode(
+                CompactFrameService.environmentFields(reading(24.5, 61.0, 40.0, time), ZoneOffset.UTC)), Map.class);
+        assertEquals(true, keyframe.get("k"));
+        assertEquals(4, ((Map<?, ?>) keyframe.get("d")).size());
+
+        Map<?, ?> delta = cborMapper.readValue(encoder.encode(
+                CompactFrameService.environmentFields(reading(24.7, 61.0, 40.0, time), ZoneOffset.UTC)), Map.class);
+        assertFalse(delta.containsKey("k"));
+        assertEquals(Map.of("t", 24.7), delta.get("d"));
+        assertEquals(2, ((Number) delta.get("s")).intValue());
+
+        assertNull(encoder.encode(CompactFrameService.environmentFields(reading(24.7, 61.0, 40.0, time), ZoneOffset.UTC)));
+    }
+
+    @Test
+    void compactDeltaIsSmallerThanJson() throws Exception {
+        CompactFrameService.DeltaEncoder encoder = new CompactFrameService.DeltaEncoder(cborMapper, 30);
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 12, 0);
+        encoder.encode(CompactFrameService.environmentFields(reading(24.5, 61.0, 40.0, time), ZoneOffset.UTC));
+
+        EnvironmentData update = reading(24.6, 61.0, 40.0, time.plusSeconds(2));
+        int jsonBytes = jsonMapper.writeValueAsBytes(update).length;
+        int compactBytes = encoder.encode(CompactFrameService.environmentFields(update, ZoneOffset.UTC)).length;
+
+        assertTrue(compactBytes * 2 < jsonBytes);
+    }
+
+    @Test
+    void newSubscriberGetsItsOwnKeyframeWithoutMovingTheSharedSequence() throws Exception {
+        List<Message<?>> toSessions = new ArrayList<>();
+        List<Message<?>> toTopic = new ArrayList<>();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> toTopic.add(message));
+        CompactFrameService service = new CompactFrameService(messagingTemplate,
+                (message, timeout) -> toSessions.add(message), true, 30,
+                Clock.fixed(Instant.EPOCH, ZoneOffset.ofHours(5)));
+        LocalDateTime time = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+        // Nothing to send before the first frame
+        service.onSubscribed("session-1", "sub-0", CompactFrameService.ENVIRONMENT_DESTINATION);
+        assertTrue(toSessions.isEmpty());
+
+        service.publishEnvironment(reading(24.5, 61.0, 40.0, time));
+        service.publishEnvironment(reading(24.7, 61.0, 40.0, time));
+        service.onSubscribed("session-1", "sub-0", CompactFrameService.ENVIRONMENT_DESTINATION);
+        service.onSubscribed("session-1", "sub-1", "/topic/environment");
+
+        assertEquals(2, toTopic.size());
+        assertEquals(1, toSessions.size());
+        Message<?> keyframe = toSessions.get(0);
+        assertEquals("session-1", SimpMessageHeaderAccessor.getSessionId(keyframe.getHeaders()));
+        assertEquals("sub-0", SimpMessageHeaderAccessor.getSubscriptionId(keyframe.getHeaders()));
+        Map<?, ?> frame = cborMapper.readValue((byte[]) keyframe.getPayload(), Map.class);
+        assertEquals(true, frame.get("k"));
+        assertEquals(2, ((Number) frame.get("s")).intValue());
+        assertEquals(24.7, ((Map<?, ?>) frame.get("d")).get("t"));
+        // Epoch millis in the clock's zone, the one window ids use
+        assertEquals(time.toInstant(ZoneOffset.ofHours(5)).toEpochMilli(),
+                ((Number) ((Map<?, ?>) frame.get("d")).get("ts")).longValue());
+
+        // The next broadcast continues the sequence as a delta
+        service.publishEnvironment(reading(24.8, 61.0, 40.0, time));
+        Map<?, ?> next = cborMapper.readValue((byte[]) toTopic.get(2).getPayload(), Map.class);
+        assertEquals(3, ((Number) next.get("s")).intValue());
+        assertFalse(next.containsKey("k"));
+    }
+
+    private static EnvironmentData reading(double temperature, double humidity, double soilMoisture, LocalDateTime time) {
+        EnvironmentData data = new EnvironmentData();
+        data.setTemperature(temperature);
+        data.setHumidity(humidity);
+        data.setSoilMoisture(soilMoisture);
+        data.setTimestamp(time);
+        return data;
+    }
+}
@@ -0,0 +1,140 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceLivenessTrackerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void offlineFiresWithinOneTickOfTimeoutAndOnlyOnTransitions() {
+        DeviceLivenessTracker tracker = new DeviceLivenessTracker(30_000, 100, 64, clock::get);
+        List<String> events = new ArrayList<>();
+        tracker.addListener(listener(events));
+
+        tracker.touch("esp32");
+        tracker.touch("esp32");
+        assertEquals(List.of("online:esp32"), events);
+
+        advance(tracker, 29_900);
+        assertTrue(tracker.isOnline("esp32"));
+
+        advance(tracker, 200);
+        assertFalse(tracker.isOnline("esp32"));
+        assertEquals(List.of("online:esp32", "offline:esp32"), events);
+
+        advance(tracker, 60_000);
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    void messagesPushTheDeadlineOut() {
+        DeviceLivenessTracker tracker = new DeviceLivenessTracker(30_000, 100, 64, clock::get);
+        List<String> events = new ArrayList<>();
+        tracker.addListener(listener(events));
+
+        tracker.touch("esp32");
+        for (int i = 0; i < 20; i++) {
+            advance(tracker, 10_000);
+            tracker.touch("esp32");
+        }
+        assertTrue(tracker.isOnline("esp32"));
+        assertEquals(1, events.size());
+
+        advance(tracker, 30_100);
+        assertFalse(tracker.isOnline("esp32"));
+    }
+
+    @Test
+    void devicesOfflineForEvictAfterAreForgotten() {
+        DeviceLivenessTracker tracker = new DeviceLivenessTracker(30_000, 100, 64, 60_000, clock::get);
+        List<String> events = new ArrayList<>();
+        tracker.addListener(listener(events));
+
+        tracker.touch("esp32");
+        tracker.touch("esp32-b");
+        advance(tracker, 30_100);
+        assertEquals(2, tracker.trackedDevices());
+
+        // esp32-b comes back while waiting for eviction and must be rescheduled, not evicted
+        tracker.touch("esp32-b");
+        advance(tracker, 60_000);
+        assertEquals(1, tracker.trackedDevices());
+        assertEquals(-1, tracker.lastSeenNanos("esp32"));
+        assertTrue(tracker.lastSeenNanos("esp32-b") > 0);
+
+        tracker.touch("esp32");
+        assertTrue(tracker.isOnline("esp32"));
+        assertEquals(List.of("online:esp32", "online:esp32-b", "offline:esp32", "offline:esp32-b",
+                "online:esp32-b", "offline:esp32-b", "online:esp32"), events);
+    }
+
+    @Test
+    void concurrentTouchAndExpiryDeliverAlternatingTransitions() throws Exception {
+        DeviceLivenessTracker tracker = new DeviceLivenessTracker(200, 100, 64, clock::get);
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        tracker.addListener(listener(events));
+
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch touching = new CountDownLatch(1);
+        Thread toucher = new Thread(() -> {
+            while (!done.get()) {
+                tracker.touch("esp32");
+                touching.countDown();
+                Thread.onSpinWait();
+            }
+        });
+        toucher.start();
+        assertTrue(touching.await(10, TimeUnit.SECONDS));
+        // Ticks race with touches around every deadline
+        for (int i = 0; i < 20_000; i++) {
+            tracker.advanceTo(clock.addAndGet(100 * MS));
+        }
+        done.set(true);
+        toucher.join();
+        advance(tracker, 1_000);
+
+        assertFalse(events.isEmpty());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(i % 2 == 0 ? "online:esp32" : "offline:esp32", events.get(i), "event " + i);
+        }
+        assertEquals(tracker.isOnline("esp32") ? "online:esp32" : "offline:esp32", events.get(events.size() - 1));
+    }
+
+    private void advance(DeviceLivenessTracker tracker, long millis) {
+        // Tick-by-tick, as the wheel thread would
+        long end = clock.get() + millis * MS;
+        while (clock.get() < end) {
+            clock.addAndGet(Math.min(100 * MS, end - clock.get()));
+            tracker.advanceTo(clock.get());
+        }
+    }
+
+    private static DeviceLivenessTracker.Listener listener(List<String> events) {
+        return new DeviceLivenessTracker.Listener() {
+            @Override
+            public void onOnline(String deviceId) {
+                events.add("online:" + deviceId);
+            }
+
+            @Override
+            public void onOffline(String deviceId, long silentNanos) {
+                events.add("offline:" + deviceId);
+            }
+        };
+    }
+}
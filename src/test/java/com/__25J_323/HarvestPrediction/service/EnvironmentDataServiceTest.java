@@ -0,0 +1,56 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EnvironmentDataServiceTest {
+
+    // A window boundary, in a zone other than the JVM default of most build hosts
+    private static final long START = 1_700_000_010_000L;
+    private static final ZoneOffset ZONE = ZoneOffset.ofHours(5);
+
+    private final ReplayClock clock = new ReplayClock(START, ZONE);
+
+    @Test
+    void rangesSplitBetweenStoreAndBufferInTheClocksZone() {
+        EnvironmentDataStore store = mock(EnvironmentDataStore.class);
+        when(store.findBetween(any(), any())).thenReturn(List.of());
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 1_000, 4, clock);
+        EnvironmentDataService service = new EnvironmentDataService(store, buffer, clock);
+
+        for (int i = 0; i < 60; i++) {
+            buffer.record("esp32", clock.millis(), 20.0 + i % 2, 60.0, 40.0);
+            clock.advanceTo(clock.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        }
+
+        LocalDateTime start = at(START - 60_000);
+        LocalDateTime end = at(START + 120_000);
+        List<EnvironmentData> windows = service.getEnvironmentDataBetween(start, end);
+
+        // Both windows since startup come from the buffer, each stamped with its end
+        assertEquals(2, windows.size());
+        assertEquals(at(START + 60_000), windows.get(0).getTimestamp());
+        assertEquals(at(START + 30_000), windows.get(1).getTimestamp());
+        assertEquals(30, windows.get(1).getStats().get("temperature").getCount());
+        // The store answers up to and including the window ending where the buffer starts
+        verify(store).findBetween(eq(start), eq(at(START + 1)));
+    }
+
+    private static LocalDateTime at(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000),
+                (int) Math.floorMod(epochMillis, 1000) * 1_000_000, ZONE);
+    }
+}
@@ -0,0 +1,304 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentImportProgress;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.repository.EnvironmentDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvironmentImportServiceTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final InMemoryStore store = new InMemoryStore();
+    private final RecentReadingsBuffer buffer =
+            new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 100, 4, new ReplayClock(START, ZoneOffset.UTC));
+    private final EnvironmentImportService importService = new EnvironmentImportService(store, buffer);
+
+    EnvironmentImportServiceTest() {
+        ReflectionTestUtils.setField(importService, "parallelism", 4);
+        ReflectionTestUtils.setField(importService, "batchSize", 500);
+        ReflectionTestUtils.setField(importService, "chunkMegabytes", 1);
+        importService.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        importService.destroy();
+    }
+
+    @Test
+    void importsEveryRowAcrossChunksOnceAndReRunsAddNothing() throws Exception {
+        // About 3 MB, so three 1 MB chunks cut mid-file at line ends
+        Path csv = directory.resolve("history.csv");
+        try (Writer out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            out.write("timestamp,device_id,temperature,humidity,soil_moisture,battery\r\n");
+            for (int i = 0; i < 60_000; i++) {
+                String device = i % 2 == 0 ? "esp32" : "\"esp32-b\"";
+                out.write(time(i) + "," + device + "," + (20 + i % 10) + ",60.5,," + "3.3\r\n");
+                if (i == 30_000) {
+                    out.write(time(i) + ",esp32,warm,60.5,40.0,3.3\r\n");
+                }
+            }
+        }
+        List<EnvironmentImportProgress> reports = new ArrayList<>();
+
+        EnvironmentImportProgress first = importService.importFile(csv, "history.csv", null, reports::add);
+        assertEquals("csv", first.getFormat());
+        assertEquals(60_000, first.getRowsImported());
+        assertEquals(1, first.getRowsRejected());
+        assertEquals(Files.size(csv), first.getBytesRead());
+        // 30 s windows aligned to the epoch: seconds 0-9, then 30 seconds each, for two devices
+        assertEquals(2 * 2_001, first.getWindowsInserted());
+        assertEquals(2 * 2_001, store.rows.size());
+        assertTrue(reports.get(reports.size() - 1).isDone());
+        // Windows cut by chunk boundaries were merged: every row is counted once
+        assertEquals(60_000, store.rows.values().stream()
+                .mapToLong(window -> window.getStats().get("temperature").getCount()).sum());
+
+        EnvironmentData sample = store.rows.get(EnvironmentData.windowId("esp32-b", windowStart(millis(1))));
+        // Odd seconds 1-9 of the first window
+        assertEquals(5, sample.getStats().get("temperature").getCount());
+        assertEquals(25.0, sample.getTemperature());
+        assertEquals(60.5, sample.getHumidity());
+        assertNull(sample.getSoilMoisture());
+        assertEquals(windowStart(millis(1)) + 30_000, sample.getWindowEnd().atZone(ZoneId.systemDefault())
+                .toInstant().toEpochMilli());
+
+        EnvironmentImportProgress again = importService.importFile(csv, "history.csv", null, progress -> { });
+        assertEquals(0, again.getWindowsInserted());
+        assertEquals(2 * 2_001, again.getWindowsAlreadyStored());
+        assertEquals(2 * 2_001, store.rows.size());
+        // Each window already holds this file's part, so nothing is merged twice
+        assertEquals(60_000, store.rows.values().stream()
+                .mapToLong(window -> window.getStats().get("temperature").getCount()).sum());
+        // The buffer no longer claims the imported range
+        assertEquals(millis(59_999) + 1, buffer.coveredFrom());
+    }
+
+    @Test
+    void importsGzippedNdjsonWithADefaultDevice() throws IOException, InterruptedException {
+        Path ndjson = directory.resolve("history.ndjson.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(ndjson))) {
+            out.write(("{\"ts\": 1700000000, \"temp\": 21.5, \"extra\": {\"rssi\": -60}}\n"
+                    + "\n"
+                    + "{\"ts\": \"2023-11-14T22:13:21Z\", \"soilMoisture\": 41}\n"
+                    + "{\"device\": \"esp32-c\", \"timestamp\": 1700000002000, \"humidity\": null, \"hum\": 55}\n"
+                    + "{\"ts\": 1700000003, \"temp\": 21.5").getBytes(StandardCharsets.UTF_8));
+        }
+
+        // A window live ingest already stored gets the imported row merged in
+        EnvironmentData live = liveWindow("esp32-c", windowStart(1_700_000_002_000L), "humidity", 54.0);
+        store.mergeWindow(live, "live-a");
+
+        EnvironmentImportProgress result = importService.importFile(ndjson, "history.ndjson.gz", "esp32", progress -> { });
+        assertEquals("ndjson", result.getFormat());
+        assertEquals(3, result.getRowsImported());
+        assertEquals(1, result.getRowsRejected());
+        assertEquals(1, result.getWindowsInserted());
+        assertEquals(1, result.getWindowsAlreadyStored());
+        EnvironmentData window = store.rows.get(EnvironmentData.windowId("esp32", windowStart(1_700_000_000_000L)));
+        assertEquals(21.5, window.getTemperature());
+        assertEquals(41.0, window.getSoilMoisture());
+        assertEquals(54.5, store.rows.get(live.getId()).getHumidity());
+    }
+
+    @Test
+    void importedRowsMergeIntoALiveWindowOnce() throws IOException, InterruptedException {
+        long noon = LocalDateTime.of(2025, 6, 1, 12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        EnvironmentData live = liveWindow("esp32", noon, "temperature", 20.0, 22.0);
+        store.mergeWindow(live, "live-a");
+
+        // The device's gateway buffered two more readings of that window, and one of the next
+        Path csv = directory.resolve("gateway.csv");
+        Files.writeString(csv, "timestamp,deviceId,temperature,humidity\n"
+                + "2025-06-01T12:00:05,esp32,24.0,60.0\n"
+                + "2025-06-01T12:00:25,esp32,26.0,\n"
+                + "2025-06-01T12:00:35,esp32,25.0,61.0\n");
+        EnvironmentImportProgress first = importService.importFile(csv, "gateway.csv", null, progress -> { });
+        assertEquals(1, first.getWindowsInserted());
+        assertEquals(1, first.getWindowsAlreadyStored());
+        // A re-run finds its part in both windows and adds nothing
+        EnvironmentImportProgress again = importService.importFile(csv, "gateway.csv", null, progress -> { });
+        assertEquals(2, again.getWindowsAlreadyStored());
+
+        EnvironmentData merged = store.rows.get(live.getId());
+        EnvironmentData.SensorStats temperature = merged.getStats().get("temperature");
+        assertEquals(4, temperature.getCount());
+        assertEquals(92.0, temperature.getSum());
+        assertEquals(20.0 * 20.0 + 22.0 * 22.0 + 24.0 * 24.0 + 26.0 * 26.0, temperature.getSumOfSquares());
+        assertEquals(20.0, temperature.getMin());
+        assertEquals(26.0, temperature.getMax());
+        assertEquals(23.0, merged.getTemperature());
+        assertEquals(1, merged.getStats().get("humidity").getCount());
+        assertEquals(60.0, merged.getHumidity());
+        assertEquals(1, store.rows.get(EnvironmentData.windowId("esp32", noon + 30_000)).getStats()
+                .get("temperature").getCount());
+    }
+
+    @Test
+    void exportedWindowsGoBackToTheirOwnWindow() throws IOException, InterruptedException {
+        Path csv = directory.resolve("export.csv");
+        Files.writeString(csv, "timestamp,deviceId,temperature,humidity,soilMoisture,windowStart,windowEnd\n"
+                + "2025-06-01T12:00:30,esp32,21.0,60.0,,2025-06-01T12:00,2025-06-01T12:00:30\n"
+                + "2025-06-01T12:01:00,esp32,22.0,61.0,,2025-06-01T12:00:30,2025-06-01T12:01\n");
+
+        EnvironmentImportProgress result = importService.importFile(csv, "export.csv", null, progress -> { });
+
+        assertEquals(2, result.getWindowsInserted());
+        long noon = LocalDateTime.of(2025, 6, 1, 12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(21.0, store.rows.get(EnvironmentData.windowId("esp32", noon)).getTemperature());
+        assertEquals(22.0, store.rows.get(EnvironmentData.windowId("esp32", noon + 30_000)).getTemperature());
+    }
+
+    @Test
+    void rejectsAHeaderItCannotMap() throws IOException {
+        Path csv = directory.resolve("no-device.csv");
+        Files.writeString(csv, "time;temp;hum\n2025-06-01 12:00:00;21.0;60.0\n");
+        assertThrows(IllegalArgumentException.class, () -> importService.importFile(csv, "no-device.csv", null, progress -> { }));
+
+        EnvironmentRecordParser parser = EnvironmentRecordParser.forFirstLine("time;temp;hum", "esp32", ZoneOffset.UTC);
+        EnvironmentData data = parser.parse("2025-06-01 12:00:00;21.0;60.0");
+        assertEquals(LocalDateTime.of(2025, 6, 1, 12, 0), data.getTimestamp());
+        assertEquals(60.0, data.getHumidity());
+        assertThrows(IllegalArgumentException.class,
+                () -> EnvironmentRecordParser.forFirstLine("device,temperature", null, ZoneOffset.UTC));
+    }
+
+    private static String time(int second) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis(second)), ZoneId.systemDefault()).toString();
+    }
+
+    private static long millis(int second) {
+        return START + second * 1000L;
+    }
+
+    private static EnvironmentData liveWindow(String deviceId, long startMillis, String sensor, double... values) {
+        EnvironmentData.SensorStats stats = new EnvironmentData.SensorStats();
+        for (double value : values) {
+            stats.add(value);
+        }
+        EnvironmentData window = new EnvironmentData();
+        window.setId(EnvironmentData.windowId(deviceId, startMillis));
+        window.setDeviceId(deviceId);
+        window.setStats(Map.of(sensor, stats));
+        return window;
+    }
+
+    private static long windowStart(long millis) {
+        return millis - Math.floorMod(millis, 30_000L);
+    }
+
+    private static final class InMemoryStore implements EnvironmentDataStore {
+        final Map<String, EnvironmentData> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public EnvironmentData save(EnvironmentData data) {
+            rows.put(data.getId(), data);
+            return data;
+        }
+
+        /**
+         * Merges stats the way the engines do: once per part, means recomputed from the stats
+         */
+        @Override
+        public EnvironmentData mergeWindow(EnvironmentData window, String part) {
+            return rows.compute(window.getId(), (id, stored) -> {
+                if (stored != null && stored.getParts().contains(part)) {
+                    return stored;
+                }
+                EnvironmentData merged = stored != null ? stored : new EnvironmentData();
+                if (stored == null) {
+                    merged.setId(id);
+                    merged.setDeviceId(window.getDeviceId());
+                    merged.setStats(new HashMap<>());
+                    merged.setParts(new ArrayList<>());
+                }
+                merged.getParts().add(part);
+                for (Map.Entry<String, EnvironmentData.SensorStats> entry : window.getStats().entrySet()) {
+                    EnvironmentData.SensorStats copy = new EnvironmentData.SensorStats();
+                    copy.merge(entry.getValue());
+                    merged.getStats().merge(entry.getKey(), copy, (current, added) -> {
+                        current.merge(added);
+                        return current;
+                    });
+                }
+                merged.setTemperature(mean(merged, "temperature", merged.getTemperature()));
+                merged.setHumidity(mean(merged, "humidity", merged.getHumidity()));
+                merged.setSoilMoisture(mean(merged, "soilMoisture", merged.getSoilMoisture()));
+                return merged;
+            });
+        }
+
+        private static Double mean(EnvironmentData window, String sensor, Double current) {
+            EnvironmentData.SensorStats stats = window.getStats().get(sensor);
+            return stats != null ? Double.valueOf(stats.getMean()) : current;
+        }
+
+        @Override
+        public int insertAll(List<EnvironmentData> batch) {
+            int inserted = 0;
+            for (EnvironmentData data : batch) {
+                // Stored mutable, as a merge into it would find it in the engines
+                EnvironmentData copy = copyOf(data);
+                if (rows.putIfAbsent(data.getId(), copy) == null) {
+                    inserted++;
+                }
+            }
+            return inserted;
+        }
+
+        private static EnvironmentData copyOf(EnvironmentData data) {
+            EnvironmentData copy = new EnvironmentData();
+            copy.setId(data.getId());
+            copy.setDeviceId(data.getDeviceId());
+            copy.setTemperature(data.getTemperature());
+            copy.setHumidity(data.getHumidity());
+            copy.setSoilMoisture(data.getSoilMoisture());
+            copy.setTimestamp(data.getTimestamp());
+            copy.setWindowStart(data.getWindowStart());
+            copy.setWindowEnd(data.getWindowEnd());
+            copy.setStats(data.getStats() != null ? new HashMap<>(data.getStats()) : new HashMap<>());
+            copy.setParts(data.getParts() != null ? new ArrayList<>(data.getParts()) : new ArrayList<>());
+            return copy;
+        }
+
+        @Override
+        public List<EnvironmentData> findRecent(int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<EnvironmentData> findBetween(LocalDateTime start, LocalDateTime end) {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.DTO.EnvironmentStreamEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerSentEvent;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EnvironmentStreamServiceTest {
+
+    private final EnvironmentStreamService streamService = new EnvironmentStreamService(256, 15);
+
+    @Test
+    void resumesWithinARunAndReplaysTheBufferAfterARestart() {
+        for (int i = 0; i < 5; i++) {
+            streamService.publishReading("esp32", "temperature", 20.0 + i);
+        }
+
+        // An id from before a restart (the sequence is far ahead of this run's) replays the whole buffer
+        List<ServerSentEvent<EnvironmentStreamEvent>> replayed = firstEvents("1-5000", 5);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), replayed.stream().map(event -> sequenceOf(event.id())).toList());
+
+        // Same run: only what came after the id
+        String third = replayed.get(2).id();
+        assertEquals(List.of(4L, 5L), firstEvents(third, 2).stream().map(event -> sequenceOf(event.id())).toList());
+
+        // A bare number from an older client, or an id this run has not reached, resynchronizes too
+        String ahead = third.substring(0, third.lastIndexOf('-')) + "-5000";
+        for (String stale : List.of("5000", ahead)) {
+            assertEquals(1L, sequenceOf(firstEvents(stale, 1).get(0).id()));
+        }
+    }
+
+    private List<ServerSentEvent<EnvironmentStreamEvent>> firstEvents(String lastEventId, int count) {
+        return streamService.subscribe(null, null, lastEventId)
+                .filter(event -> event.data() != null)
+                .take(count)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static long sequenceOf(String id) {
+        return Long.parseLong(id.substring(id.lastIndexOf('-') + 1));
+    }
+}
@@ -0,0 +1,112 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.repository.ColumnarEnvironmentDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryExportServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 6, 1, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private ColumnarEnvironmentDataStore store;
+    private HistoryExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        store = new ColumnarEnvironmentDataStore(directory.resolve("store"), 256, 60_000);
+        exportService = new HistoryExportService(store, null);
+        ReflectionTestUtils.setField(exportService, "parallelism", 2);
+        exportService.init();
+        // Three days every ten minutes for two devices
+        for (int i = 0; i < 3 * 144; i++) {
+            store.save(reading("esp32", START.plusMinutes(i * 10L), 20.0 + i % 5));
+            store.save(reading("esp32,b", START.plusMinutes(i * 10L), 30.0));
+        }
+        store.flush();
+    }
+
+    @AfterEach
+    void close() {
+        exportService.destroy();
+        store.close();
+    }
+
+    @Test
+    void downloadIsOneGzipStreamThatImportsBack() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Half-open: starts exactly on a reading and ends exactly on another, mid-way through day three
+        HistoryExportService.ExportSummary summary = exportService.exportTo(out, HistoryExportService.Dataset.ENVIRONMENT,
+                HistoryExportService.Format.CSV, START.plusHours(12), START.plusDays(2).plusHours(12), Set.of("esp32"));
+
+        List<String> lines = gunzip(out.toByteArray());
+        assertEquals(3, summary.days());
+        assertEquals(2 * 144, summary.rows());
+        assertEquals(out.size(), summary.bytes());
+        assertEquals("timestamp,deviceId,temperature,humidity,soilMoisture,windowStart,windowEnd", lines.get(0));
+        assertEquals(1 + 2 * 144, lines.size());
+
+        EnvironmentRecordParser parser = EnvironmentRecordParser.forFirstLine(lines.get(0), null, ZoneId.systemDefault());
+        EnvironmentData first = parser.parse(lines.get(1));
+        assertEquals("esp32", first.getDeviceId());
+        assertEquals(START.plusHours(12), first.getTimestamp());
+        assertEquals(START.plusDays(2).plusHours(11).plusMinutes(50), parser.parse(lines.get(lines.size() - 1)).getTimestamp());
+    }
+
+    @Test
+    void directoryExportWritesOneFilePerDay() throws Exception {
+        HistoryExportService.ExportSummary summary = exportService.exportToDirectory(directory.resolve("out"),
+                HistoryExportService.Dataset.ENVIRONMENT, HistoryExportService.Format.NDJSON,
+                START, START.plusDays(3), null);
+        assertEquals(3 * 144 * 2, summary.rows());
+
+        Path day = directory.resolve("out/environment/date=2025-06-02.ndjson.gz");
+        List<String> lines = gunzip(Files.readAllBytes(day));
+        assertEquals(144 * 2, lines.size());
+        assertTrue(lines.stream().anyMatch(line -> line.contains("\"deviceId\":\"esp32,b\"")));
+
+        EnvironmentRecordParser parser = EnvironmentRecordParser.forFirstLine(lines.get(0), null, ZoneId.systemDefault());
+        assertEquals(START.plusDays(1).toLocalDate(), parser.parse(lines.get(0)).getTimestamp().toLocalDate());
+
+        assertThrows(IllegalArgumentException.class, () -> exportService.exportToDirectory(directory,
+                HistoryExportService.Dataset.RIPENESS, HistoryExportService.Format.CSV, START, START.plusDays(1), Set.of("esp32")));
+    }
+
+    private static EnvironmentData reading(String deviceId, LocalDateTime timestamp, double temperature) {
+        EnvironmentData data = new EnvironmentData();
+        data.setDeviceId(deviceId);
+        data.setTimestamp(timestamp);
+        data.setTemperature(temperature);
+        data.setHumidity(60.0);
+        return data;
+    }
+
+    private static List<String> gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngestMembershipTest {
+
+    @Test
+    void membersAgreeOnOwnersAndOnlyTheLeaversDevicesMove() {
+        List<String> names = List.of("a", "b", "c");
+        List<IngestMembership> views = names.stream().map(IngestMembership::new).toList();
+        for (IngestMembership view : views) {
+            names.forEach(view::join);
+        }
+
+        int[] owned = new int[names.size()];
+        for (int device = 0; device < 300; device++) {
+            String id = "device-" + device;
+            String owner = views.get(0).ownerOf(id);
+            for (IngestMembership view : views) {
+                assertEquals(owner, view.ownerOf(id));
+                assertEquals(view.getSelf().equals(owner), view.owns(id));
+            }
+            owned[names.indexOf(owner)]++;
+        }
+        for (int count : owned) {
+            assertTrue(count > 50, "devices spread over members");
+        }
+
+        IngestMembership survivor = views.get(0);
+        List<String> before = ownersOf(survivor);
+        assertTrue(survivor.leave("c"));
+        List<String> after = ownersOf(survivor);
+        for (int device = 0; device < before.size(); device++) {
+            if (!before.get(device).equals("c")) {
+                assertEquals(before.get(device), after.get(device));
+            }
+        }
+        assertFalse(after.contains("c"));
+    }
+
+    @Test
+    void instanceNeverLeavesItsOwnView() {
+        IngestMembership membership = new IngestMembership("a");
+        assertFalse(membership.leave("a"));
+        assertEquals(List.of("a"), membership.getMembers());
+        assertTrue(membership.owns("esp32"));
+    }
+
+    private static List<String> ownersOf(IngestMembership membership) {
+        return IntStream.range(0, 300)
+                .mapToObj(device -> membership.ownerOf("device-" + device))
+                .toList();
+    }
+}
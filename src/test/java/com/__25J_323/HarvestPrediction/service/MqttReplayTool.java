@@ -0,0 +1,92 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline replay of an MQTT capture through the real ingest pipeline (parsing, snapshot, window
+ * aggregation, liveness, STOMP/SSE/CBOR encoding into a no-op channel, counted saves).
+ * Attach a profiler to this process to look at the hot path with production traffic.
+ * <p>
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.__25J_323.HarvestPrediction.service.MqttReplayTool
+ * -Dexec.args="captures/mqtt-20250601-120000.bin 10"}
+ * <p>
+ * Second argument is the speed: 1 = real time, N = N times faster, 0 = as fast as possible (default).
+ * Topics default to the application's; override with -Dmqtt.topic.temperature=... etc.
+ */
+public class MqttReplayTool {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: MqttReplayTool <capture-file> [speed]");
+            System.exit(1);
+        }
+        Path capture = Paths.get(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+
+        long startEpochMillis;
+        try (MqttCaptureReader reader = new MqttCaptureReader(capture)) {
+            startEpochMillis = reader.getStartEpochMillis();
+        }
+        ReplayClock clock = new ReplayClock(startEpochMillis, ZoneId.systemDefault());
+
+        ObjectMapper objectMapper = new ApplicationConfig().objectMapper();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+
+        AtomicLong saves = new AtomicLong();
+        EnvironmentDataService persistence = new EnvironmentDataService(null, null, clock) {
+            @Override
+            public EnvironmentData saveWindow(EnvironmentData data, String part) {
+                saves.incrementAndGet();
+                return data;
+            }
+        };
+        DeviceLivenessTracker livenessTracker = new DeviceLivenessTracker(30_000, 100, 512, clock::nanoTime);
+        SensorWindowAggregator aggregator = new SensorWindowAggregator(
+                Long.getLong("environment.window.seconds", 30) * 1000, clock::millis);
+
+        MqttService mqttService = new MqttService(
+                persistence,
+                objectMapper,
+                messagingTemplate,
+                new EnvironmentStreamService(256, 15),
+                new CompactFrameService(messagingTemplate, (message, timeout) -> true, true, 30, clock),
+                livenessTracker,
+                aggregator,
+                new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS),
+                new ThresholdRuleEngine(clock.getZone()),
+                new MqttCaptureWriter("captures", false),
+                new IngestMetrics(new SimpleMeterRegistry()),
+                new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 21_600, 64, clock),
+                clock);
+        ReflectionTestUtils.setField(mqttService, "temperatureTopic", System.getProperty("mqtt.topic.temperature", "esp32/temperature"));
+        ReflectionTestUtils.setField(mqttService, "humidityTopic", System.getProperty("mqtt.topic.humidity", "esp32/humidity"));
+        ReflectionTestUtils.setField(mqttService, "soilMoistureTopic", System.getProperty("mqtt.topic.soil-moisture", "esp32/soil_moisture"));
+        ReflectionTestUtils.setField(mqttService, "packedTopic", System.getProperty("mqtt.topic.packed", "esp32/packed"));
+        ReflectionTestUtils.setField(mqttService, "deviceId", System.getProperty("mqtt.device.id", "esp32"));
+
+        MqttReplayer.Result result = new MqttReplayer(speed).replay(capture, clock, mqttService::handleMessage, offset -> {
+            // Time-driven work runs on capture time, in step with the messages
+            livenessTracker.advanceTo(offset);
+            mqttService.aggregateAndSaveData();
+        });
+        mqttService.destroy(); // saves the partially filled window
+
+        System.out.printf("messages=%d captureSpanMs=%d elapsedMs=%d msgPerSec=%.0f speed=%.1fx windowsSaved=%d%n",
+                result.messages(), result.captureSpanNanos() / 1_000_000, result.elapsedNanos() / 1_000_000,
+                result.messagesPerSecond(), result.effectiveSpeed(), saves.get());
+    }
+}
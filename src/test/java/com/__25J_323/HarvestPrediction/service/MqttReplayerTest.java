@@ -0,0 +1,95 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttReplayerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void captureRoundTripsAndReplayFollowsCaptureTime() throws Exception {
+        Path capture = writeCapture();
+
+        long startEpochMillis;
+        try (MqttCaptureReader reader = new MqttCaptureReader(capture)) {
+            startEpochMillis = reader.getStartEpochMillis();
+        }
+        ReplayClock clock = new ReplayClock(startEpochMillis, ZoneId.systemDefault());
+        List<String> ingested = new ArrayList<>();
+        List<Long> clockAtIngest = new ArrayList<>();
+
+        MqttReplayer.Result result = new MqttReplayer(0).replay(capture, clock,
+                (topic, payload) -> {
+                    ingested.add(topic + "=" + new String(payload, StandardCharsets.UTF_8));
+                    clockAtIngest.add(clock.nanoTime());
+                },
+                offset -> {
+                });
+
+        assertEquals(List.of("esp32/temperature=24.5", "esp32/humidity=61 %", "esp32/soil_moisture=40.2"), ingested);
+        // Offsets are relative to capture start, a few microseconds before the first record
+        assertEquals(2_000 * MS, clockAtIngest.get(1) - clockAtIngest.get(0));
+        assertEquals(45_000 * MS, clockAtIngest.get(2) - clockAtIngest.get(0));
+        assertEquals(startEpochMillis + 45_000, clock.millis(), 100);
+        assertEquals(3, result.messages());
+        // 45 s of capture replayed at maximum speed
+        assertTrue(result.elapsedNanos() < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    void speedFactorPacesAgainstRealTime() throws Exception {
+        Path capture = writeCapture();
+        ReplayClock clock = new ReplayClock(0, ZoneId.systemDefault());
+
+        // 45 s at 500x is 90 ms
+        MqttReplayer.Result result = new MqttReplayer(500).replay(capture, clock, (topic, payload) -> {
+        }, offset -> {
+        });
+
+        assertTrue(result.elapsedNanos() >= 90 * MS, "replay ran ahead of its pace: " + result.elapsedNanos());
+        assertEquals(result.captureSpanNanos(), clock.nanoTime());
+    }
+
+    @Test
+    void capturesStartedBackToBackGetTheirOwnFiles() throws Exception {
+        Path first = writeCapture();
+        Path second = writeCapture();
+
+        assertNotEquals(first, second);
+        for (Path capture : List.of(first, second)) {
+            try (MqttCaptureReader reader = new MqttCaptureReader(capture)) {
+                assertNotNull(reader.next());
+            }
+        }
+    }
+
+    private Path writeCapture() throws Exception {
+        MqttCaptureWriter writer = new MqttCaptureWriter(dir.toString(), false);
+        Path file = writer.start();
+        assertNotNull(file);
+        long base = System.nanoTime();
+        writer.record("esp32/temperature", "24.5".getBytes(StandardCharsets.UTF_8), base);
+        writer.record("esp32/humidity", "61 %".getBytes(StandardCharsets.UTF_8), base + 2_000 * MS);
+        writer.record("esp32/soil_moisture", "40.2".getBytes(StandardCharsets.UTF_8), base + 45_000 * MS);
+        writer.shutdown();
+        assertTrue(Files.size(file) > 12);
+        return file;
+    }
+}
@@ -0,0 +1,145 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.__25J_323.HarvestPrediction.model.ReadingsSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MqttServicePackedIngestTest {
+
+    private static final String PACKED_TOPIC = "esp32/packed";
+    private static final long WINDOW_MILLIS = 30_000;
+    // 5 s into a window
+    private static final long NOW = 1_717_243_200_000L + 5_000;
+
+    private final List<EnvironmentData> saved = new ArrayList<>();
+    private final List<String> parts = new ArrayList<>();
+    private final AtomicInteger broadcasts = new AtomicInteger();
+
+    @Test
+    void bufferedBatchIsBackfilledIntoItsOwnWindows() {
+        MqttService mqttService = newService();
+
+        byte[] batch = PackedPayloadDecoder.encode(List.of(
+                // Out of order on purpose; the first two share a window
+                new PackedPayloadDecoder.Sample(NOW - 60_000, 0b001, 18.0, 0, 0),
+                new PackedPayloadDecoder.Sample(NOW - 125_000, 0b011, 20.0, 50.0, 0),
+                new PackedPayloadDecoder.Sample(NOW - 120_000, 0b001, 22.0, 0, 0),
+                new PackedPayloadDecoder.Sample(NOW - 1_000, 0b111, 25.0, 60.0, 40.0)));
+        mqttService.handleMessage(PACKED_TOPIC, batch);
+
+        assertEquals(2, saved.size());
+        EnvironmentData older = saved.get(0);
+        assertEquals(2, older.getStats().get("temperature").getCount());
+        assertEquals(21.0, older.getTemperature());
+        assertEquals(50.0, older.getHumidity());
+        // Nothing is carried forward from the current snapshot into the past
+        assertNull(older.getSoilMoisture());
+        assertEquals(NOW - 125_000 - Math.floorMod(NOW - 125_000, WINDOW_MILLIS),
+                older.getWindowStart().toInstant(ZoneOffset.UTC).toEpochMilli());
+        assertEquals(18.0, saved.get(1).getTemperature());
+        assertNull(saved.get(1).getHumidity());
+
+        // Only the sample in the open window reaches the live view, with one broadcast
+        ReadingsSnapshot snapshot = mqttService.getCurrentSnapshot();
+        assertEquals(25.0, snapshot.temperature());
+        assertEquals(60.0, snapshot.humidity());
+        assertEquals(40.0, snapshot.soilMoisture());
+        assertEquals(1, broadcasts.get());
+    }
+
+    @Test
+    void backfilledWindowsShareTheLiveWindowIdAndRedeliveriesTheirPart() {
+        MqttService mqttService = newService();
+        long windowStart = NOW - 60_000 - Math.floorMod(NOW - 60_000, WINDOW_MILLIS);
+
+        byte[] batch = PackedPayloadDecoder.encode(List.of(new PackedPayloadDecoder.Sample(NOW - 60_000, 0b001, 18.0, 0, 0)));
+        mqttService.handleMessage(PACKED_TOPIC, batch);
+        mqttService.handleMessage(PACKED_TOPIC, batch);
+        mqttService.handleMessage(PACKED_TOPIC, PackedPayloadDecoder.encode(
+                List.of(new PackedPayloadDecoder.Sample(NOW - 59_000, 0b001, 19.0, 0, 0))));
+
+        // One window id whichever batch or instance writes it; the store merges each part once
+        assertEquals(3, saved.size());
+        for (EnvironmentData data : saved) {
+            assertEquals(EnvironmentData.windowId("esp32", windowStart), data.getId());
+        }
+        assertEquals(parts.get(0), parts.get(1));
+        assertNotEquals(parts.get(0), parts.get(2));
+    }
+
+    @Test
+    void jsonPackedSampleUpdatesAllReadingsAtOnce() {
+        MqttService mqttService = newService();
+
+        mqttService.handleMessage(PACKED_TOPIC, "{\"t\": 26.5, \"h\": 58.0}".getBytes(StandardCharsets.UTF_8));
+        mqttService.handleMessage(PACKED_TOPIC, "{\"sm\": 35.0}".getBytes(StandardCharsets.UTF_8));
+        mqttService.handleMessage(PACKED_TOPIC, "not a sample".getBytes(StandardCharsets.UTF_8));
+
+        ReadingsSnapshot snapshot = mqttService.getCurrentSnapshot();
+        assertEquals(26.5, snapshot.temperature());
+        assertEquals(58.0, snapshot.humidity());
+        assertEquals(35.0, snapshot.soilMoisture());
+        assertEquals(2, broadcasts.get());
+        assertEquals(0, saved.size());
+    }
+
+    private MqttService newService() {
+        ObjectMapper objectMapper = new ApplicationConfig().objectMapper();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> {
+            if ("/topic/environment".equals(message.getHeaders().get("simpDestination"))) {
+                broadcasts.incrementAndGet();
+            }
+            return true;
+        });
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        EnvironmentDataService persistence = new EnvironmentDataService(null, null, clock) {
+            @Override
+            public EnvironmentData saveWindow(EnvironmentData data, String part) {
+                saved.add(data);
+                parts.add(part);
+                return data;
+            }
+        };
+
+        MqttService mqttService = new MqttService(
+                persistence,
+                objectMapper,
+                messagingTemplate,
+                new EnvironmentStreamService(256, 15),
+                new CompactFrameService(messagingTemplate, (message, timeout) -> true, false, 30, clock),
+                new DeviceLivenessTracker(30_000, 100, 512),
+                new SensorWindowAggregator(WINDOW_MILLIS, clock::millis),
+                new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS),
+                new ThresholdRuleEngine(clock.getZone()),
+                new MqttCaptureWriter("captures", false),
+                new IngestMetrics(new SimpleMeterRegistry()),
+                new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 21_600, 64, clock),
+                clock);
+        ReflectionTestUtils.setField(mqttService, "temperatureTopic", "esp32/temperature");
+        ReflectionTestUtils.setField(mqttService, "humidityTopic", "esp32/humidity");
+        ReflectionTestUtils.setField(mqttService, "soilMoistureTopic", "esp32/soil_moisture");
+        ReflectionTestUtils.setField(mqttService, "packedTopic", PACKED_TOPIC);
+        ReflectionTestUtils.setField(mqttService, "deviceId", "esp32");
+        return mqttService;
+    }
+}
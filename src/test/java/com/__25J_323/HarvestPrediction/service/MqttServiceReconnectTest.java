@@ -0,0 +1,139 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.__25J_323.HarvestPrediction.loadtest.EmbeddedMqttBroker;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttServiceReconnectTest {
+
+    private static final String TEMPERATURE_TOPIC = "esp32/temperature";
+
+    @Test
+    void reconnectsAndResubscribesAfterBrokerOutage() throws Exception {
+        EmbeddedMqttBroker broker = new EmbeddedMqttBroker().start();
+        int port = broker.getPort();
+        MqttService mqttService = newService(port);
+        mqttService.init();
+        try {
+            assertTrue(await(mqttService::isBrokerConnected, 10), "initial connect");
+            publish(port, "21.5");
+            assertTrue(await(() -> mqttService.getCurrentSnapshot().temperature() == 21.5, 10), "delivery before outage");
+
+            broker.close();
+            assertTrue(await(() -> !mqttService.isBrokerConnected(), 10), "outage detected");
+            broker = new EmbeddedMqttBroker(port).start();
+            assertTrue(await(mqttService::isBrokerConnected, 15), "reconnect after outage");
+
+            // The new broker has no session, so this only arrives if the client resubscribed
+            publish(port, "22.5");
+            assertTrue(await(() -> mqttService.getCurrentSnapshot().temperature() == 22.5, 10), "delivery after reconnect");
+            assertEquals(1, mqttService.getBrokerReconnects());
+            assertTrue(mqttService.getBrokerDowntimeNanos() > 0);
+        } finally {
+            mqttService.destroy();
+            broker.close();
+        }
+    }
+
+    private static MqttService newService(int port) {
+        ObjectMapper objectMapper = new ApplicationConfig().objectMapper();
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+        EnvironmentDataService persistence = new EnvironmentDataService(null, null, Clock.systemDefaultZone()) {
+            @Override
+            public EnvironmentData saveWindow(EnvironmentData data, String part) {
+                return data;
+            }
+        };
+
+        MqttService mqttService = new MqttService(
+                persistence,
+                objectMapper,
+                messagingTemplate,
+                new EnvironmentStreamService(256, 15),
+                new CompactFrameService(messagingTemplate, (message, timeout) -> true, true, 30,
+                        Clock.systemDefaultZone()),
+                new DeviceLivenessTracker(30_000, 100, 512),
+                new SensorWindowAggregator(30_000),
+                new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS),
+                new ThresholdRuleEngine(ZoneId.systemDefault()),
+                new MqttCaptureWriter("captures", false),
+                new IngestMetrics(new SimpleMeterRegistry()),
+                new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 21_600, 64, Clock.systemDefaultZone()),
+                Clock.systemDefaultZone());
+        ReflectionTestUtils.setField(mqttService, "brokerUrl", "127.0.0.1");
+        ReflectionTestUtils.setField(mqttService, "brokerPort", port);
+        ReflectionTestUtils.setField(mqttService, "brokerSsl", false);
+        ReflectionTestUtils.setField(mqttService, "clientId", "reconnect-test-");
+        ReflectionTestUtils.setField(mqttService, "username", "");
+        ReflectionTestUtils.setField(mqttService, "password", "");
+        ReflectionTestUtils.setField(mqttService, "temperatureTopic", TEMPERATURE_TOPIC);
+        ReflectionTestUtils.setField(mqttService, "humidityTopic", "esp32/humidity");
+        ReflectionTestUtils.setField(mqttService, "soilMoistureTopic", "esp32/soil_moisture");
+        ReflectionTestUtils.setField(mqttService, "packedTopic", "esp32/packed");
+        ReflectionTestUtils.setField(mqttService, "deviceId", "esp32");
+        ReflectionTestUtils.setField(mqttService, "sessionExpirySeconds", 60L);
+        ReflectionTestUtils.setField(mqttService, "reconnectInitialDelayMillis", 100L);
+        ReflectionTestUtils.setField(mqttService, "reconnectMaxDelayMillis", 1000L);
+        // Scheduled window saves and connects run on virtual threads, as under the virtual profile
+        ReflectionTestUtils.setField(mqttService, "virtualThreads", true);
+        return mqttService;
+    }
+
+    @Test
+    void configuredInstanceIdIsUsedAndTheDefaultIsUniquePerProcess() {
+        assertEquals("ingest-a", MqttService.resolveInstanceId("ingest-a"));
+        // Two processes on one host must not share an MQTT client id
+        String first = MqttService.resolveInstanceId("");
+        String second = MqttService.resolveInstanceId(null);
+        assertNotEquals(first, second);
+        assertEquals(first.substring(0, first.length() - 8), second.substring(0, second.length() - 8));
+    }
+
+    private static void publish(int port, String payload) {
+        Mqtt5BlockingClient publisher = Mqtt5Client.builder()
+                .serverHost("127.0.0.1")
+                .serverPort(port)
+                .buildBlocking();
+        publisher.connect();
+        try {
+            publisher.publishWith()
+                    .topic(TEMPERATURE_TOPIC)
+                    .payload(payload.getBytes(StandardCharsets.UTF_8))
+                    .qos(MqttQos.AT_LEAST_ONCE)
+                    .send();
+        } finally {
+            publisher.disconnect();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+}
@@ -0,0 +1,191 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.config.ApplicationConfig;
+import com.__25J_323.HarvestPrediction.loadtest.EmbeddedMqttBroker;
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5BlockingClient;
+import com.hivemq.client.mqtt.mqtt5.Mqtt5Client;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MqttServiceSharedSubscriptionTest {
+
+    // The "+" level is the device id
+    private static final String TEMPERATURE_TOPIC = "+/temperature";
+    private static final List<String> DEVICES = List.of(
+            "greenhouse-1", "greenhouse-2", "greenhouse-3", "greenhouse-4",
+            "field-1", "field-2", "field-3", "field-4");
+
+    // Stands in for environment_data: keyed by id, so saving the same window twice replaces it
+    private final Map<String, EnvironmentData> saved = new ConcurrentHashMap<>();
+
+    @Test
+    void devicesArePartitionedAcrossTheGroupAndEachIsIngestedByItsOwner() throws Exception {
+        // Which instance owns which device is a pure function of the member names
+        IngestMembership expected = new IngestMembership("ingest-a");
+        expected.join("ingest-b");
+        List<String> ownedByA = DEVICES.stream().filter(device -> expected.ownerOf(device).equals("ingest-a")).toList();
+        assertTrue(!ownedByA.isEmpty() && ownedByA.size() < DEVICES.size(), "devices split between instances");
+
+        try (EmbeddedMqttBroker broker = new EmbeddedMqttBroker().start()) {
+            Instance first = new Instance(broker.getPort(), "ingest-a");
+            Instance second = new Instance(broker.getPort(), "ingest-b");
+            first.service.init();
+            second.service.init();
+            try {
+                assertTrue(await(() -> first.members() == 2 && second.members() == 2, 10), "group formed");
+
+                publish(broker.getPort(), 10, 20.0);
+                int total = 10 * DEVICES.size();
+                int firstShare = 10 * ownedByA.size();
+                assertTrue(await(() -> first.ingested() + second.ingested() == total, 10), "every message ingested");
+                // Each instance ingested exactly the messages of the devices it owns
+                assertEquals(firstShare, first.ingested());
+                assertEquals(total - firstShare, second.ingested());
+                // The broker load-balanced the shared subscription, so both forwarded some of the traffic
+                assertTrue(first.forwarded() > 0 && second.forwarded() > 0, "both instances forwarded");
+
+                // One instance leaves; all devices move to the remaining one
+                first.service.destroy();
+                assertTrue(await(() -> second.members() == 1, 10), "ownership taken over");
+                publish(broker.getPort(), 5, 20.1);
+                assertTrue(await(() -> second.ingested() == total - firstShare + 5 * DEVICES.size(), 10),
+                        "remaining instance ingests every device");
+            } finally {
+                first.service.destroy();
+                second.service.destroy();
+            }
+        }
+
+        // Every sample is persisted exactly once, in one document per device and window
+        long samples = saved.values().stream()
+                .mapToLong(data -> data.getStats().get("temperature").getCount())
+                .sum();
+        assertEquals(15L * DEVICES.size(), samples);
+        for (EnvironmentData data : saved.values()) {
+            assertTrue(DEVICES.contains(data.getDeviceId()));
+            assertEquals(EnvironmentData.windowId(data.getDeviceId(),
+                    data.getWindowStart().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()), data.getId());
+        }
+    }
+
+    private class Instance {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final MqttService service;
+
+        Instance(int port, String instanceId) {
+            ObjectMapper objectMapper = new ApplicationConfig().objectMapper();
+            SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> true);
+            messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+            EnvironmentDataService persistence = new EnvironmentDataService(null, null, Clock.systemDefaultZone()) {
+                @Override
+                public EnvironmentData saveWindow(EnvironmentData data, String part) {
+                    // Merges parts by id like the stores do
+                    saved.merge(data.getId(), data, (stored, incoming) -> {
+                        incoming.getStats().forEach((sensor, stats) ->
+                                stored.getStats().computeIfAbsent(sensor, key -> new EnvironmentData.SensorStats()).merge(stats));
+                        return stored;
+                    });
+                    return data;
+                }
+            };
+
+            service = new MqttService(
+                    persistence,
+                    objectMapper,
+                    messagingTemplate,
+                    new EnvironmentStreamService(256, 15),
+                    new CompactFrameService(messagingTemplate, (message, timeout) -> true, false, 30,
+                            Clock.systemDefaultZone()),
+                    new DeviceLivenessTracker(30_000, 100, 512),
+                    new SensorWindowAggregator(30_000),
+                    new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS),
+                    new ThresholdRuleEngine(ZoneId.systemDefault()),
+                    new MqttCaptureWriter("captures", false),
+                    new IngestMetrics(registry),
+                    new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 21_600, 64, Clock.systemDefaultZone()),
+                    Clock.systemDefaultZone());
+            ReflectionTestUtils.setField(service, "brokerUrl", "127.0.0.1");
+            ReflectionTestUtils.setField(service, "brokerPort", port);
+            ReflectionTestUtils.setField(service, "brokerSsl", false);
+            ReflectionTestUtils.setField(service, "clientId", "shared-test-");
+            ReflectionTestUtils.setField(service, "instanceId", instanceId);
+            ReflectionTestUtils.setField(service, "username", "");
+            ReflectionTestUtils.setField(service, "password", "");
+            ReflectionTestUtils.setField(service, "temperatureTopic", TEMPERATURE_TOPIC);
+            ReflectionTestUtils.setField(service, "humidityTopic", "esp32/humidity");
+            ReflectionTestUtils.setField(service, "soilMoistureTopic", "esp32/soil_moisture");
+            ReflectionTestUtils.setField(service, "packedTopic", "esp32/packed");
+            ReflectionTestUtils.setField(service, "deviceId", "esp32");
+            ReflectionTestUtils.setField(service, "sessionExpirySeconds", 60L);
+            ReflectionTestUtils.setField(service, "reconnectInitialDelayMillis", 100L);
+            ReflectionTestUtils.setField(service, "reconnectMaxDelayMillis", 1000L);
+            ReflectionTestUtils.setField(service, "sharedGroup", "ingest");
+            ReflectionTestUtils.setField(service, "controlTopic", "harvest/ingest");
+        }
+
+        int members() {
+            return ((List<?>) service.getConnectionStats().get("groupMembers")).size();
+        }
+
+
+        double ingested() {
+            Counter counter = registry.find("mqtt.messages").tag("topic", TEMPERATURE_TOPIC).counter();
+            return counter != null ? counter.count() : 0;
+        }
+
+        double forwarded() {
+            return registry.get("mqtt.messages.forwarded").counter().count();
+        }
+    }
+
+    private static void publish(int port, int messages, double base) {
+        Mqtt5BlockingClient publisher = Mqtt5Client.builder()
+                .serverHost("127.0.0.1")
+                .serverPort(port)
+                .buildBlocking();
+        publisher.connect();
+        try {
+            for (int i = 0; i < messages; i++) {
+                for (String device : DEVICES) {
+                    publisher.publishWith()
+                            .topic(device + "/temperature")
+                            .payload(String.valueOf(base + i / 100.0).getBytes(StandardCharsets.UTF_8))
+                            .qos(MqttQos.AT_LEAST_ONCE)
+                            .send();
+                }
+            }
+        } finally {
+            publisher.disconnect();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+}
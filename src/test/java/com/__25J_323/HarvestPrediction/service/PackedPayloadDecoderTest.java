@@ -0,0 +1,57 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackedPayloadDecoderTest {
+
+    @Test
+    void jsonAndBinaryFormsDecodeToTheSameSamples() {
+        List<PackedPayloadDecoder.Sample> single = PackedPayloadDecoder.decode(
+                " {\"t\": 24.5, \"humidity\": 61, \"sm\": 40.25}".getBytes(StandardCharsets.UTF_8));
+        assertEquals(List.of(new PackedPayloadDecoder.Sample(0, 0b111, 24.5, 61.0, 40.25)), single);
+        assertEquals(single, PackedPayloadDecoder.decode(PackedPayloadDecoder.encode(single)));
+        assertEquals(1 + PackedPayloadDecoder.RECORD_BYTES, PackedPayloadDecoder.encode(single).length);
+
+        List<PackedPayloadDecoder.Sample> batch = PackedPayloadDecoder.decode("""
+                {"samples": [
+                  {"ts": 1717243200000, "t": 20.5, "h": 55.0},
+                  {"ts": 1717243260000, "soilMoisture": 38.5}
+                ]}""".getBytes(StandardCharsets.UTF_8));
+        assertEquals(2, batch.size());
+        assertTrue(batch.get(0).has(SensorWindowAggregator.HUMIDITY));
+        assertFalse(batch.get(0).has(SensorWindowAggregator.SOIL_MOISTURE));
+        assertEquals(38.5, batch.get(1).value(SensorWindowAggregator.SOIL_MOISTURE));
+        assertEquals(1717243260000L, batch.get(1).timestampMillis());
+        assertEquals(batch, PackedPayloadDecoder.decode(PackedPayloadDecoder.encode(batch)));
+        assertEquals(batch, PackedPayloadDecoder.decode("""
+                [{"ts": 1717243200000, "t": 20.5, "h": 55.0}, {"ts": 1717243260000, "sm": 38.5}]
+                """.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void malformedPayloadsAreRejected() {
+        byte[] truncated = PackedPayloadDecoder.encode(List.of(
+                new PackedPayloadDecoder.Sample(0, 1, 20.0, 0, 0),
+                new PackedPayloadDecoder.Sample(0, 1, 21.0, 0, 0)));
+        byte[] shortBatch = Arrays.copyOf(truncated, truncated.length - 1);
+
+        for (byte[] payload : new byte[][]{
+                shortBatch,
+                {0x07, 0, 0},
+                "{\"t\": \"warm\"}".getBytes(StandardCharsets.UTF_8),
+                "{\"samples\": 5}".getBytes(StandardCharsets.UTF_8),
+                "{\"t\": 2".getBytes(StandardCharsets.UTF_8),
+                "  ".getBytes(StandardCharsets.UTF_8)}) {
+            assertThrows(IllegalArgumentException.class, () -> PackedPayloadDecoder.decode(payload));
+        }
+    }
+}
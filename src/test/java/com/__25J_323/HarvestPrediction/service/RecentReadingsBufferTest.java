@@ -0,0 +1,122 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecentReadingsBufferTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private final ReplayClock clock = new ReplayClock(START, ZoneOffset.UTC);
+
+    private void advanceSeconds(long seconds) {
+        clock.advanceTo(clock.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    void returnsEveryReadingInRangeNewestFirst() {
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 100, 4, clock);
+        for (int i = 0; i < 10; i++) {
+            advanceSeconds(1);
+            buffer.record("esp32", clock.millis(), 20.0 + i, 60.0, 40.0);
+            buffer.record("esp32-b", clock.millis(), 30.0 + i, 50.0, 35.0);
+        }
+
+        List<EnvironmentData> readings = buffer.between(START + 3_000, START + 6_000);
+
+        assertEquals(6, readings.size());
+        assertEquals(START + 5_000, readings.get(0).getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        assertEquals(START + 3_000, readings.get(5).getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        assertEquals(24.0, readings.stream()
+                .filter(data -> data.getDeviceId().equals("esp32"))
+                .findFirst().orElseThrow().getTemperature());
+        assertEquals(20, buffer.getBufferedReadings());
+        assertEquals(2L * 100 * RecentReadingsBuffer.BYTES_PER_ROW, buffer.getAllocatedBytes());
+    }
+
+    @Test
+    void coverageStartsAtStartupAndMovesWithTheHorizonAndOverwrites() {
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.MINUTES.toMillis(1), 10, 4, clock);
+        assertEquals(START, buffer.coveredFrom());
+
+        advanceSeconds(90);
+        assertEquals(START + 30_000, buffer.coveredFrom());
+
+        // 15 readings a second apart into 10 slots: the first 5 are gone
+        for (int i = 0; i < 15; i++) {
+            advanceSeconds(1);
+            buffer.record("esp32", clock.millis(), 20.0, 60.0, 40.0);
+        }
+        assertEquals(START + 96_000, buffer.coveredFrom());
+        assertEquals(10, buffer.between(0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void devicesBeyondTheLimitDisableCoverage() {
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 10, 1, clock);
+        buffer.record("esp32", START, 20.0, 60.0, 40.0);
+        buffer.record("esp32-b", START, 20.0, 60.0, 40.0);
+
+        assertEquals(Long.MAX_VALUE, buffer.coveredFrom());
+        assertEquals(1, buffer.getBufferedDevices());
+        assertEquals(1, buffer.getBufferedReadings());
+    }
+
+    @Test
+    void messagesOfOneSecondShareARow() {
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 100, 4, clock);
+        // One tick: a message per sensor, then the next tick's temperature
+        buffer.record("esp32", START + 100, 20.0, Double.NaN, Double.NaN);
+        buffer.record("esp32", START + 300, Double.NaN, 60.0, Double.NaN);
+        buffer.record("esp32", START + 600, Double.NaN, Double.NaN, 40.0);
+        buffer.record("esp32", START + 1_100, 21.0, Double.NaN, Double.NaN);
+        buffer.record("esp32-b", START + 100, 30.0, Double.NaN, Double.NaN);
+
+        assertEquals(3, buffer.getBufferedReadings());
+        List<EnvironmentData> readings = buffer.between(START, START + 2_000);
+        EnvironmentData newest = readings.get(0);
+        assertEquals(21.0, newest.getTemperature());
+        assertEquals(60.0, newest.getHumidity());
+        assertEquals(40.0, newest.getSoilMoisture());
+        EnvironmentData other = readings.stream()
+                .filter(data -> data.getDeviceId().equals("esp32-b"))
+                .findFirst().orElseThrow();
+        // Never reported, not 0
+        assertNull(other.getHumidity());
+    }
+
+    @Test
+    void windowsHaveTheStoredShape() {
+        RecentReadingsBuffer buffer = new RecentReadingsBuffer(TimeUnit.HOURS.toMillis(6), 100, 4, clock);
+        long windowStart = START - Math.floorMod(START, 30_000L);
+        buffer.record("esp32", windowStart - 1_000, Double.NaN, 55.0, Double.NaN);
+        for (int i = 0; i < 45; i++) {
+            buffer.record("esp32", windowStart + i * 1_000L, 20.0 + i % 2, Double.NaN, Double.NaN);
+        }
+        clock.advanceTo(TimeUnit.MILLISECONDS.toNanos(windowStart + 44_500 - START));
+
+        List<EnvironmentData> windows = buffer.windows(windowStart, windowStart + 60_000, 30_000);
+
+        assertEquals(2, windows.size());
+        EnvironmentData closed = windows.get(1);
+        assertEquals(EnvironmentData.windowId("esp32", windowStart), closed.getId());
+        assertEquals(windowStart + 30_000, closed.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+        assertEquals(30, closed.getStats().get("temperature").getCount());
+        assertEquals(20.5, closed.getTemperature());
+        // Carried forward from before the window, with no stats of its own
+        assertEquals(55.0, closed.getHumidity());
+        assertNull(closed.getStats().get("humidity"));
+        assertNull(closed.getSoilMoisture());
+
+        EnvironmentData open = windows.get(0);
+        assertEquals(15, open.getStats().get("temperature").getCount());
+        assertEquals(windowStart + 44_500, open.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+}
@@ -0,0 +1,62 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import org.junit.jupiter.api.Test;
+
+import static com.__25J_323.HarvestPrediction.service.SensorOutlierFilter.Verdict.ACCEPTED;
+import static com.__25J_323.HarvestPrediction.service.SensorOutlierFilter.Verdict.HAMPEL;
+import static com.__25J_323.HarvestPrediction.service.SensorOutlierFilter.Verdict.OUT_OF_RANGE;
+import static com.__25J_323.HarvestPrediction.service.SensorOutlierFilter.Verdict.RATE_OF_CHANGE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensorOutlierFilterTest {
+
+    private static final int TEMPERATURE = SensorWindowAggregator.TEMPERATURE;
+    private static final int SOIL_MOISTURE = SensorWindowAggregator.SOIL_MOISTURE;
+
+    private final SensorOutlierFilter filter =
+            new SensorOutlierFilter(7, 3.0, 600_000, SensorOutlierFilter.DEFAULT_LIMITS);
+    private long now = 1_700_000_000_000L;
+
+    private SensorOutlierFilter.Verdict next(int sensor, double value, long afterMillis) {
+        now += afterMillis;
+        return filter.check("esp32", sensor, value, now);
+    }
+
+    @Test
+    void rejectsGlitchesAndKeepsNoise() {
+        for (double value : new double[]{24.0, 24.1, 24.0, 24.2, 24.1, 24.3, 24.2}) {
+            assertEquals(ACCEPTED, next(TEMPERATURE, value, 5_000));
+        }
+        assertEquals(OUT_OF_RANGE, next(TEMPERATURE, 850.0, 5_000));
+        // A stuck-at-zero read passes the range but neither the rate limit nor the median
+        assertEquals(RATE_OF_CHANGE, next(TEMPERATURE, 0.0, 5_000));
+        assertEquals(ACCEPTED, next(TEMPERATURE, 24.4, 5_000));
+
+        // Slow enough for the rate limit after a long gap, still far from the recent median
+        assertEquals(HAMPEL, next(TEMPERATURE, 34.0, 60_000));
+        assertEquals(ACCEPTED, next(TEMPERATURE, 24.3, 5_000));
+    }
+
+    @Test
+    void acceptsARealLevelChangeOnceItHolds() {
+        for (int i = 0; i < 7; i++) {
+            assertEquals(ACCEPTED, next(SOIL_MOISTURE, 30.0, 10_000));
+        }
+        // Irrigation: soil moisture jumps and stays there; accepted once the new level is the median
+        assertEquals(HAMPEL, next(SOIL_MOISTURE, 45.0, 10_000));
+        assertEquals(HAMPEL, next(SOIL_MOISTURE, 45.5, 10_000));
+        assertEquals(HAMPEL, next(SOIL_MOISTURE, 45.0, 10_000));
+        assertEquals(HAMPEL, next(SOIL_MOISTURE, 45.5, 10_000));
+        assertEquals(ACCEPTED, next(SOIL_MOISTURE, 45.0, 10_000));
+    }
+
+    @Test
+    void sensorsAndDevicesAreFilteredIndependently() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ACCEPTED, next(TEMPERATURE, 24.0, 5_000));
+        }
+        assertEquals(ACCEPTED, next(SOIL_MOISTURE, 80.0, 0));
+        assertEquals(ACCEPTED, filter.check("esp32-b", TEMPERATURE, 5.0, now));
+        assertEquals(ACCEPTED, SensorOutlierFilter.acceptAll().check("esp32", TEMPERATURE, 850.0, now));
+    }
+}
@@ -0,0 +1,95 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.EnvironmentData;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorWindowAggregatorTest {
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    void windowKeepsEverySampleNotJustTheLast() {
+        SensorWindowAggregator aggregator = new SensorWindowAggregator(30_000, clock::get);
+        long windowStart = clock.get() - Math.floorMod(clock.get(), 30_000L);
+
+        for (double value : new double[]{20.0, 35.0, 22.0, 23.0}) {
+            aggregator.record("esp32", SensorWindowAggregator.TEMPERATURE, value);
+            clock.addAndGet(1_000);
+        }
+        aggregator.record("esp32", SensorWindowAggregator.HUMIDITY, 60.0);
+
+        assertTrue(aggregator.closeWindows(windowStart + 29_999).isEmpty());
+
+        List<SensorWindowAggregator.ClosedWindow> closed = aggregator.closeWindows(windowStart + 30_000);
+        assertEquals(1, closed.size());
+        SensorWindowAggregator.ClosedWindow window = closed.get(0);
+        assertEquals(windowStart, window.startMillis());
+        assertEquals(windowStart + 30_000, window.endMillis());
+
+        EnvironmentData.SensorStats temperature = window.stats()[SensorWindowAggregator.TEMPERATURE];
+        assertEquals(4, temperature.getCount());
+        assertEquals(25.0, temperature.getMean(), 1e-9);
+        assertEquals(20.0, temperature.getMin());
+        assertEquals(35.0, temperature.getMax());
+        assertEquals(Math.sqrt(34.5), temperature.getStdDev(), 1e-9);
+        assertEquals(1, window.stats()[SensorWindowAggregator.HUMIDITY].getCount());
+        assertNull(window.stats()[SensorWindowAggregator.SOIL_MOISTURE]);
+
+        assertTrue(aggregator.closeWindows(windowStart + 60_000).isEmpty());
+    }
+
+    @Test
+    void lateSampleRollsTheWindowOverWithoutMixingValues() {
+        SensorWindowAggregator aggregator = new SensorWindowAggregator(10_000, clock::get);
+
+        aggregator.record("esp32", SensorWindowAggregator.SOIL_MOISTURE, 40.0);
+        aggregator.record("esp32-b", SensorWindowAggregator.SOIL_MOISTURE, 10.0);
+        clock.addAndGet(10_000);
+        aggregator.record("esp32", SensorWindowAggregator.SOIL_MOISTURE, 50.0);
+
+        List<SensorWindowAggregator.ClosedWindow> closed = aggregator.closeWindows(clock.get());
+        assertEquals(2, closed.size());
+        for (SensorWindowAggregator.ClosedWindow window : closed) {
+            EnvironmentData.SensorStats stats = window.stats()[SensorWindowAggregator.SOIL_MOISTURE];
+            assertEquals(1, stats.getCount());
+            assertEquals(window.deviceId().equals("esp32") ? 40.0 : 10.0, stats.getMean());
+        }
+
+        List<SensorWindowAggregator.ClosedWindow> remaining = aggregator.flushAll();
+        assertEquals(1, remaining.size());
+        assertEquals(50.0, remaining.get(0).stats()[SensorWindowAggregator.SOIL_MOISTURE].getMean());
+    }
+
+    @Test
+    void idleDevicesAreForgottenOnceTheirWindowIsFlushed() {
+        SensorWindowAggregator aggregator = new SensorWindowAggregator(10_000, 30_000, clock::get);
+        for (int i = 0; i < 1_000; i++) {
+            aggregator.record("churn-" + i, SensorWindowAggregator.TEMPERATURE, 20.0);
+        }
+        aggregator.record("esp32", SensorWindowAggregator.TEMPERATURE, 20.0);
+
+        // Windows closed, but the devices are not idle long enough yet
+        clock.addAndGet(20_000);
+        assertEquals(1_001, aggregator.closeWindows(clock.get()).size());
+        assertEquals(1_001, aggregator.devices().size());
+
+        clock.addAndGet(10_000);
+        aggregator.record("esp32", SensorWindowAggregator.TEMPERATURE, 21.0);
+        assertTrue(aggregator.closeWindows(clock.get()).isEmpty());
+        assertEquals(Set.of("esp32"), aggregator.devices());
+
+        // A forgotten device starts over with a fresh window
+        aggregator.record("churn-7", SensorWindowAggregator.TEMPERATURE, 22.0);
+        List<SensorWindowAggregator.ClosedWindow> flushed = aggregator.flushAll();
+        assertEquals(2, flushed.size());
+        assertTrue(aggregator.devices().isEmpty());
+    }
+}
@@ -0,0 +1,128 @@
+package com.__25J_323.HarvestPrediction.service;
+
+import com.__25J_323.HarvestPrediction.model.ThresholdRule;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThresholdRuleEngineTest {
+
+    private static final int TEMPERATURE = SensorWindowAggregator.TEMPERATURE;
+    private static final int SOIL_MOISTURE = SensorWindowAggregator.SOIL_MOISTURE;
+
+    private final ThresholdRuleEngine engine = new ThresholdRuleEngine(ZoneOffset.UTC);
+    private final List<ThresholdRuleEngine.Alert> alerts = new ArrayList<>();
+    private long now = 1_700_000_000_000L;
+
+    ThresholdRuleEngineTest() {
+        engine.setListener(alerts::add);
+    }
+
+    private static ThresholdRule rule(String id, String deviceId, String sensor, String operator,
+                                      double threshold, double hysteresis, long durationSeconds) {
+        ThresholdRule rule = new ThresholdRule();
+        rule.setId(id);
+        rule.setName(id);
+        rule.setDeviceId(deviceId);
+        rule.setSensor(sensor);
+        rule.setOperator(operator);
+        rule.setThreshold(threshold);
+        rule.setHysteresis(hysteresis);
+        rule.setDurationSeconds(durationSeconds);
+        return rule;
+    }
+
+    private void read(String deviceId, int sensor, double value, long afterMillis) {
+        now += afterMillis;
+        engine.evaluate(deviceId, sensor, value, now);
+    }
+
+    private String last() {
+        ThresholdRuleEngine.Alert alert = alerts.get(alerts.size() - 1);
+        return alert.ruleId() + " " + alert.state();
+    }
+
+    @Test
+    void firesOnceAndClearsPastTheHysteresis() {
+        engine.load(List.of(rule("hot", null, "temperature", ThresholdRule.ABOVE, 35.0, 1.0, 0)));
+
+        read("esp32", TEMPERATURE, 30.0, 1_000);
+        assertTrue(alerts.isEmpty());
+        read("esp32", TEMPERATURE, 35.5, 1_000);
+        assertEquals("hot FIRING", last());
+        read("esp32", TEMPERATURE, 36.0, 1_000);
+        // Back under the threshold but within the hysteresis band
+        read("esp32", TEMPERATURE, 34.5, 1_000);
+        read("esp32", TEMPERATURE, 35.2, 1_000);
+        assertEquals(1, alerts.size());
+
+        read("esp32", TEMPERATURE, 33.9, 1_000);
+        assertEquals("hot CLEARED", last());
+        assertEquals(33.9, alerts.get(1).value());
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    void firesOnlyAfterTheBreachLastsItsDuration() {
+        engine.load(List.of(rule("dry", null, "soilMoisture", ThresholdRule.BELOW, 20.0, 2.0, 60)));
+
+        read("esp32", SOIL_MOISTURE, 25.0, 1_000);
+        read("esp32", SOIL_MOISTURE, 18.0, 10_000);
+        read("esp32", SOIL_MOISTURE, 19.0, 30_000);
+        assertTrue(alerts.isEmpty());
+        // A short recovery resets the clock
+        read("esp32", SOIL_MOISTURE, 23.0, 10_000);
+        read("esp32", SOIL_MOISTURE, 17.0, 10_000);
+        read("esp32", SOIL_MOISTURE, 17.5, 50_000);
+        assertTrue(alerts.isEmpty());
+        read("esp32", SOIL_MOISTURE, 17.5, 10_000);
+        assertEquals("dry FIRING", last());
+        assertEquals(20.0, alerts.get(0).threshold());
+    }
+
+    @Test
+    void jumpsAcrossManyThresholdsAndScopesRulesToDevices() {
+        List<ThresholdRule> rules = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rules.add(rule("above-" + i, null, "temperature", ThresholdRule.ABOVE, i, 0.0, 0));
+        }
+        rules.add(rule("greenhouse-2", "esp32-b", "temperature", ThresholdRule.ABOVE, 10.5, 0.0, 0));
+        engine.load(rules);
+
+        read("esp32", TEMPERATURE, 10.5, 1_000);
+        assertEquals(11, alerts.size());
+        read("esp32", TEMPERATURE, 50.5, 1_000);
+        assertEquals(51, alerts.size());
+        read("esp32", TEMPERATURE, 5.5, 1_000);
+        assertEquals(51 + 45, alerts.size());
+
+        alerts.clear();
+        read("esp32-b", TEMPERATURE, 11.0, 1_000);
+        assertEquals(12, alerts.size());
+        assertTrue(alerts.stream().anyMatch(alert -> alert.ruleId().equals("greenhouse-2")));
+    }
+
+    @Test
+    void reloadKeepsTheStateOfUnchangedRules() {
+        ThresholdRule hot = rule("hot", null, "temperature", ThresholdRule.ABOVE, 35.0, 1.0, 0);
+        engine.load(List.of(hot));
+        read("esp32", TEMPERATURE, 36.0, 1_000);
+        assertEquals(1, engine.getFiringCount());
+
+        engine.load(List.of(hot, rule("cold", null, "temperature", ThresholdRule.BELOW, 15.0, 1.0, 0)));
+        read("esp32", TEMPERATURE, 36.5, 1_000);
+        assertEquals(1, alerts.size());
+        assertEquals(2, engine.getRuleCount());
+
+        ThresholdRule broken = rule("broken", null, "light", ThresholdRule.ABOVE, 1.0, 0.0, 0);
+        engine.load(List.of(broken));
+        assertEquals(0, engine.getRuleCount());
+        read("esp32", TEMPERATURE, 36.5, 1_000);
+        assertEquals(0, engine.getFiringCount());
+    }
+}